@@ -0,0 +1,254 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.geotools.util.Converters;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Maps a feature attribute to an Arrow column, and copies the attribute values into the matching
+ * {@link FieldVector}. One instance is built per attribute of the output schema, and reused for all
+ * the record batches of the response.
+ */
+abstract class ArrowColumn {
+
+    /** The GeoArrow extension name used for WKB encoded geometry columns */
+    static final String GEOARROW_WKB = "geoarrow.wkb";
+
+    /** Arrow field metadata key holding the extension type name */
+    static final String EXTENSION_NAME_KEY = "ARROW:extension:name";
+
+    static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    final Field field;
+
+    ArrowColumn(String name, ArrowType type) {
+        this(name, type, null);
+    }
+
+    ArrowColumn(String name, ArrowType type, Map<String, String> metadata) {
+        this.field = new Field(name, new FieldType(true, type, null, metadata), null);
+    }
+
+    /** Returns the value as a date, stores may return plain dates for date and time attributes */
+    static Date toDate(Object value) {
+        Date date = value instanceof Date ? (Date) value : Converters.convert(value, Date.class);
+        if (date == null) {
+            throw new IllegalArgumentException("Cannot convert " + value + " to a date");
+        }
+        return date;
+    }
+
+    /**
+     * Returns the milliseconds since the epoch of the value in the local time zone, the one {@link
+     * java.sql.Date} and {@link java.sql.Time} values are expressed in
+     */
+    static long toLocalMillis(Object value) {
+        long millis = toDate(value).getTime();
+        return millis + TimeZone.getDefault().getOffset(millis);
+    }
+
+    /** Sets the value at the given index, the value is never null */
+    abstract void set(FieldVector vector, int index, Object value);
+
+    /** Sets the value at the given index, handling nulls */
+    void write(FieldVector vector, int index, Object value) {
+        if (value == null) {
+            if (vector instanceof BaseFixedWidthVector) {
+                ((BaseFixedWidthVector) vector).setNull(index);
+            } else if (vector instanceof BaseVariableWidthVector) {
+                ((BaseVariableWidthVector) vector).setNull(index);
+            }
+        } else {
+            set(vector, index, value);
+        }
+    }
+
+    /** Builds the column for the given attribute, picking the Arrow type from its binding */
+    static ArrowColumn forAttribute(AttributeDescriptor ad) {
+        String name = ad.getLocalName();
+        Class<?> binding = ad.getType().getBinding();
+        if (ad instanceof GeometryDescriptor || Geometry.class.isAssignableFrom(binding)) {
+            return new WKBColumn(name);
+        } else if (Integer.class.equals(binding)
+                || Short.class.equals(binding)
+                || Byte.class.equals(binding)) {
+            return new IntColumn(name);
+        } else if (Long.class.equals(binding) || BigInteger.class.equals(binding)) {
+            return new LongColumn(name);
+        } else if (Float.class.equals(binding)) {
+            return new FloatColumn(name);
+        } else if (Number.class.isAssignableFrom(binding)) {
+            return new DoubleColumn(name);
+        } else if (Boolean.class.equals(binding)) {
+            return new BooleanColumn(name);
+        } else if (java.sql.Date.class.isAssignableFrom(binding)) {
+            return new DateColumn(name);
+        } else if (java.sql.Time.class.isAssignableFrom(binding)) {
+            return new TimeColumn(name);
+        } else if (Date.class.isAssignableFrom(binding)) {
+            return new TimestampColumn(name);
+        }
+        return new StringColumn(name);
+    }
+
+    static class StringColumn extends ArrowColumn {
+
+        StringColumn(String name) {
+            super(name, ArrowType.Utf8.INSTANCE);
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            String s = Converters.convert(value, String.class);
+            if (s == null) s = value.toString();
+            ((VarCharVector) vector).setSafe(index, s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static class IntColumn extends ArrowColumn {
+
+        IntColumn(String name) {
+            super(name, new ArrowType.Int(32, true));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((IntVector) vector).setSafe(index, ((Number) value).intValue());
+        }
+    }
+
+    static class LongColumn extends ArrowColumn {
+
+        LongColumn(String name) {
+            super(name, new ArrowType.Int(64, true));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((BigIntVector) vector).setSafe(index, ((Number) value).longValue());
+        }
+    }
+
+    static class FloatColumn extends ArrowColumn {
+
+        FloatColumn(String name) {
+            super(name, new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((Float4Vector) vector).setSafe(index, ((Number) value).floatValue());
+        }
+    }
+
+    static class DoubleColumn extends ArrowColumn {
+
+        DoubleColumn(String name) {
+            super(name, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((Float8Vector) vector).setSafe(index, ((Number) value).doubleValue());
+        }
+    }
+
+    static class BooleanColumn extends ArrowColumn {
+
+        BooleanColumn(String name) {
+            super(name, ArrowType.Bool.INSTANCE);
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((BitVector) vector).setSafe(index, Boolean.TRUE.equals(value) ? 1 : 0);
+        }
+    }
+
+    static class DateColumn extends ArrowColumn {
+
+        DateColumn(String name) {
+            super(name, new ArrowType.Date(DateUnit.DAY));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            long days = Math.floorDiv(toLocalMillis(value), MILLIS_PER_DAY);
+            ((DateDayVector) vector).setSafe(index, (int) days);
+        }
+    }
+
+    static class TimeColumn extends ArrowColumn {
+
+        TimeColumn(String name) {
+            super(name, new ArrowType.Time(TimeUnit.MILLISECOND, 32));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            long millis = Math.floorMod(toLocalMillis(value), MILLIS_PER_DAY);
+            ((TimeMilliVector) vector).setSafe(index, (int) millis);
+        }
+    }
+
+    static class TimestampColumn extends ArrowColumn {
+
+        TimestampColumn(String name) {
+            super(name, new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC"));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((TimeStampMilliTZVector) vector).setSafe(index, toDate(value).getTime());
+        }
+    }
+
+    static class WKBColumn extends ArrowColumn {
+
+        // WKBWriter is not thread safe, but columns are built per request
+        WKBWriter writer = new WKBWriter();
+
+        WKBColumn(String name) {
+            super(
+                    name,
+                    ArrowType.Binary.INSTANCE,
+                    Collections.singletonMap(EXTENSION_NAME_KEY, GEOARROW_WKB));
+        }
+
+        @Override
+        void set(FieldVector vector, int index, Object value) {
+            ((VarBinaryVector) vector).setSafe(index, writer.write((Geometry) value));
+        }
+    }
+}
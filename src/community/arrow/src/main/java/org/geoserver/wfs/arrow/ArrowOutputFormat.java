@@ -0,0 +1,219 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sf.json.JSONObject;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.geoserver.config.GeoServer;
+import org.geoserver.feature.FlatteningFeatureCollection;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.WFSGetFeatureOutputFormat;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.request.GetFeatureRequest;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * WFS output format producing an Apache Arrow IPC stream. Features are read from the store and
+ * written out in record batches of a configurable size (see {@link #BATCH_SIZE_OPTION}), so that
+ * memory usage is bounded regardless of the response size. Geometries are encoded as WKB.
+ */
+public class ArrowOutputFormat extends WFSGetFeatureOutputFormat {
+
+    static final Logger LOGGER = Logging.getLogger(ArrowOutputFormat.class);
+
+    /** The official Arrow IPC stream media type */
+    public static final String MIME_TYPE = "application/vnd.apache.arrow.stream";
+
+    /** Format option controlling the number of features in each record batch */
+    public static final String BATCH_SIZE_OPTION = "BATCH_SIZE";
+
+    /** Default number of features in a record batch */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /** Name of the column holding the feature identifiers */
+    static final String FID = "FID";
+
+    public ArrowOutputFormat(GeoServer gs) {
+        super(gs, new LinkedHashSet<>(Arrays.asList(MIME_TYPE, "arrow")));
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getCapabilitiesElementName() {
+        return "ARROW";
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        return DISPOSITION_ATTACH;
+    }
+
+    @Override
+    protected String getExtension(FeatureCollectionResponse response) {
+        return "arrows";
+    }
+
+    @Override
+    protected void write(
+            FeatureCollectionResponse featureCollection, OutputStream output, Operation operation)
+            throws IOException, ServiceException {
+        List<FeatureCollection> collections = featureCollection.getFeature();
+        if (collections.size() != 1) {
+            throw new ServiceException(
+                    "Arrow output format supports a single feature type per request",
+                    ServiceException.INVALID_PARAMETER_VALUE,
+                    "typeName");
+        }
+        if (!(collections.get(0).getSchema() instanceof SimpleFeatureType)) {
+            throw new ServiceException(
+                    "Arrow output format does not support complex features",
+                    ServiceException.INVALID_PARAMETER_VALUE,
+                    "outputFormat");
+        }
+        // flatten the collection if necessary (WFS 2.0 joins)
+        SimpleFeatureCollection fc =
+                FlatteningFeatureCollection.flatten((SimpleFeatureCollection) collections.get(0));
+        SimpleFeatureType featureType = fc.getSchema();
+        int batchSize = getBatchSize(operation);
+
+        // build the columns and the schema
+        List<ArrowColumn> columns = new ArrayList<>();
+        for (AttributeDescriptor ad : featureType.getAttributeDescriptors()) {
+            columns.add(ArrowColumn.forAttribute(ad));
+        }
+        List<Field> fields = new ArrayList<>();
+        fields.add(new ArrowColumn.StringColumn(FID).field);
+        columns.forEach(c -> fields.add(c.field));
+        Schema schema = new Schema(fields, getSchemaMetadata(featureType));
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Writing Arrow stream with batch size " + batchSize + ", schema " + schema);
+        }
+
+        try (BufferAllocator allocator = new RootAllocator();
+                VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+                ArrowStreamWriter writer =
+                        new ArrowStreamWriter(root, null, Channels.newChannel(output));
+                SimpleFeatureIterator fi = fc.features()) {
+            writer.start();
+            List<FieldVector> vectors = root.getFieldVectors();
+            FieldVector fidVector = vectors.get(0);
+            ArrowColumn fidColumn = new ArrowColumn.StringColumn(FID);
+            int count = 0;
+            while (fi.hasNext()) {
+                if (count == 0) {
+                    allocate(vectors, batchSize);
+                }
+                SimpleFeature f = fi.next();
+                fidColumn.write(fidVector, count, f.getID());
+                for (int i = 0; i < columns.size(); i++) {
+                    columns.get(i).write(vectors.get(i + 1), count, f.getAttribute(i));
+                }
+                count++;
+                if (count == batchSize) {
+                    writeBatch(root, writer, count);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                writeBatch(root, writer, count);
+            }
+            writer.end();
+        }
+    }
+
+    private void allocate(List<FieldVector> vectors, int batchSize) {
+        for (FieldVector vector : vectors) {
+            vector.setInitialCapacity(batchSize);
+            vector.allocateNew();
+        }
+    }
+
+    private void writeBatch(VectorSchemaRoot root, ArrowStreamWriter writer, int count)
+            throws IOException {
+        root.setRowCount(count);
+        writer.writeBatch();
+        // release the buffers, the next batch will allocate new ones
+        root.clear();
+    }
+
+    /**
+     * Builds GeoParquet compatible "geo" metadata, allowing clients to turn the stream into a
+     * GeoDataFrame, or save it as GeoParquet, without guessing which columns are geometries
+     */
+    private Map<String, String> getSchemaMetadata(SimpleFeatureType featureType) {
+        JSONObject geoColumns = new JSONObject();
+        for (AttributeDescriptor ad : featureType.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                JSONObject column = new JSONObject();
+                column.put("encoding", "WKB");
+                column.put(
+                        "geometry_type",
+                        ad.getType().getBinding().getSimpleName().replace("Geometry", "Unknown"));
+                geoColumns.put(ad.getLocalName(), column);
+            }
+        }
+        if (geoColumns.isEmpty()) {
+            return null;
+        }
+        JSONObject geo = new JSONObject();
+        geo.put("version", "0.4.0");
+        GeometryDescriptor primary = featureType.getGeometryDescriptor();
+        if (primary != null) {
+            geo.put("primary_column", primary.getLocalName());
+        }
+        geo.put("columns", geoColumns);
+        return Collections.singletonMap("geo", geo.toString());
+    }
+
+    /** Returns the batch size from the format options, or the default one */
+    int getBatchSize(Operation operation) {
+        GetFeatureRequest request = GetFeatureRequest.adapt(operation.getParameters()[0]);
+        if (request != null && request.getFormatOptions() != null) {
+            Object value = request.getFormatOptions().get(BATCH_SIZE_OPTION);
+            if (value != null) {
+                Integer size = Converters.convert(value, Integer.class);
+                if (size == null || size <= 0) {
+                    throw new ServiceException(
+                            "Invalid " + BATCH_SIZE_OPTION + " format option: " + value,
+                            ServiceException.INVALID_PARAMETER_VALUE,
+                            "format_options");
+                }
+                return size;
+            }
+        }
+        return DEFAULT_BATCH_SIZE;
+    }
+}
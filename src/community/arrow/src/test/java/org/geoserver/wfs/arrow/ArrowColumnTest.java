@@ -0,0 +1,45 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Date;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.junit.Test;
+
+public class ArrowColumnTest {
+
+    @Test
+    public void testDateFromPlainDate() {
+        ArrowColumn column = new ArrowColumn.DateColumn("date");
+        Date date = new Date(java.sql.Date.valueOf("2022-03-15").getTime());
+        try (BufferAllocator allocator = new RootAllocator();
+                DateDayVector vector = new DateDayVector("date", allocator)) {
+            column.write(vector, 0, date);
+            column.write(vector, 1, java.sql.Date.valueOf("1969-12-31"));
+            assertEquals(LocalDate.of(2022, 3, 15).toEpochDay(), vector.get(0));
+            assertEquals(-1, vector.get(1));
+        }
+    }
+
+    @Test
+    public void testTimeKeepsMillis() {
+        ArrowColumn column = new ArrowColumn.TimeColumn("time");
+        long millis = java.sql.Time.valueOf("10:15:30").getTime() + 250;
+        try (BufferAllocator allocator = new RootAllocator();
+                TimeMilliVector vector = new TimeMilliVector("time", allocator)) {
+            column.write(vector, 0, new java.sql.Time(millis));
+            column.write(vector, 1, new Date(millis));
+            int expected = ((10 * 60 + 15) * 60 + 30) * 1000 + 250;
+            assertEquals(expected, vector.get(0));
+            assertEquals(expected, vector.get(1));
+        }
+    }
+}
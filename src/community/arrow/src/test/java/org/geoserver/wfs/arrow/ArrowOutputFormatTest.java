@@ -0,0 +1,106 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import net.sf.json.JSONObject;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geotools.data.Query;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ArrowOutputFormatTest extends WFSTestSupport {
+
+    @Test
+    public void testArrowStream() throws Exception {
+        MockHttpServletResponse resp =
+                getAsServletResponse(
+                        "wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature&outputFormat=arrow");
+        assertEquals(ArrowOutputFormat.MIME_TYPE, resp.getContentType());
+        assertEquals(
+                "attachment; filename=PrimitiveGeoFeature.arrows",
+                resp.getHeader("Content-Disposition"));
+
+        int expected = getFeatureSource(MockData.PRIMITIVEGEOFEATURE).getCount(Query.ALL);
+        try (InputStream in = getBinaryInputStream(resp);
+                BufferAllocator allocator = new RootAllocator();
+                ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            Schema schema = root.getSchema();
+            assertEquals(ArrowOutputFormat.FID, schema.getFields().get(0).getName());
+
+            // geometry columns are WKB, and described in the "geo" metadata
+            Field pointField = schema.findField("pointProperty");
+            assertEquals(
+                    ArrowColumn.GEOARROW_WKB,
+                    pointField.getMetadata().get(ArrowColumn.EXTENSION_NAME_KEY));
+            JSONObject geo = JSONObject.fromObject(schema.getCustomMetadata().get("geo"));
+            assertEquals(
+                    "WKB",
+                    geo.getJSONObject("columns").getJSONObject("pointProperty").get("encoding"));
+
+            int count = 0;
+            while (reader.loadNextBatch()) {
+                VarBinaryVector points = (VarBinaryVector) root.getVector("pointProperty");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    if (!points.isNull(i)) {
+                        Geometry g = new WKBReader().read(points.get(i));
+                        assertEquals("Point", g.getGeometryType());
+                    }
+                }
+                count += root.getRowCount();
+            }
+            assertEquals(expected, count);
+        }
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        MockHttpServletResponse resp =
+                getAsServletResponse(
+                        "wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature"
+                                + "&outputFormat=arrow&format_options=BATCH_SIZE:2");
+        int expected = getFeatureSource(MockData.PRIMITIVEGEOFEATURE).getCount(Query.ALL);
+        try (InputStream in = getBinaryInputStream(resp);
+                BufferAllocator allocator = new RootAllocator();
+                ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            int batches = 0;
+            int count = 0;
+            while (reader.loadNextBatch()) {
+                assertTrue(root.getRowCount() <= 2);
+                count += root.getRowCount();
+                batches++;
+            }
+            assertEquals(expected, count);
+            assertEquals((expected + 1) / 2, batches);
+        }
+    }
+
+    @Test
+    public void testMultipleTypesRejected() throws Exception {
+        MockHttpServletResponse resp =
+                getAsServletResponse(
+                        "wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature,sf:GenericEntity"
+                                + "&outputFormat=arrow");
+        String content = resp.getContentAsString();
+        assertNotNull(content);
+        assertTrue(content, content.contains("single feature type"));
+    }
+}
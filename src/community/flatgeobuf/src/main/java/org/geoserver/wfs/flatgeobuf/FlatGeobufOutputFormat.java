@@ -15,9 +15,11 @@
 import org.geoserver.wfs.WFSGetFeatureOutputFormat;
 import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.request.GetFeatureRequest;
 import org.geotools.data.flatgeobuf.FeatureCollectionConversions;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.util.Converters;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 /**
@@ -29,6 +31,12 @@
 public class FlatGeobufOutputFormat extends WFSGetFeatureOutputFormat {
     private final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(this.getClass());
 
+    /**
+     * Format option enabling the packed Hilbert R-tree spatial index, e.g. {@code
+     * format_options=SPATIAL_INDEX:true}
+     */
+    public static final String SPATIAL_INDEX_OPTION = "SPATIAL_INDEX";
+
     public FlatGeobufOutputFormat(GeoServer gs) {
         super(gs, "application/flatgeobuf");
     }
@@ -68,7 +76,21 @@ protected void write(
 
         SimpleFeatureCollection fc =
                 (SimpleFeatureCollection) featureCollection.getFeature().get(0);
-        FeatureCollectionConversions.serialize(fc, 0, output);
+        if (isSpatialIndexRequested(operation)) {
+            new IndexedFlatGeobufWriter().write(fc, output);
+        } else {
+            FeatureCollectionConversions.serialize(fc, 0, output);
+        }
+    }
+
+    /** Checks if the spatial index has been requested via format options */
+    protected boolean isSpatialIndexRequested(Operation operation) {
+        GetFeatureRequest request = GetFeatureRequest.adapt(operation.getParameters()[0]);
+        if (request == null || request.getFormatOptions() == null) {
+            return false;
+        }
+        Object value = request.getFormatOptions().get(SPATIAL_INDEX_OPTION);
+        return Boolean.TRUE.equals(Converters.convert(value, Boolean.class));
     }
 
     /** Is WFS configured to return feature and collection bounds? */
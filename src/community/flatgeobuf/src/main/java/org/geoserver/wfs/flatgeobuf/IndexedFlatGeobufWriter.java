@@ -0,0 +1,687 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.flatgeobuf;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.data.flatgeobuf.FeatureCollectionConversions;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.wololo.flatgeobuf.ColumnMeta;
+import org.wololo.flatgeobuf.Constants;
+import org.wololo.flatgeobuf.GeometryConversions;
+import org.wololo.flatgeobuf.HeaderMeta;
+import org.wololo.flatgeobuf.generated.Column;
+import org.wololo.flatgeobuf.generated.Crs;
+import org.wololo.flatgeobuf.generated.Feature;
+import org.wololo.flatgeobuf.generated.Header;
+
+/**
+ * Writes FlatGeobuf files with a packed Hilbert R-tree spatial index, allowing clients to perform
+ * HTTP range requests against the result.
+ *
+ * <p>The index must be written before the features, in Hilbert order, so the features are first
+ * spilled to a temporary, non indexed, FlatGeobuf file. The feature envelopes are then sorted by
+ * Hilbert value using an external merge sort, so that memory usage is bounded by {@link
+ * #getMaxItemsInMemory()} regardless of the number of features. The index nodes are also built on
+ * disk, level by level, and finally the header, the index and the features (in sorted order) are
+ * copied to the output.
+ */
+public class IndexedFlatGeobufWriter {
+
+    static final Logger LOGGER = Logging.getLogger(IndexedFlatGeobufWriter.class);
+
+    /** Default index node size, same as the reference implementation */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    /** Default number of feature envelopes sorted in memory before spilling to disk */
+    public static final int DEFAULT_MAX_ITEMS_IN_MEMORY = 100000;
+
+    /** Size of a packed R-tree node, four doubles and an unsigned long */
+    static final int NODE_ITEM_LEN = 8 * 4 + 8;
+
+    static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /** Number of nodes read/written in a single I/O operation while building the tree */
+    static final int NODE_BUFFER_SIZE = 4096;
+
+    int nodeSize = DEFAULT_NODE_SIZE;
+
+    int maxItemsInMemory = DEFAULT_MAX_ITEMS_IN_MEMORY;
+
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    public void setNodeSize(int nodeSize) {
+        if (nodeSize < 2 || nodeSize > 65535) {
+            throw new IllegalArgumentException("Node size must be between 2 and 65535");
+        }
+        this.nodeSize = nodeSize;
+    }
+
+    public int getMaxItemsInMemory() {
+        return maxItemsInMemory;
+    }
+
+    public void setMaxItemsInMemory(int maxItemsInMemory) {
+        if (maxItemsInMemory < 1) {
+            throw new IllegalArgumentException("Max items in memory must be positive");
+        }
+        this.maxItemsInMemory = maxItemsInMemory;
+    }
+
+    /** Writes the feature collection as an indexed FlatGeobuf to the output stream */
+    public void write(SimpleFeatureCollection fc, OutputStream output) throws IOException {
+        File spill = File.createTempFile("flatgeobuf", ".fgb");
+        try {
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(spill))) {
+                FeatureCollectionConversions.serialize(fc, 0, os);
+            }
+            write(spill, output);
+        } finally {
+            delete(spill);
+        }
+    }
+
+    /**
+     * Writes an indexed copy of the given FlatGeobuf file, the source can be either indexed or not
+     */
+    void write(File source, OutputStream output) throws IOException {
+        HeaderMeta header;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(source))) {
+            header = HeaderMeta.read(is);
+        }
+        List<File> temporaryFiles = new ArrayList<>();
+        try (FileChannel sourceChannel = FileChannel.open(source.toPath())) {
+            long featuresStart = header.offset;
+            if (header.indexNodeSize > 0 && header.featuresCount > 0) {
+                featuresStart += calcTreeSize(header.featuresCount, header.indexNodeSize);
+            }
+
+            // first pass, collect the feature envelopes and the overall extent
+            File items = createTempFile(temporaryFiles, "items");
+            Envelope extent = new Envelope();
+            long count = collectItems(sourceChannel, featuresStart, header, items, extent);
+            if (count == 0) {
+                // nothing to index, just copy over the source
+                sourceChannel.transferTo(0, sourceChannel.size(), Channels.newChannel(output));
+                return;
+            }
+
+            // sort the envelopes by hilbert value, merging runs if they did not fit in memory
+            List<File> runs = sortItems(items, count, extent, temporaryFiles);
+
+            // build the tree on disk, and record the feature order
+            File tree = createTempFile(temporaryFiles, "tree");
+            File order = createTempFile(temporaryFiles, "order");
+            buildTree(runs, count, tree, order);
+
+            // write out header, index and features
+            WritableByteChannel out = Channels.newChannel(output);
+            output.write(Constants.MAGIC_BYTES);
+            writeHeader(header, extent, count, output);
+            try (FileChannel treeChannel = FileChannel.open(tree.toPath())) {
+                transferFully(treeChannel, 0, treeChannel.size(), out);
+            }
+            try (DataInputStream dis = openData(order)) {
+                for (long i = 0; i < count; i++) {
+                    long offset = dis.readLong();
+                    int size = dis.readInt();
+                    transferFully(sourceChannel, offset, size, out);
+                }
+            }
+            output.flush();
+        } finally {
+            for (File f : temporaryFiles) {
+                delete(f);
+            }
+        }
+    }
+
+    /** Scans the features, writing their envelopes and positions to the items file */
+    private long collectItems(
+            FileChannel channel, long position, HeaderMeta header, File items, Envelope extent)
+            throws IOException {
+        long count = 0;
+        long end = channel.size();
+        ByteBuffer sizeBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer featureBuffer = ByteBuffer.allocate(1024);
+        try (DataOutputStream dos = createData(items)) {
+            while (position < end) {
+                sizeBuffer.clear();
+                readFully(channel, sizeBuffer, position);
+                int featureSize = sizeBuffer.getInt(0);
+                if (featureBuffer.capacity() < featureSize) {
+                    featureBuffer = ByteBuffer.allocate(featureSize);
+                }
+                featureBuffer.clear().limit(featureSize);
+                readFully(channel, featureBuffer, position + 4);
+
+                Envelope envelope = getEnvelope(featureBuffer, header);
+                new Item(envelope, position, featureSize + 4).write(dos);
+                extent.expandToInclude(envelope);
+
+                position += featureSize + 4;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Envelope getEnvelope(ByteBuffer featureBuffer, HeaderMeta header) {
+        Feature feature = Feature.getRootAsFeature(featureBuffer);
+        org.wololo.flatgeobuf.generated.Geometry geometry = feature.geometry();
+        if (geometry == null) {
+            return new Envelope();
+        }
+        Geometry g = GeometryConversions.deserialize(geometry, header.geometryType);
+        return g == null ? new Envelope() : g.getEnvelopeInternal();
+    }
+
+    /**
+     * Sorts the items by hilbert value in chunks of {@link #maxItemsInMemory}, returning the sorted
+     * runs to be merged (a single one if all items fit in memory)
+     */
+    private List<File> sortItems(File items, long count, Envelope extent, List<File> temporaries)
+            throws IOException {
+        List<File> runs = new ArrayList<>();
+        try (DataInputStream dis = openData(items)) {
+            long read = 0;
+            while (read < count) {
+                int chunkSize = (int) Math.min(maxItemsInMemory, count - read);
+                Item[] chunk = new Item[chunkSize];
+                for (int i = 0; i < chunkSize; i++) {
+                    Item item = Item.read(dis);
+                    item.hilbert = hilbert(item, extent);
+                    chunk[i] = item;
+                }
+                Arrays.sort(chunk, Item.HILBERT_ORDER);
+                File run = createTempFile(temporaries, "run");
+                try (DataOutputStream dos = createData(run)) {
+                    for (Item item : chunk) {
+                        item.write(dos);
+                        dos.writeLong(item.hilbert);
+                    }
+                }
+                runs.add(run);
+                read += chunkSize;
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Sorted " + count + " feature envelopes in " + runs.size() + " runs");
+        }
+        return runs;
+    }
+
+    /**
+     * Merges the sorted runs, writing the leaves of the tree and the feature order, then builds the
+     * upper levels of the tree
+     */
+    private void buildTree(List<File> runs, long count, File tree, File order) throws IOException {
+        long[][] levelBounds = generateLevelBounds(count, nodeSize);
+        long numNodes = levelBounds[0][1];
+
+        List<DataInputStream> streams = new ArrayList<>();
+        try (FileChannel treeChannel =
+                        FileChannel.open(
+                                tree.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                DataOutputStream orderStream = createData(order)) {
+            // the leaves, stored at the end of the tree
+            PriorityQueue<RunHead> queue = new PriorityQueue<>();
+            for (File run : runs) {
+                DataInputStream dis = openData(run);
+                streams.add(dis);
+                RunHead head = RunHead.next(dis);
+                if (head != null) queue.add(head);
+            }
+            NodeWriter leaves = new NodeWriter(treeChannel, levelBounds[0][0]);
+            long featureOffset = 0;
+            while (!queue.isEmpty()) {
+                RunHead head = queue.poll();
+                Item item = head.item;
+                leaves.write(item.minX, item.minY, item.maxX, item.maxY, featureOffset);
+                orderStream.writeLong(item.offset);
+                orderStream.writeInt(item.size);
+                featureOffset += item.size;
+                RunHead next = RunHead.next(head.stream);
+                if (next != null) queue.add(next);
+            }
+            leaves.flush();
+
+            // the upper levels, each parent holds the index of its first child
+            for (int level = 0; level < levelBounds.length - 1; level++) {
+                long start = levelBounds[level][0];
+                long end = levelBounds[level][1];
+                NodeReader children = new NodeReader(treeChannel, start);
+                NodeWriter parents = new NodeWriter(treeChannel, levelBounds[level + 1][0]);
+                for (long first = start; first < end; first += nodeSize) {
+                    double minX = Double.POSITIVE_INFINITY;
+                    double minY = Double.POSITIVE_INFINITY;
+                    double maxX = Double.NEGATIVE_INFINITY;
+                    double maxY = Double.NEGATIVE_INFINITY;
+                    long last = Math.min(first + nodeSize, end);
+                    for (long i = first; i < last; i++) {
+                        children.next();
+                        minX = Math.min(minX, children.minX);
+                        minY = Math.min(minY, children.minY);
+                        maxX = Math.max(maxX, children.maxX);
+                        maxY = Math.max(maxY, children.maxY);
+                    }
+                    parents.write(minX, minY, maxX, maxY, first);
+                }
+                parents.flush();
+            }
+            if (treeChannel.size() != numNodes * NODE_ITEM_LEN) {
+                throw new IOException(
+                        "Unexpected tree size "
+                                + treeChannel.size()
+                                + ", was expecting "
+                                + numNodes * NODE_ITEM_LEN);
+            }
+        } finally {
+            for (DataInputStream dis : streams) {
+                dis.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the start (inclusive) and end (exclusive) node index of each tree level, the leaves
+     * being level 0, stored at the end of the tree, and the root the last level, stored first.
+     */
+    static long[][] generateLevelBounds(long numItems, int nodeSize) {
+        List<Long> levelNumNodes = new ArrayList<>();
+        long n = numItems;
+        long numNodes = n;
+        levelNumNodes.add(n);
+        do {
+            n = (n + nodeSize - 1) / nodeSize;
+            numNodes += n;
+            levelNumNodes.add(n);
+        } while (n != 1);
+
+        long[][] bounds = new long[levelNumNodes.size()][];
+        n = numNodes;
+        for (int i = 0; i < levelNumNodes.size(); i++) {
+            long size = levelNumNodes.get(i);
+            bounds[i] = new long[] {n - size, n};
+            n -= size;
+        }
+        return bounds;
+    }
+
+    static long calcTreeSize(long numItems, int nodeSize) {
+        long[][] bounds = generateLevelBounds(numItems, nodeSize);
+        return bounds[0][1] * NODE_ITEM_LEN;
+    }
+
+    /** Writes a size prefixed header, copying the source one and adding extent and index info */
+    private void writeHeader(HeaderMeta meta, Envelope extent, long count, OutputStream output)
+            throws IOException {
+        FlatBufferBuilder builder = new FlatBufferBuilder(1024);
+        int columnsOffset = 0;
+        if (meta.columns != null && !meta.columns.isEmpty()) {
+            int[] columns = new int[meta.columns.size()];
+            for (int i = 0; i < columns.length; i++) {
+                ColumnMeta c = meta.columns.get(i);
+                columns[i] =
+                        Column.createColumn(
+                                builder,
+                                builder.createString(c.name),
+                                c.type,
+                                createString(builder, c.title),
+                                createString(builder, c.description),
+                                c.width,
+                                c.precision,
+                                c.scale,
+                                c.nullable,
+                                c.unique,
+                                c.primary_key,
+                                createString(builder, c.metadata));
+            }
+            columnsOffset = Header.createColumnsVector(builder, columns);
+        }
+        int nameOffset = createString(builder, meta.name);
+        int crsOffset = meta.srid != 0 ? Crs.createCrs(builder, 0, meta.srid, 0, 0, 0, 0) : 0;
+        int envelopeOffset = 0;
+        if (!extent.isNull()) {
+            envelopeOffset =
+                    Header.createEnvelopeVector(
+                            builder,
+                            new double[] {
+                                extent.getMinX(), extent.getMinY(),
+                                extent.getMaxX(), extent.getMaxY()
+                            });
+        }
+
+        Header.startHeader(builder);
+        if (nameOffset != 0) Header.addName(builder, nameOffset);
+        if (envelopeOffset != 0) Header.addEnvelope(builder, envelopeOffset);
+        Header.addGeometryType(builder, meta.geometryType);
+        Header.addHasZ(builder, meta.hasZ);
+        Header.addHasM(builder, meta.hasM);
+        Header.addHasT(builder, meta.hasT);
+        Header.addHasTm(builder, meta.hasTM);
+        if (columnsOffset != 0) Header.addColumns(builder, columnsOffset);
+        Header.addFeaturesCount(builder, count);
+        // the default value is not stored by FlatBuffers, always force it
+        builder.forceDefaults(true);
+        Header.addIndexNodeSize(builder, nodeSize);
+        builder.forceDefaults(false);
+        if (crsOffset != 0) Header.addCrs(builder, crsOffset);
+        int headerOffset = Header.endHeader(builder);
+        builder.finishSizePrefixed(headerOffset);
+        output.write(builder.sizedByteArray());
+    }
+
+    private int createString(FlatBufferBuilder builder, String value) {
+        return value == null ? 0 : builder.createString(value);
+    }
+
+    /**
+     * Computes the Hilbert value of the item envelope center, scaled to a 2^16 grid over the extent
+     */
+    static long hilbert(Item item, Envelope extent) {
+        if (item.minX > item.maxX || extent.isNull()) {
+            return 0;
+        }
+        double width = extent.getWidth();
+        double height = extent.getHeight();
+        long x = 0;
+        long y = 0;
+        if (width != 0) {
+            x =
+                    (long)
+                            Math.floor(
+                                    HILBERT_MAX
+                                            * ((item.minX + item.maxX) / 2 - extent.getMinX())
+                                            / width);
+        }
+        if (height != 0) {
+            y =
+                    (long)
+                            Math.floor(
+                                    HILBERT_MAX
+                                            * ((item.minY + item.maxY) / 2 - extent.getMinY())
+                                            / height);
+        }
+        return hilbert((int) x, (int) y);
+    }
+
+    /**
+     * Fast Hilbert curve index computation for a 16 bits grid, based on the public domain
+     * implementation at https://github.com/rawrunprotected/hilbert_curves
+     */
+    static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    private File createTempFile(List<File> temporaries, String prefix) throws IOException {
+        File file = File.createTempFile("fgb-" + prefix, ".tmp");
+        temporaries.add(file);
+        return file;
+    }
+
+    private static DataOutputStream createData(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    private static DataInputStream openData(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of FlatGeobuf file at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void transferFully(
+            FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        while (count > 0) {
+            long transferred = channel.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of file at " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Could not delete temporary file " + file);
+        }
+    }
+
+    /** A feature envelope, along with its position and size in the spill file */
+    static final class Item {
+
+        static final Comparator<Item> HILBERT_ORDER = Comparator.comparingLong(i -> i.hilbert);
+
+        double minX;
+        double minY;
+        double maxX;
+        double maxY;
+        long offset;
+        int size;
+        long hilbert;
+
+        Item() {}
+
+        Item(Envelope envelope, long offset, int size) {
+            if (envelope.isNull()) {
+                // an inverted envelope never intersects a search area, and does not
+                // contribute to the parent nodes envelopes
+                this.minX = this.minY = Double.POSITIVE_INFINITY;
+                this.maxX = this.maxY = Double.NEGATIVE_INFINITY;
+            } else {
+                this.minX = envelope.getMinX();
+                this.minY = envelope.getMinY();
+                this.maxX = envelope.getMaxX();
+                this.maxY = envelope.getMaxY();
+            }
+            this.offset = offset;
+            this.size = size;
+        }
+
+        void write(DataOutputStream dos) throws IOException {
+            dos.writeDouble(minX);
+            dos.writeDouble(minY);
+            dos.writeDouble(maxX);
+            dos.writeDouble(maxY);
+            dos.writeLong(offset);
+            dos.writeInt(size);
+        }
+
+        static Item read(DataInputStream dis) throws IOException {
+            Item item = new Item();
+            item.minX = dis.readDouble();
+            item.minY = dis.readDouble();
+            item.maxX = dis.readDouble();
+            item.maxY = dis.readDouble();
+            item.offset = dis.readLong();
+            item.size = dis.readInt();
+            return item;
+        }
+    }
+
+    /** The current item of a sorted run, used to merge runs */
+    static final class RunHead implements Comparable<RunHead> {
+        final Item item;
+        final DataInputStream stream;
+
+        RunHead(Item item, DataInputStream stream) {
+            this.item = item;
+            this.stream = stream;
+        }
+
+        static RunHead next(DataInputStream stream) throws IOException {
+            try {
+                Item item = Item.read(stream);
+                item.hilbert = stream.readLong();
+                return new RunHead(item, stream);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int compareTo(RunHead o) {
+            return Long.compare(item.hilbert, o.item.hilbert);
+        }
+    }
+
+    /** Sequentially writes little endian tree nodes starting at a given node index */
+    static final class NodeWriter {
+        final FileChannel channel;
+        final ByteBuffer buffer =
+                ByteBuffer.allocate(NODE_ITEM_LEN * NODE_BUFFER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        long position;
+
+        NodeWriter(FileChannel channel, long nodeIndex) {
+            this.channel = channel;
+            this.position = nodeIndex * NODE_ITEM_LEN;
+        }
+
+        void write(double minX, double minY, double maxX, double maxY, long offset)
+                throws IOException {
+            if (!buffer.hasRemaining()) flush();
+            buffer.putDouble(minX).putDouble(minY).putDouble(maxX).putDouble(maxY);
+            buffer.putLong(offset);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    /** Sequentially reads little endian tree nodes starting at a given node index */
+    static final class NodeReader {
+        final FileChannel channel;
+        final ByteBuffer buffer =
+                ByteBuffer.allocate(NODE_ITEM_LEN * NODE_BUFFER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        long position;
+        double minX;
+        double minY;
+        double maxX;
+        double maxY;
+
+        NodeReader(FileChannel channel, long nodeIndex) {
+            this.channel = channel;
+            this.position = nodeIndex * NODE_ITEM_LEN;
+            buffer.limit(0);
+        }
+
+        void next() throws IOException {
+            if (buffer.remaining() < NODE_ITEM_LEN) {
+                buffer.compact();
+                while (buffer.position() < NODE_ITEM_LEN) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("Unexpected end of tree at " + position);
+                    }
+                    position += read;
+                }
+                buffer.flip();
+            }
+            minX = buffer.getDouble();
+            minY = buffer.getDouble();
+            maxX = buffer.getDouble();
+            maxY = buffer.getDouble();
+            buffer.getLong();
+        }
+    }
+}
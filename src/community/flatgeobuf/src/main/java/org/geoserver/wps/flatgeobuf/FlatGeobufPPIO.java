@@ -0,0 +1,75 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.flatgeobuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.logging.Logger;
+import org.geoserver.wfs.flatgeobuf.IndexedFlatGeobufWriter;
+import org.geoserver.wps.ppio.ComplexPPIO;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.util.URLs;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Encodes feature collections as FlatGeobuf, with a packed Hilbert R-tree spatial index. Downloads
+ * are typically stored and served again, the index allows clients to perform HTTP range requests
+ * against them.
+ *
+ * <p>Inputs are decoded in memory, indexed or not, reading them through the FlatGeobuf store.
+ */
+public class FlatGeobufPPIO extends ComplexPPIO {
+
+    static final Logger LOGGER = Logging.getLogger(FlatGeobufPPIO.class);
+
+    public static final String MIME_TYPE = "application/flatgeobuf";
+
+    public FlatGeobufPPIO() {
+        super(SimpleFeatureCollection.class, SimpleFeatureCollection.class, MIME_TYPE);
+    }
+
+    @Override
+    public Object decode(InputStream input) throws Exception {
+        // the store reads from files, spill the input and load it in memory
+        File file = File.createTempFile("flatgeobuf", ".fgb");
+        try {
+            Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            DataStore store =
+                    DataStoreFinder.getDataStore(
+                            Collections.singletonMap("url", URLs.fileToUrl(file)));
+            if (store == null) {
+                throw new IOException("Could not find a data store able to read FlatGeobuf");
+            }
+            try {
+                String typeName = store.getTypeNames()[0];
+                return DataUtilities.collection(store.getFeatureSource(typeName).getFeatures());
+            } finally {
+                store.dispose();
+            }
+        } finally {
+            if (!file.delete()) {
+                LOGGER.warning("Could not delete temporary file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    @Override
+    public void encode(Object value, OutputStream os) throws Exception {
+        new IndexedFlatGeobufWriter().write((SimpleFeatureCollection) value, os);
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "fgb";
+    }
+}
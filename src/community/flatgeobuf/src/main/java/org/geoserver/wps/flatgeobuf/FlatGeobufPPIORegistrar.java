@@ -0,0 +1,39 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.flatgeobuf;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Registers the {@link FlatGeobufPPIO} only if the WPS module is installed, as the FlatGeobuf
+ * module can be used with WFS alone. The PPIO class is referenced by name, so that it does not get
+ * loaded when WPS is missing.
+ */
+public class FlatGeobufPPIORegistrar implements BeanDefinitionRegistryPostProcessor {
+
+    static final String WPS_PPIO_CLASS = "org.geoserver.wps.ppio.ComplexPPIO";
+
+    static final String FLATGEOBUF_PPIO_CLASS = "org.geoserver.wps.flatgeobuf.FlatGeobufPPIO";
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry)
+            throws BeansException {
+        if (ClassUtils.isPresent(WPS_PPIO_CLASS, getClass().getClassLoader())) {
+            registry.registerBeanDefinition(
+                    "flatGeobufPPIO", new RootBeanDefinition(FLATGEOBUF_PPIO_CLASS));
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+            throws BeansException {
+        // nothing to do
+    }
+}
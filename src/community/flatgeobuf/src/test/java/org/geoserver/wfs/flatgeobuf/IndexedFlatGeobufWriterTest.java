@@ -0,0 +1,109 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.flatgeobuf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.wololo.flatgeobuf.GeometryConversions;
+import org.wololo.flatgeobuf.HeaderMeta;
+import org.wololo.flatgeobuf.PackedRTree;
+import org.wololo.flatgeobuf.generated.Feature;
+import org.wololo.flatgeobuf.generated.GeometryType;
+
+public class IndexedFlatGeobufWriterTest {
+
+    @Test
+    public void testIndexInMemory() throws Exception {
+        checkIndex(1000, IndexedFlatGeobufWriter.DEFAULT_MAX_ITEMS_IN_MEMORY);
+    }
+
+    @Test
+    public void testIndexExternalSort() throws Exception {
+        // forces several sorted runs to be merged
+        checkIndex(1000, 64);
+    }
+
+    @Test
+    public void testSingleFeature() throws Exception {
+        checkIndex(1, 64);
+    }
+
+    @Test
+    public void testHilbertCorners() {
+        int max = IndexedFlatGeobufWriter.HILBERT_MAX;
+        // the curve starts at the origin and covers the whole 32 bits range
+        assertEquals(0, IndexedFlatGeobufWriter.hilbert(0, 0));
+        assertTrue(
+                IndexedFlatGeobufWriter.hilbert(max, 0) > IndexedFlatGeobufWriter.hilbert(0, max));
+    }
+
+    private void checkIndex(int count, int maxItemsInMemory) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("points", "geom:Point:srid=4326,id:int");
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        List<SimpleFeature> features = new ArrayList<>();
+        Random random = new Random(0);
+        for (int i = 0; i < count; i++) {
+            Point p =
+                    gf.createPoint(
+                            new Coordinate(random.nextDouble() * 100, random.nextDouble() * 50));
+            features.add(fb.buildFeature("points." + i, new Object[] {p, i}));
+        }
+        SimpleFeatureCollection fc = DataUtilities.collection(features);
+
+        IndexedFlatGeobufWriter writer = new IndexedFlatGeobufWriter();
+        writer.setMaxItemsInMemory(maxItemsInMemory);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writer.write(fc, bos);
+
+        ByteBuffer bb = ByteBuffer.wrap(bos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        HeaderMeta header = HeaderMeta.read(bb);
+        assertEquals(count, header.featuresCount);
+        assertEquals(IndexedFlatGeobufWriter.DEFAULT_NODE_SIZE, header.indexNodeSize);
+        assertEquals(new Envelope(DataUtilities.bounds(fc)), header.envelope);
+
+        // search the index, all hits must be in the area, and all features in the area found
+        Envelope area = new Envelope(10, 30, 5, 20);
+        long expected =
+                features.stream()
+                        .filter(
+                                f ->
+                                        area.contains(
+                                                ((Geometry) f.getDefaultGeometry())
+                                                        .getCoordinate()))
+                        .count();
+        bb.position(0);
+        List<PackedRTree.SearchHit> hits =
+                PackedRTree.search(bb, header.offset, count, header.indexNodeSize, area);
+        assertEquals(expected, hits.size());
+        long featuresStart = header.offset + PackedRTree.calcSize(count, header.indexNodeSize);
+        for (PackedRTree.SearchHit hit : hits) {
+            ByteBuffer feature = bb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            feature.position((int) (featuresStart + hit.offset + 4));
+            Geometry g =
+                    GeometryConversions.deserialize(
+                            Feature.getRootAsFeature(feature).geometry(), GeometryType.Point);
+            assertTrue(area.contains(g.getCoordinate()));
+        }
+    }
+}
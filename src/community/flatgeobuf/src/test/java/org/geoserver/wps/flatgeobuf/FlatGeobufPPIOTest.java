@@ -0,0 +1,68 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.flatgeobuf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geoserver.wps.ppio.ProcessParameterIO.PPIODirection;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class FlatGeobufPPIOTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("points", "geom:Point:srid=4326,id:int");
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            features.add(
+                    fb.buildFeature(
+                            "points." + i,
+                            new Object[] {gf.createPoint(new Coordinate(i, i * 2)), i}));
+        }
+
+        FlatGeobufPPIO ppio = new FlatGeobufPPIO();
+        assertEquals(PPIODirection.BOTH, ppio.getDirection());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ppio.encode(DataUtilities.collection(features), bos);
+        SimpleFeatureCollection decoded =
+                (SimpleFeatureCollection) ppio.decode(new ByteArrayInputStream(bos.toByteArray()));
+
+        // the index reorders the features, match them by attribute
+        Map<Integer, SimpleFeature> byId = new HashMap<>();
+        try (SimpleFeatureIterator it = decoded.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                byId.put(((Number) f.getAttribute("id")).intValue(), f);
+            }
+        }
+        assertEquals(features.size(), byId.size());
+        for (SimpleFeature expected : features) {
+            SimpleFeature actual = byId.get(expected.getAttribute("id"));
+            assertTrue(
+                    ((Geometry) expected.getDefaultGeometry())
+                            .equalsExact(
+                                    (org.locationtech.jts.geom.Geometry)
+                                            actual.getDefaultGeometry()));
+        }
+    }
+}
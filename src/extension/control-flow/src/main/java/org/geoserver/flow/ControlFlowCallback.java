@@ -10,13 +10,17 @@
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.geoserver.filters.GeoServerFilter;
 import org.geoserver.flow.config.DefaultControlFlowConfigurator;
+import org.geoserver.flow.controller.AsyncQueueFlowController;
 import org.geoserver.ows.AbstractDispatcherCallback;
 import org.geoserver.ows.HttpErrorCodeException;
 import org.geoserver.ows.Request;
@@ -48,6 +52,12 @@ public class ControlFlowCallback extends AbstractDispatcherCallback
 
     static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
 
+    /** OWS service paths, optionally prefixed by a workspace and layer */
+    static final Pattern OWS_PATH =
+            Pattern.compile(
+                    "(/[^/]+){0,2}/(ows|wms|wfs|wcs|wps|wmts|csw)/?|/gwc/service/.*",
+                    Pattern.CASE_INSENSITIVE);
+
     /**
      * Container for the original Request object, the controllers and the timeout (to make sure we
      * are playing with the same objects, regardless of what other machinery might do to mock up
@@ -259,15 +269,72 @@ public void finished(Request request) {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
+        // requests dispatched again after being queued already have their slot
+        if (request instanceof HttpServletRequest
+                && request.getAttribute(AsyncQueueFlowController.ADMITTED_ATTRIBUTE) == null
+                && isOWSRequest((HttpServletRequest) request)) {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            Request owsRequest = new Request();
+            owsRequest.setHttpRequest(httpRequest);
+            owsRequest.setHttpResponse((HttpServletResponse) response);
+            AsyncQueueFlowController queue = getAsyncQueue(owsRequest);
+            if (queue != null && !queue.admit(httpRequest, provider.getTimeout(owsRequest))) {
+                // suspended, will be dispatched again once there is a free slot
+                return;
+            }
+        }
         try {
             // execute normally
             chain.doFilter(request, response);
         } finally {
+            // release the slot on the controller that granted it, the configuration might have
+            // been reloaded in the meantime
+            Object admitted =
+                    request != null
+                            ? request.getAttribute(AsyncQueueFlowController.ADMITTED_ATTRIBUTE)
+                            : null;
+            if (admitted instanceof AsyncQueueFlowController.Slot) {
+                request.removeAttribute(AsyncQueueFlowController.ADMITTED_ATTRIBUTE);
+                ((AsyncQueueFlowController.Slot) admitted).release();
+            }
             // this is a precaution in case finished() is not called by any reason
             releaseControllers(true);
         }
     }
 
+    /** Returns true if the path looks like an OWS service one, global or virtual */
+    boolean isOWSRequest(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String context = request.getContextPath();
+        if (path == null) {
+            return false;
+        }
+        if (context != null && path.startsWith(context)) {
+            path = path.substring(context.length());
+        }
+        return OWS_PATH.matcher(path).matches();
+    }
+
+    /**
+     * Looks up the asynchronous queue among the flow controllers. The OWS request is not parsed
+     * yet, it only contains the HTTP request and response
+     */
+    private AsyncQueueFlowController getAsyncQueue(Request request) {
+        try {
+            for (FlowController controller : provider.getFlowControllers(request)) {
+                if (controller instanceof AsyncQueueFlowController) {
+                    return (AsyncQueueFlowController) controller;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.SEVERE,
+                    "An error occurred looking up the asynchronous flow controller",
+                    e);
+        }
+        return null;
+    }
+
     private void releaseControllers(boolean forceRelease) {
         CallbackContext context = REQUEST_CONTROLLERS.get();
         try {
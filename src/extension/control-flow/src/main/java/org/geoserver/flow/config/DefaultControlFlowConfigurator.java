@@ -18,8 +18,10 @@
 import org.geoserver.config.GeoServerPluginConfigurator;
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AsyncQueueFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.CookieKeyGenerator;
+import org.geoserver.flow.controller.CostFlowController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
 import org.geoserver.flow.controller.IpFlowController;
@@ -150,7 +152,9 @@ public List<FlowController> buildFlowControllers() throws Exception {
                 timeout = queueSize * 1000;
                 continue;
             }
-            if ("ows.global".equalsIgnoreCase(key)) {
+            if ("ows.global.async".equalsIgnoreCase(key)) {
+                controller = new AsyncQueueFlowController(queueSize);
+            } else if ("ows.global".equalsIgnoreCase(key)) {
                 controller =
                         new GlobalFlowController(
                                 queueSize, buildBlocker(queueSize, priorityProvider));
@@ -166,6 +170,15 @@ public List<FlowController> buildFlowControllers() throws Exception {
                 } else if (keys.length == 2) {
                     controller = new BasicOWSController(keys[1], queueSize, threadBlocker);
                 }
+            } else if ("cost".equals(keys[0])) {
+                if (keys.length >= 2 && "ows".equals(keys[1])) {
+                    String service = keys.length >= 3 ? keys[2] : null;
+                    String request = keys.length >= 4 ? keys[3] : null;
+                    String format = keys.length >= 5 ? keys[4] : null;
+                    controller =
+                            new CostFlowController(
+                                    new OWSRequestMatcher(service, request, format), queueSize);
+                }
             } else if ("user".equals(keys[0])) {
                 if (keys.length == 1) {
                     controller = new UserConcurrentFlowController(queueSize);
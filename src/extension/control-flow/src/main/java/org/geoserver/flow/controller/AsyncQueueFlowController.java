@@ -0,0 +1,329 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Limits the number of OWS requests running in parallel, like {@link GlobalFlowController}, but
+ * queues the requests in excess without holding their threads, using the Servlet 3 asynchronous
+ * support. The queued requests are suspended by the {@link ControlFlowCallback} filter, and
+ * dispatched again in arrival order as running ones complete, or failed with a 503 when the timeout
+ * expires. The queue is limited only by memory.
+ *
+ * <p>Requests that cannot be suspended (the container or the filter chain does not support
+ * asynchronous processing, or they reach the dispatcher without going through the filter) wait in
+ * the same queue, blocking their thread.
+ *
+ * <p>A slot granted in the filter is released by whatever comes first among the filter, once the
+ * request went through the chain, the dispatcher, once the request completes, and the end of the
+ * asynchronous cycle, which covers containers not passing the dispatched request through the filter
+ * again.
+ */
+public class AsyncQueueFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * Request attribute holding the {@link Slot} a request got in the filter, it's kept across the
+     * asynchronous dispatch
+     */
+    public static final String ADMITTED_ATTRIBUTE = AsyncQueueFlowController.class.getName();
+
+    static final String TIMEOUT_MESSAGE =
+            "Requested timeout out while waiting to be executed, please lower your request rate";
+
+    /** A slot granted to a request, released only once whatever the path releasing it */
+    public static final class Slot {
+        private final AsyncQueueFlowController controller;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Slot(AsyncQueueFlowController controller) {
+            this.controller = controller;
+        }
+
+        /** The controller that granted the slot */
+        public AsyncQueueFlowController getController() {
+            return controller;
+        }
+
+        /** Releases the slot, unless already released */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                controller.release();
+            }
+        }
+    }
+
+    /** A request waiting for a slot, either admitted or cancelled, whatever happens first */
+    abstract static class Waiter {
+        final AtomicBoolean done = new AtomicBoolean();
+
+        boolean claim() {
+            return done.compareAndSet(false, true);
+        }
+
+        /** Called once the slot has been handed over to this waiter */
+        abstract void resume();
+    }
+
+    /** A suspended request, dispatched again when admitted */
+    class AsyncWaiter extends Waiter {
+        final AsyncContext context;
+
+        /** The slot handed over to the request, if admitted */
+        volatile Slot slot;
+
+        AsyncWaiter(AsyncContext context) {
+            this.context = context;
+        }
+
+        @Override
+        void resume() {
+            slot = new Slot(AsyncQueueFlowController.this);
+            context.getRequest().setAttribute(ADMITTED_ATTRIBUTE, slot);
+            context.dispatch();
+        }
+    }
+
+    /** A thread waiting on a latch */
+    static class BlockingWaiter extends Waiter {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        void resume() {
+            latch.countDown();
+        }
+    }
+
+    int slots;
+
+    /** Running requests and waiters, guarded by the queue itself */
+    int running;
+
+    final Deque<Waiter> queue = new ArrayDeque<>();
+
+    /** The requests admitted by {@link #requestIncoming(Request, long)} */
+    Map<Request, Boolean> blocked = new ConcurrentHashMap<>();
+
+    public AsyncQueueFlowController(int slots) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("The number of slots must be positive: " + slots);
+        }
+        this.slots = slots;
+    }
+
+    /**
+     * Admits the request, or suspends it until a slot frees up if the request supports asynchronous
+     * processing.
+     *
+     * @param timeout maximum time the request can be queued, zero or negative to wait forever
+     * @return true if the request got a slot and can proceed, false if it was suspended
+     */
+    public boolean admit(HttpServletRequest request, long timeout) {
+        if (tryAcquire()) {
+            request.setAttribute(ADMITTED_ATTRIBUTE, new Slot(this));
+            return true;
+        }
+        if (!request.isAsyncSupported()) {
+            // will block in requestIncoming
+            return true;
+        }
+        AsyncContext context = request.startAsync();
+        context.setTimeout(Math.max(0, timeout));
+        AsyncWaiter waiter = new AsyncWaiter(context);
+        context.addListener(
+                new AsyncListener() {
+                    @Override
+                    public void onTimeout(AsyncEvent event) throws IOException {
+                        if (cancel(waiter)) {
+                            ServletResponse response = event.getSuppliedResponse();
+                            if (response == null) {
+                                response = context.getResponse();
+                            }
+                            ((HttpServletResponse) response).sendError(503, TIMEOUT_MESSAGE);
+                            context.complete();
+                        }
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) throws IOException {
+                        // the client went away while queued
+                        if (cancel(waiter)) {
+                            context.complete();
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(AsyncEvent event) throws IOException {
+                        if (!cancel(waiter) && waiter.slot != null) {
+                            // in case the dispatch did not go through the filter again
+                            waiter.slot.release();
+                        }
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) throws IOException {
+                        // nothing to do
+                    }
+                });
+        if (enqueue(waiter)) {
+            // a slot freed up in the meantime
+            waiter.resume();
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Request suspended waiting for execution, queued: " + getQueueSize());
+        }
+        return false;
+    }
+
+    /** Releases the slot of a request admitted by {@link #admit} */
+    public void release() {
+        Waiter next = null;
+        synchronized (queue) {
+            // hand the slot over to the first waiter still interested
+            while (next == null && !queue.isEmpty()) {
+                Waiter waiter = queue.poll();
+                if (waiter.claim()) {
+                    next = waiter;
+                }
+            }
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            try {
+                next.resume();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to resume a queued request", e);
+                release();
+            }
+        }
+    }
+
+    boolean tryAcquire() {
+        synchronized (queue) {
+            if (running < slots && queue.isEmpty()) {
+                running++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Queues the waiter, unless a slot is available
+     *
+     * @return true if the waiter got a slot right away
+     */
+    boolean enqueue(Waiter waiter) {
+        synchronized (queue) {
+            if (running < slots && queue.isEmpty()) {
+                if (waiter.claim()) {
+                    running++;
+                    return true;
+                }
+                // cancelled meanwhile, e.g., timed out or failed right after being suspended
+                return false;
+            }
+            queue.add(waiter);
+            return false;
+        }
+    }
+
+    boolean cancel(Waiter waiter) {
+        if (waiter.claim()) {
+            synchronized (queue) {
+                queue.remove(waiter);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) {
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        if (httpRequest != null && httpRequest.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            // got its slot in the filter
+            return true;
+        }
+        BlockingWaiter waiter = new BlockingWaiter();
+        if (!enqueue(waiter)) {
+            try {
+                if (timeout > 0) {
+                    waiter.latch.await(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    waiter.latch.await();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, "Unexpected interruption while waiting for execution");
+                Thread.currentThread().interrupt();
+            }
+            if (cancel(waiter)) {
+                return false;
+            }
+        }
+        blocked.put(request, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        if (blocked.remove(request) != null) {
+            release();
+            return;
+        }
+        // got its slot in the filter, release it unless the filter or the container did already
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        Object slot = httpRequest != null ? httpRequest.getAttribute(ADMITTED_ATTRIBUTE) : null;
+        if (slot instanceof Slot) {
+            ((Slot) slot).release();
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return slots;
+    }
+
+    /** Returns the number of requests running */
+    public int getRunningRequests() {
+        synchronized (queue) {
+            return running;
+        }
+    }
+
+    /** Returns the number of requests waiting for a slot */
+    public int getQueueSize() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncQueueFlowController(" + slots + ")";
+    }
+}
@@ -0,0 +1,232 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import com.google.common.base.Predicate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A flow controller admitting requests against a budget of cost units, instead of counting them, so
+ * that a large multi layer GetMap takes a bigger share of the budget than a small tile. The costs
+ * are estimated by a {@link RequestCostEstimator}, which also learns the relative cost of each
+ * layer from the execution times of the requests.
+ *
+ * <p>A request costing more than the budget is capped to the budget, and can run only alone.
+ * Smaller requests that fit in the remaining budget are let through ahead of a waiting expensive
+ * one, heavy traffic cannot hold back the light one. This lasts at most {@code
+ * org.geoserver.flow.costMaxBypassTime} milliseconds (one second by default): once the oldest
+ * waiting request has waited that long no other request is admitted ahead of it, so that a steady
+ * flow of light requests cannot starve a heavy one.
+ */
+public class CostFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /** The admitted requests, with their cost and start time */
+    static final class Admission {
+        final RequestCostEstimator.RequestCost estimate;
+
+        final double cost;
+
+        final long start;
+
+        Admission(RequestCostEstimator.RequestCost estimate, double cost, long start) {
+            this.estimate = estimate;
+            this.cost = cost;
+            this.start = start;
+        }
+    }
+
+    static final String MAX_BYPASS_TIME_KEY = "org.geoserver.flow.costMaxBypassTime";
+
+    static final long DEFAULT_MAX_BYPASS_TIME = 1000;
+
+    /** How long, in milliseconds, requests can be admitted ahead of the oldest waiting one */
+    static final long MAX_BYPASS_TIME = getMaxBypassTime();
+
+    /** A request waiting for budget */
+    static final class Waiter {
+        final long since = System.nanoTime();
+    }
+
+    Predicate<Request> matcher;
+
+    double budget;
+
+    RequestCostEstimator estimator;
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    final Condition released = lock.newCondition();
+
+    /** Cost of the running requests, guarded by the lock */
+    double used;
+
+    /** Number of running requests, guarded by the lock */
+    int admitted;
+
+    /** The waiting requests, in arrival order, guarded by the lock */
+    final Deque<Waiter> waiting = new ArrayDeque<>();
+
+    long maxBypassNanos = TimeUnit.MILLISECONDS.toNanos(MAX_BYPASS_TIME);
+
+    Map<Request, Admission> running = new ConcurrentHashMap<>();
+
+    public CostFlowController(Predicate<Request> matcher, int budget) {
+        this(matcher, budget, new RequestCostEstimator());
+    }
+
+    public CostFlowController(
+            Predicate<Request> matcher, int budget, RequestCostEstimator estimator) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The cost budget must be positive: " + budget);
+        }
+        this.matcher = matcher;
+        this.budget = budget;
+        this.estimator = estimator;
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) {
+        if (!matcher.apply(request)) {
+            return true;
+        }
+        RequestCostEstimator.RequestCost estimate = estimator.estimate(request);
+        double cost = getCost(estimate);
+        long deadline =
+                timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        Waiter waiter = null;
+        lock.lock();
+        try {
+            while (!canRun(cost, waiter)) {
+                if (waiter == null) {
+                    waiter = new Waiter();
+                    waiting.add(waiter);
+                }
+                if (timeout > 0) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    released.awaitNanos(wait);
+                } else {
+                    released.await();
+                }
+            }
+            used += cost;
+            admitted++;
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Unexpected interruption while waiting for execution");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (waiter != null) {
+                // the requests held back by this one can re-check
+                waiting.remove(waiter);
+                released.signalAll();
+            }
+            lock.unlock();
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Request [" + request + "] admitted with cost " + cost);
+        }
+        running.put(request, new Admission(estimate, cost, System.currentTimeMillis()));
+        return true;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        // only requests that got admitted release budget, timed out ones are not in the map
+        Admission admission = running.remove(request);
+        if (admission == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            // reset when idle, so that rounding errors cannot accumulate
+            admitted--;
+            used = admitted > 0 ? Math.max(0, used - admission.cost) : 0;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        estimator.learn(admission.estimate, System.currentTimeMillis() - admission.start);
+    }
+
+    /**
+     * Checks if a request fits in the budget, and no request waiting for too long should go first.
+     * A request is always admitted when nothing is running, so that requests capped to the budget
+     * can run. Call with the lock held.
+     */
+    private boolean canRun(double cost, Waiter waiter) {
+        if (admitted > 0 && used + cost > budget) {
+            return false;
+        }
+        Waiter oldest = waiting.peek();
+        return oldest == null
+                || oldest == waiter
+                || System.nanoTime() - oldest.since < maxBypassNanos;
+    }
+
+    private static long getMaxBypassTime() {
+        String value = GeoServerExtensions.getProperty(MAX_BYPASS_TIME_KEY);
+        if (value == null) {
+            return DEFAULT_MAX_BYPASS_TIME;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning(
+                    "Invalid value for " + MAX_BYPASS_TIME_KEY + ": " + value + ", using default");
+            return DEFAULT_MAX_BYPASS_TIME;
+        }
+    }
+
+    /** The cost of the request, capped between the minimum layer coefficient and the budget */
+    double getCost(RequestCostEstimator.RequestCost estimate) {
+        double cost = estimator.getCost(estimate);
+        return Math.max(RequestCostEstimator.MIN_COEFFICIENT, Math.min(budget, cost));
+    }
+
+    @Override
+    public int getPriority() {
+        return (int) budget;
+    }
+
+    /** Returns the cost of the running requests (used for testing only) */
+    public double getUsedBudget() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Predicate<Request> getMatcher() {
+        return matcher;
+    }
+
+    public RequestCostEstimator getEstimator() {
+        return estimator;
+    }
+
+    @Override
+    public String toString() {
+        return "CostFlowController(" + matcher + "," + budget + ")";
+    }
+}
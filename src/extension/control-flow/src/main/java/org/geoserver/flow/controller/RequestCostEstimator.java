@@ -0,0 +1,258 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.geoserver.ows.Request;
+
+/**
+ * Estimates how expensive an OWS request is going to be, based on its parameters, and learns from
+ * the observed execution times how expensive each layer is.
+ *
+ * <p>The base cost of a request is measured in "units", one unit being a 256x256 GetMap on a single
+ * layer:
+ *
+ * <ul>
+ *   <li>WMS GetMap: the output pixels times the number of layers
+ *   <li>WFS GetFeature: the max features (or count) times the number of feature types
+ *   <li>WCS GetCoverage: the output pixels, when the output size is known
+ * </ul>
+ *
+ * Every layer has then a cost coefficient, the ratio between its observed time per unit and the
+ * average time per unit of all requests, so that layers slow to render or read weigh more than fast
+ * ones. Requests the base cost cannot be estimated for weigh one unit.
+ */
+public class RequestCostEstimator {
+
+    /** Pixels in a unit, a 256x256 tile */
+    static final double UNIT_PIXELS = 256 * 256;
+
+    /** Features in a unit */
+    static final double UNIT_FEATURES = 1000;
+
+    /** Units assumed when the size of a WFS or WCS output is not specified */
+    static final double UNKNOWN_SIZE_UNITS = 16;
+
+    /** Weight of a new observation in the moving averages */
+    static final double ALPHA = 0.1;
+
+    static final double MIN_COEFFICIENT = 1d / 16;
+
+    static final double MAX_COEFFICIENT = 16;
+
+    /** Bounds the layers tracked, the layer names come from the requests */
+    static final int MAX_LAYERS = 10000;
+
+    /** The base cost of a request, split by layer */
+    public static class RequestCost {
+
+        final Map<String, Double> layerUnits;
+
+        final double units;
+
+        RequestCost(Map<String, Double> layerUnits, double units) {
+            this.layerUnits = layerUnits;
+            this.units = units;
+        }
+
+        /** The units of each layer in the request, empty if there are no layers */
+        public Map<String, Double> getLayerUnits() {
+            return Collections.unmodifiableMap(layerUnits);
+        }
+
+        /** The total units of the request */
+        public double getUnits() {
+            return units;
+        }
+    }
+
+    /** Moving average of the milliseconds per unit, overall and by layer */
+    final Average average = new Average();
+
+    final Map<String, Average> layerAverages = new ConcurrentHashMap<>();
+
+    /** Estimates the base cost of a request, without the layer coefficients */
+    public RequestCost estimate(Request request) {
+        String service = request.getService();
+        String operation = request.getRequest();
+        if (service == null || operation == null) {
+            return unit();
+        }
+        if ("WMS".equalsIgnoreCase(service) && "GetMap".equalsIgnoreCase(operation)) {
+            double pixels = getPixels(request, "WIDTH", "HEIGHT");
+            return perLayer(request, pixels > 0 ? pixels / UNIT_PIXELS : 1, "LAYERS");
+        } else if ("WFS".equalsIgnoreCase(service) && "GetFeature".equalsIgnoreCase(operation)) {
+            long features = getLong(request, "COUNT");
+            if (features <= 0) {
+                features = getLong(request, "MAXFEATURES");
+            }
+            double units = features > 0 ? features / UNIT_FEATURES : UNKNOWN_SIZE_UNITS;
+            return perLayer(request, units, "TYPENAMES", "TYPENAME");
+        } else if ("WCS".equalsIgnoreCase(service) && "GetCoverage".equalsIgnoreCase(operation)) {
+            double pixels = getPixels(request, "WIDTH", "HEIGHT");
+            if (pixels <= 0) {
+                pixels = getScaleSizePixels(request);
+            }
+            double units = pixels > 0 ? pixels / UNIT_PIXELS : UNKNOWN_SIZE_UNITS;
+            return perLayer(request, units, "COVERAGEID", "IDENTIFIER", "COVERAGE");
+        }
+        return unit();
+    }
+
+    /** Returns the cost of a request, its base cost weighted by the learned layer coefficients */
+    public double getCost(RequestCost cost) {
+        if (cost.layerUnits.isEmpty()) {
+            return cost.units;
+        }
+        double result = 0;
+        for (Map.Entry<String, Double> entry : cost.layerUnits.entrySet()) {
+            result += entry.getValue() * getCoefficient(entry.getKey());
+        }
+        return result;
+    }
+
+    /** Returns the learned cost coefficient of a layer, 1 if unknown */
+    public double getCoefficient(String layer) {
+        double overall = average.get();
+        Average layerAverage = layerAverages.get(layer);
+        if (overall <= 0 || layerAverage == null || layerAverage.get() <= 0) {
+            return 1;
+        }
+        double coefficient = layerAverage.get() / overall;
+        return Math.max(MIN_COEFFICIENT, Math.min(MAX_COEFFICIENT, coefficient));
+    }
+
+    /**
+     * Updates the layer coefficients with the time it took to execute a request. Requests without
+     * layers, e.g., capabilities, are not comparable with the others and are ignored. Requests with
+     * many layers update only the overall average, as the time cannot be split among the layers.
+     */
+    public void learn(RequestCost cost, long elapsedMillis) {
+        if (cost.layerUnits.isEmpty() || cost.units <= 0 || elapsedMillis < 0) {
+            return;
+        }
+        double millisPerUnit = elapsedMillis / cost.units;
+        average.update(millisPerUnit);
+        if (cost.layerUnits.size() == 1) {
+            String layer = cost.layerUnits.keySet().iterator().next();
+            Average layerAverage = layerAverages.get(layer);
+            if (layerAverage == null) {
+                if (layerAverages.size() >= MAX_LAYERS) {
+                    return;
+                }
+                layerAverage = layerAverages.computeIfAbsent(layer, l -> new Average());
+            }
+            layerAverage.update(millisPerUnit);
+        }
+    }
+
+    private RequestCost unit() {
+        return new RequestCost(Collections.emptyMap(), 1);
+    }
+
+    private RequestCost perLayer(Request request, double units, String... layerKeys) {
+        String layers = null;
+        for (int i = 0; i < layerKeys.length && layers == null; i++) {
+            layers = getParameter(request, layerKeys[i]);
+        }
+        Map<String, Double> layerUnits = new LinkedHashMap<>();
+        if (layers != null) {
+            for (String layer : layers.split(",")) {
+                String name = layer.trim();
+                if (!name.isEmpty()) {
+                    layerUnits.merge(name, units, Double::sum);
+                }
+            }
+        }
+        if (layerUnits.isEmpty()) {
+            return new RequestCost(Collections.emptyMap(), units);
+        }
+        double total = layerUnits.values().stream().mapToDouble(Double::doubleValue).sum();
+        return new RequestCost(layerUnits, total);
+    }
+
+    private double getPixels(Request request, String widthKey, String heightKey) {
+        long width = getLong(request, widthKey);
+        long height = getLong(request, heightKey);
+        return width > 0 && height > 0 ? (double) width * height : 0;
+    }
+
+    /** Parses the WCS 2.0 scaling extension size, e.g., scalesize=i(512),j(256) */
+    private double getScaleSizePixels(Request request) {
+        String scaleSize = getParameter(request, "SCALESIZE");
+        if (scaleSize == null) {
+            return 0;
+        }
+        double pixels = 1;
+        int axes = 0;
+        for (String axis : scaleSize.split(",")) {
+            int open = axis.indexOf('(');
+            int close = axis.indexOf(')');
+            if (open < 0 || close < open) {
+                return 0;
+            }
+            try {
+                pixels *= Long.parseLong(axis.substring(open + 1, close).trim());
+                axes++;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return axes > 0 ? pixels : 0;
+    }
+
+    private long getLong(Request request, String key) {
+        String value = getParameter(request, key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String getParameter(Request request, String key) {
+        Map<String, Object> kvp = request.getRawKvp();
+        if (kvp == null) {
+            return null;
+        }
+        Object value = kvp.get(key);
+        if (value == null) {
+            // the raw kvp is case insensitive when built by the dispatcher, but be lenient
+            for (Map.Entry<String, Object> entry : kvp.entrySet()) {
+                if (key.equalsIgnoreCase(entry.getKey())) {
+                    value = entry.getValue();
+                    break;
+                }
+            }
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    /** A lock free exponentially weighted moving average */
+    static class Average {
+
+        final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(-1));
+
+        double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        void update(double value) {
+            bits.updateAndGet(
+                    b -> {
+                        double current = Double.longBitsToDouble(b);
+                        double updated = current < 0 ? value : current + ALPHA * (value - current);
+                        return Double.doubleToLongBits(updated);
+                    });
+        }
+    }
+}
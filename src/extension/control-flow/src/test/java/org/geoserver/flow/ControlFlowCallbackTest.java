@@ -6,6 +6,7 @@
 package org.geoserver.flow;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -21,11 +22,13 @@
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.geoserver.flow.controller.AsyncQueueFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.SimpleThreadBlocker;
 import org.geoserver.ows.HttpErrorCodeException;
 import org.geoserver.ows.Request;
 import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -250,6 +253,85 @@ protected void doGet(HttpServletRequest req, HttpServletResponse resp)
         assertEquals(0, controller.getRequestsInQueue());
     }
 
+    @Test
+    public void testAsyncQueueFilter() throws Exception {
+        ControlFlowCallback callback = new ControlFlowCallback();
+        TestingConfigurator tc = new TestingConfigurator();
+        tc.timeout = 10000;
+        AsyncQueueFlowController queue = new AsyncQueueFlowController(1);
+        tc.controllers.add(queue);
+        callback.provider = new DefaultFlowControllerProvider(tc);
+
+        MockHttpServletRequest r1 = owsRequest("/geoserver/topp/wms");
+        MockHttpServletRequest r2 = owsRequest("/geoserver/wms");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicBoolean r2Executed = new AtomicBoolean();
+        callback.doFilter(
+                r1,
+                response,
+                (request, resp) -> {
+                    assertEquals(1, queue.getRunningRequests());
+                    // no free slot, the second request is suspended without going on
+                    callback.doFilter(r2, response, (rq, rs) -> r2Executed.set(true));
+                    assertFalse(r2Executed.get());
+                    assertEquals(1, queue.getQueueSize());
+                });
+        // the slot of the first went to the second, which got dispatched again
+        MockAsyncContext context = (MockAsyncContext) r2.getAsyncContext();
+        assertNotNull(context.getDispatchedPath());
+        assertEquals(0, queue.getQueueSize());
+        assertEquals(1, queue.getRunningRequests());
+
+        // the dispatched request goes through the filter, and releases the slot
+        callback.doFilter(r2, response, (rq, rs) -> r2Executed.set(true));
+        assertTrue(r2Executed.get());
+        assertEquals(0, queue.getRunningRequests());
+        // the end of the asynchronous cycle does not release it again
+        context.complete();
+        assertEquals(0, queue.getRunningRequests());
+
+        // non OWS requests are not queued
+        MockHttpServletRequest web = owsRequest("/geoserver/web/");
+        callback.doFilter(
+                r1,
+                response,
+                (request, resp) ->
+                        callback.doFilter(
+                                web,
+                                response,
+                                (rq, rs) -> assertEquals(1, queue.getRunningRequests())));
+        assertFalse(web.isAsyncStarted());
+        assertEquals(0, queue.getRunningRequests());
+    }
+
+    @Test
+    public void testAsyncQueueDispatchBypassingFilter() throws Exception {
+        ControlFlowCallback callback = new ControlFlowCallback();
+        TestingConfigurator tc = new TestingConfigurator();
+        tc.timeout = 10000;
+        AsyncQueueFlowController queue = new AsyncQueueFlowController(1);
+        tc.controllers.add(queue);
+        callback.provider = new DefaultFlowControllerProvider(tc);
+
+        MockHttpServletRequest r1 = owsRequest("/geoserver/ows");
+        MockHttpServletRequest r2 = owsRequest("/geoserver/ows");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        callback.doFilter(
+                r1, response, (request, resp) -> callback.doFilter(r2, response, (rq, rs) -> {}));
+        assertEquals(1, queue.getRunningRequests());
+
+        // the container dispatches without the filter, the end of the cycle releases the slot
+        ((MockAsyncContext) r2.getAsyncContext()).complete();
+        assertEquals(0, queue.getRunningRequests());
+    }
+
+    private MockHttpServletRequest owsRequest(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setContextPath("/geoserver");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
     /** A wide open configurator to be used for testing */
     static class TestingConfigurator implements ControlFlowConfigurator {
         List<FlowController> controllers = new ArrayList<>();
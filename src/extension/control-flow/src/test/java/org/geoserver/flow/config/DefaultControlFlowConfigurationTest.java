@@ -17,7 +17,9 @@
 import java.util.Properties;
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AsyncQueueFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.CostFlowController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
 import org.geoserver.flow.controller.IpFlowController;
@@ -161,6 +163,42 @@ public void testParsingPriorityWithSpaces() throws Exception {
         checkPriorityParsing(p);
     }
 
+    @Test
+    public void testParsingCost() throws Exception {
+        Properties p = new Properties();
+        p.put("cost.ows", "200");
+        p.put("cost.ows.wms.getmap", "64");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+        assertEquals(2, controllers.size());
+
+        assertTrue(controllers.get(0) instanceof CostFlowController);
+        CostFlowController getMapController = (CostFlowController) controllers.get(0);
+        assertEquals(64, getMapController.getPriority());
+        assertEquals("wms.getmap", getMapController.getMatcher().toString());
+
+        assertTrue(controllers.get(1) instanceof CostFlowController);
+        CostFlowController globalController = (CostFlowController) controllers.get(1);
+        assertEquals(200, globalController.getPriority());
+        assertEquals("Any OGC request", globalController.getMatcher().toString());
+    }
+
+    @Test
+    public void testParsingAsync() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.global.async", "32");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        assertEquals(1, controllers.size());
+        assertTrue(controllers.get(0) instanceof AsyncQueueFlowController);
+        assertEquals(32, controllers.get(0).getPriority());
+    }
+
     private void checkPriorityParsing(Properties p) throws Exception {
         DefaultControlFlowConfigurator configurator =
                 new DefaultControlFlowConfigurator(new FixedWatcher(p));
@@ -0,0 +1,174 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class AsyncQueueFlowControllerTest extends AbstractFlowControllerTest {
+
+    @Test
+    public void testSuspendAndResume() throws Exception {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        MockHttpServletRequest r1 = asyncRequest();
+        MockHttpServletRequest r2 = asyncRequest();
+
+        assertTrue(controller.admit(r1, 1000));
+        assertSame(controller, getSlot(r1).getController());
+
+        // the second one is suspended, not blocked
+        assertFalse(controller.admit(r2, 1000));
+        assertTrue(r2.isAsyncStarted());
+        assertEquals(1, controller.getQueueSize());
+        MockAsyncContext context = (MockAsyncContext) r2.getAsyncContext();
+        assertEquals(1000, context.getTimeout());
+        assertNull(context.getDispatchedPath());
+
+        // releasing the first hands the slot over to the second
+        controller.release();
+        assertEquals(0, controller.getQueueSize());
+        assertEquals(1, controller.getRunningRequests());
+        assertNotNull(context.getDispatchedPath());
+        assertSame(controller, getSlot(r2).getController());
+
+        controller.release();
+        assertEquals(0, controller.getRunningRequests());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        MockHttpServletRequest r1 = asyncRequest();
+        MockHttpServletRequest r2 = asyncRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(controller.admit(r1, 100));
+        assertFalse(controller.admit(r2, 100));
+
+        // simulate the container timeout
+        MockAsyncContext context = (MockAsyncContext) r2.getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context, r2, response));
+        }
+        assertEquals(503, response.getStatus());
+        assertEquals(0, controller.getQueueSize());
+
+        // the slot is not handed over to the timed out request
+        controller.release();
+        assertEquals(0, controller.getRunningRequests());
+        assertNull(r2.getAttribute(AsyncQueueFlowController.ADMITTED_ATTRIBUTE));
+    }
+
+    @Test
+    public void testBlockingFallback() throws Exception {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        // not async supported, passes the filter and blocks in the controller instead
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        assertTrue(controller.admit(asyncRequest(), 0));
+        assertTrue(controller.admit(httpRequest, 0));
+        assertFalse(httpRequest.isAsyncStarted());
+
+        Request request = new Request();
+        request.setHttpRequest(httpRequest);
+        FlowControllerTestingThread t =
+                new FlowControllerTestingThread(request, 0, Long.MAX_VALUE, controller);
+        try {
+            t.start();
+            waitBlocked(t, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t.state);
+            assertEquals(1, controller.getQueueSize());
+
+            controller.release();
+            waitState(ThreadState.PROCESSING, t, MAX_WAIT);
+            t.interrupt();
+        } finally {
+            waitAndKill(t, MAX_WAIT);
+        }
+        assertEquals(0, controller.getRunningRequests());
+    }
+
+    @Test
+    public void testBlockingTimeout() {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        assertTrue(controller.requestIncoming(new Request(), 100));
+        assertFalse(controller.requestIncoming(new Request(), 100));
+        assertEquals(0, controller.getQueueSize());
+        assertEquals(1, controller.getRunningRequests());
+    }
+
+    @Test
+    public void testReleasedOnceOnComplete() throws Exception {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        MockHttpServletRequest r1 = asyncRequest();
+        MockHttpServletRequest r2 = asyncRequest();
+        assertTrue(controller.admit(r1, 1000));
+        assertFalse(controller.admit(r2, 1000));
+        getSlot(r1).release();
+        assertEquals(1, controller.getRunningRequests());
+
+        // the dispatch did not go through the filter, the end of the async cycle releases
+        MockAsyncContext context = (MockAsyncContext) r2.getAsyncContext();
+        context.complete();
+        assertEquals(0, controller.getRunningRequests());
+
+        // and the other paths do not release it again
+        Request request = new Request();
+        request.setHttpRequest(r2);
+        controller.requestComplete(request);
+        getSlot(r2).release();
+        assertEquals(0, controller.getRunningRequests());
+    }
+
+    @Test
+    public void testReleasedOnRequestComplete() throws Exception {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        MockHttpServletRequest httpRequest = asyncRequest();
+        assertTrue(controller.admit(httpRequest, 1000));
+
+        Request request = new Request();
+        request.setHttpRequest(httpRequest);
+        assertTrue(controller.requestIncoming(request, 1000));
+        controller.requestComplete(request);
+        assertEquals(0, controller.getRunningRequests());
+        getSlot(httpRequest).release();
+        assertEquals(0, controller.getRunningRequests());
+    }
+
+    @Test
+    public void testEnqueueCancelled() {
+        AsyncQueueFlowController controller = new AsyncQueueFlowController(1);
+        AsyncQueueFlowController.BlockingWaiter waiter =
+                new AsyncQueueFlowController.BlockingWaiter();
+        // cancelled by the container before getting queued
+        assertTrue(controller.cancel(waiter));
+        assertFalse(controller.enqueue(waiter));
+        assertEquals(0, controller.getRunningRequests());
+        assertEquals(0, controller.getQueueSize());
+    }
+
+    private AsyncQueueFlowController.Slot getSlot(MockHttpServletRequest request) {
+        return (AsyncQueueFlowController.Slot)
+                request.getAttribute(AsyncQueueFlowController.ADMITTED_ATTRIBUTE);
+    }
+
+    private MockHttpServletRequest asyncRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
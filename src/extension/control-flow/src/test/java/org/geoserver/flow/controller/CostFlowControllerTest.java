@@ -0,0 +1,222 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.flow.controller.RequestCostEstimator.RequestCost;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+public class CostFlowControllerTest extends AbstractFlowControllerTest {
+
+    @Test
+    public void testEstimateGetMap() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        RequestCost tile = estimator.estimate(getMap(256, 256, "roads"));
+        assertEquals(1, tile.getUnits(), 1e-9);
+
+        RequestCost map = estimator.estimate(getMap(1024, 1024, "roads,rivers"));
+        assertEquals(32, map.getUnits(), 1e-9);
+        assertEquals(16, map.getLayerUnits().get("rivers"), 1e-9);
+    }
+
+    @Test
+    public void testEstimateGetFeature() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        Request request = request("WFS", "GetFeature", "TYPENAMES", "roads", "COUNT", "5000");
+        assertEquals(5, estimator.estimate(request).getUnits(), 1e-9);
+
+        // unknown size
+        request = request("WFS", "GetFeature", "TYPENAME", "roads");
+        assertEquals(
+                RequestCostEstimator.UNKNOWN_SIZE_UNITS,
+                estimator.estimate(request).getUnits(),
+                1e-9);
+    }
+
+    @Test
+    public void testEstimateGetCoverage() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        Request request =
+                request("WCS", "GetCoverage", "COVERAGEID", "dem", "SCALESIZE", "i(512),j(512)");
+        assertEquals(4, estimator.estimate(request).getUnits(), 1e-9);
+
+        // anything else is a single unit
+        assertEquals(1, estimator.estimate(request("WMS", "GetCapabilities")).getUnits(), 1e-9);
+        assertEquals(1, estimator.estimate(new Request()).getUnits(), 1e-9);
+    }
+
+    @Test
+    public void testLearnLayerCost() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        RequestCost slow = estimator.estimate(getMap(256, 256, "slow"));
+        RequestCost fast = estimator.estimate(getMap(256, 256, "fast"));
+        for (int i = 0; i < 50; i++) {
+            estimator.learn(slow, 400);
+            estimator.learn(fast, 10);
+        }
+        assertTrue(estimator.getCoefficient("slow") > 1);
+        assertTrue(estimator.getCoefficient("fast") < 1);
+        assertEquals(1, estimator.getCoefficient("unknown"), 1e-9);
+        assertTrue(estimator.getCost(slow) > estimator.getCost(fast));
+    }
+
+    @Test
+    public void testLearnSkipsUnlayeredAndMultiLayer() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        RequestCost single = estimator.estimate(getMap(256, 256, "roads"));
+        estimator.learn(single, 100);
+
+        // capabilities do not move the overall average
+        RequestCost capabilities = estimator.estimate(request("WMS", "GetCapabilities"));
+        for (int i = 0; i < 50; i++) {
+            estimator.learn(capabilities, 1);
+        }
+        assertEquals(100, estimator.average.get(), 1e-9);
+
+        // a multi layer map updates only the overall average
+        RequestCost multi = estimator.estimate(getMap(256, 256, "roads,rivers"));
+        estimator.learn(multi, 1000);
+        assertFalse(estimator.layerAverages.containsKey("rivers"));
+        assertEquals(100, estimator.layerAverages.get("roads").get(), 1e-9);
+    }
+
+    @Test
+    public void testWeightedAdmission() throws Exception {
+        CostFlowController controller = new CostFlowController(new OWSRequestMatcher(), 4);
+        Request tile1 = getMap(256, 256, "roads");
+        Request tile2 = getMap(256, 256, "roads");
+        Request map = getMap(512, 512, "roads");
+
+        // two tiles fit in the budget
+        assertTrue(controller.requestIncoming(tile1, 100));
+        assertTrue(controller.requestIncoming(tile2, 100));
+        assertEquals(2, controller.getUsedBudget(), 1e-9);
+        // a map as big as four tiles does not
+        assertFalse(controller.requestIncoming(map, 100));
+        controller.requestComplete(map);
+        assertEquals(2, controller.getUsedBudget(), 1e-9);
+
+        // it goes through once the tiles are done
+        controller.requestComplete(tile1);
+        controller.requestComplete(tile2);
+        assertEquals(0, controller.getUsedBudget(), 1e-9);
+        assertTrue(controller.requestIncoming(map, 100));
+        controller.requestComplete(map);
+    }
+
+    @Test
+    public void testOversizedRequest() throws Exception {
+        CostFlowController controller = new CostFlowController(new OWSRequestMatcher(), 4);
+        Request huge = getMap(8000, 8000, "roads");
+        Request tile = getMap(256, 256, "roads");
+
+        // capped to the budget, runs alone
+        assertTrue(controller.requestIncoming(huge, 100));
+        assertEquals(4, controller.getUsedBudget(), 1e-9);
+
+        FlowControllerTestingThread t =
+                new FlowControllerTestingThread(tile, 0, Long.MAX_VALUE, controller);
+        try {
+            t.start();
+            waitBlocked(t, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t.state);
+
+            controller.requestComplete(huge);
+            waitState(ThreadState.PROCESSING, t, MAX_WAIT);
+            t.interrupt();
+        } finally {
+            waitAndKill(t, MAX_WAIT);
+        }
+        assertEquals(0, controller.getUsedBudget(), 1e-9);
+    }
+
+    @Test
+    public void testNoDriftWhenIdle() throws Exception {
+        CostFlowController controller = new CostFlowController(new OWSRequestMatcher(), 4);
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Request request = getMap(100 + i, 77, "roads");
+            assertTrue(controller.requestIncoming(request, 100));
+            requests.add(request);
+        }
+        for (Request request : requests) {
+            controller.requestComplete(request);
+        }
+        // exactly empty, a request capped to the budget can run
+        assertEquals(0, controller.getUsedBudget(), 0);
+        Request huge = getMap(8000, 8000, "roads");
+        assertTrue(controller.requestIncoming(huge, 100));
+        controller.requestComplete(huge);
+    }
+
+    @Test
+    public void testHeavyRequestNotStarved() throws Exception {
+        CostFlowController controller = new CostFlowController(new OWSRequestMatcher(), 4);
+        controller.maxBypassNanos = TimeUnit.MILLISECONDS.toNanos(500);
+        Request tile = getMap(256, 256, "roads");
+        Request map = getMap(512, 512, "roads");
+        assertTrue(controller.requestIncoming(tile, 100));
+
+        FlowControllerTestingThread t =
+                new FlowControllerTestingThread(map, 0, Long.MAX_VALUE, controller);
+        try {
+            t.start();
+            waitBlocked(t, MAX_WAIT);
+
+            // a light request can still go ahead of the map for a while
+            Request bypass = getMap(256, 256, "roads");
+            assertTrue(controller.requestIncoming(bypass, 100));
+            controller.requestComplete(bypass);
+
+            // but not once the map waited too long
+            Thread.sleep(700);
+            Request late = getMap(256, 256, "roads");
+            assertFalse(controller.requestIncoming(late, 100));
+            controller.requestComplete(late);
+
+            controller.requestComplete(tile);
+            waitState(ThreadState.PROCESSING, t, MAX_WAIT);
+            assertEquals(4, controller.getUsedBudget(), 1e-9);
+            t.interrupt();
+        } finally {
+            waitAndKill(t, MAX_WAIT);
+        }
+        assertEquals(0, controller.getUsedBudget(), 1e-9);
+    }
+
+    private Request getMap(int width, int height, String layers) {
+        return request(
+                "WMS",
+                "GetMap",
+                "WIDTH",
+                String.valueOf(width),
+                "HEIGHT",
+                String.valueOf(height),
+                "LAYERS",
+                layers);
+    }
+
+    private Request request(String service, String operation, String... kvp) {
+        Request request = new Request();
+        request.setService(service);
+        request.setRequest(operation);
+        Map<String, Object> raw = new HashMap<>();
+        for (int i = 0; i < kvp.length; i += 2) {
+            raw.put(kvp[i], kvp[i + 1]);
+        }
+        request.setRawKvp(raw);
+        return request;
+    }
+}
@@ -0,0 +1,43 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.geofence.server.rest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.geofence.cache.CachedRuleReader;
+import org.geoserver.platform.GeoServerExtensions;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Notifies the {@link CachedRuleReader} when the rules or admin rules are modified through the REST
+ * API, so that the cached authorizations do not outlive the rules they were computed from.
+ */
+public class GeofenceRulesChangeInterceptor extends HandlerInterceptorAdapter {
+
+    @Override
+    public void afterCompletion(
+            HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+            throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        Object controller = method.getBean();
+        if (!(controller instanceof RulesRestController)
+                && !(controller instanceof AdminRulesRestController)) {
+            return;
+        }
+        // moving rules is a GET, all other modifications use other methods
+        String httpMethod = request.getMethod();
+        if ((!"GET".equals(httpMethod) && !"HEAD".equals(httpMethod))
+                || "move".equals(method.getMethod().getName())) {
+            CachedRuleReader reader = GeoServerExtensions.bean(CachedRuleReader.class);
+            if (reader != null) {
+                reader.rulesChanged();
+            }
+        }
+    }
+}
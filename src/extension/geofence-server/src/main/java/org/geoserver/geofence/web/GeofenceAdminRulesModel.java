@@ -13,6 +13,7 @@
 import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.PropertyModel;
+import org.geoserver.geofence.cache.CachedRuleReader;
 import org.geoserver.geofence.core.model.AdminRule;
 import org.geoserver.geofence.core.model.enums.AdminGrantType;
 import org.geoserver.geofence.services.AdminRuleAdminService;
@@ -72,6 +73,14 @@ private static AdminRuleAdminService adminService() {
         return (AdminRuleAdminService) GeoServerApplication.get().getBean("adminRuleAdminService");
     }
 
+    /** Tells the rule reader cache the rules have been modified */
+    private static void rulesChanged() {
+        CachedRuleReader reader = GeoServerApplication.get().getBeanOfType(CachedRuleReader.class);
+        if (reader != null) {
+            reader.rulesChanged();
+        }
+    }
+
     protected List<ShortAdminRule> rules;
 
     public GeofenceAdminRulesModel() {
@@ -119,6 +128,7 @@ public void save(ShortAdminRule rule) {
             syncRule(rule, bigRule);
             adminService().update(bigRule);
         }
+        rulesChanged();
     }
 
     public void remove(Collection<ShortAdminRule> selected) {
@@ -126,6 +136,7 @@ public void remove(Collection<ShortAdminRule> selected) {
         for (ShortAdminRule rule : selected) {
             adminService().delete(rule.getId());
         }
+        rulesChanged();
     }
 
     public boolean canUp(ShortAdminRule rule) {
@@ -159,6 +170,7 @@ protected void swap(ShortAdminRule rule, ShortAdminRule otherRule) {
         otherRule.setPriority(rule.getPriority());
         rule.setPriority(p);
         adminService().swap(rule.getId(), otherRule.getId());
+        rulesChanged();
     }
 
     protected void shiftIfNecessary(long priority, ShortAdminRule keep) {
@@ -13,6 +13,7 @@
 import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.PropertyModel;
+import org.geoserver.geofence.cache.CachedRuleReader;
 import org.geoserver.geofence.core.model.IPAddressRange;
 import org.geoserver.geofence.core.model.LayerDetails;
 import org.geoserver.geofence.core.model.Rule;
@@ -89,6 +90,14 @@ private static RuleAdminService adminService() {
         return (RuleAdminService) GeoServerApplication.get().getBean("ruleAdminService");
     }
 
+    /** Tells the rule reader cache the rules have been modified */
+    private static void rulesChanged() {
+        CachedRuleReader reader = GeoServerApplication.get().getBeanOfType(CachedRuleReader.class);
+        if (reader != null) {
+            reader.rulesChanged();
+        }
+    }
+
     /**
      * We will keep local copy, always sorted on priority to support the up and down arrows easily
      */
@@ -164,6 +173,7 @@ public void save(ShortRule rule) {
             syncRule(rule, bigRule);
             adminService().update(bigRule);
         }
+        rulesChanged();
     }
 
     public void remove(Collection<ShortRule> selected) {
@@ -174,6 +184,7 @@ public void remove(Collection<ShortRule> selected) {
         for (ShortRule rule : selected) {
             adminService().delete(rule.getId());
         }
+        rulesChanged();
     }
 
     public boolean canUp(ShortRule rule) {
@@ -212,6 +223,7 @@ protected void swap(ShortRule rule, ShortRule otherRule) {
 
         // db
         adminService().swap(rule.getId(), otherRule.getId());
+        rulesChanged();
     }
 
     protected void shiftIfNecessary(long priority, ShortRule keep) {
@@ -258,10 +270,12 @@ public void save(
         ruleLimits.setSpatialFilterType(spatialFilterType);
         ruleLimits.setCatalogMode(catalogMode);
         adminService().setLimits(ruleId, ruleLimits);
+        rulesChanged();
     }
 
     public void save(Long ruleId, LayerDetails layerDetails) {
         adminService().setDetails(ruleId, layerDetails);
+        rulesChanged();
     }
 
     public RuleLimits getRulesLimits(Long ruleId) {
@@ -16,6 +16,9 @@ public class CacheConfiguration implements Serializable, Cloneable {
 
     private long expireMilliSec = 30000;
 
+    /** Whether to replicate the rules locally, see {@link RuleIndex} */
+    private boolean ruleIndex = false;
+
     private volatile Ticker customTicker = null; // testing only
 
     public long getExpireMilliSec() {
@@ -42,6 +45,14 @@ public void setSize(long size) {
         this.size = size;
     }
 
+    public boolean isRuleIndex() {
+        return ruleIndex;
+    }
+
+    public void setRuleIndex(boolean ruleIndex) {
+        this.ruleIndex = ruleIndex;
+    }
+
     public Ticker getCustomTicker() {
         return customTicker;
     }
@@ -59,6 +70,8 @@ public String toString() {
                 + refreshMilliSec
                 + ", expMsec="
                 + expireMilliSec
+                + ", ruleIndex="
+                + ruleIndex
                 + ']';
     }
 
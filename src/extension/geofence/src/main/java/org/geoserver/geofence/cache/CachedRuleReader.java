@@ -4,6 +4,7 @@
  */
 package org.geoserver.geofence.cache;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
@@ -28,7 +29,11 @@
  * A delegating {@link RuleReaderService} with caching capabilities.
  *
  * <p>Cache eviction policy is LRU.<br>
- * Cache coherence is handled by entry timeout.<br>
+ * Cache coherence is handled by entry timeout, and by {@link #rulesChanged()} notifications.<br>
+ *
+ * <p>When {@link CacheConfiguration#isRuleIndex()} is enabled the rules are also replicated in a
+ * local {@link RuleIndex}, reloaded at each refresh period, used to drop from the rule cache keys
+ * the parts of the filter no rule depends on.
  *
  * <p>
  *
@@ -51,6 +56,11 @@ public class CachedRuleReader implements RuleReaderService {
     /** Latest configuration used */
     private CacheConfiguration cacheConfiguration = new CacheConfiguration();
 
+    private volatile RuleIndex ruleIndex;
+
+    /** Ticker read when the rule index was last loaded, null to force a reload */
+    private volatile Long ruleIndexLoaded;
+
     public CachedRuleReader(GeoFenceConfigurationManager configurationManager) {
         this.configurationManager = configurationManager;
 
@@ -71,6 +81,8 @@ public final void init() {
         ruleCache = getCacheBuilder().build(new RuleLoader());
         userCache = getCacheBuilder().build(new UserLoader());
         authCache = getCacheBuilder().build(new AuthLoader());
+        ruleIndex = null;
+        ruleIndexLoaded = null;
     }
 
     protected CacheBuilder<Object, Object> getCacheBuilder() {
@@ -187,6 +199,59 @@ public void invalidateAll() {
         ruleCache.invalidateAll();
         userCache.invalidateAll();
         authCache.invalidateAll();
+        ruleIndexLoaded = null;
+    }
+
+    /**
+     * Notifies the rules or admin rules have been modified, dropping the cached authorizations and
+     * reloading the rule index on next access.
+     */
+    public void rulesChanged() {
+        if (LOGGER.isLoggable(Level.FINE)) LOGGER.log(Level.FINE, "Rules changed");
+        ruleIndexLoaded = null;
+        ruleCache.invalidateAll();
+        authCache.invalidateAll();
+    }
+
+    /** Returns a filter equivalent to the given one for the current rules, to be used as key */
+    private RuleFilter normalize(RuleFilter filter) {
+        if (!cacheConfiguration.isRuleIndex()) {
+            return filter;
+        }
+        RuleIndex index = getRuleIndex();
+        return index != null ? index.normalize(filter) : filter;
+    }
+
+    /** Returns the rule index, reloading it if older than the refresh period */
+    RuleIndex getRuleIndex() {
+        Ticker ticker =
+                cacheConfiguration.getCustomTicker() != null
+                        ? cacheConfiguration.getCustomTicker()
+                        : Ticker.systemTicker();
+        long refresh = TimeUnit.MILLISECONDS.toNanos(cacheConfiguration.getRefreshMilliSec());
+        Long loaded = ruleIndexLoaded;
+        if (loaded != null && ticker.read() - loaded < refresh) {
+            return ruleIndex;
+        }
+        synchronized (this) {
+            loaded = ruleIndexLoaded;
+            if (loaded == null || ticker.read() - loaded >= refresh) {
+                RuleIndex previous = ruleIndex;
+                RuleIndex index = null;
+                try {
+                    index = RuleIndex.load(realRuleReaderService);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not load the rule index", e);
+                }
+                if (index != null && previous != null && !index.isSame(previous)) {
+                    // keys were computed against the old rules
+                    ruleCache.invalidateAll();
+                }
+                ruleIndex = index;
+                ruleIndexLoaded = ticker.read();
+            }
+            return ruleIndex;
+        }
     }
 
     /**
@@ -233,7 +298,7 @@ public AccessInfo getAccessInfo(RuleFilter filter) {
 
         AccessInfo accessInfo = null;
         try {
-            accessInfo = ruleCache.get(filter);
+            accessInfo = ruleCache.get(normalize(filter));
         } catch (ExecutionException ex) {
             // throw new RuntimeException(ex); // fixme: handle me
         }
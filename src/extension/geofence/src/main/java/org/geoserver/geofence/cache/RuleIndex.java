@@ -0,0 +1,133 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.geofence.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geoserver.geofence.services.RuleReaderService;
+import org.geoserver.geofence.services.dto.RuleFilter;
+import org.geoserver.geofence.services.dto.RuleFilter.SpecialFilterType;
+import org.geoserver.geofence.services.dto.ShortRule;
+
+/**
+ * A local replica of the GeoFence rules, indexed by workspace and sorted by priority.
+ *
+ * <p>The index is used by the {@link CachedRuleReader} to find out which parts of a {@link
+ * RuleFilter} can actually make a difference for the rules that could match it: when none of them
+ * is bound to an address range, or to a request, the source address and the request are dropped
+ * from the cache key, so that requests coming from different addresses, or asking for different
+ * operations, share the same cached {@code AccessInfo} instead of each loading it from the rule
+ * service.
+ */
+public class RuleIndex {
+
+    private final List<ShortRule> rules;
+
+    /** Rules by lower case workspace, rules valid for any workspace are under the null key */
+    private final Map<String, List<ShortRule>> byWorkspace = new HashMap<>();
+
+    private final List<List<Object>> signature;
+
+    public RuleIndex(List<ShortRule> rules) {
+        List<ShortRule> sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingLong(ShortRule::getPriority));
+        this.rules = Collections.unmodifiableList(sorted);
+
+        List<List<Object>> signature = new ArrayList<>(sorted.size());
+        for (ShortRule rule : sorted) {
+            byWorkspace
+                    .computeIfAbsent(lowerCase(rule.getWorkspace()), k -> new ArrayList<>())
+                    .add(rule);
+            signature.add(
+                    Arrays.asList(
+                            rule.getId(),
+                            rule.getPriority(),
+                            rule.getUserName(),
+                            rule.getRoleName(),
+                            rule.getAddressRange(),
+                            rule.getService(),
+                            rule.getRequest(),
+                            rule.getWorkspace(),
+                            rule.getLayer(),
+                            rule.getAccess()));
+        }
+        this.signature = signature;
+    }
+
+    /** Loads all the rules from the rule service */
+    public static RuleIndex load(RuleReaderService service) {
+        return new RuleIndex(service.getMatchingRules(new RuleFilter(SpecialFilterType.ANY)));
+    }
+
+    /** The rules, by priority */
+    public List<ShortRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the rules that might match the filter workspace, layer and service, by priority.
+     * Users and roles are not considered, GeoFence might resolve them on its side.
+     */
+    public List<ShortRule> getCandidates(RuleFilter filter) {
+        String workspace = lowerCase(filter.getWorkspace().getText());
+        List<ShortRule> candidates;
+        if (workspace == null) {
+            candidates = new ArrayList<>(rules);
+        } else {
+            candidates = new ArrayList<>();
+            candidates.addAll(byWorkspace.getOrDefault(workspace, Collections.emptyList()));
+            candidates.addAll(byWorkspace.getOrDefault(null, Collections.emptyList()));
+            candidates.sort(Comparator.comparingLong(ShortRule::getPriority));
+        }
+        String layer = filter.getLayer().getText();
+        String service = filter.getService().getText();
+        candidates.removeIf(
+                r -> !matches(r.getLayer(), layer) || !matches(r.getService(), service));
+        return candidates;
+    }
+
+    /**
+     * Returns a filter equivalent to the given one for the rules in the index, with the source
+     * address and the request set to default when no candidate rule depends on them. The filter
+     * itself is returned if nothing can be dropped.
+     */
+    public RuleFilter normalize(RuleFilter filter) {
+        boolean address = false;
+        boolean request = false;
+        for (ShortRule rule : getCandidates(filter)) {
+            address |= rule.getAddressRange() != null;
+            request |= rule.getRequest() != null;
+        }
+        if (address && request) {
+            return filter;
+        }
+        RuleFilter normalized = filter.clone();
+        if (!address) {
+            normalized.setSourceAddress(SpecialFilterType.DEFAULT);
+        }
+        if (!request) {
+            normalized.setRequest(SpecialFilterType.DEFAULT);
+        }
+        return normalized;
+    }
+
+    /** Returns true if the other index holds the same rules */
+    public boolean isSame(RuleIndex other) {
+        return other != null && signature.equals(other.signature);
+    }
+
+    private static boolean matches(String ruleValue, String filterValue) {
+        return ruleValue == null || filterValue == null || ruleValue.equalsIgnoreCase(filterValue);
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? null : value.toLowerCase();
+    }
+}
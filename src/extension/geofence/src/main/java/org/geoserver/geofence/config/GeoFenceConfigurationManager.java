@@ -99,6 +99,7 @@ public void saveConfiguration(Writer writer, CacheConfiguration params) throws I
         saveConfig(writer, "cacheSize", params.getSize());
         saveConfig(writer, "cacheRefresh", params.getRefreshMilliSec());
         saveConfig(writer, "cacheExpire", params.getExpireMilliSec());
+        saveConfig(writer, "cacheRuleIndex", params.isRuleIndex());
     }
 
     /** Returns a copy of the configuration. */
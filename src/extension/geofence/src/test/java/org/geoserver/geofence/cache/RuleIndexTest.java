@@ -0,0 +1,100 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.geofence.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.geoserver.geofence.core.model.enums.GrantType;
+import org.geoserver.geofence.services.dto.RuleFilter;
+import org.geoserver.geofence.services.dto.RuleFilter.SpecialFilterType;
+import org.geoserver.geofence.services.dto.ShortRule;
+import org.junit.Test;
+
+public class RuleIndexTest {
+
+    @Test
+    public void testCandidatesByPriority() {
+        ShortRule any = rule(3, null, null, null, null);
+        ShortRule states = rule(1, "topp", "states", null, null);
+        ShortRule roads = rule(2, "topp", "roads", null, null);
+        ShortRule other = rule(0, "sf", null, null, null);
+        RuleIndex index = new RuleIndex(Arrays.asList(any, states, roads, other));
+
+        List<ShortRule> candidates = index.getCandidates(filter("TOPP", "states"));
+        assertEquals(Arrays.asList(states, any), candidates);
+
+        // all rules for any workspace
+        candidates = index.getCandidates(new RuleFilter(SpecialFilterType.ANY));
+        assertEquals(Arrays.asList(other, states, roads, any), candidates);
+    }
+
+    @Test
+    public void testNormalize() {
+        ShortRule ranged = rule(1, "topp", "states", "10.0.0.0/8", null);
+        ShortRule getMap = rule(2, "sf", null, null, "GetMap");
+        ShortRule any = rule(3, null, null, null, null);
+        RuleIndex index = new RuleIndex(Arrays.asList(ranged, getMap, any));
+
+        // depends on both
+        RuleFilter filter = filter("topp", "states");
+        filter.setWorkspace(SpecialFilterType.ANY);
+        assertSame(filter, index.normalize(filter));
+
+        // no address range rule
+        filter = filter("sf", "roads");
+        RuleFilter expected = filter.clone();
+        expected.setSourceAddress(SpecialFilterType.DEFAULT);
+        assertEquals(expected, index.normalize(filter));
+
+        // no request rule either
+        filter = filter("topp", "roads");
+        expected = filter.clone();
+        expected.setSourceAddress(SpecialFilterType.DEFAULT);
+        expected.setRequest(SpecialFilterType.DEFAULT);
+        RuleFilter normalized = index.normalize(filter);
+        assertEquals(expected, normalized);
+
+        // different addresses share the key
+        RuleFilter fromElsewhere = filter("topp", "roads");
+        fromElsewhere.setSourceAddress("192.168.1.1");
+        assertEquals(normalized, index.normalize(fromElsewhere));
+    }
+
+    @Test
+    public void testSame() {
+        RuleIndex index = new RuleIndex(Arrays.asList(rule(1, "topp", null, null, null)));
+        assertTrue(index.isSame(new RuleIndex(Arrays.asList(rule(1, "topp", null, null, null)))));
+        assertFalse(index.isSame(new RuleIndex(Arrays.asList(rule(1, "sf", null, null, null)))));
+        assertFalse(index.isSame(null));
+    }
+
+    private RuleFilter filter(String workspace, String layer) {
+        RuleFilter filter = new RuleFilter(SpecialFilterType.ANY);
+        filter.setWorkspace(workspace);
+        filter.setLayer(layer);
+        filter.setService("WMS");
+        filter.setRequest("GetMap");
+        filter.setSourceAddress("10.1.2.3");
+        return filter;
+    }
+
+    private ShortRule rule(
+            long priority, String workspace, String layer, String addressRange, String request) {
+        ShortRule rule = new ShortRule();
+        rule.setId(priority + 100);
+        rule.setPriority(priority);
+        rule.setWorkspace(workspace);
+        rule.setLayer(layer);
+        rule.setAddressRange(addressRange);
+        rule.setRequest(request);
+        rule.setAccess(GrantType.ALLOW);
+        return rule;
+    }
+}
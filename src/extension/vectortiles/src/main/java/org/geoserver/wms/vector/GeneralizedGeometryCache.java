@@ -0,0 +1,603 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceStore;
+import org.geoserver.security.DataAccessLimits;
+import org.geoserver.security.ResourceAccessManager;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.security.VectorAccessLimits;
+import org.geotools.data.DataAccess;
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.opengis.coverage.grid.GridCoverageReader;
+import org.opengis.feature.Feature;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * On disk cache of pre-generalized geometries, for each layer and generalization level, so that low
+ * zoom vector tiles can use geometries already simplified, instead of simplifying the full
+ * resolution ones at each request.
+ *
+ * <p>Levels are powers of two of the simplification distance in the data CRS, a tile uses the
+ * finest level not coarser than its own simplification distance, and the pipeline completes the
+ * simplification. Only levels at which the whole layer is at most {@link #MAX_PIXELS} wide are
+ * cached, as the gain is in the low zoom levels. Levels are built, or loaded from disk, in the
+ * background the first time they are requested, and the ones in memory are bounded by the {@code
+ * org.geoserver.wms.vector.generalizedCache.maxMemory} property, in bytes.
+ *
+ * <p>Levels are built from the unsecured store data, and not used for users whose access to the
+ * layer is limited by a read filter, a clip or intersects geometry, or hidden attributes. They are
+ * dropped when the layer is modified through GeoServer, e.g. by a WFS transaction, or its store is
+ * reloaded, and the ones on disk are discarded if the feature count or bounds of the layer changed
+ * since they were built. Other changes made directly in the backend are not detected.
+ *
+ * <p>Only used if the {@code org.geoserver.wms.vector.generalizedCache} property is set to true.
+ */
+public class GeneralizedGeometryCache {
+
+    static final Logger LOGGER = Logging.getLogger(GeneralizedGeometryCache.class);
+
+    /** System property enabling the cache */
+    public static final String ENABLED_KEY = "org.geoserver.wms.vector.generalizedCache";
+
+    /** System property setting the memory used by the levels loaded, in bytes */
+    public static final String MAX_MEMORY_KEY =
+            "org.geoserver.wms.vector.generalizedCache.maxMemory";
+
+    static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
+
+    static final String DIRECTORY = "vectortiles-generalized";
+
+    /** Maximum width, in pixels, of a layer at a cached generalization level */
+    static final double MAX_PIXELS = 1 << 16;
+
+    /** Header of the level files, followed by the version */
+    static final int MAGIC = 0x47454e4c;
+
+    static final int VERSION = 2;
+
+    private final ResourceStore resourceStore;
+
+    private final Catalog rawCatalog;
+
+    private final SecureCatalogImpl secureCatalog;
+
+    private final boolean enabled;
+
+    private final long maxMemory;
+
+    /** The levels loaded so far, by layer and level, least recently used first */
+    private final LinkedHashMap<String, GeneralizedLevel> levels =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Memory used by the levels loaded, guarded by {@link #levels} */
+    private long memory;
+
+    /** Bumped at each invalidation, to discard the levels being built meanwhile */
+    private final Map<String, AtomicInteger> generations = new ConcurrentHashMap<>();
+
+    private final Map<String, ReferencedEnvelope> bounds = new ConcurrentHashMap<>();
+
+    private final Map<String, Registration> listeners = new ConcurrentHashMap<>();
+
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    /** Levels too large to be held in memory, not attempted again until invalidated */
+    private final Set<String> skipped = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService builder =
+            Executors.newSingleThreadExecutor(
+                    r -> {
+                        Thread t = new Thread(r, "Vector tiles generalized geometries builder");
+                        t.setDaemon(true);
+                        return t;
+                    });
+
+    public GeneralizedGeometryCache(
+            ResourceStore resourceStore, Catalog rawCatalog, SecureCatalogImpl secureCatalog) {
+        this(
+                resourceStore,
+                rawCatalog,
+                secureCatalog,
+                Boolean.getBoolean(ENABLED_KEY),
+                Long.getLong(MAX_MEMORY_KEY, DEFAULT_MAX_MEMORY));
+    }
+
+    public GeneralizedGeometryCache(
+            ResourceStore resourceStore,
+            Catalog rawCatalog,
+            SecureCatalogImpl secureCatalog,
+            boolean enabled,
+            long maxMemory) {
+        this.resourceStore = resourceStore;
+        this.rawCatalog = rawCatalog;
+        this.secureCatalog = secureCatalog;
+        this.enabled = enabled;
+        this.maxMemory = maxMemory;
+        if (enabled && rawCatalog != null) {
+            rawCatalog.getResourcePool().addListener(new StoreListener());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the pre-generalized geometries to be used for the given simplification distance, or
+     * {@code null} if not available yet, not worth caching, or not usable by the current user.
+     * Schedules the build of missing levels.
+     *
+     * @param source the source of the request, only used to identify the layer, the levels are
+     *     built from the unsecured one
+     */
+    public GeneralizedLevel getLevel(FeatureSource<?, ?> source, double simplificationDistance) {
+        if (!enabled || rawCatalog == null || !(simplificationDistance > 0)) {
+            return null;
+        }
+        FeatureTypeInfo featureType = rawCatalog.getFeatureTypeByName(source.getName());
+        if (featureType == null || isLimited(featureType)) {
+            return null;
+        }
+        try {
+            FeatureSource<?, ?> unsecured = featureType.getFeatureSource(null, null);
+            return getLevel(featureType.getId(), unsecured, simplificationDistance);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not access the data of " + featureType.getName(), e);
+            return null;
+        }
+    }
+
+    /** Same as above, for a source already known to be unsecured */
+    GeneralizedLevel getLevel(
+            String layer, FeatureSource<?, ?> source, double simplificationDistance) {
+        if (!enabled || !(simplificationDistance > 0)) {
+            return null;
+        }
+        int level = (int) Math.floor(Math.log(simplificationDistance) / Math.log(2));
+        ReferencedEnvelope layerBounds;
+        try {
+            layerBounds = getBounds(layer, source);
+            double width = Math.max(layerBounds.getWidth(), layerBounds.getHeight());
+            if (layerBounds.isEmpty() || width / Math.scalb(1d, level) > MAX_PIXELS) {
+                return null;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not compute the bounds of " + layer, e);
+            return null;
+        }
+        listen(layer, source);
+
+        String key = layer + "@" + level;
+        synchronized (levels) {
+            GeneralizedLevel result = levels.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        if (!skipped.contains(key) && building.add(key)) {
+            int generation = getGeneration(layer).get();
+            builder.submit(
+                    () -> {
+                        try {
+                            long count = source.getCount(Query.ALL);
+                            GeneralizedLevel result = load(layer, level, count, layerBounds);
+                            if (result == null) {
+                                result = build(source, level);
+                            }
+                            // skip if the layer has been modified meanwhile
+                            if (getGeneration(layer).get() == generation) {
+                                if (result.getMemory() > maxMemory) {
+                                    LOGGER.fine(key + " is too large to be held in memory");
+                                    skipped.add(key);
+                                    return;
+                                }
+                                if (!result.persisted) {
+                                    save(layer, level, count, layerBounds, result);
+                                }
+                                put(key, result);
+                            }
+                        } catch (Exception e) {
+                            LOGGER.log(
+                                    Level.WARNING,
+                                    "Failed to build generalized geometries for " + key,
+                                    e);
+                        } finally {
+                            building.remove(key);
+                        }
+                    });
+        }
+        return null;
+    }
+
+    /** Drops all the generalized geometries of the layer, identified by its feature type id */
+    public void invalidate(String layer) {
+        drop(layer);
+        Resource directory = resourceStore.get(DIRECTORY + "/" + encode(layer));
+        if (directory.getType() != Resource.Type.UNDEFINED) {
+            directory.delete();
+        }
+    }
+
+    public void dispose() {
+        builder.shutdownNow();
+        for (String layer : listeners.keySet()) {
+            unlisten(layer);
+        }
+    }
+
+    /** Drops the levels of the layer loaded in memory */
+    private void drop(String layer) {
+        getGeneration(layer).incrementAndGet();
+        bounds.remove(layer);
+        String prefix = layer + "@";
+        skipped.removeIf(k -> k.startsWith(prefix));
+        synchronized (levels) {
+            for (Iterator<Map.Entry<String, GeneralizedLevel>> it = levels.entrySet().iterator();
+                    it.hasNext(); ) {
+                Map.Entry<String, GeneralizedLevel> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    memory -= entry.getValue().getMemory();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void put(String key, GeneralizedLevel level) {
+        synchronized (levels) {
+            GeneralizedLevel previous = levels.put(key, level);
+            if (previous != null) {
+                memory -= previous.getMemory();
+            }
+            memory += level.getMemory();
+            for (Iterator<GeneralizedLevel> it = levels.values().iterator();
+                    it.hasNext() && memory > maxMemory; ) {
+                memory -= it.next().getMemory();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks if the current user can see only part of the layer data, the levels are built from all
+     * of it
+     */
+    private boolean isLimited(FeatureTypeInfo featureType) {
+        if (secureCatalog == null) {
+            return false;
+        }
+        ResourceAccessManager manager = secureCatalog.getResourceAccessManager();
+        Authentication user = SecurityContextHolder.getContext().getAuthentication();
+        if (isLimited(manager.getAccessLimits(user, featureType))) {
+            return true;
+        }
+        for (LayerInfo layer : rawCatalog.getLayers(featureType)) {
+            if (isLimited(manager.getAccessLimits(user, layer))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLimited(DataAccessLimits limits) {
+        if (limits == null) {
+            return false;
+        }
+        if (limits.getReadFilter() != null && limits.getReadFilter() != Filter.INCLUDE) {
+            return true;
+        }
+        if (limits instanceof VectorAccessLimits) {
+            VectorAccessLimits vl = (VectorAccessLimits) limits;
+            return vl.getClipVectorFilter() != null
+                    || vl.getIntersectVectorFilter() != null
+                    || vl.getReadAttributes() != null;
+        }
+        return false;
+    }
+
+    private AtomicInteger getGeneration(String layer) {
+        return generations.computeIfAbsent(layer, l -> new AtomicInteger());
+    }
+
+    private ReferencedEnvelope getBounds(String layer, FeatureSource<?, ?> source)
+            throws IOException {
+        ReferencedEnvelope result = bounds.get(layer);
+        if (result == null) {
+            result = source.getBounds();
+            if (result == null) {
+                result = new ReferencedEnvelope();
+            }
+            bounds.put(layer, result);
+        }
+        return result;
+    }
+
+    /**
+     * Listens to the changes of the layer, once per data store instance, so that it's registered
+     * again when the store is reloaded
+     */
+    private void listen(String layer, FeatureSource<?, ?> source) {
+        DataAccess<?, ?> store = source.getDataStore();
+        Registration current = listeners.get(layer);
+        if (current != null && current.store == store) {
+            return;
+        }
+        if (current != null) {
+            // the store has been replaced, the data might have changed too
+            unlisten(layer);
+            drop(layer);
+        }
+        FeatureListener listener =
+                (FeatureEvent event) -> {
+                    LOGGER.fine("Dropping generalized geometries of modified layer " + layer);
+                    invalidate(layer);
+                };
+        Registration registration = new Registration(store, source, listener);
+        if (listeners.putIfAbsent(layer, registration) == null) {
+            source.addFeatureListener(listener);
+        }
+    }
+
+    private void unlisten(String layer) {
+        Registration registration = listeners.remove(layer);
+        if (registration != null) {
+            try {
+                registration.source.removeFeatureListener(registration.listener);
+            } catch (RuntimeException e) {
+                // the store might have been disposed already
+                LOGGER.log(Level.FINE, "Failed to remove the listener of " + layer, e);
+            }
+        }
+    }
+
+    /** Reads and simplifies all the geometries of the layer at the given level */
+    GeneralizedLevel build(FeatureSource<?, ?> source, int level) throws IOException {
+        double tolerance = Math.scalb(1d, level);
+        GeometryDescriptor descriptor = source.getSchema().getGeometryDescriptor();
+        Map<String, byte[]> geometries = new HashMap<>();
+        long size = 0;
+        if (descriptor != null) {
+            Query query =
+                    new Query(
+                            source.getSchema().getName().getLocalPart(),
+                            Filter.INCLUDE,
+                            new String[] {descriptor.getLocalName()});
+            WKBWriter writer = new WKBWriter();
+            try (FeatureIterator<? extends Feature> it = source.getFeatures(query).features()) {
+                while (it.hasNext() && size <= maxMemory) {
+                    Feature feature = it.next();
+                    GeometryAttribute attribute = feature.getDefaultGeometryProperty();
+                    if (attribute != null && attribute.getValue() instanceof Geometry) {
+                        Geometry simplified = simplify((Geometry) attribute.getValue(), tolerance);
+                        String id = feature.getIdentifier().getID();
+                        byte[] wkb = writer.write(simplified);
+                        geometries.put(id, wkb);
+                        size += GeneralizedLevel.getMemory(id, wkb);
+                    }
+                }
+            }
+        }
+        LOGGER.fine("Built " + geometries.size() + " generalized geometries at level " + level);
+        return new GeneralizedLevel(geometries, false);
+    }
+
+    static Geometry simplify(Geometry geometry, double tolerance) {
+        switch (geometry.getDimension()) {
+            case 2:
+                return TopologyPreservingSimplifier.simplify(geometry, tolerance);
+            case 1:
+                return DouglasPeuckerSimplifier.simplify(geometry, tolerance);
+            default:
+                return geometry;
+        }
+    }
+
+    private Resource getResource(String layer, int level) {
+        return resourceStore.get(DIRECTORY + "/" + encode(layer) + "/" + level + ".wkb");
+    }
+
+    private static String encode(String layer) {
+        try {
+            return URLEncoder.encode(layer, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads a level from disk, if it was built from data with the same feature count and bounds
+     *
+     * @return the level, or {@code null} if missing, stale or too large
+     */
+    private GeneralizedLevel load(
+            String layer, int level, long count, ReferencedEnvelope layerBounds) {
+        Resource resource = getResource(layer, level);
+        if (resource.getType() != Resource.Type.RESOURCE) {
+            return null;
+        }
+        try (InputStream is = resource.in();
+                DataInputStream in = new DataInputStream(is)) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != VERSION
+                    || in.readLong() != count
+                    || in.readDouble() != layerBounds.getMinX()
+                    || in.readDouble() != layerBounds.getMinY()
+                    || in.readDouble() != layerBounds.getMaxX()
+                    || in.readDouble() != layerBounds.getMaxY()) {
+                LOGGER.fine("Discarding stale generalized geometries of " + layer);
+                return null;
+            }
+            int size = in.readInt();
+            Map<String, byte[]> geometries = new HashMap<>();
+            long memory = 0;
+            for (int i = 0; i < size && memory <= maxMemory; i++) {
+                String id = in.readUTF();
+                byte[] wkb = new byte[in.readInt()];
+                in.readFully(wkb);
+                geometries.put(id, wkb);
+                memory += GeneralizedLevel.getMemory(id, wkb);
+            }
+            return new GeneralizedLevel(geometries, true);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to load generalized geometries of " + layer, e);
+            return null;
+        }
+    }
+
+    private void save(
+            String layer,
+            int level,
+            long count,
+            ReferencedEnvelope layerBounds,
+            GeneralizedLevel generalized) {
+        try (OutputStream os = getResource(layer, level).out();
+                DataOutputStream out = new DataOutputStream(os)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(count);
+            out.writeDouble(layerBounds.getMinX());
+            out.writeDouble(layerBounds.getMinY());
+            out.writeDouble(layerBounds.getMaxX());
+            out.writeDouble(layerBounds.getMaxY());
+            out.writeInt(generalized.geometries.size());
+            for (Map.Entry<String, byte[]> entry : generalized.geometries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save generalized geometries of " + layer, e);
+        }
+    }
+
+    /** The listener registered on the source of a layer */
+    private static class Registration {
+        final DataAccess<?, ?> store;
+
+        final FeatureSource<?, ?> source;
+
+        final FeatureListener listener;
+
+        Registration(DataAccess<?, ?> store, FeatureSource<?, ?> source, FeatureListener listener) {
+            this.store = store;
+            this.source = source;
+            this.listener = listener;
+        }
+    }
+
+    /** Drops the levels in memory when the feature types or their stores are reloaded */
+    private class StoreListener implements ResourcePool.Listener {
+
+        @Override
+        public void disposed(DataStoreInfo dataStore, DataAccess da) {
+            for (FeatureTypeInfo featureType : rawCatalog.getFeatureTypesByDataStore(dataStore)) {
+                unlisten(featureType.getId());
+                drop(featureType.getId());
+            }
+        }
+
+        @Override
+        public void disposed(CoverageStoreInfo coverageStore, GridCoverageReader gcr) {
+            // not a vector layer
+        }
+
+        @Override
+        public void disposed(FeatureTypeInfo featureType, FeatureType ft) {
+            unlisten(featureType.getId());
+            drop(featureType.getId());
+        }
+    }
+
+    /** The pre-generalized geometries of a layer at a given level, by feature id */
+    public static class GeneralizedLevel {
+
+        private final Map<String, byte[]> geometries;
+
+        private final long memory;
+
+        private final boolean persisted;
+
+        GeneralizedLevel(Map<String, byte[]> geometries, boolean persisted) {
+            this.geometries = geometries;
+            this.persisted = persisted;
+            long memory = 0;
+            for (Map.Entry<String, byte[]> entry : geometries.entrySet()) {
+                memory += getMemory(entry.getKey(), entry.getValue());
+            }
+            this.memory = memory;
+        }
+
+        /** Rough estimate of the memory used by an entry, including the map overhead */
+        static long getMemory(String id, byte[] wkb) {
+            return 64 + 2L * id.length() + wkb.length;
+        }
+
+        /** Returns the generalized geometry of the feature, or {@code null} if not available */
+        public Geometry getGeometry(String featureId) {
+            byte[] wkb = geometries.get(featureId);
+            if (wkb == null) {
+                return null;
+            }
+            try {
+                return new WKBReader().read(wkb);
+            } catch (ParseException e) {
+                LOGGER.log(Level.FINE, "Invalid generalized geometry for " + featureId, e);
+                return null;
+            }
+        }
+
+        public int size() {
+            return geometries.size();
+        }
+
+        /** Returns the estimated memory used by the level, in bytes */
+        public long getMemory() {
+            return memory;
+        }
+    }
+}
@@ -24,6 +24,7 @@
 import org.geotools.renderer.crs.ProjectionHandlerFinder;
 import org.geotools.renderer.lite.RendererUtilities;
 import org.geotools.util.factory.Hints;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
@@ -175,6 +176,11 @@ private static Context createContext(
         return context;
     }
 
+    /** Returns the generalization distance, in the data CRS, matching about a pixel of the tile */
+    public double getSourceSimplificationDistance() {
+        return context.sourceCRSSimplificationDistance;
+    }
+
     /** Prepares features for subsequent manipulation */
     public PipelineBuilder preprocess() {
         addLast(new PreProcess(context.projectionHandler, context.screenMap));
@@ -273,6 +279,20 @@ public PipelineBuilder transform(final boolean transformToScreenCoordinates) {
         return this;
     }
 
+    /**
+     * Snaps the coordinates to the pixel grid, so that the following steps work on fewer distinct
+     * vertices. Only applied when working in screen coordinates, right after {@link
+     * #transform(boolean)}, as the coordinates are modified in place.
+     *
+     * @param quantize Do we actually want to quantize. Does nothing if false.
+     */
+    public PipelineBuilder quantize(boolean quantize) {
+        if (quantize && last instanceof Transform) {
+            addLast(new Quantize());
+        }
+        return this;
+    }
+
     /**
      * Simplify the geometry
      *
@@ -337,19 +357,92 @@ public PipelineBuilder clip(boolean clipToMapBounds, boolean transformToScreenCo
         return this;
     }
 
+    /** An operation on a coordinate sequence, modifying it in place */
+    private interface SequenceOperation {
+        void apply(CoordinateSequence sequence) throws TransformException;
+    }
+
+    /** Applies the operation to all the coordinate sequences of the geometry */
+    private static void forEachSequence(Geometry geom, SequenceOperation operation)
+            throws TransformException {
+        if (geom instanceof Point) {
+            operation.apply(((Point) geom).getCoordinateSequence());
+        } else if (geom instanceof LineString) {
+            operation.apply(((LineString) geom).getCoordinateSequence());
+        } else if (geom instanceof Polygon) {
+            Polygon polygon = (Polygon) geom;
+            operation.apply(polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                operation.apply(polygon.getInteriorRingN(i).getCoordinateSequence());
+            }
+        } else if (geom instanceof GeometryCollection) {
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                forEachSequence(geom.getGeometryN(i), operation);
+            }
+        }
+    }
+
+    /**
+     * Transforms a copy of the geometry in place, through an ordinate buffer reused across
+     * features. Not thread safe, a pipeline is meant to be run by a single thread.
+     */
     private static final class Transform extends Pipeline {
 
         private final MathTransform tx;
 
+        private double[] buffer = new double[256];
+
         Transform(MathTransform tx) {
             this.tx = tx;
         }
 
         @Override
         protected Geometry _run(Geometry geom) throws Exception {
-            Geometry transformed = JTS.transform(geom, this.tx);
+            if (tx.getSourceDimensions() != 2 || tx.getTargetDimensions() != 2) {
+                return JTS.transform(geom, this.tx);
+            }
+            // the source geometry might be shared, e.g., by an in memory store
+            Geometry transformed = geom.copy();
+            forEachSequence(transformed, this::transform);
+            transformed.geometryChanged();
             return transformed;
         }
+
+        private void transform(CoordinateSequence sequence) throws TransformException {
+            int size = sequence.size();
+            if (buffer.length < size * 2) {
+                buffer = new double[Math.max(size * 2, buffer.length * 2)];
+            }
+            for (int i = 0; i < size; i++) {
+                buffer[2 * i] = sequence.getX(i);
+                buffer[2 * i + 1] = sequence.getY(i);
+            }
+            tx.transform(buffer, 0, buffer, 0, size);
+            for (int i = 0; i < size; i++) {
+                sequence.setOrdinate(i, CoordinateSequence.X, buffer[2 * i]);
+                sequence.setOrdinate(i, CoordinateSequence.Y, buffer[2 * i + 1]);
+            }
+        }
+    }
+
+    /** Rounds screen coordinates to whole pixels, in place */
+    private static final class Quantize extends Pipeline {
+
+        @Override
+        protected Geometry _run(Geometry geom) throws Exception {
+            forEachSequence(
+                    geom,
+                    sequence -> {
+                        for (int i = 0; i < sequence.size(); i++) {
+                            sequence.setOrdinate(
+                                    i, CoordinateSequence.X, Math.rint(sequence.getX(i)));
+                            sequence.setOrdinate(
+                                    i, CoordinateSequence.Y, Math.rint(sequence.getY(i)));
+                        }
+                    });
+            geom.geometryChanged();
+            return geom;
+        }
     }
 
     private static final class Simplify extends Pipeline {
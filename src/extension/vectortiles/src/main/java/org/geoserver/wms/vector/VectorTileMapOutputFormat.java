@@ -9,21 +9,34 @@
 import static org.geotools.renderer.lite.VectorMapRenderUtils.getStyleQuery;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.WebMap;
 import org.geoserver.wms.map.AbstractMapOutputFormat;
+import org.geoserver.wms.vector.GeneralizedGeometryCache.GeneralizedLevel;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -37,15 +50,30 @@
 import org.opengis.feature.Feature;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.springframework.beans.factory.DisposableBean;
 
-public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
+public class VectorTileMapOutputFormat extends AbstractMapOutputFormat implements DisposableBean {
 
     /** A logger for this class. */
     private static final Logger LOGGER = Logging.getLogger(VectorTileMapOutputFormat.class);
 
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    /** System property enabling {@link #setParallelLayers(boolean) parallel layer building} */
+    public static final String PARALLEL_LAYERS_KEY = "org.geoserver.wms.vector.parallelLayers";
+
+    /**
+     * System property enabling {@link #setQuantizeToPixelGrid(boolean) quantization to the pixel
+     * grid}
+     */
+    public static final String QUANTIZE_KEY = "org.geoserver.wms.vector.quantizeToPixelGrid";
+
     private final VectorTileBuilderFactory tileBuilderFactory;
 
     private boolean clipToMapBounds;
@@ -55,6 +83,17 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
 
     private boolean transformToScreenCoordinates;
 
+    private boolean quantizeToPixelGrid = Boolean.getBoolean(QUANTIZE_KEY);
+
+    private boolean parallelLayers = Boolean.getBoolean(PARALLEL_LAYERS_KEY);
+
+    /** Builds the layers in parallel, created on first use and shut down with the bean */
+    private ExecutorService layerExecutor;
+
+    private boolean disposed;
+
+    private GeneralizedGeometryCache generalizedGeometryCache;
+
     public VectorTileMapOutputFormat(VectorTileBuilderFactory tileBuilderFactory) {
         super(tileBuilderFactory.getMimeType(), tileBuilderFactory.getOutputFormats());
         this.tileBuilderFactory = tileBuilderFactory;
@@ -75,6 +114,54 @@ public void setTransformToScreenCoordinates(boolean useScreenCoords) {
         this.transformToScreenCoordinates = useScreenCoords;
     }
 
+    /**
+     * Does this format snap screen coordinates to whole pixels before clipping and simplifying,
+     * only makes sense for formats encoding integer screen coordinates. Disabled by default, as the
+     * simplification then works on the snapped coordinates and the output changes slightly.
+     */
+    public void setQuantizeToPixelGrid(boolean quantize) {
+        this.quantizeToPixelGrid = quantize;
+    }
+
+    /**
+     * Are the features of the different layers of a tile read and processed in parallel. The
+     * features are still added to the tile in layer order.
+     */
+    public void setParallelLayers(boolean parallelLayers) {
+        this.parallelLayers = parallelLayers;
+    }
+
+    /** Sets the cache of pre-generalized geometries used for the low zoom levels */
+    public void setGeneralizedGeometryCache(GeneralizedGeometryCache generalizedGeometryCache) {
+        this.generalizedGeometryCache = generalizedGeometryCache;
+    }
+
+    /** Shuts down the pool building the layers in parallel, if any */
+    @Override
+    public synchronized void destroy() {
+        disposed = true;
+        if (layerExecutor != null) {
+            layerExecutor.shutdownNow();
+            layerExecutor = null;
+        }
+    }
+
+    private synchronized ExecutorService getLayerExecutor() {
+        if (disposed) {
+            throw new ServiceException("The vector tile output format has been shut down");
+        }
+        if (layerExecutor == null) {
+            layerExecutor =
+                    Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(),
+                            new ThreadFactoryBuilder()
+                                    .setDaemon(true)
+                                    .setNameFormat("vector-tile-layer-%d")
+                                    .build());
+        }
+        return layerExecutor;
+    }
+
     @Override
     public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException, IOException {
         checkNotNull(mapContent);
@@ -96,6 +183,13 @@ public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException
         final VectorTileBuilder vectorTileBuilder =
                 this.tileBuilderFactory.newBuilder(paintArea, renderingArea);
 
+        // when building layers in parallel, each one collects its features in a buffer, the
+        // buffers are then added to the tile in layer order
+        final boolean parallel = parallelLayers && mapContent.layers().size() > 1;
+        final List<Future<FeatureBuffer>> layerResults = new ArrayList<>();
+        final ThreadLocalsTransfer threadLocals = parallel ? new ThreadLocalsTransfer() : null;
+        final ExecutorService executor = parallel ? getLayerExecutor() : null;
+
         CoordinateReferenceSystem sourceCrs;
         for (Layer layer : mapContent.layers()) {
 
@@ -140,9 +234,53 @@ public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException
 
             hints.remove(Hints.SCREENMAP);
 
-            FeatureCollection<?, ?> features = featureSource.getFeatures(query);
+            GeneralizedLevel generalized =
+                    getGeneralizedLevel(featureSource, renderingArea, paintArea, sourceCrs, buffer);
+
+            if (parallel) {
+                layerResults.add(
+                        executor.submit(
+                                () -> {
+                                    threadLocals.apply();
+                                    try {
+                                        FeatureBuffer featureBuffer = new FeatureBuffer();
+                                        run(
+                                                featureSource,
+                                                query,
+                                                generalized,
+                                                pipeline,
+                                                geometryDescriptor,
+                                                featureBuffer::add,
+                                                layer);
+                                        return featureBuffer;
+                                    } finally {
+                                        threadLocals.cleanup();
+                                    }
+                                }));
+            } else {
+                run(
+                        featureSource,
+                        query,
+                        generalized,
+                        pipeline,
+                        geometryDescriptor,
+                        vectorTileBuilder::addFeature,
+                        layer);
+            }
+        }
 
-            run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer);
+        try {
+            for (Future<FeatureBuffer> layerResult : layerResults) {
+                layerResult.get().addTo(vectorTileBuilder);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while building the vector tile", e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new ServiceException(e.getCause());
+        } finally {
+            layerResults.forEach(f -> f.cancel(true));
         }
 
         WebMap map = vectorTileBuilder.build(mapContent);
@@ -166,6 +304,7 @@ protected Pipeline getPipeline(
             pipeline =
                     builder.preprocess()
                             .transform(transformToScreenCoordinates)
+                            .quantize(quantizeToPixelGrid && transformToScreenCoordinates)
                             .clip(clipToMapBounds, transformToScreenCoordinates)
                             .simplify(transformToScreenCoordinates, fsHints, qHints)
                             .collapseCollections()
@@ -177,6 +316,80 @@ protected Pipeline getPipeline(
         return pipeline;
     }
 
+    /**
+     * Returns the pre-generalized geometries matching the simplification distance of the tile, if
+     * available
+     */
+    private GeneralizedLevel getGeneralizedLevel(
+            FeatureSource<?, ?> featureSource,
+            ReferencedEnvelope renderingArea,
+            Rectangle paintArea,
+            CoordinateReferenceSystem sourceCrs,
+            int buffer) {
+        if (generalizedGeometryCache == null
+                || !generalizedGeometryCache.isEnabled()
+                || !(featureSource.getSchema() instanceof SimpleFeatureType)) {
+            return null;
+        }
+        try {
+            PipelineBuilder builder =
+                    PipelineBuilder.newBuilder(
+                            renderingArea, paintArea, sourceCrs, overSamplingFactor, buffer);
+            return generalizedGeometryCache.getLevel(
+                    featureSource, builder.getSourceSimplificationDistance() / overSamplingFactor);
+        } catch (FactoryException e) {
+            throw new ServiceException(e);
+        }
+    }
+
+    /**
+     * Adds the features of the layer to the tile, using the pre-generalized geometries if
+     * available. The geometries are then not read at all, but for the features missing from the
+     * generalized ones, e.g., because added after they were built.
+     */
+    void run(
+            FeatureSource<?, ?> featureSource,
+            Query query,
+            GeneralizedLevel generalized,
+            Pipeline pipeline,
+            GeometryDescriptor geometryDescriptor,
+            FeatureConsumer consumer,
+            Layer layer)
+            throws IOException {
+        if (generalized == null) {
+            FeatureCollection<?, ?> features = featureSource.getFeatures(query);
+            run(features, null, pipeline, geometryDescriptor, consumer, layer);
+            return;
+        }
+        Query withoutGeometry = new Query(query);
+        String geometryName = geometryDescriptor.getLocalName();
+        List<String> propertyNames = new ArrayList<>();
+        if (query.getPropertyNames() == Query.ALL_NAMES) {
+            featureSource.getSchema().getDescriptors().stream()
+                    .filter(d -> !(d instanceof GeometryDescriptor))
+                    .forEach(d -> propertyNames.add(d.getName().getLocalPart()));
+        } else {
+            Arrays.stream(query.getPropertyNames())
+                    .filter(n -> !geometryName.equals(n))
+                    .forEach(propertyNames::add);
+        }
+        withoutGeometry.setPropertyNames(propertyNames);
+        FeatureCollection<?, ?> features = featureSource.getFeatures(withoutGeometry);
+        Set<FeatureId> missing =
+                run(features, generalized, pipeline, geometryDescriptor, consumer, layer);
+        if (!missing.isEmpty()) {
+            Query missingQuery = new Query(query);
+            missingQuery.setFilter(FF.id(missing));
+            run(
+                    featureSource.getFeatures(missingQuery),
+                    null,
+                    pipeline,
+                    geometryDescriptor,
+                    consumer,
+                    layer);
+        }
+    }
+
     private Map<String, Object> getProperties(ComplexAttribute feature) {
         Map<String, Object> props = new TreeMap<>();
         for (Property p : feature.getProperties()) {
@@ -197,16 +410,25 @@ private Map<String, Object> getProperties(ComplexAttribute feature) {
         return props;
     }
 
-    void run(
+    /**
+     * Adds the features to the tile
+     *
+     * @param generalized the pre-generalized geometries to use, or {@code null} to use the ones of
+     *     the features
+     * @return the ids of the features skipped as missing from the pre-generalized geometries
+     */
+    Set<FeatureId> run(
             FeatureCollection<?, ?> features,
+            GeneralizedLevel generalized,
             Pipeline pipeline,
             GeometryDescriptor geometryDescriptor,
-            VectorTileBuilder vectorTileBuilder,
+            FeatureConsumer consumer,
             Layer layer) {
         Stopwatch sw = Stopwatch.createStarted();
         int count = 0;
         int total = 0;
         Feature feature;
+        Set<FeatureId> missing = new HashSet<>();
 
         try (FeatureIterator<?> it = features.features()) {
             while (it.hasNext()) {
@@ -214,7 +436,16 @@ void run(
                 total++;
                 Geometry finalGeom;
 
-                Geometry originalGeom = (Geometry) feature.getDefaultGeometryProperty().getValue();
+                Geometry originalGeom;
+                if (generalized != null) {
+                    originalGeom = generalized.getGeometry(feature.getIdentifier().getID());
+                    if (originalGeom == null) {
+                        missing.add(feature.getIdentifier());
+                        continue;
+                    }
+                } else {
+                    originalGeom = (Geometry) feature.getDefaultGeometryProperty().getValue();
+                }
                 try {
                     finalGeom = pipeline.execute(originalGeom);
                 } catch (Exception processingException) {
@@ -234,8 +465,7 @@ void run(
 
                 final Map<String, Object> properties = getProperties(feature);
 
-                vectorTileBuilder.addFeature(
-                        layerName, featureId, geometryName, finalGeom, properties);
+                consumer.addFeature(layerName, featureId, geometryName, finalGeom, properties);
                 count++;
             }
         }
@@ -248,6 +478,62 @@ void run(
             // System.err.println(msg);
             LOGGER.fine(msg);
         }
+        return missing;
+    }
+
+    /** Receives the features of a layer, either a {@link VectorTileBuilder} or a buffer */
+    @FunctionalInterface
+    interface FeatureConsumer {
+        void addFeature(
+                String layerName,
+                String featureId,
+                String geometryName,
+                Geometry geometry,
+                Map<String, Object> properties);
+    }
+
+    /** Collects the features of a layer built in parallel, to be added to the tile later */
+    static class FeatureBuffer {
+
+        private final List<BufferedFeature> features = new ArrayList<>();
+
+        void add(
+                String layerName,
+                String featureId,
+                String geometryName,
+                Geometry geometry,
+                Map<String, Object> properties) {
+            features.add(
+                    new BufferedFeature(layerName, featureId, geometryName, geometry, properties));
+        }
+
+        void addTo(VectorTileBuilder builder) {
+            for (BufferedFeature f : features) {
+                builder.addFeature(
+                        f.layerName, f.featureId, f.geometryName, f.geometry, f.properties);
+            }
+        }
+    }
+
+    private static class BufferedFeature {
+        final String layerName;
+        final String featureId;
+        final String geometryName;
+        final Geometry geometry;
+        final Map<String, Object> properties;
+
+        BufferedFeature(
+                String layerName,
+                String featureId,
+                String geometryName,
+                Geometry geometry,
+                Map<String, Object> properties) {
+            this.layerName = layerName;
+            this.featureId = featureId;
+            this.geometryName = geometryName;
+            this.geometry = geometry;
+            this.properties = properties;
+        }
     }
 
     /** @return {@code null}, not a raster format. */
@@ -0,0 +1,169 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.minidev.json.JSONArray;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.GeoServerRoleStore;
+import org.geoserver.security.GeoServerUserGroupStore;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.security.TestResourceAccessManager;
+import org.geoserver.security.VectorAccessLimits;
+import org.geoserver.security.impl.AbstractUserGroupService;
+import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.Test;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.filter.Filter;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Checks the generalized geometries are not used for users with limited access to the data */
+public class GeneralizedGeometryCacheSecurityTest extends WMSTestSupport {
+
+    /** Add the test resource access manager in the spring context */
+    @Override
+    protected void setUpSpring(List<String> springContextLocations) {
+        super.setUpSpring(springContextLocations);
+        springContextLocations.add("classpath:/org/geoserver/wms/ResourceAccessManagerContext.xml");
+    }
+
+    /** Enable the Spring Security auth filters */
+    @Override
+    protected List<javax.servlet.Filter> getFilters() {
+        return Collections.singletonList(
+                (javax.servlet.Filter) GeoServerExtensions.bean("filterChainProxy"));
+    }
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        super.onSetUp(testData);
+
+        GeoServerUserGroupStore ugStore =
+                getSecurityManager()
+                        .loadUserGroupService(AbstractUserGroupService.DEFAULT_NAME)
+                        .createStore();
+        ugStore.addUser(ugStore.createUserObject("cite", "cite", true));
+        ugStore.addUser(ugStore.createUserObject("cite_clip", "cite", true));
+        ugStore.store();
+
+        GeoServerRoleStore roleStore = getSecurityManager().getActiveRoleService().createStore();
+        GeoServerRole role = roleStore.createRoleObject("ROLE_DUMMY");
+        roleStore.addRole(role);
+        roleStore.associateRoleToUser(role, "cite");
+        roleStore.associateRoleToUser(role, "cite_clip");
+        roleStore.store();
+
+        // cite_clip sees only the roads east of the prime meridian
+        TestResourceAccessManager tam =
+                (TestResourceAccessManager) applicationContext.getBean("testResourceAccessManager");
+        FeatureTypeInfo roads =
+                getCatalog().getFeatureTypeByName(getLayerId(MockData.ROAD_SEGMENTS));
+        MultiPolygon clip =
+                (MultiPolygon) new WKTReader().read("MULTIPOLYGON(((0 -1, 1 -1, 1 1, 0 1, 0 -1)))");
+        tam.putLimits(
+                "cite_clip",
+                roads,
+                new VectorAccessLimits(
+                        CatalogMode.HIDE, null, Filter.INCLUDE, null, Filter.INCLUDE, clip));
+    }
+
+    @Test
+    public void testClipLimitedUser() throws Exception {
+        VectorTileMapOutputFormat format =
+                applicationContext.getBean(
+                        "wmsGeoJsonMapOutputFormat", VectorTileMapOutputFormat.class);
+        GeneralizedGeometryCache cache =
+                new GeneralizedGeometryCache(
+                        getResourceLoader(),
+                        (Catalog) applicationContext.getBean("rawCatalog"),
+                        (SecureCatalogImpl) applicationContext.getBean("secureCatalog"),
+                        true,
+                        GeneralizedGeometryCache.DEFAULT_MAX_MEMORY);
+        format.setGeneralizedGeometryCache(cache);
+        try {
+            // an unlimited user gets the levels built, from all the data
+            setRequestAuth("cite", "cite");
+            awaitLevels();
+            assertEquals(5, ((JSONArray) getMap().read("$.features")).size());
+
+            // the limited one does not use them, and gets the clipped geometries
+            setRequestAuth("cite_clip", "cite");
+            DocumentContext json = getMap();
+            JSONArray names = json.read("$.features[*].properties.NAME");
+            assertFalse(names.contains("Dirt Road by Green Forest"));
+            assertTrue(names.contains("Main Street"));
+            List<Double> xs = new ArrayList<>();
+            collectX(json.read("$.features[*].geometry.coordinates"), xs);
+            assertFalse(xs.isEmpty());
+            for (Double x : xs) {
+                assertTrue("Unclipped coordinate " + x, x >= 0);
+            }
+        } finally {
+            format.setGeneralizedGeometryCache(
+                    applicationContext.getBean(
+                            "vectorTilesGeneralizedGeometryCache", GeneralizedGeometryCache.class));
+            cache.dispose();
+        }
+    }
+
+    private DocumentContext getMap() throws Exception {
+        MockHttpServletResponse response =
+                getAsServletResponse(
+                        "wms?service=WMS&version=1.1.0&request=GetMap&layers="
+                                + getLayerId(MockData.ROAD_SEGMENTS)
+                                + "&styles=&bbox=-1,-1,1,1&width=768&height=330&srs=EPSG:4326"
+                                + "&format=application%2Fjson%3Btype%3Dgeojson");
+        assertEquals(200, response.getStatus());
+        return JsonPath.parse(response.getContentAsString());
+    }
+
+    /** Requests the map until the generalized geometries of the layer are on disk */
+    private void awaitLevels() throws Exception {
+        String id = getCatalog().getFeatureTypeByName(getLayerId(MockData.ROAD_SEGMENTS)).getId();
+        Resource directory =
+                getResourceLoader()
+                        .get(
+                                GeneralizedGeometryCache.DIRECTORY
+                                        + "/"
+                                        + URLEncoder.encode(id, "UTF-8"));
+        for (int i = 0; i < 100; i++) {
+            getMap();
+            if (directory.getType() == Resource.Type.DIRECTORY && !directory.list().isEmpty()) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Generalized geometries not built in time");
+    }
+
+    private void collectX(Object coordinates, List<Double> xs) {
+        JSONArray array = (JSONArray) coordinates;
+        if (!array.isEmpty() && array.get(0) instanceof Number) {
+            xs.add(((Number) array.get(0)).doubleValue());
+        } else {
+            for (Object child : array) {
+                collectX(child, xs);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import static org.geoserver.wms.vector.GeneralizedGeometryCache.DEFAULT_MAX_MEMORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.geoserver.platform.resource.FileSystemResourceStore;
+import org.geoserver.platform.resource.Resource;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.FeatureStore;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+public class GeneralizedGeometryCacheTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemResourceStore store;
+
+    private MemoryDataStore data;
+
+    private FeatureSource<?, ?> source;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemResourceStore(folder.getRoot());
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("lines");
+        tb.setCRS(DefaultGeographicCRS.WGS84);
+        tb.add("geom", LineString.class);
+        tb.add("name", String.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+
+        // a zig-zag line, with one point every 0.1 degrees, deviating by 0.05 degrees
+        GeometryFactory gf = new GeometryFactory();
+        Coordinate[] coordinates = new Coordinate[101];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(i * 0.1, i % 2 == 0 ? 0 : 0.05);
+        }
+        data = new MemoryDataStore(type);
+        data.addFeature(
+                SimpleFeatureBuilder.build(
+                        type,
+                        new Object[] {gf.createLineString(coordinates), "zigzag"},
+                        "lines.1"));
+        Polygon square =
+                gf.createPolygon(
+                        new Coordinate[] {
+                            new Coordinate(0, 0),
+                            new Coordinate(0, 1),
+                            new Coordinate(1, 1),
+                            new Coordinate(1, 0),
+                            new Coordinate(0, 0)
+                        });
+        data.addFeature(
+                SimpleFeatureBuilder.build(
+                        type, new Object[] {square.getExteriorRing(), "ring"}, "lines.2"));
+        source = data.getFeatureSource("lines");
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        GeneralizedGeometryCache cache = newCache();
+        try {
+            // level 0 would keep everything, a tolerance of 1/8 of a degree drops the zig-zag
+            GeneralizedGeometryCache.GeneralizedLevel level = cache.build(source, -3);
+            assertEquals(2, level.size());
+            Geometry zigzag = level.getGeometry("lines.1");
+            assertEquals(2, zigzag.getNumPoints());
+            // the corners of the square are kept
+            assertEquals(5, level.getGeometry("lines.2").getNumPoints());
+            assertNull(level.getGeometry("lines.3"));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        GeneralizedGeometryCache cache =
+                new GeneralizedGeometryCache(store, null, null, false, DEFAULT_MAX_MEMORY);
+        try {
+            assertNull(cache.getLevel("lines", source, 0.2));
+            Resource directory = store.get(GeneralizedGeometryCache.DIRECTORY);
+            assertEquals(Resource.Type.UNDEFINED, directory.getType());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        GeneralizedGeometryCache cache = newCache();
+        try {
+            // the layer would be millions of pixels wide
+            assertNull(cache.getLevel("lines", source, 1e-7));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testPersistAndInvalidate() throws Exception {
+        GeneralizedGeometryCache cache = newCache();
+        try {
+            GeneralizedGeometryCache.GeneralizedLevel level = awaitLevel(cache, 0.2);
+            assertEquals(2, level.size());
+        } finally {
+            cache.dispose();
+        }
+        Resource resource = store.get(GeneralizedGeometryCache.DIRECTORY + "/lines/-3.wkb");
+        assertEquals(Resource.Type.RESOURCE, resource.getType());
+        long modified = resource.lastmodified();
+
+        // read back from disk by a new instance, in the background
+        cache = newCache();
+        try {
+            GeneralizedGeometryCache.GeneralizedLevel level = awaitLevel(cache, 0.2);
+            assertEquals(2, level.getGeometry("lines.1").getNumPoints());
+            assertEquals(modified, resource.lastmodified());
+
+            cache.invalidate("lines");
+            assertEquals(Resource.Type.UNDEFINED, resource.getType());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testStaleOnDisk() throws Exception {
+        GeneralizedGeometryCache cache = newCache();
+        try {
+            awaitLevel(cache, 0.2);
+        } finally {
+            cache.dispose();
+        }
+
+        // the data changes while the cache is not listening, e.g., across a restart
+        SimpleFeatureType type = data.getSchema("lines");
+        LineString line =
+                new GeometryFactory()
+                        .createLineString(
+                                new Coordinate[] {new Coordinate(0, 0), new Coordinate(2, 2)});
+        data.addFeature(SimpleFeatureBuilder.build(type, new Object[] {line, "new"}, "lines.3"));
+
+        cache = newCache();
+        try {
+            // not loaded from disk, rebuilt with the new feature
+            assertNull(cache.getLevel("lines", source, 0.2));
+            GeneralizedGeometryCache.GeneralizedLevel level = awaitLevel(cache, 0.2);
+            assertEquals(3, level.size());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testInvalidateOnChange() throws Exception {
+        GeneralizedGeometryCache cache = newCache();
+        try {
+            awaitLevel(cache, 0.2);
+
+            @SuppressWarnings("unchecked")
+            FeatureStore<SimpleFeatureType, ?> fs = (FeatureStore<SimpleFeatureType, ?>) source;
+            fs.removeFeatures(Filter.INCLUDE);
+
+            Resource resource = store.get(GeneralizedGeometryCache.DIRECTORY + "/lines/-3.wkb");
+            assertEquals(Resource.Type.UNDEFINED, resource.getType());
+            assertNull(cache.getLevel("lines", source, 0.2));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testMaxMemory() throws Exception {
+        // too small to hold the level
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(store, null, null, true, 100);
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertNull(cache.getLevel("lines", source, 0.2));
+                Thread.sleep(50);
+            }
+            Resource directory = store.get(GeneralizedGeometryCache.DIRECTORY + "/lines");
+            assertEquals(Resource.Type.UNDEFINED, directory.getType());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    private GeneralizedGeometryCache newCache() {
+        return new GeneralizedGeometryCache(store, null, null, true, DEFAULT_MAX_MEMORY);
+    }
+
+    private GeneralizedGeometryCache.GeneralizedLevel awaitLevel(
+            GeneralizedGeometryCache cache, double distance) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            GeneralizedGeometryCache.GeneralizedLevel level =
+                    cache.getLevel("lines", source, distance);
+            if (level != null) {
+                return level;
+            }
+            Thread.sleep(50);
+        }
+        fail("Generalized level not built in time");
+        return null;
+    }
+}
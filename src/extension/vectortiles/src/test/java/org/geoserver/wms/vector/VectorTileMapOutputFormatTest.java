@@ -63,6 +63,7 @@
 import org.junit.Test;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.ParseException;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -177,6 +178,7 @@ public void before() throws Exception {
     public void disposeMapContents() {
         // just to avoid nagging logs
         mapContents.forEach(mc -> mc.dispose());
+        outputFormat.destroy();
     }
 
     // Test case for when a style has no active rules (i.e. when the current map scale is not
@@ -401,6 +403,53 @@ public void testSimple() throws Exception {
                         anyProperties());
     }
 
+    @Test
+    public void testParallelLayers() throws Exception {
+        ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
+        Rectangle renderingArea = new Rectangle(256, 256);
+        MemoryDataStore ds = new MemoryDataStore();
+        SimpleFeatureType squareType =
+                DataUtilities.createType("squares", "sp:String,ip:Integer,geom:Polygon:srid=4326");
+        ds.addFeature(
+                feature(squareType, "square1", "s1", 1, "POLYGON ((1 1, 1 5, 5 5, 5 1, 1 1))"));
+        ds.addFeature(
+                feature(
+                        squareType,
+                        "square2",
+                        "s2",
+                        2,
+                        "POLYGON ((10 10, 10 20, 20 20, 20 10, 10 10))"));
+        FeatureLayer polygonLayer =
+                new FeatureLayer(ds.getFeatureSource("squares"), defaultPolygonStyle);
+
+        WMSMapContent mapContent =
+                createMapContent(mapBounds, renderingArea, null, polygonLayer, pointLayer);
+
+        WebMap mockMap = mock(WebMap.class);
+        when(tileBuilderMock.build(same(mapContent))).thenReturn(mockMap);
+
+        outputFormat.setParallelLayers(true);
+        assertSame(mockMap, outputFormat.produceMap(mapContent));
+
+        // all features added, in layer order
+        InOrder inOrder = Mockito.inOrder(tileBuilderMock);
+        inOrder.verify(tileBuilderMock, times(2))
+                .addFeature(
+                        eq("squares"),
+                        any(String.class),
+                        eq("geom"),
+                        any(Geometry.class),
+                        anyProperties());
+        inOrder.verify(tileBuilderMock, times(3))
+                .addFeature(
+                        eq("points"),
+                        any(String.class),
+                        eq("geom"),
+                        any(Geometry.class),
+                        anyProperties());
+        inOrder.verify(tileBuilderMock).build(same(mapContent));
+    }
+
     @Test
     public void testCQLfilter() throws Exception {
         ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
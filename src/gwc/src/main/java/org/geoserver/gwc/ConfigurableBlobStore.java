@@ -532,6 +532,10 @@ private void configureBlobStore(GWCConfig gwcConfig, boolean initialization) {
         // Getting Cache configuration for the CacheProvider
         CacheConfiguration cacheConfiguration =
                 gwcConfig.getCacheConfigurations().get(cacheProvider);
+        if (cacheConfiguration == null) {
+            // providers other than the default one might not have been configured yet
+            cacheConfiguration = new CacheConfiguration();
+        }
         // Add the internal Cache configuration for the first time
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("Configuring cache");
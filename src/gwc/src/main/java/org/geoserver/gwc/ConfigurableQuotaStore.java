@@ -8,7 +8,9 @@
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.geoserver.platform.resource.ResourceStore;
 import org.geotools.util.logging.Logging;
 import org.geowebcache.diskquota.QuotaStore;
 import org.geowebcache.diskquota.storage.PageStats;
@@ -23,6 +25,11 @@
  * A {@link QuotaStore} delegating to another instance of {@link QuotaStore}, and allowing the
  * delegate to be changed at runtime.
  *
+ * <p>Usage updates can be batched through a {@link QuotaUpdateBatcher}, in which case the pending
+ * ones are applied before the structural changes and the used quota reads reach the delegate, so
+ * that it sees them in order. The page lookups of a cleanup pass do not flush, the pass starts from
+ * a used quota read that already did.
+ *
  * @author Andrea Aime - GeoSolutions
  */
 public class ConfigurableQuotaStore implements QuotaStore {
@@ -31,7 +38,10 @@ public class ConfigurableQuotaStore implements QuotaStore {
 
     private QuotaStore delegate;
 
+    private QuotaUpdateBatcher batcher;
+
     public void setStore(QuotaStore delegate) {
+        flushUpdates();
         this.delegate = delegate;
     }
 
@@ -43,6 +53,28 @@ public ConfigurableQuotaStore(QuotaStore delegate) {
         this.delegate = delegate;
     }
 
+    /**
+     * Batches the usage updates, applying them to the delegate every {@code interval} milliseconds
+     *
+     * @param resourceStore where to keep the journal of the batches being applied
+     */
+    void enableBatching(ResourceStore resourceStore, long interval) {
+        this.batcher = new QuotaUpdateBatcher(resourceStore, this::getStore, interval);
+    }
+
+    /** Applies the pending usage updates, if batching is enabled */
+    void flushUpdates() {
+        if (batcher != null) {
+            try {
+                batcher.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to apply the disk quota usage updates", e);
+            }
+        }
+    }
+
     @Override
     public TilePageCalculator getTilePageCalculator() {
         return delegate.getTilePageCalculator();
@@ -50,31 +82,37 @@ public TilePageCalculator getTilePageCalculator() {
 
     @Override
     public void createLayer(String layerName) throws InterruptedException {
+        flushUpdates();
         delegate.createLayer(layerName);
     }
 
     @Override
     public Quota getGloballyUsedQuota() throws InterruptedException {
+        flushUpdates();
         return delegate.getGloballyUsedQuota();
     }
 
     @Override
     public Quota getUsedQuotaByTileSetId(String tileSetId) throws InterruptedException {
+        flushUpdates();
         return delegate.getUsedQuotaByTileSetId(tileSetId);
     }
 
     @Override
     public void deleteLayer(String layerName) {
+        flushUpdates();
         delegate.deleteLayer(layerName);
     }
 
     @Override
     public void renameLayer(String oldLayerName, String newLayerName) throws InterruptedException {
+        flushUpdates();
         delegate.renameLayer(oldLayerName, newLayerName);
     }
 
     @Override
     public Quota getUsedQuotaByLayerName(String layerName) throws InterruptedException {
+        flushUpdates();
         return delegate.getUsedQuotaByLayerName(layerName);
     }
 
@@ -102,12 +140,19 @@ public void accept(TileSetVisitor visitor) {
     public void addToQuotaAndTileCounts(
             TileSet tileSet, Quota quotaDiff, Collection<PageStatsPayload> tileCountDiffs)
             throws InterruptedException {
+        if (batcher != null) {
+            batcher.addToQuotaAndTileCounts(tileSet, quotaDiff, tileCountDiffs);
+            return;
+        }
         delegate.addToQuotaAndTileCounts(tileSet, quotaDiff, tileCountDiffs);
     }
 
     @Override
     public Future<List<PageStats>> addHitsAndSetAccesTime(
             Collection<PageStatsPayload> statsUpdates) {
+        if (batcher != null) {
+            return batcher.addHitsAndSetAccesTime(statsUpdates);
+        }
         return delegate.addHitsAndSetAccesTime(statsUpdates);
     }
 
@@ -123,21 +168,27 @@ public TilePage getLeastRecentlyUsedPage(Set<String> layerNames) throws Interrup
 
     @Override
     public PageStats setTruncated(TilePage tilePage) throws InterruptedException {
+        flushUpdates();
         return delegate.setTruncated(tilePage);
     }
 
     @Override
     public void deleteGridSubset(String layerName, String gridSetId) {
+        flushUpdates();
         delegate.deleteGridSubset(layerName, gridSetId);
     }
 
     @Override
     public void close() throws Exception {
+        if (batcher != null) {
+            batcher.close();
+        }
         delegate.close();
     }
 
     @Override
     public void deleteParameters(String layerName, String parametersId) {
+        flushUpdates();
         delegate.deleteParameters(layerName, parametersId);
     }
 }
@@ -11,6 +11,7 @@
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.resource.ResourceStore;
 import org.geotools.util.logging.Logging;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.diskquota.ConfigLoader;
@@ -40,6 +41,10 @@ public class ConfigurableQuotaStoreProvider extends QuotaStoreProvider {
 
     private JDBCConfigurationStorage jdbcConfigManager;
 
+    private ResourceStore resourceStore;
+
+    long batchInterval = Long.getLong(QuotaUpdateBatcher.GWC_DISKQUOTA_BATCH_INTERVAL, 0);
+
     public ConfigurableQuotaStoreProvider(
             ConfigLoader loader,
             TilePageCalculator calculator,
@@ -59,6 +64,11 @@ public ConfigurableQuotaStoreProvider(
         this.diskQuotaEnabled = !disabled;
     }
 
+    /** Where to journal the batched usage updates, see {@link QuotaUpdateBatcher} */
+    public void setResourceStore(ResourceStore resourceStore) {
+        this.resourceStore = resourceStore;
+    }
+
     @Override
     public void reloadQuotaStore() throws ConfigurationException, IOException {
         if (!diskQuotaEnabled) {
@@ -97,7 +107,11 @@ public void reloadQuotaStore() throws ConfigurationException, IOException {
         }
 
         if (this.store == null) {
-            this.store = new ConfigurableQuotaStore(store);
+            ConfigurableQuotaStore configurable = new ConfigurableQuotaStore(store);
+            if (batchInterval > 0 && resourceStore != null) {
+                configurable.enableBatching(resourceStore, batchInterval);
+            }
+            this.store = configurable;
         } else {
             ConfigurableQuotaStore configurable = (ConfigurableQuotaStore) this.store;
             QuotaStore oldStore = configurable.getStore();
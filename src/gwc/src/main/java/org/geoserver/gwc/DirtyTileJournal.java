@@ -0,0 +1,451 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceStore;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.grid.BoundingBox;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+/**
+ * Keeps track of the regions of each tile layer that have been modified, so that the cached tiles
+ * can be revalidated lazily, when requested, instead of being eagerly deleted from the blob store.
+ * A tile is stale if it has been created before a modification that intersects its bounds.
+ *
+ * <p>The dirty regions are indexed per layer and gridset in a quadtree, in the gridset CRS, and
+ * persisted in the data directory so that a restart does not resurrect stale tiles. A background
+ * compactor retires the regions older than {@code GWC_DIRTY_JOURNAL_MAX_AGE} seconds, and the
+ * oldest ones beyond {@code GWC_DIRTY_JOURNAL_MAX_ENTRIES} per gridset, by eagerly truncating them,
+ * overlapping ones together: by then the tiles still cached in them are cold ones. A region stays
+ * in the journal until its truncation completes, so that its tiles are never served as clean
+ * meanwhile, and is retried at the next compaction if the truncation fails.
+ *
+ * <p>The journal is used only if the {@code GWC_LAZY_TRUNCATE} property is set to true, otherwise
+ * modified regions are truncated right away.
+ */
+public class DirtyTileJournal {
+
+    static final Logger LOGGER = Logging.getLogger(DirtyTileJournal.class);
+
+    /** Enables the journal */
+    public static final String GWC_LAZY_TRUNCATE = "GWC_LAZY_TRUNCATE";
+
+    /** Age in seconds after which dirty regions get eagerly truncated */
+    public static final String GWC_DIRTY_JOURNAL_MAX_AGE = "GWC_DIRTY_JOURNAL_MAX_AGE";
+
+    /** Maximum number of dirty regions kept for each layer and gridset */
+    public static final String GWC_DIRTY_JOURNAL_MAX_ENTRIES = "GWC_DIRTY_JOURNAL_MAX_ENTRIES";
+
+    static final String JOURNAL_DIRECTORY = "gwc-dirty-journal";
+
+    static final long COMPACTION_INTERVAL = 60;
+
+    /** Eagerly truncates a region of a layer, used to retire old dirty regions */
+    public interface Truncator {
+        /**
+         * Truncates the region, returning only once the tiles have been removed
+         *
+         * @return true if the region has been truncated, false if it failed and should be retried
+         */
+        boolean truncate(String layerName, String gridSetId, BoundingBox bounds);
+    }
+
+    private final ResourceStore resourceStore;
+
+    private final boolean enabled;
+
+    private final long maxAge;
+
+    private final int maxEntries;
+
+    private final Map<String, LayerJournal> journals = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService compactor;
+
+    public DirtyTileJournal(ResourceStore resourceStore) {
+        this(
+                resourceStore,
+                Boolean.getBoolean(GWC_LAZY_TRUNCATE),
+                Long.getLong(GWC_DIRTY_JOURNAL_MAX_AGE, 24 * 60 * 60) * 1000,
+                Integer.getInteger(GWC_DIRTY_JOURNAL_MAX_ENTRIES, 1000));
+    }
+
+    /**
+     * @param resourceStore where to persist the journal
+     * @param enabled whether the journal should be used at all
+     * @param maxAge age in milliseconds after which dirty regions are eagerly truncated
+     * @param maxEntries max number of dirty regions kept for each layer and gridset
+     */
+    public DirtyTileJournal(
+            ResourceStore resourceStore, boolean enabled, long maxAge, int maxEntries) {
+        this.resourceStore = resourceStore;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts the background compaction, retiring old regions with the given truncator */
+    public synchronized void start(Truncator truncator) {
+        if (!enabled || compactor != null) {
+            return;
+        }
+        compactor =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "GWC dirty tile journal compactor");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        compactor.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        compact(System.currentTimeMillis(), truncator);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to compact the dirty tile journal", e);
+                    }
+                },
+                COMPACTION_INTERVAL,
+                COMPACTION_INTERVAL,
+                TimeUnit.SECONDS);
+    }
+
+    /** Stops the background compaction */
+    public synchronized void dispose() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+    }
+
+    /** Records a modification of the given gridset bounds, happened at the given time */
+    public void markDirty(String layerName, String gridSetId, BoundingBox bounds, long timestamp) {
+        LayerJournal journal = getJournal(layerName);
+        journal.lock.writeLock().lock();
+        try {
+            journal.add(gridSetId, toEnvelope(bounds), timestamp);
+            journal.save();
+        } finally {
+            journal.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the tile with the given bounds, created at the given time, has been touched
+     * by a later modification
+     */
+    public boolean isDirty(
+            String layerName, String gridSetId, BoundingBox tileBounds, long created) {
+        LayerJournal journal = getJournal(layerName);
+        if (journal.isEmpty()) {
+            return false;
+        }
+        Envelope envelope = toEnvelope(tileBounds);
+        journal.lock.readLock().lock();
+        try {
+            Quadtree index = journal.regions.get(gridSetId);
+            if (index == null) {
+                return false;
+            }
+            for (Object o : index.query(envelope)) {
+                DirtyRegion region = (DirtyRegion) o;
+                if (region.timestamp > created && region.envelope.intersects(envelope)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            journal.lock.readLock().unlock();
+        }
+    }
+
+    /** Drops all the dirty regions of a layer, e.g., after it has been fully truncated */
+    public void clear(String layerName) {
+        LayerJournal journal = getJournal(layerName);
+        journal.lock.writeLock().lock();
+        try {
+            if (!journal.isEmpty()) {
+                journal.regions.clear();
+                journal.save();
+            }
+        } finally {
+            journal.lock.writeLock().unlock();
+        }
+    }
+
+    /** Moves the dirty regions of a renamed layer */
+    public void rename(String oldName, String newName) {
+        LayerJournal journal = getJournal(oldName);
+        journal.lock.writeLock().lock();
+        try {
+            LayerJournal renamed = new LayerJournal(newName);
+            renamed.regions.putAll(journal.regions);
+            journal.regions.clear();
+            journal.save();
+            renamed.save();
+            journals.put(newName, renamed);
+        } finally {
+            journal.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retires the regions older than the max age, and the oldest ones beyond the max number of
+     * entries, truncating them and then removing them from the journal
+     */
+    void compact(long now, Truncator truncator) {
+        for (LayerJournal journal : journals.values()) {
+            Map<String, List<RetiredArea>> retired = new HashMap<>();
+            journal.lock.readLock().lock();
+            try {
+                for (Map.Entry<String, Quadtree> entry : journal.regions.entrySet()) {
+                    List<RetiredArea> areas = retire(entry.getValue(), now);
+                    if (!areas.isEmpty()) {
+                        retired.put(entry.getKey(), areas);
+                    }
+                }
+            } finally {
+                journal.lock.readLock().unlock();
+            }
+            // truncate outside of the lock, so that tile requests can go on meanwhile, the
+            // regions are still in the journal, their tiles are considered stale until done
+            for (Map.Entry<String, List<RetiredArea>> entry : retired.entrySet()) {
+                for (RetiredArea area : entry.getValue()) {
+                    Envelope e = area.envelope;
+                    BoundingBox bounds =
+                            new BoundingBox(e.getMinX(), e.getMinY(), e.getMaxX(), e.getMaxY());
+                    if (truncator.truncate(journal.layerName, entry.getKey(), bounds)) {
+                        journal.remove(entry.getKey(), area.regions);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the regions to retire from the index, grouped in areas of overlapping regions, each
+     * to be truncated on its own
+     */
+    @SuppressWarnings("unchecked")
+    private List<RetiredArea> retire(Quadtree index, long now) {
+        List<DirtyRegion> regions = index.queryAll();
+        List<DirtyRegion> retired = new ArrayList<>();
+        if (regions.size() > maxEntries) {
+            regions.sort(Comparator.comparingLong(r -> r.timestamp));
+            retired.addAll(regions.subList(0, regions.size() - maxEntries));
+            regions = regions.subList(regions.size() - maxEntries, regions.size());
+        }
+        for (DirtyRegion region : regions) {
+            if (now - region.timestamp > maxAge) {
+                retired.add(region);
+            }
+        }
+        List<RetiredArea> areas = new ArrayList<>();
+        for (DirtyRegion region : retired) {
+            RetiredArea merged = new RetiredArea(region);
+            // merging grows the area, which might then overlap areas skipped before
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (Iterator<RetiredArea> it = areas.iterator(); it.hasNext(); ) {
+                    RetiredArea area = it.next();
+                    if (area.envelope.intersects(merged.envelope)) {
+                        merged.add(area);
+                        it.remove();
+                        grown = true;
+                    }
+                }
+            }
+            areas.add(merged);
+        }
+        return areas;
+    }
+
+    private LayerJournal getJournal(String layerName) {
+        return journals.computeIfAbsent(
+                layerName,
+                name -> {
+                    LayerJournal journal = new LayerJournal(name);
+                    journal.load();
+                    return journal;
+                });
+    }
+
+    private static Envelope toEnvelope(BoundingBox bounds) {
+        return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
+    }
+
+    /** A modified region, in the gridset CRS */
+    static class DirtyRegion {
+        final Envelope envelope;
+        final long timestamp;
+
+        DirtyRegion(Envelope envelope, long timestamp) {
+            this.envelope = envelope;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /** A group of overlapping regions being retired, truncated together */
+    static class RetiredArea {
+        final Envelope envelope;
+        final List<DirtyRegion> regions = new ArrayList<>();
+
+        RetiredArea(DirtyRegion region) {
+            this.envelope = new Envelope(region.envelope);
+            this.regions.add(region);
+        }
+
+        void add(RetiredArea other) {
+            envelope.expandToInclude(other.envelope);
+            regions.addAll(other.regions);
+        }
+    }
+
+    /** The dirty regions of a single layer, by gridset */
+    class LayerJournal {
+        final String layerName;
+
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        final Map<String, Quadtree> regions = new ConcurrentHashMap<>();
+
+        LayerJournal(String layerName) {
+            this.layerName = layerName;
+        }
+
+        boolean isEmpty() {
+            return regions.isEmpty();
+        }
+
+        void add(String gridSetId, Envelope envelope, long timestamp) {
+            regions.computeIfAbsent(gridSetId, k -> new Quadtree())
+                    .insert(envelope, new DirtyRegion(envelope, timestamp));
+        }
+
+        /** Removes the given regions, once truncated, and saves the journal */
+        void remove(String gridSetId, List<DirtyRegion> removed) {
+            lock.writeLock().lock();
+            try {
+                Quadtree index = regions.get(gridSetId);
+                if (index == null) {
+                    return;
+                }
+                for (DirtyRegion region : removed) {
+                    index.remove(region.envelope, region);
+                }
+                if (index.isEmpty()) {
+                    regions.remove(gridSetId);
+                }
+                save();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Resource getResource() {
+            try {
+                String fileName = URLEncoder.encode(layerName, "UTF-8") + ".journal";
+                return resourceStore.get(JOURNAL_DIRECTORY + "/" + fileName);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /** Loads the persisted regions, one per line as: gridset minx miny maxx maxy timestamp */
+        void load() {
+            Resource resource = getResource();
+            if (resource.getType() != Resource.Type.RESOURCE) {
+                return;
+            }
+            try (InputStream in = resource.in();
+                    BufferedReader reader =
+                            new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] values = line.split("\t");
+                    if (values.length != 6) {
+                        continue;
+                    }
+                    Envelope envelope =
+                            new Envelope(
+                                    Double.parseDouble(values[1]),
+                                    Double.parseDouble(values[3]),
+                                    Double.parseDouble(values[2]),
+                                    Double.parseDouble(values[4]));
+                    add(values[0], envelope, Long.parseLong(values[5]));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(
+                        Level.WARNING, "Failed to load the dirty tile journal of " + layerName, e);
+            }
+        }
+
+        /** Persists the regions, to be called while holding the write lock */
+        @SuppressWarnings("unchecked")
+        void save() {
+            Resource resource = getResource();
+            if (regions.isEmpty()) {
+                if (resource.getType() == Resource.Type.RESOURCE) {
+                    resource.delete();
+                }
+                return;
+            }
+            try (OutputStream out = resource.out();
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Quadtree> entry : regions.entrySet()) {
+                    for (DirtyRegion region : (List<DirtyRegion>) entry.getValue().queryAll()) {
+                        Envelope e = region.envelope;
+                        writer.write(
+                                entry.getKey()
+                                        + "\t"
+                                        + e.getMinX()
+                                        + "\t"
+                                        + e.getMinY()
+                                        + "\t"
+                                        + e.getMaxX()
+                                        + "\t"
+                                        + e.getMaxY()
+                                        + "\t"
+                                        + region.timestamp
+                                        + "\n");
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(
+                        Level.WARNING, "Failed to save the dirty tile journal of " + layerName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A low resolution occupancy grid over the bounds of a layer: a cell is set if at least one feature
+ * touches it. Used to tell apart areas that are certainly empty from the ones that might have data.
+ *
+ * <p>Features found outside of the grid extent (the declared bounds of the layer can be wrong) mark
+ * the cells along the border, and make the whole area outside the extent count as occupied.
+ */
+class Footprint {
+
+    /** Version of the persisted format, footprints in other formats get rebuilt */
+    static final int VERSION = 2;
+
+    final Envelope extent;
+
+    final int size;
+
+    final BitSet cells;
+
+    /** True if some data falls outside the grid extent */
+    boolean overflow;
+
+    Footprint(Envelope extent, int size) {
+        this(extent, size, new BitSet(size * size), false);
+    }
+
+    private Footprint(Envelope extent, int size, BitSet cells, boolean overflow) {
+        this.extent = extent;
+        this.size = size;
+        this.cells = cells;
+        this.overflow = overflow;
+    }
+
+    /** Marks as occupied the cells touched by the given envelope */
+    void mark(Envelope envelope) {
+        if (!extent.contains(envelope)) {
+            overflow = true;
+        }
+        if (!extent.intersects(envelope)) {
+            return;
+        }
+        int minCol = col(envelope.getMinX());
+        int maxCol = col(envelope.getMaxX());
+        int minRow = row(envelope.getMinY());
+        int maxRow = row(envelope.getMaxY());
+        for (int row = minRow; row <= maxRow; row++) {
+            cells.set(row * size + minCol, row * size + maxCol + 1);
+        }
+    }
+
+    /** Returns true if any cell touched by the envelope is occupied */
+    boolean intersects(Envelope envelope) {
+        if (overflow && !extent.contains(envelope)) {
+            return true;
+        }
+        if (!extent.intersects(envelope)) {
+            return false;
+        }
+        int minCol = col(envelope.getMinX());
+        int maxCol = col(envelope.getMaxX());
+        int minRow = row(envelope.getMinY());
+        int maxRow = row(envelope.getMaxY());
+        for (int row = minRow; row <= maxRow; row++) {
+            int next = cells.nextSetBit(row * size + minCol);
+            if (next >= 0 && next <= row * size + maxCol) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grows the occupied area by one cell in each direction, to account for symbols and labels
+     * painted across the feature bounds
+     */
+    void dilate() {
+        BitSet source = (BitSet) cells.clone();
+        for (int i = source.nextSetBit(0); i >= 0; i = source.nextSetBit(i + 1)) {
+            int row = i / size;
+            int col = i % size;
+            for (int r = Math.max(0, row - 1); r <= Math.min(size - 1, row + 1); r++) {
+                cells.set(
+                        r * size + Math.max(0, col - 1),
+                        r * size + Math.min(size - 1, col + 1) + 1);
+            }
+        }
+    }
+
+    private int col(double x) {
+        return clamp((x - extent.getMinX()) / extent.getWidth());
+    }
+
+    private int row(double y) {
+        return clamp((y - extent.getMinY()) / extent.getHeight());
+    }
+
+    private int clamp(double ratio) {
+        return Math.max(0, Math.min(size - 1, (int) (ratio * size)));
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeDouble(extent.getMinX());
+        out.writeDouble(extent.getMinY());
+        out.writeDouble(extent.getMaxX());
+        out.writeDouble(extent.getMaxY());
+        out.writeInt(size);
+        out.writeBoolean(overflow);
+        byte[] bytes = cells.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static Footprint read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported footprint version " + version);
+        }
+        double minX = in.readDouble();
+        double minY = in.readDouble();
+        double maxX = in.readDouble();
+        double maxY = in.readDouble();
+        int size = in.readInt();
+        boolean overflow = in.readBoolean();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new Footprint(
+                new Envelope(minX, maxX, minY, maxY), size, BitSet.valueOf(bytes), overflow);
+    }
+}
@@ -38,6 +38,7 @@
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.Cookie;
@@ -66,6 +67,7 @@
 import org.geoserver.gwc.layer.GeoServerTileLayer;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfo;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfoImpl;
+import org.geoserver.gwc.seed.TileRequestDensity;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.HttpErrorCodeException;
 import org.geoserver.ows.Request;
@@ -219,6 +221,13 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
 
     private BlobStoreAggregator blobStoreAggregator;
 
+    /** Max time, in milliseconds, to wait for the truncation of a retired dirty region */
+    static final long RETIRE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private DirtyTileJournal dirtyTileJournal;
+
+    private TileFootprints tileFootprints;
+
     /**
      * Constructor for the GWC mediator
      *
@@ -333,6 +342,12 @@ public void destroy() throws Exception {
         if (this.catalogStyleChangeListener != null) {
             catalog.removeListener(this.catalogStyleChangeListener);
         }
+        if (this.dirtyTileJournal != null) {
+            this.dirtyTileJournal.dispose();
+        }
+        if (this.tileFootprints != null) {
+            this.tileFootprints.dispose();
+        }
         GWC.set(null);
     }
 
@@ -344,6 +359,78 @@ public GWCConfig getConfig() {
         return gwcConfigPersister.getConfig();
     }
 
+    /**
+     * Sets the journal used to revalidate tiles lazily, instead of truncating them eagerly, when
+     * the {@link #truncate(String, ReferencedEnvelope) modified bounds} of a layer are reported
+     */
+    public void setDirtyTileJournal(DirtyTileJournal dirtyTileJournal) {
+        if (this.dirtyTileJournal != null) {
+            this.dirtyTileJournal.dispose();
+        }
+        this.dirtyTileJournal = dirtyTileJournal;
+        if (dirtyTileJournal != null) {
+            dirtyTileJournal.start(this::retireRegion);
+        }
+    }
+
+    public DirtyTileJournal getDirtyTileJournal() {
+        return dirtyTileJournal;
+    }
+
+    /**
+     * Sets the footprints used to answer tiles falling in areas without data with a shared empty
+     * tile, instead of rendering them
+     */
+    public void setTileFootprints(TileFootprints tileFootprints) {
+        if (this.tileFootprints != null) {
+            this.tileFootprints.dispose();
+        }
+        this.tileFootprints = tileFootprints;
+    }
+
+    public TileFootprints getTileFootprints() {
+        return tileFootprints;
+    }
+
+    private boolean isFootprintEnabled() {
+        return tileFootprints != null && tileFootprints.isEnabled();
+    }
+
+    /**
+     * Returns true if the given bounds, expressed in the gridset CRS, are known not to contain any
+     * data of the layer, and thus can only result in an empty tile
+     *
+     * @param zoomLevel the zoom level the bounds are rendered at
+     */
+    public boolean isOutsideFootprint(
+            GeoServerTileLayer layer, GridSubset gridSubset, BoundingBox bounds, int zoomLevel) {
+        return isFootprintEnabled() && tileFootprints.isEmpty(layer, gridSubset, bounds, zoomLevel);
+    }
+
+    private boolean isLazyTruncate() {
+        return dirtyTileJournal != null && dirtyTileJournal.isEnabled();
+    }
+
+    /**
+     * Returns true if the tile just fetched from the cache has been created before a modification
+     * of its area, and thus needs to be rendered again
+     */
+    public boolean isTileStale(TileLayer layer, ConveyorTile tile) {
+        if (!isLazyTruncate() || tile.getStorageObject() == null) {
+            return false;
+        }
+        GridSubset gridSubset = layer.getGridSubset(tile.getGridSetId());
+        if (gridSubset == null) {
+            return false;
+        }
+        BoundingBox tileBounds = gridSubset.boundsFromIndex(tile.getTileIndex());
+        return dirtyTileJournal.isDirty(
+                layer.getName(),
+                tile.getGridSetId(),
+                tileBounds,
+                tile.getStorageObject().getCreated());
+    }
+
     /** Fully truncates the given layer, including any ParameterFilter */
     public void truncate(final String layerName) {
         checkNotNull(layerName, "layerName is null");
@@ -359,6 +446,12 @@ public void truncate(final String layerName) {
         for (String gridSetId : gridSubsets) {
             deleteCacheByGridSetId(layerName, gridSetId);
         }
+        if (isLazyTruncate()) {
+            dirtyTileJournal.clear(layerName);
+        }
+        if (isFootprintEnabled()) {
+            tileFootprints.remove(layerName);
+        }
     }
 
     /** Truncates the cache for the given layer/style combination */
@@ -421,6 +514,10 @@ public void truncate(final String layerName, final ReferencedEnvelope bounds)
 
         final TileLayer tileLayer = tld.getTileLayer(layerName);
         final Collection<String> gridSubSets = tileLayer.getGridSubsets();
+        final long timestamp = System.currentTimeMillis();
+        if (isFootprintEnabled() && bounds != null) {
+            tileFootprints.expand(layerName, bounds);
+        }
 
         /*
          * Create a truncate task for each gridSubset (CRS), format and style
@@ -431,20 +528,75 @@ public void truncate(final String layerName, final ReferencedEnvelope bounds)
             if (intersectingBounds == null) {
                 continue;
             }
-            try {
-                // This iterates over all cached parameters and all formats
-                new TruncateBboxRequest(layerName, intersectingBounds, gridSetId)
-                        .doTruncate(storageBroker, tileBreeder);
-            } catch (StorageException | GeoWebCacheException e) {
-                log.log(
-                        Level.WARNING,
-                        e,
-                        () ->
-                                String.format(
-                                        "Error while truncating modified bounds for layer %s gridset %s",
-                                        layerName, gridSetId));
+            if (isLazyTruncate()) {
+                // tiles will be re-rendered when requested, see isTileStale
+                dirtyTileJournal.markDirty(layerName, gridSetId, intersectingBounds, timestamp);
+            } else {
+                truncateRegion(layerName, gridSetId, intersectingBounds);
+            }
+        }
+    }
+
+    private void truncateRegion(String layerName, String gridSetId, BoundingBox bounds) {
+        try {
+            // This iterates over all cached parameters and all formats
+            new TruncateBboxRequest(layerName, bounds, gridSetId)
+                    .doTruncate(storageBroker, tileBreeder);
+        } catch (StorageException | GeoWebCacheException e) {
+            log.log(
+                    Level.WARNING,
+                    e,
+                    () ->
+                            String.format(
+                                    "Error while truncating modified bounds for layer %s gridset %s",
+                                    layerName, gridSetId));
+        }
+    }
+
+    /**
+     * Truncates a dirty region retired from the {@link DirtyTileJournal}, waiting for the truncate
+     * tasks of the layer to complete, as the journal forgets the region afterwards
+     */
+    private boolean retireRegion(String layerName, String gridSetId, BoundingBox bounds) {
+        try {
+            new TruncateBboxRequest(layerName, bounds, gridSetId)
+                    .doTruncate(storageBroker, tileBreeder);
+            long deadline = System.currentTimeMillis() + RETIRE_TIMEOUT;
+            while (isTruncating(layerName)) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.warning(
+                            "Timed out waiting for the truncation of dirty tiles of layer "
+                                    + layerName
+                                    + ", will retry later");
+                    return false;
+                }
+                Thread.sleep(100);
+            }
+            return true;
+        } catch (StorageException | GeoWebCacheException e) {
+            log.log(
+                    Level.WARNING,
+                    e,
+                    () ->
+                            String.format(
+                                    "Error while truncating dirty tiles for layer %s gridset %s",
+                                    layerName, gridSetId));
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isTruncating(String layerName) {
+        Iterator<GWCTask> tasks = tileBreeder.getRunningAndPendingTasks();
+        while (tasks.hasNext()) {
+            GWCTask task = tasks.next();
+            if (task.getType() == TRUNCATE && layerName.equals(task.getLayerName())) {
+                return true;
             }
         }
+        return false;
     }
 
     public TruncateAllRequest truncateAll() throws GeoWebCacheException, StorageException {
@@ -652,6 +804,13 @@ private Set<String> getCachedStyles(final String layerName) {
      *     false} if there wasn't a cache for that layer.
      */
     public synchronized boolean layerRemoved(final String prefixedName) {
+        if (isLazyTruncate()) {
+            dirtyTileJournal.clear(prefixedName);
+        }
+        if (isFootprintEnabled()) {
+            tileFootprints.remove(prefixedName);
+        }
+        TileRequestDensity.remove(prefixedName);
         try {
             return storageBroker.delete(prefixedName);
         } catch (StorageException e) {
@@ -1444,6 +1603,14 @@ public void layerRenamed(String oldLayerName, String newLayerName) {
             log.info("Renaming GWC TileLayer '" + oldLayerName + "' as '" + newLayerName + "'");
             // /embeddedConfig.rename(oldLayerName, newLayerName);
             storageBroker.rename(oldLayerName, newLayerName);
+            if (isLazyTruncate()) {
+                dirtyTileJournal.rename(oldLayerName, newLayerName);
+            }
+            if (isFootprintEnabled()) {
+                // rebuilt on demand under the new name
+                tileFootprints.remove(oldLayerName);
+            }
+            TileRequestDensity.remove(oldLayerName);
         } catch (StorageException e) {
             log.log(Level.WARNING, e.getMessage(), e);
             throw new RuntimeException(e);
@@ -20,6 +20,7 @@
 import net.opengis.wfs.TransactionType;
 import net.opengis.wfs.UpdateElementType;
 import org.eclipse.emf.ecore.EObject;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wfs.TransactionCallback;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionEventType;
@@ -35,6 +36,7 @@
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
  * Listens to transactions (so far only issued by WFS) and truncates the cache for the affected area
@@ -43,13 +45,16 @@
  * <p>A Spring bean singleton of this class needs to be declared in order for GeoServer transactions
  * to pick it up automatically and forward transaction events to it.
  *
- * <p>TODO: upon deletion, only truncate if feature count > 0
+ * <p>By default the cache is truncated as soon as the transaction is committed. Setting the {@code
+ * GWC_TRUNCATE_DELAY} property to a number of milliseconds makes the dirty regions of each layer
+ * accumulate for that time window instead, and get truncated as a single region, see {@link
+ * TruncationQueue}.
  *
  * @author Arne Kepp
  * @author Gabriel Roldan
  * @version $Id$
  */
-public class GWCTransactionListener implements TransactionCallback {
+public class GWCTransactionListener implements TransactionCallback, DisposableBean {
 
     private static Logger log = Logging.getLogger(GWCTransactionListener.class);
 
@@ -57,9 +62,73 @@ public class GWCTransactionListener implements TransactionCallback {
 
     static final String GWC_TRANSACTION_INFO_PLACEHOLDER = "GWC_TRANSACTION_INFO_PLACEHOLDER";
 
+    /** Time window in milliseconds dirty regions are accumulated for, zero truncates right away */
+    static final String GWC_TRUNCATE_DELAY = "GWC_TRUNCATE_DELAY";
+
+    private final TruncationQueue queue;
+
     /** @param gwc */
     public GWCTransactionListener(final GWC gwc) {
+        this(gwc, getTruncateDelay());
+    }
+
+    private static long getTruncateDelay() {
+        String value = GeoServerExtensions.getProperty(GWC_TRUNCATE_DELAY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warning(
+                    "Invalid value for "
+                            + GWC_TRUNCATE_DELAY
+                            + ": "
+                            + value
+                            + ", truncating right after each transaction");
+            return 0;
+        }
+    }
+
+    /**
+     * @param gwc
+     * @param truncateDelay the time window, in milliseconds, dirty regions are accumulated for
+     *     before truncating, zero or negative to truncate right after each transaction
+     */
+    public GWCTransactionListener(final GWC gwc, long truncateDelay) {
         this.gwc = gwc;
+        this.queue = truncateDelay > 0 ? new TruncationQueue(gwc, truncateDelay) : null;
+    }
+
+    /** Truncates the dirty regions still queued, if any */
+    @Override
+    public void destroy() {
+        if (queue != null) {
+            queue.dispose();
+        }
+    }
+
+    /** Returns true if the dirty regions are queued and truncated after a time window */
+    public boolean isTruncationQueued() {
+        return queue != null;
+    }
+
+    /** Returns the number of dirty regions queued so far, zero if truncations are not queued */
+    public long getQueuedRegions() {
+        return queue != null ? queue.getSubmittedRegions() : 0;
+    }
+
+    /**
+     * Returns the number of truncations issued by the queue so far, zero if truncations are not
+     * queued
+     */
+    public long getQueuedTruncations() {
+        return queue != null ? queue.getIssuedTruncations() : 0;
+    }
+
+    /** Returns the number of merged dirty regions waiting to be truncated */
+    public int getPendingRegions() {
+        return queue != null ? queue.getPendingRegions() : 0;
     }
 
     /**
@@ -122,6 +191,10 @@ private void afterTransactionInternal(final TransactionRequest transaction, bool
             if (dirtyRegion == null) {
                 continue;
             }
+            if (queue != null) {
+                queue.add(tileLayerName, dirtyRegion);
+                continue;
+            }
             try {
                 gwc.truncate(tileLayerName, dirtyRegion);
             } catch (GeoWebCacheException e) {
@@ -208,6 +281,10 @@ private void dataStoreChangeInternal(final TransactionEvent event) {
 
         final SimpleFeatureCollection affectedFeatures = event.getAffectedFeatures();
         final ReferencedEnvelope affectedBounds = affectedFeatures.getBounds();
+        if (affectedBounds == null || affectedBounds.isEmpty()) {
+            // e.g. a delete matching no features, nothing to truncate
+            return;
+        }
 
         final TransactionType transaction = event.getRequest();
         TransactionRequest request = TransactionRequest.adapt(transaction);
@@ -0,0 +1,451 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+import org.geowebcache.storage.blobstore.memory.CacheProvider;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+
+/**
+ * {@link CacheProvider} keeping the most frequently requested tiles in memory, in front of the blob
+ * store configured for each layer, be it on the file system or a remote one. Once selected in the
+ * in memory caching configuration it is used by the {@link ConfigurableBlobStore} like any other
+ * provider.
+ *
+ * <p>The cache is bounded by the total size of the tiles, and uses TinyLFU admission: when the
+ * cache is full a tile is admitted only if it has been requested more often, recently, than the
+ * least recently used tiles it would evict. This keeps popular tiles, such as the low zoom levels,
+ * from being flushed by scans of rarely requested ones, e.g. while seeding. Hit ratios are tracked
+ * for each layer, and tiles are invalidated along with their layer on truncation.
+ */
+public class HotTileCacheProvider implements CacheProvider {
+
+    static final Logger LOGGER = Logging.getLogger(HotTileCacheProvider.class);
+
+    static final long BYTES_TO_MB = 1024 * 1024;
+
+    /** Tile size used to estimate the number of entries, to size the frequency sketches */
+    static final int AVERAGE_TILE_SIZE = 16 * 1024;
+
+    /** Upper bound on the number of segments, regardless of the concurrency level */
+    static final int MAX_SEGMENTS = 64;
+
+    private volatile Segment[] segments;
+
+    private volatile long maxSize;
+
+    private final Set<String> uncachedLayers = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, LayerStatistics> layerStatistics = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public HotTileCacheProvider(CacheConfiguration configuration) {
+        configure(configuration);
+    }
+
+    @Override
+    public TileObject getTileObj(TileObject obj) {
+        String layerName = obj.getLayerName();
+        if (uncachedLayers.contains(layerName)) {
+            return null;
+        }
+        String key = getKey(obj);
+        TileObject result = segmentFor(key).get(key);
+        LayerStatistics stats =
+                layerStatistics.computeIfAbsent(layerName, l -> new LayerStatistics());
+        if (result != null) {
+            hits.increment();
+            stats.hits.increment();
+        } else {
+            misses.increment();
+            stats.misses.increment();
+        }
+        return result;
+    }
+
+    @Override
+    public void putTileObj(TileObject obj) {
+        if (uncachedLayers.contains(obj.getLayerName())) {
+            return;
+        }
+        byte[] contents;
+        try {
+            contents = getContents(obj);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read tile contents, not caching it", e);
+            return;
+        }
+        if (contents == null) {
+            return;
+        }
+        TileObject cached =
+                TileObject.createCompleteTileObject(
+                        obj.getLayerName(),
+                        obj.getXYZ(),
+                        obj.getGridSetId(),
+                        obj.getBlobFormat(),
+                        obj.getParameters(),
+                        new ByteArrayResource(contents));
+        cached.setParametersId(obj.getParametersId());
+        cached.setCreated(obj.getCreated());
+        String key = getKey(obj);
+        evictions.add(segmentFor(key).put(key, cached, contents.length));
+    }
+
+    /** Reads the tile contents, making sure the tile blob can still be read afterwards */
+    private byte[] getContents(TileObject obj) throws IOException {
+        Resource blob = obj.getBlob();
+        if (blob == null) {
+            return null;
+        }
+        try (InputStream is = blob.getInputStream()) {
+            if (is == null) {
+                return null;
+            }
+            byte[] contents = ByteStreams.toByteArray(is);
+            if (!(blob instanceof ByteArrayResource)) {
+                obj.setBlob(new ByteArrayResource(contents));
+            }
+            return contents;
+        }
+    }
+
+    @Override
+    public void removeTileObj(TileObject obj) {
+        String key = getKey(obj);
+        segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void removeLayer(String layername) {
+        for (Segment segment : segments) {
+            segment.removeLayer(layername);
+        }
+        layerStatistics.remove(layername);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public void reset() {
+        clear();
+        uncachedLayers.clear();
+        layerStatistics.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requestCount = hitCount + missCount;
+        long actualSize = 0;
+        for (Segment segment : segments) {
+            actualSize += segment.getSize();
+        }
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.setHitCount(hitCount);
+        statistics.setMissCount(missCount);
+        statistics.setRequestCount(requestCount);
+        statistics.setEvictionCount(evictions.sum());
+        statistics.setHitRate(requestCount > 0 ? hitCount * 100d / requestCount : 0);
+        statistics.setMissRate(requestCount > 0 ? missCount * 100d / requestCount : 0);
+        statistics.setTotalSize(maxSize);
+        statistics.setActualSize(actualSize);
+        statistics.setCurrentMemoryOccupation(maxSize > 0 ? actualSize * 100d / maxSize : 0);
+        return statistics;
+    }
+
+    /** Returns the hit ratio, between 0 and 1, of each layer requested since the last reset */
+    public Map<String, Double> getLayerHitRatios() {
+        Map<String, Double> result = new HashMap<>();
+        layerStatistics.forEach((layer, stats) -> result.put(layer, stats.getHitRatio()));
+        return result;
+    }
+
+    /**
+     * Applies the memory limit and concurrency level of the configuration. The eviction policy and
+     * time are not used, the cached tiles are dropped.
+     */
+    @Override
+    public synchronized void configure(CacheConfiguration configuration) {
+        long maxSize = configuration.getHardMemoryLimit() * BYTES_TO_MB;
+        int count = Math.max(1, Math.min(MAX_SEGMENTS, configuration.getConcurrencyLevel()));
+        Segment[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxSize / count);
+        }
+        this.maxSize = maxSize;
+        this.segments = segments;
+    }
+
+    @Override
+    public void addUncachedLayer(String layername) {
+        uncachedLayers.add(layername);
+        removeLayer(layername);
+    }
+
+    @Override
+    public void removeUncachedLayer(String layername) {
+        uncachedLayers.remove(layername);
+    }
+
+    @Override
+    public boolean containsUncachedLayer(String layername) {
+        return uncachedLayers.contains(layername);
+    }
+
+    @Override
+    public List<EvictionPolicy> getSupportedPolicies() {
+        return Collections.singletonList(EvictionPolicy.LFU);
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return false;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "Hot tile cache (TinyLFU)";
+    }
+
+    private Segment segmentFor(String key) {
+        Segment[] segments = this.segments;
+        return segments[Math.floorMod(spread(key.hashCode()), segments.length)];
+    }
+
+    static String getKey(TileObject obj) {
+        return obj.getLayerName()
+                + "_"
+                + obj.getGridSetId()
+                + "_"
+                + Arrays.toString(obj.getXYZ())
+                + "_"
+                + obj.getParametersId()
+                + "_"
+                + obj.getBlobFormat();
+    }
+
+    static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /** Hits and misses of a single layer */
+    static class LayerStatistics {
+        final LongAdder hits = new LongAdder();
+
+        final LongAdder misses = new LongAdder();
+
+        double getHitRatio() {
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+            return total > 0 ? (double) hitCount / total : 0;
+        }
+    }
+
+    /** A cached tile, along with its size */
+    static class Entry {
+        final TileObject tile;
+
+        final int size;
+
+        Entry(TileObject tile, int size) {
+            this.tile = tile;
+            this.size = size;
+        }
+    }
+
+    /** An independently locked, size bounded, part of the cache */
+    static class Segment {
+
+        final long maxSize;
+
+        final FrequencySketch sketch;
+
+        /** Entries in access order, the least recently used first */
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long size;
+
+        Segment(long maxSize) {
+            this.maxSize = maxSize;
+            this.sketch = new FrequencySketch((int) Math.min(1 << 24, maxSize / AVERAGE_TILE_SIZE));
+        }
+
+        synchronized TileObject get(String key) {
+            sketch.increment(key);
+            Entry entry = entries.get(key);
+            return entry == null ? null : entry.tile;
+        }
+
+        /**
+         * Adds the tile if there is enough room, or if it is requested more frequently than the
+         * tiles that would have to be evicted to make room for it
+         *
+         * @return the number of evicted tiles
+         */
+        synchronized int put(String key, TileObject tile, int tileSize) {
+            if (tileSize > maxSize) {
+                return 0;
+            }
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                size -= previous.size;
+            }
+            // find the victims first, so that nothing is evicted if the tile is not admitted
+            List<String> victims = null;
+            long available = maxSize - size;
+            if (available < tileSize) {
+                int frequency = sketch.frequency(key);
+                victims = new ArrayList<>();
+                Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                while (available < tileSize && it.hasNext()) {
+                    Map.Entry<String, Entry> victim = it.next();
+                    if (sketch.frequency(victim.getKey()) >= frequency) {
+                        return 0;
+                    }
+                    victims.add(victim.getKey());
+                    available += victim.getValue().size;
+                }
+                for (String victim : victims) {
+                    size -= entries.remove(victim).size;
+                }
+            }
+            entries.put(key, new Entry(tile, tileSize));
+            size += tileSize;
+            return victims == null ? 0 : victims.size();
+        }
+
+        synchronized void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                size -= entry.size;
+            }
+        }
+
+        synchronized void removeLayer(String layerName) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (layerName.equals(entry.tile.getLayerName())) {
+                    size -= entry.size;
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            size = 0;
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Count-min sketch estimating how often keys have been requested, with four bit counters that
+     * are halved periodically, so that the estimates favour recent requests
+     */
+    static class FrequencySketch {
+
+        static final int MAX_COUNT = 15;
+
+        private final byte[][] counters;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+            this.counters = new byte[4][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < counters.length; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < counters.length; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            return spread(hash * (2 * row + 1) + row) & mask;
+        }
+
+        private void age() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceStore;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.diskquota.QuotaStore;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TileSet;
+
+/**
+ * Accumulates the usage updates sent to a {@link QuotaStore}, quota and tile count deltas as well
+ * as page hits, in striped in-memory counters, and applies them to the store in a single batch
+ * every {@code GWC_DISKQUOTA_BATCH_INTERVAL} milliseconds, so that recording them costs a few
+ * atomic increments instead of a database round trip.
+ *
+ * <p>Before being applied each batch is written in a journal in the data directory, removed once
+ * the store has been updated, and replayed at startup if found, so that a crash while flushing does
+ * not lose the batch. As the tile sets are updated one by one, the ones already applied are marked
+ * in a companion file tagged with the batch sequence number, and skipped when the batch is replayed
+ * or retried after a failure. Updates still in memory are lost on a crash, at most one interval
+ * worth of them, which the disk quota subsystem tolerates like any other approximation of its usage
+ * statistics.
+ */
+class QuotaUpdateBatcher {
+
+    static final Logger LOGGER = Logging.getLogger(QuotaUpdateBatcher.class);
+
+    /** Interval in milliseconds between batch updates, batching is disabled if not positive */
+    static final String GWC_DISKQUOTA_BATCH_INTERVAL = "GWC_DISKQUOTA_BATCH_INTERVAL";
+
+    static final String JOURNAL = "gwc-diskquota-batch.journal";
+
+    /** The tile sets of the journaled batch already applied, and whether the hits were */
+    static final String APPLIED = "gwc-diskquota-batch.applied";
+
+    private final ResourceStore resourceStore;
+
+    private final Supplier<QuotaStore> target;
+
+    private volatile Batch current = new Batch();
+
+    private final ScheduledExecutorService flusher;
+
+    /** Sequence number of the last journaled batch, guarded by the flush lock */
+    private long sequence = System.currentTimeMillis();
+
+    /**
+     * @param resourceStore where to keep the journal
+     * @param target provides the store the batches are applied to
+     * @param interval interval between flushes in milliseconds, or zero to flush only on demand
+     */
+    QuotaUpdateBatcher(ResourceStore resourceStore, Supplier<QuotaStore> target, long interval) {
+        this.resourceStore = resourceStore;
+        this.target = target;
+        replay();
+        if (interval > 0) {
+            flusher =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "GWC disk quota batch flusher");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            flusher.scheduleWithFixedDelay(
+                    this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /** Records quota and tile count deltas, to be applied at the next flush */
+    void addToQuotaAndTileCounts(
+            TileSet tileSet, Quota quotaDiff, Collection<PageStatsPayload> tileCountDiffs) {
+        Batch batch = enter();
+        try {
+            TileSetUsage usage = batch.getUsage(tileSet.getId());
+            usage.tileSet = tileSet;
+            if (quotaDiff != null) {
+                usage.bytes.add(quotaDiff.getBytes().longValue());
+            }
+            if (tileCountDiffs != null) {
+                for (PageStatsPayload payload : tileCountDiffs) {
+                    usage.getPage(payload.getPage()).tiles.add(payload.getNumTiles());
+                }
+            }
+        } finally {
+            batch.inflight.decrement();
+        }
+    }
+
+    /**
+     * Records page hits and access times, to be applied at the next flush. The returned future
+     * completes with the page stats returned by the store for the pages of the given updates.
+     */
+    Future<List<PageStats>> addHitsAndSetAccesTime(Collection<PageStatsPayload> statsUpdates) {
+        Batch batch = enter();
+        try {
+            HitRequest request = new HitRequest();
+            for (PageStatsPayload payload : statsUpdates) {
+                TilePage page = payload.getPage();
+                PageUsage usage = batch.getUsage(page.getTileSetId()).getPage(page);
+                usage.hits.add(payload.getNumHits());
+                usage.lastAccess.accumulate(payload.getLastAccessTime());
+                request.pages.add(getKey(page));
+            }
+            batch.hitRequests.add(request);
+            return request.future;
+        } finally {
+            batch.inflight.decrement();
+        }
+    }
+
+    /** Registers as a writer of the current batch, the caller must decrement its inflight count */
+    private Batch enter() {
+        while (true) {
+            Batch batch = current;
+            batch.inflight.increment();
+            if (batch == current) {
+                return batch;
+            }
+            // swapped meanwhile, the flusher might be already reading it
+            batch.inflight.decrement();
+        }
+    }
+
+    /** Applies all the pending updates to the store */
+    synchronized void flush() throws InterruptedException {
+        Batch batch = current;
+        current = new Batch();
+        while (batch.inflight.sum() > 0) {
+            Thread.yield();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long batchSequence = ++sequence;
+        writeJournal(batchSequence, batch);
+        Set<String> applied = new HashSet<>();
+        boolean hitsApplied = false;
+        try {
+            QuotaStore store = target.get();
+            for (TileSetUsage usage : batch.usages.values()) {
+                if (applyQuota(usage, store)) {
+                    applied.add(usage.tileSetId);
+                    writeApplied(batchSequence, applied, false);
+                }
+            }
+            applyHits(batch, store);
+            hitsApplied = true;
+            writeApplied(batchSequence, applied, true);
+            deleteJournal();
+        } catch (InterruptedException | RuntimeException e) {
+            // give the rest another try at the next flush, the journal is rewritten then
+            merge(batch, applied, hitsApplied);
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to apply the disk quota usage updates", e);
+        }
+    }
+
+    /** Stops the periodic flushes, and applies the pending updates */
+    void close() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Applies the quota and tile count deltas of a tile set
+     *
+     * @return true if the store has been updated
+     */
+    private boolean applyQuota(TileSetUsage usage, QuotaStore store) throws InterruptedException {
+        List<PageStatsPayload> tileCounts = new ArrayList<>();
+        for (PageUsage page : usage.pages.values()) {
+            for (long tiles = page.tiles.sum(); tiles != 0; ) {
+                int chunk = toInt(tiles);
+                PageStatsPayload payload = new PageStatsPayload(page.page);
+                payload.setNumTiles(chunk);
+                tileCounts.add(payload);
+                tiles -= chunk;
+            }
+        }
+        long bytes = usage.bytes.sum();
+        if (usage.tileSet == null || (bytes == 0 && tileCounts.isEmpty())) {
+            return false;
+        }
+        Quota quotaDiff = new Quota();
+        quotaDiff.setBytes(BigInteger.valueOf(bytes));
+        store.addToQuotaAndTileCounts(usage.tileSet, quotaDiff, tileCounts);
+        return true;
+    }
+
+    /**
+     * Applies the page hits of the batch, and completes each hit request with the stats of its own
+     * pages
+     */
+    private void applyHits(Batch batch, QuotaStore store) throws InterruptedException {
+        List<PageStatsPayload> hits = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (TileSetUsage usage : batch.usages.values()) {
+            for (PageUsage page : usage.pages.values()) {
+                for (long numHits = page.hits.sum(); numHits != 0; ) {
+                    int chunk = toInt(numHits);
+                    PageStatsPayload payload = new PageStatsPayload(page.page);
+                    payload.setNumHits(chunk);
+                    payload.setLastAccessTime(page.lastAccess.get());
+                    hits.add(payload);
+                    keys.add(getKey(page.page));
+                    numHits -= chunk;
+                }
+            }
+        }
+        List<PageStats> stats = Collections.emptyList();
+        if (!hits.isEmpty()) {
+            try {
+                stats = store.addHitsAndSetAccesTime(hits).get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        // the store returns the stats in the same order as the payloads
+        Map<String, PageStats> byPage = new HashMap<>();
+        if (stats.size() == keys.size()) {
+            for (int i = 0; i < stats.size(); i++) {
+                byPage.put(keys.get(i), stats.get(i));
+            }
+        }
+        for (HitRequest request : batch.hitRequests) {
+            List<PageStats> result = new ArrayList<>();
+            for (String page : request.pages) {
+                PageStats pageStats = byPage.get(page);
+                if (pageStats != null && !result.contains(pageStats)) {
+                    result.add(pageStats);
+                }
+            }
+            request.future.complete(result);
+        }
+    }
+
+    /**
+     * Clamps a count to the int range of {@link PageStatsPayload}, the rest goes in more payloads
+     */
+    private static int toInt(long count) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, count));
+    }
+
+    private static String getKey(TilePage page) {
+        return page.getTileSetId() + "/" + TileSetUsage.getKey(page);
+    }
+
+    /** Adds back the updates of a batch that could not be applied */
+    private void merge(Batch failed, Set<String> applied, boolean hitsApplied) {
+        Batch batch = enter();
+        try {
+            batch.add(failed, applied, hitsApplied);
+        } finally {
+            batch.inflight.decrement();
+        }
+    }
+
+    private Resource getJournal() {
+        return resourceStore.get(JOURNAL);
+    }
+
+    private Resource getApplied() {
+        return resourceStore.get(APPLIED);
+    }
+
+    private void writeJournal(long batchSequence, Batch batch) {
+        try (OutputStream os = getJournal().out();
+                DataOutputStream out = new DataOutputStream(os)) {
+            out.writeLong(batchSequence);
+            out.writeInt(batch.usages.size());
+            for (TileSetUsage usage : batch.usages.values()) {
+                out.writeUTF(usage.tileSetId);
+                TileSet tileSet = usage.tileSet;
+                out.writeBoolean(tileSet != null);
+                if (tileSet != null) {
+                    out.writeUTF(tileSet.getLayerName());
+                    out.writeUTF(tileSet.getGridsetId());
+                    out.writeUTF(tileSet.getBlobFormat());
+                    out.writeBoolean(tileSet.getParametersId() != null);
+                    if (tileSet.getParametersId() != null) {
+                        out.writeUTF(tileSet.getParametersId());
+                    }
+                }
+                out.writeLong(usage.bytes.sum());
+                out.writeInt(usage.pages.size());
+                for (PageUsage page : usage.pages.values()) {
+                    out.writeInt(page.page.getPageX());
+                    out.writeInt(page.page.getPageY());
+                    out.writeInt(page.page.getZoomLevel());
+                    out.writeLong(page.tiles.sum());
+                    out.writeLong(page.hits.sum());
+                    out.writeLong(page.lastAccess.get());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to journal the disk quota usage updates", e);
+        }
+    }
+
+    /** Marks the tile sets, and the hits, of the journaled batch already applied */
+    private void writeApplied(long batchSequence, Set<String> applied, boolean hitsApplied) {
+        try (OutputStream os = getApplied().out();
+                DataOutputStream out = new DataOutputStream(os)) {
+            out.writeLong(batchSequence);
+            out.writeBoolean(hitsApplied);
+            out.writeInt(applied.size());
+            for (String tileSetId : applied) {
+                out.writeUTF(tileSetId);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to mark the applied disk quota usage updates", e);
+        }
+    }
+
+    private void deleteJournal() {
+        // the journal first, the marks are ignored without it
+        for (Resource resource : Arrays.asList(getJournal(), getApplied())) {
+            if (resource.getType() == Resource.Type.RESOURCE) {
+                resource.delete();
+            }
+        }
+    }
+
+    /** Applies the batch left over by a crash during a flush, if any */
+    private void replay() {
+        Resource journal = getJournal();
+        if (journal.getType() != Resource.Type.RESOURCE) {
+            return;
+        }
+        Batch batch = new Batch();
+        long batchSequence;
+        try (InputStream is = journal.in();
+                DataInputStream in = new DataInputStream(is)) {
+            batchSequence = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TileSetUsage usage = batch.getUsage(in.readUTF());
+                if (in.readBoolean()) {
+                    String layerName = in.readUTF();
+                    String gridsetId = in.readUTF();
+                    String blobFormat = in.readUTF();
+                    String parametersId = in.readBoolean() ? in.readUTF() : null;
+                    usage.tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
+                }
+                usage.bytes.add(in.readLong());
+                int pages = in.readInt();
+                for (int j = 0; j < pages; j++) {
+                    TilePage page =
+                            new TilePage(usage.tileSetId, in.readInt(), in.readInt(), in.readInt());
+                    PageUsage pageUsage = usage.getPage(page);
+                    pageUsage.tiles.add(in.readLong());
+                    pageUsage.hits.add(in.readLong());
+                    pageUsage.lastAccess.accumulate(in.readLong());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Discarding unreadable disk quota journal", e);
+            deleteJournal();
+            return;
+        }
+        // skip what the interrupted flush already applied
+        Set<String> applied = new HashSet<>();
+        boolean hitsApplied = false;
+        Resource marks = getApplied();
+        if (marks.getType() == Resource.Type.RESOURCE) {
+            try (InputStream is = marks.in();
+                    DataInputStream in = new DataInputStream(is)) {
+                if (in.readLong() == batchSequence) {
+                    hitsApplied = in.readBoolean();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        applied.add(in.readUTF());
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Ignoring unreadable disk quota journal marks", e);
+            }
+        }
+        Batch remaining = new Batch();
+        remaining.add(batch, applied, hitsApplied);
+        if (hitsApplied && remaining.isEmpty()) {
+            // applied in full, only the cleanup was missing
+            deleteJournal();
+            return;
+        }
+        LOGGER.info("Replaying the disk quota usage updates left over by the last shutdown");
+        // picked up by the first flush, journaled again with a new sequence number
+        sequence = Math.max(sequence, batchSequence);
+        current = remaining;
+    }
+
+    /** The updates accumulated between two flushes */
+    static class Batch {
+
+        /** Number of threads currently adding updates to the batch */
+        final LongAdder inflight = new LongAdder();
+
+        final Map<String, TileSetUsage> usages = new ConcurrentHashMap<>();
+
+        final Queue<HitRequest> hitRequests = new ConcurrentLinkedQueue<>();
+
+        TileSetUsage getUsage(String tileSetId) {
+            return usages.computeIfAbsent(tileSetId, TileSetUsage::new);
+        }
+
+        boolean isEmpty() {
+            return usages.isEmpty() && hitRequests.isEmpty();
+        }
+
+        /**
+         * Adds the updates of another batch, but the quotas of the tile sets and the hits already
+         * applied
+         */
+        void add(Batch other, Set<String> appliedTileSets, boolean hitsApplied) {
+            for (TileSetUsage otherUsage : other.usages.values()) {
+                boolean quotaApplied = appliedTileSets.contains(otherUsage.tileSetId);
+                if (quotaApplied && hitsApplied) {
+                    continue;
+                }
+                TileSetUsage usage = getUsage(otherUsage.tileSetId);
+                if (otherUsage.tileSet != null) {
+                    usage.tileSet = otherUsage.tileSet;
+                }
+                if (!quotaApplied) {
+                    usage.bytes.add(otherUsage.bytes.sum());
+                }
+                for (PageUsage otherPage : otherUsage.pages.values()) {
+                    PageUsage page = usage.getPage(otherPage.page);
+                    if (!quotaApplied) {
+                        page.tiles.add(otherPage.tiles.sum());
+                    }
+                    if (!hitsApplied) {
+                        page.hits.add(otherPage.hits.sum());
+                        page.lastAccess.accumulate(otherPage.lastAccess.get());
+                    }
+                }
+            }
+            if (!hitsApplied) {
+                hitRequests.addAll(other.hitRequests);
+            }
+        }
+    }
+
+    /** The pending updates of a tile set */
+    static class TileSetUsage {
+
+        final String tileSetId;
+
+        volatile TileSet tileSet;
+
+        final LongAdder bytes = new LongAdder();
+
+        final Map<String, PageUsage> pages = new ConcurrentHashMap<>();
+
+        TileSetUsage(String tileSetId) {
+            this.tileSetId = tileSetId;
+        }
+
+        PageUsage getPage(TilePage page) {
+            return pages.computeIfAbsent(getKey(page), k -> new PageUsage(page));
+        }
+
+        static String getKey(TilePage page) {
+            return page.getPageX() + "," + page.getPageY() + "," + page.getZoomLevel();
+        }
+    }
+
+    /** A caller waiting for the stats of the pages it recorded hits for */
+    static class HitRequest {
+
+        final CompletableFuture<List<PageStats>> future = new CompletableFuture<>();
+
+        final List<String> pages = new ArrayList<>();
+    }
+
+    /** The pending updates of a tile page */
+    static class PageUsage {
+
+        final TilePage page;
+
+        final LongAdder tiles = new LongAdder();
+
+        final LongAdder hits = new LongAdder();
+
+        final LongAccumulator lastAccess = new LongAccumulator(Math::max, 0);
+
+        PageUsage(TilePage page) {
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceStore;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.renderer.lite.MetaBufferEstimator;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.Feature;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Computes, persists and queries the {@link Footprint} of cached vector layers, so that tiles
+ * certainly not containing any data can be answered with a shared, pre-encoded, empty tile, and
+ * skipped while seeding, instead of being rendered, encoded and stored.
+ *
+ * <p>Footprints are built in the background, from the feature bounds, the first time a layer is
+ * requested, and persisted in the data directory. Until a footprint is available tiles are rendered
+ * as usual. Edits reported through {@link #expand} add occupied cells, a change of the layer bounds
+ * or a full truncation cause a rebuild.
+ *
+ * <p>The area checked for data is grown by the rendering buffer of the layer styles, so that
+ * symbols painted across the feature bounds are not cut. Layers whose styles can paint far from the
+ * features, or in ways that cannot be estimated, are always rendered: rendering transformations,
+ * labels, geometry functions or non default geometries, symbols with a dynamic size or larger than
+ * {@link #MAX_BUFFER} pixels.
+ *
+ * <p>Only used if the {@code GWC_EMPTY_TILE_FOOTPRINT} property is set to true.
+ */
+public class TileFootprints {
+
+    static final Logger LOGGER = Logging.getLogger(TileFootprints.class);
+
+    /** Enables the footprints */
+    public static final String GWC_EMPTY_TILE_FOOTPRINT = "GWC_EMPTY_TILE_FOOTPRINT";
+
+    static final String FOOTPRINT_DIRECTORY = "gwc-footprints";
+
+    /** Number of cells of the footprint grids, on each axis */
+    static final int SIZE = 256;
+
+    /** Styles painting farther than this from the features, in pixels, are not supported */
+    static final int MAX_BUFFER = 256;
+
+    /** Marks a layer whose styles cannot be used along with the footprint */
+    static final int UNSUPPORTED = -1;
+
+    private static final Map<String, byte[]> EMPTY_TILES = new ConcurrentHashMap<>();
+
+    private final ResourceStore resourceStore;
+
+    private final boolean enabled;
+
+    /** The footprints loaded so far, along with the layer bounds they have been computed for */
+    private final Map<String, LayerFootprint> footprints = new ConcurrentHashMap<>();
+
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    /** The rendering buffer of each layer, along with the styles it was computed from */
+    private final Map<String, StyleBuffer> styleBuffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService builder =
+            Executors.newSingleThreadExecutor(
+                    r -> {
+                        Thread t = new Thread(r, "GWC footprint builder");
+                        t.setDaemon(true);
+                        return t;
+                    });
+
+    public TileFootprints(ResourceStore resourceStore) {
+        this(resourceStore, Boolean.getBoolean(GWC_EMPTY_TILE_FOOTPRINT));
+    }
+
+    public TileFootprints(ResourceStore resourceStore, boolean enabled) {
+        this.resourceStore = resourceStore;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the given bounds, in the gridset CRS, are known not to contain any data of
+     * the layer, rendering buffer included. Returns false if the footprint is not available yet,
+     * cannot be computed, or cannot be used with the layer styles.
+     *
+     * @param zoomLevel the zoom level the bounds are rendered at, used to compute the buffer
+     */
+    public boolean isEmpty(
+            GeoServerTileLayer layer, GridSubset gridSubset, BoundingBox bounds, int zoomLevel) {
+        int buffer = getStyleBuffer(layer);
+        if (buffer == UNSUPPORTED) {
+            return false;
+        }
+        LayerFootprint footprint = getFootprint(layer);
+        if (footprint == null) {
+            return false;
+        }
+        try {
+            CoordinateReferenceSystem gridSetCrs =
+                    CRS.decode("EPSG:" + gridSubset.getSRS().getNumber(), true);
+            double distance = buffer * gridSubset.getGridSet().getGrid(zoomLevel).getResolution();
+            ReferencedEnvelope envelope =
+                    new ReferencedEnvelope(
+                            bounds.getMinX() - distance,
+                            bounds.getMaxX() + distance,
+                            bounds.getMinY() - distance,
+                            bounds.getMaxY() + distance,
+                            gridSetCrs);
+            ReferencedEnvelope transformed = envelope.transform(footprint.crs, true);
+            return !footprint.grid.intersects(transformed);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not check the footprint of " + layer.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the rendering buffer of the layer styles, in pixels, or {@link #UNSUPPORTED}. The
+     * result is cached until the styles change, parsed styles are cached by the catalog and
+     * replaced when modified.
+     */
+    int getStyleBuffer(GeoServerTileLayer layer) {
+        PublishedInfo published = layer.getPublishedInfo();
+        if (!(published instanceof LayerInfo)) {
+            return UNSUPPORTED;
+        }
+        LayerInfo layerInfo = (LayerInfo) published;
+        List<Style> styles = new ArrayList<>();
+        try {
+            Set<StyleInfo> styleInfos = new LinkedHashSet<>();
+            styleInfos.add(layerInfo.getDefaultStyle());
+            styleInfos.addAll(layerInfo.getStyles());
+            for (StyleInfo styleInfo : styleInfos) {
+                if (styleInfo != null) {
+                    styles.add(styleInfo.getStyle());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read the styles of " + layer.getName(), e);
+            return UNSUPPORTED;
+        }
+        StyleBuffer cached = styleBuffers.get(layer.getName());
+        if (cached != null && cached.isFor(styles)) {
+            return cached.buffer;
+        }
+        int buffer = computeStyleBuffer(layerInfo, styles);
+        styleBuffers.put(layer.getName(), new StyleBuffer(styles, buffer));
+        return buffer;
+    }
+
+    /** Computes the rendering buffer of the given styles, or {@link #UNSUPPORTED} */
+    static int computeStyleBuffer(LayerInfo layer, List<Style> styles) {
+        String geometryName = null;
+        try {
+            if (layer.getResource() instanceof FeatureTypeInfo) {
+                GeometryDescriptor geometry =
+                        ((FeatureTypeInfo) layer.getResource())
+                                .getFeatureType()
+                                .getGeometryDescriptor();
+                geometryName = geometry != null ? geometry.getLocalName() : null;
+            }
+        } catch (IOException e) {
+            return UNSUPPORTED;
+        }
+        MetaBufferEstimator estimator = new MetaBufferEstimator();
+        for (Style style : styles) {
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                if (fts.getTransformation() != null) {
+                    return UNSUPPORTED;
+                }
+                for (Rule rule : fts.rules()) {
+                    for (Symbolizer symbolizer : rule.symbolizers()) {
+                        if (symbolizer instanceof TextSymbolizer
+                                || !isDefaultGeometry(symbolizer.getGeometry(), geometryName)) {
+                            return UNSUPPORTED;
+                        }
+                    }
+                    estimator.visit(rule);
+                }
+            }
+        }
+        int buffer = estimator.getBuffer();
+        Integer layerBuffer = layer.getMetadata().get(LayerInfo.BUFFER, Integer.class);
+        if (layerBuffer != null) {
+            buffer = Math.max(buffer, layerBuffer);
+        }
+        if (!estimator.isEstimateAccurate() || buffer > MAX_BUFFER) {
+            return UNSUPPORTED;
+        }
+        return buffer;
+    }
+
+    private static boolean isDefaultGeometry(Expression geometry, String geometryName) {
+        if (geometry == null) {
+            return true;
+        }
+        if (geometry instanceof PropertyName) {
+            String name = ((PropertyName) geometry).getPropertyName();
+            return name.isEmpty() || name.equals(geometryName);
+        }
+        return false;
+    }
+
+    /** Marks as occupied the given area, e.g., after it has been edited */
+    public void expand(String layerName, ReferencedEnvelope bounds) {
+        LayerFootprint footprint = footprints.get(layerName);
+        if (footprint == null) {
+            // not loaded, drop the persisted one too as it cannot be updated
+            remove(layerName);
+            return;
+        }
+        try {
+            ReferencedEnvelope transformed = bounds.transform(footprint.crs, true);
+            if (!footprint.bounds.contains((Envelope) transformed)) {
+                // the layer grew, the bounds will be updated and the footprint rebuilt
+                remove(layerName);
+                return;
+            }
+            synchronized (footprint) {
+                footprint.grid.mark(transformed);
+                save(layerName, footprint.grid);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not update the footprint of " + layerName, e);
+            remove(layerName);
+        }
+    }
+
+    /** Forgets the footprint of the layer, it will be rebuilt on the next request */
+    public void remove(String layerName) {
+        footprints.remove(layerName);
+        styleBuffers.remove(layerName);
+        Resource resource = getResource(layerName);
+        if (resource.getType() == Resource.Type.RESOURCE) {
+            resource.delete();
+        }
+    }
+
+    public void dispose() {
+        builder.shutdownNow();
+    }
+
+    private LayerFootprint getFootprint(GeoServerTileLayer layer) {
+        FeatureTypeInfo featureType = getFeatureType(layer);
+        if (featureType == null) {
+            return null;
+        }
+        ReferencedEnvelope bounds;
+        try {
+            bounds = featureType.boundingBox();
+        } catch (Exception e) {
+            return null;
+        }
+        if (bounds == null || bounds.getWidth() <= 0 || bounds.getHeight() <= 0) {
+            return null;
+        }
+        String layerName = layer.getName();
+        LayerFootprint footprint = footprints.get(layerName);
+        if (footprint != null && footprint.bounds.equals(bounds)) {
+            return footprint;
+        }
+        Footprint grid = load(layerName, bounds);
+        if (grid != null) {
+            footprint = new LayerFootprint(bounds, grid);
+            footprints.put(layerName, footprint);
+            return footprint;
+        }
+        if (building.add(layerName)) {
+            builder.submit(
+                    () -> {
+                        try {
+                            Footprint built = build(featureType, bounds);
+                            save(layerName, built);
+                            footprints.put(layerName, new LayerFootprint(bounds, built));
+                        } catch (Exception e) {
+                            LOGGER.log(
+                                    Level.WARNING,
+                                    "Failed to build the footprint of " + layerName,
+                                    e);
+                        } finally {
+                            building.remove(layerName);
+                        }
+                    });
+        }
+        return null;
+    }
+
+    private FeatureTypeInfo getFeatureType(GeoServerTileLayer layer) {
+        PublishedInfo published = layer.getPublishedInfo();
+        if (published instanceof LayerInfo) {
+            ResourceInfo resource = ((LayerInfo) published).getResource();
+            if (resource instanceof FeatureTypeInfo) {
+                return (FeatureTypeInfo) resource;
+            }
+        }
+        return null;
+    }
+
+    /** Marks the cells touched by the bounds of each feature */
+    Footprint build(FeatureTypeInfo featureType, ReferencedEnvelope bounds) throws IOException {
+        LOGGER.fine("Building the footprint of " + featureType.prefixedName());
+        FeatureSource<? extends FeatureType, ? extends Feature> source =
+                featureType.getFeatureSource(null, null);
+        GeometryDescriptor geometry = source.getSchema().getGeometryDescriptor();
+        Footprint footprint = new Footprint(bounds, SIZE);
+        if (geometry == null) {
+            return footprint;
+        }
+        Query query = new Query(null, Filter.INCLUDE, new String[] {geometry.getLocalName()});
+        try (FeatureIterator<? extends Feature> it = source.getFeatures(query).features()) {
+            while (it.hasNext()) {
+                GeometryAttribute attribute = it.next().getDefaultGeometryProperty();
+                if (attribute != null && attribute.getValue() instanceof Geometry) {
+                    footprint.mark(((Geometry) attribute.getValue()).getEnvelopeInternal());
+                }
+            }
+        }
+        footprint.dilate();
+        return footprint;
+    }
+
+    private Resource getResource(String layerName) {
+        try {
+            String fileName = URLEncoder.encode(layerName, "UTF-8") + ".footprint";
+            return resourceStore.get(FOOTPRINT_DIRECTORY + "/" + fileName);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Loads the persisted footprint, if any and built for the current layer bounds */
+    private Footprint load(String layerName, ReferencedEnvelope bounds) {
+        Resource resource = getResource(layerName);
+        if (resource.getType() != Resource.Type.RESOURCE) {
+            return null;
+        }
+        try (InputStream in = resource.in()) {
+            Footprint footprint = Footprint.read(new DataInputStream(in));
+            return footprint.extent.equals(new Envelope(bounds)) ? footprint : null;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to load the footprint of " + layerName, e);
+            return null;
+        }
+    }
+
+    private void save(String layerName, Footprint footprint) {
+        try (OutputStream out = getResource(layerName).out();
+                DataOutputStream dos = new DataOutputStream(out)) {
+            footprint.write(dos);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the footprint of " + layerName, e);
+        }
+    }
+
+    /** Returns a fully transparent PNG tile of the given size, encoded once and shared */
+    public static byte[] getEmptyTile(int width, int height) {
+        return EMPTY_TILES.computeIfAbsent(
+                width + "x" + height,
+                k -> {
+                    BufferedImage image =
+                            new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                    try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+                        ImageIO.write(image, "png", bos);
+                        return bos.toByteArray();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
+    /** A style buffer, along with the styles it has been computed for */
+    static class StyleBuffer {
+        final List<Style> styles;
+
+        final int buffer;
+
+        StyleBuffer(List<Style> styles, int buffer) {
+            this.styles = styles;
+            this.buffer = buffer;
+        }
+
+        /** Checks the styles are the same instances the buffer was computed for */
+        boolean isFor(List<Style> other) {
+            if (other.size() != styles.size()) {
+                return false;
+            }
+            for (int i = 0; i < styles.size(); i++) {
+                if (styles.get(i) != other.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** A footprint grid, along with the bounds it has been built for */
+    static class LayerFootprint {
+        final ReferencedEnvelope bounds;
+
+        final CoordinateReferenceSystem crs;
+
+        final Footprint grid;
+
+        LayerFootprint(ReferencedEnvelope bounds, Footprint grid) {
+            this.bounds = bounds;
+            this.crs = bounds.getCoordinateReferenceSystem();
+            this.grid = grid;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+
+/**
+ * Accumulates the dirty regions of each tile layer for a configurable time window, and then
+ * truncates them. Regions overlapping or close to each other are merged, so that a burst of small
+ * WFS-T edits in the same area results in one truncate request per gridset, instead of one per
+ * transaction, while edits far apart do not truncate all the tiles in between. The number of
+ * regions kept for a layer is bounded, past it the new regions are merged with the pending region
+ * growing the least.
+ *
+ * <p>The dirty regions are expected to be already expressed in the declared CRS of the tile layer.
+ * Should two regions of the same layer have different CRSs (e.g., the layer got reconfigured) the
+ * pending one is flushed right away.
+ */
+class TruncationQueue {
+
+    private static final Logger LOGGER = Logging.getLogger(TruncationQueue.class);
+
+    private final GWC gwc;
+
+    private final long delay;
+
+    /**
+     * Two regions are merged if the gap between them is no larger than this fraction of the largest
+     * span of the two
+     */
+    static final double NEAR_RATIO = 0.1;
+
+    /** Maximum number of separate regions kept for each layer */
+    static final int MAX_REGIONS = 32;
+
+    private final ScheduledExecutorService executor;
+
+    /** The pending dirty regions, by tile layer name. Guarded by "this" */
+    private final Map<String, List<ReferencedEnvelope>> pending = new HashMap<>();
+
+    private final AtomicLong submittedRegions = new AtomicLong();
+
+    private final AtomicLong issuedTruncations = new AtomicLong();
+
+    /**
+     * @param gwc the GWC facade used to perform the truncation
+     * @param delay the time window, in milliseconds, dirty regions are accumulated for
+     */
+    TruncationQueue(GWC gwc, long delay) {
+        this.gwc = gwc;
+        this.delay = delay;
+        this.executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "GWC truncation queue");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    /** Adds a dirty region for the given tile layer, scheduling its truncation if needed */
+    void add(String tileLayerName, ReferencedEnvelope dirtyRegion) {
+        submittedRegions.incrementAndGet();
+        List<ReferencedEnvelope> incompatible = null;
+        synchronized (this) {
+            List<ReferencedEnvelope> regions = pending.get(tileLayerName);
+            if (regions == null) {
+                regions = new ArrayList<>();
+                pending.put(tileLayerName, regions);
+                executor.schedule(() -> flush(tileLayerName), delay, TimeUnit.MILLISECONDS);
+            } else if (!CRS.equalsIgnoreMetadata(
+                    regions.get(0).getCoordinateReferenceSystem(),
+                    dirtyRegion.getCoordinateReferenceSystem())) {
+                // keep the new region queued, the scheduled flush is still pending
+                incompatible = regions;
+                regions = new ArrayList<>();
+                pending.put(tileLayerName, regions);
+            }
+            merge(regions, new ReferencedEnvelope(dirtyRegion));
+        }
+        if (incompatible != null) {
+            for (ReferencedEnvelope region : incompatible) {
+                truncate(tileLayerName, region);
+            }
+        }
+    }
+
+    /** Adds the region to the list, merging it with the regions it overlaps or is close to */
+    static void merge(List<ReferencedEnvelope> regions, ReferencedEnvelope region) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (Iterator<ReferencedEnvelope> it = regions.iterator(); it.hasNext(); ) {
+                ReferencedEnvelope other = it.next();
+                if (isNear(region, other)) {
+                    // the grown region might now be close to others, check again
+                    region.expandToInclude(other);
+                    it.remove();
+                    merged = true;
+                }
+            }
+        }
+        if (regions.size() < MAX_REGIONS) {
+            regions.add(region);
+        } else {
+            getLeastGrowing(regions, region).expandToInclude(region);
+        }
+    }
+
+    static boolean isNear(ReferencedEnvelope a, ReferencedEnvelope b) {
+        double span =
+                Math.max(
+                        Math.max(a.getWidth(), a.getHeight()),
+                        Math.max(b.getWidth(), b.getHeight()));
+        double gapX = Math.max(a.getMinX(), b.getMinX()) - Math.min(a.getMaxX(), b.getMaxX());
+        double gapY = Math.max(a.getMinY(), b.getMinY()) - Math.min(a.getMaxY(), b.getMaxY());
+        return Math.max(gapX, gapY) <= span * NEAR_RATIO;
+    }
+
+    private static ReferencedEnvelope getLeastGrowing(
+            List<ReferencedEnvelope> regions, ReferencedEnvelope region) {
+        ReferencedEnvelope result = null;
+        double minGrowth = Double.POSITIVE_INFINITY;
+        for (ReferencedEnvelope candidate : regions) {
+            ReferencedEnvelope union = new ReferencedEnvelope(candidate);
+            union.expandToInclude(region);
+            double growth = union.getArea() - candidate.getArea();
+            if (growth < minGrowth) {
+                minGrowth = growth;
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    /** Truncates the pending dirty regions of the given layer, if any */
+    void flush(String tileLayerName) {
+        List<ReferencedEnvelope> dirtyRegions;
+        synchronized (this) {
+            dirtyRegions = pending.remove(tileLayerName);
+        }
+        if (dirtyRegions != null) {
+            for (ReferencedEnvelope dirtyRegion : dirtyRegions) {
+                truncate(tileLayerName, dirtyRegion);
+            }
+        }
+    }
+
+    /** Truncates all the pending dirty regions */
+    void flushAll() {
+        List<String> layers;
+        synchronized (this) {
+            layers = new ArrayList<>(pending.keySet());
+        }
+        for (String layer : layers) {
+            flush(layer);
+        }
+    }
+
+    /** Stops the scheduler, truncating the pending regions so that no stale tiles are left */
+    void dispose() {
+        executor.shutdownNow();
+        flushAll();
+    }
+
+    private void truncate(String tileLayerName, ReferencedEnvelope dirtyRegion) {
+        long truncations = issuedTruncations.incrementAndGet();
+        try {
+            gwc.truncate(tileLayerName, dirtyRegion);
+        } catch (GeoWebCacheException | RuntimeException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Error truncating tile layer "
+                            + tileLayerName
+                            + " for transaction affected bounds "
+                            + dirtyRegion,
+                    e);
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Truncated "
+                            + tileLayerName
+                            + " at "
+                            + dirtyRegion
+                            + ", "
+                            + submittedRegions.get()
+                            + " dirty regions coalesced into "
+                            + truncations
+                            + " truncations so far");
+        }
+    }
+
+    /** Returns the number of dirty regions submitted so far */
+    long getSubmittedRegions() {
+        return submittedRegions.get();
+    }
+
+    /** Returns the number of truncations issued so far */
+    long getIssuedTruncations() {
+        return issuedTruncations.get();
+    }
+
+    /** Returns the number of dirty regions waiting to be truncated, after merging */
+    synchronized int getPendingRegions() {
+        return pending.values().stream().mapToInt(List::size).sum();
+    }
+}
@@ -7,6 +7,7 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.io.ByteStreams;
 import it.geosolutions.jaiext.BufferedImageAdapter;
 import java.awt.Point;
 import java.awt.Rectangle;
@@ -14,6 +15,7 @@
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import javax.media.jai.PlanarImage;
 import org.geoserver.gwc.GWC;
@@ -39,6 +41,9 @@ public class GeoServerMetaTile extends MetaTile {
 
     private WebMap metaTileMap;
 
+    /** The encoded tiles, collected for the requests waiting on this meta tile, if not null */
+    private byte[][] encodedTiles;
+
     public GeoServerMetaTile(
             GridSubset gridSubset,
             MimeType responseFormat,
@@ -58,6 +63,30 @@ public void setWebMap(WebMap webMap) {
         }
     }
 
+    /** Makes the meta tile keep a copy of each tile it encodes, see {@link #getEncodedTiles()} */
+    void collectEncodedTiles() {
+        this.encodedTiles = new byte[tiles.length][];
+    }
+
+    /**
+     * Returns the tiles encoded so far, by tile index, or null if {@link #collectEncodedTiles()}
+     * has not been called
+     */
+    byte[][] getEncodedTiles() {
+        return encodedTiles;
+    }
+
+    @Override
+    public boolean writeTileToStream(final int tileIdx, Resource target) throws IOException {
+        boolean written = encodeTile(tileIdx, target);
+        if (written && encodedTiles != null) {
+            try (InputStream in = target.getInputStream()) {
+                encodedTiles[tileIdx] = in == null ? new byte[0] : ByteStreams.toByteArray(in);
+            }
+        }
+        return written;
+    }
+
     /**
      * Creates the {@link RenderedImage} corresponding to the tile at index {@code tileIdx} and uses
      * a {@link RenderedImageMapResponse} to encode it into the {@link #getResponseFormat() response
@@ -66,8 +95,7 @@ public void setWebMap(WebMap webMap) {
      * @see org.geowebcache.layer.MetaTile#writeTileToStream(int, org.geowebcache.io.Resource)
      * @see RenderedImageMapResponse#write
      */
-    @Override
-    public boolean writeTileToStream(final int tileIdx, Resource target) throws IOException {
+    private boolean encodeTile(final int tileIdx, Resource target) throws IOException {
 
         checkNotNull(metaTileMap, "webMap is not set");
 
@@ -13,8 +13,10 @@
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
 import java.awt.Dimension;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -29,6 +31,12 @@
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,8 +58,10 @@
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.impl.ModificationProxy;
 import org.geoserver.gwc.GWC;
+import org.geoserver.gwc.TileFootprints;
 import org.geoserver.gwc.config.GWCConfig;
 import org.geoserver.gwc.dispatch.GwcServiceDispatcherCallback;
+import org.geoserver.gwc.seed.TileRequestDensity;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.LocalWorkspace;
 import org.geoserver.ows.Request;
@@ -84,6 +94,7 @@
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.grid.SRS;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.ExpirationRule;
 import org.geowebcache.layer.LayerListenerList;
@@ -126,6 +137,35 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer, TileJSO
 
     public static final String GWC_SEED_INTERCEPT_TOKEN = "GWC_SEED_INTERCEPT";
 
+    /**
+     * Whether concurrent requests for tiles of the same meta tile, in this JVM, should wait for the
+     * first one to render it and take their tile from its result, rather than going through the
+     * lock provider and reading back the tile from the blob store
+     */
+    static final boolean METATILE_COALESCING =
+            Boolean.parseBoolean(System.getProperty("GWC_METATILE_COALESCING", "true"));
+
+    /**
+     * Seconds a request waits for a concurrent meta tile render before rendering by itself, same as
+     * the default GWC lock provider timeout
+     */
+    static final long METATILE_RENDER_TIMEOUT =
+            Long.getLong("GWC_METATILE_COALESCING_TIMEOUT", 120);
+
+    /** The meta tiles being rendered in this JVM, by lock key */
+    static final ConcurrentHashMap<String, CompletableFuture<byte[][]>> METATILE_RENDERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Whether concurrent identical tile requests, in this JVM, should share a single cache lookup
+     * or render, rather than each of them going through the blob store and the meta tile lock
+     */
+    static final boolean TILE_COALESCING =
+            Boolean.parseBoolean(System.getProperty("GWC_TILE_COALESCING", "true"));
+
+    /** The tile requests being processed in this JVM, by tile key */
+    static final ConcurrentHashMap<String, SharedTile> TILE_REQUESTS = new ConcurrentHashMap<>();
+
     public static final ThreadLocal<WebMap> WEB_MAP = new ThreadLocal<>();
     public static final ThreadLocal<Set<DimensionWarning>> DIMENSION_WARNINGS = new ThreadLocal<>();
 
@@ -542,6 +582,26 @@ public ConveyorTile getTile(ConveyorTile tile)
 
         // Final preflight check, throws OutsideCoverageException if necessary
         gridSubset.checkCoverage(gridLoc);
+        // keep track of the most requested areas, to seed them first
+        if (TileRequestDensity.isEnabled()) {
+            TileRequestDensity.record(getName(), gridSubset, gridLoc);
+        }
+
+        // no data can be painted here, skip rendering and answer with the shared empty tile
+        if ("image/png".equals(mime.getMimeType())
+                && GWC.get()
+                        .isOutsideFootprint(
+                                this,
+                                gridSubset,
+                                gridSubset.boundsFromIndex(gridLoc),
+                                (int) gridLoc[2])) {
+            tile.setBlob(
+                    new ByteArrayResource(
+                            TileFootprints.getEmptyTile(
+                                    gridSubset.getTileWidth(), gridSubset.getTileHeight())));
+            sendTileRequestedEvent(tile);
+            return finalizeTile(tile);
+        }
 
         int metaX;
         int metaY;
@@ -552,7 +612,10 @@ public ConveyorTile getTile(ConveyorTile tile)
             metaX = metaY = 1;
         }
 
-        ConveyorTile returnTile = getMetatilingReponse(tile, true, metaX, metaY);
+        ConveyorTile returnTile =
+                TILE_COALESCING
+                        ? getCoalescedResponse(tile, metaX, metaY)
+                        : getMetatilingReponse(tile, true, metaX, metaY);
 
         sendTileRequestedEvent(returnTile);
 
@@ -576,6 +639,98 @@ protected final void sendTileRequestedEvent(ConveyorTile tile) {
         }
     }
 
+    /**
+     * Processes the tile request, unless an identical one is already being processed, in which case
+     * its outcome is shared, whether it comes from the cache or from a render
+     */
+    private ConveyorTile getCoalescedResponse(ConveyorTile tile, final int metaX, final int metaY)
+            throws GeoWebCacheException, IOException {
+        final String key = buildLockKey(tile, null);
+        SharedTile shared = new SharedTile();
+        SharedTile running = TILE_REQUESTS.putIfAbsent(key, shared);
+        if (running != null) {
+            running.waiters.incrementAndGet();
+            if (completeFromSharedTile(tile, running)) {
+                return finalizeTile(tile);
+            }
+            // the other request failed, or its result cannot be shared, go on alone
+            return getMetatilingReponse(tile, true, metaX, metaY);
+        }
+
+        ConveyorTile result = null;
+        try {
+            result = getMetatilingReponse(tile, true, metaX, metaY);
+        } finally {
+            TILE_REQUESTS.remove(key, shared);
+            shared.result.complete(getSharedContents(result, shared));
+        }
+        return result;
+    }
+
+    /** Returns the contents of the tile, if it can be shared and anyone is waiting for it */
+    private byte[] getSharedContents(ConveyorTile tile, SharedTile shared) {
+        if (tile == null
+                || shared.waiters.get() == 0
+                || tile.getError()
+                || tile.isMetaTileCacheOnly()
+                || tile.getBlob() == null) {
+            return null;
+        }
+        try (InputStream is = tile.getBlob().getInputStream()) {
+            byte[] contents = is == null ? null : ByteStreams.toByteArray(is);
+            if (contents != null) {
+                // the blob might be a stream that can be consumed only once
+                tile.setBlob(new ByteArrayResource(contents));
+            }
+            return contents;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not share the contents of " + tile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for an identical request running in another thread, and sets the tile contents from its
+     * result
+     *
+     * @return true if the tile contents were set, false if the caller should go on and fetch or
+     *     render the tile by itself
+     */
+    private boolean completeFromSharedTile(ConveyorTile tile, SharedTile shared) {
+        byte[] contents;
+        try {
+            contents = shared.result.get(METATILE_RENDER_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (TimeoutException e) {
+            // the other request is stuck, fetch or render the tile alone
+            LOGGER.fine(
+                    "Timed out waiting for a concurrent request of tile "
+                            + Arrays.toString(tile.getTileIndex()));
+            return false;
+        }
+        if (contents == null) {
+            return false;
+        }
+        LOGGER.finest(
+                "--> "
+                        + Thread.currentThread().getName()
+                        + " returns tile fetched by a concurrent request for "
+                        + Arrays.toString(tile.getTileIndex()));
+        tile.setBlob(new ByteArrayResource(contents));
+        return true;
+    }
+
+    /** The outcome of a tile request, shared with the identical requests that arrived meanwhile */
+    static class SharedTile {
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        final AtomicInteger waiters = new AtomicInteger();
+    }
+
     protected ConveyorTile getMetatilingReponse(
             ConveyorTile tile, final boolean tryCache, final int metaX, final int metaY)
             throws GeoWebCacheException, IOException {
@@ -585,10 +740,25 @@ protected ConveyorTile getMetatilingReponse(
         }
 
         final GeoServerMetaTile metaTile = createMetaTile(tile, metaX, metaY);
+        final String lockKey = buildLockKey(tile, metaTile);
+        CompletableFuture<byte[][]> render = null;
+        if (tryCache && METATILE_COALESCING && metaX * metaY > 1) {
+            CompletableFuture<byte[][]> running =
+                    METATILE_RENDERS.putIfAbsent(lockKey, render = new CompletableFuture<>());
+            if (running != null) {
+                render = null;
+                if (completeFromRender(tile, metaTile, running)) {
+                    metaTile.dispose();
+                    return finalizeTile(tile);
+                }
+            } else {
+                metaTile.collectEncodedTiles();
+            }
+        }
         Lock lock = null;
         try {
             /* ****************** Acquire lock ******************* */
-            lock = GWC.get().getLockProvider().getLock(buildLockKey(tile, metaTile));
+            lock = GWC.get().getLockProvider().getLock(lockKey);
             // got the lock on the meta tile, try again
             if (tryCache && tryCacheFetch(tile)) {
                 LOGGER.finest(
@@ -623,12 +793,59 @@ protected ConveyorTile getMetatilingReponse(
             if (lock != null) {
                 lock.release();
             }
+            if (render != null) {
+                METATILE_RENDERS.remove(lockKey, render);
+                // tiles not meant to be cached (e.g., due to warnings) are not shared either
+                render.complete(tile.isMetaTileCacheOnly() ? null : metaTile.getEncodedTiles());
+            }
             metaTile.dispose();
         }
 
         return finalizeTile(tile);
     }
 
+    /**
+     * Waits for the render of the meta tile running in another thread, and sets the tile contents
+     * from its result
+     *
+     * @return true if the tile was found in the result, false if the caller should go on and fetch
+     *     or render it by itself
+     */
+    private boolean completeFromRender(
+            ConveyorTile tile, GeoServerMetaTile metaTile, CompletableFuture<byte[][]> render) {
+        byte[][] encodedTiles;
+        try {
+            encodedTiles = render.get(METATILE_RENDER_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (TimeoutException e) {
+            // the render is stuck, go through the lock provider, which has its own timeout
+            LOGGER.fine(
+                    "Timed out waiting for the concurrent render of meta tile "
+                            + Arrays.toString(metaTile.getMetaGridPos()));
+            return false;
+        }
+        if (encodedTiles == null) {
+            return false;
+        }
+        long[][] positions = metaTile.getTilesGridPositions();
+        for (int i = 0; i < positions.length; i++) {
+            if (Arrays.equals(positions[i], tile.getTileIndex()) && encodedTiles[i] != null) {
+                LOGGER.finest(
+                        "--> "
+                                + Thread.currentThread().getName()
+                                + " returns tile rendered by a concurrent request for "
+                                + Arrays.toString(metaTile.getMetaGridPos()));
+                tile.setBlob(new ByteArrayResource(encodedTiles[i]));
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Based on configuration, sets caching to be permanent on blobstore, or to use the transient
      * metatile cache instead. Must be called after dispatching the GetMap request, in order to have
@@ -765,7 +982,8 @@ private boolean tryCacheFetch(ConveyorTile tile) {
         int expireCache = this.getExpireCache((int) tile.getTileIndex()[2]);
         if (expireCache != GWCVars.CACHE_DISABLE_CACHE) {
             try {
-                return tile.retrieve(expireCache * 1000L);
+                // tiles touched by an edit since they were cached are rendered again
+                return tile.retrieve(expireCache * 1000L) && !GWC.get().isTileStale(this, tile);
             } catch (GeoWebCacheException gwce) {
                 LOGGER.info(gwce.getMessage());
                 tile.setErrorMsg(gwce.getMessage());
@@ -838,6 +1056,15 @@ public void seedTile(ConveyorTile tile, boolean tryCache)
         if (!tile.getMimeType().supportsTiling()) {
             metaX = metaY = 1;
         }
+        // nothing to render for meta tiles where the layer has no data
+        GeoServerMetaTile metaTile = createMetaTile(tile, metaX, metaY);
+        BoundingBox metaTileBounds = metaTile.getMetaTileBounds();
+        metaTile.dispose();
+        if (GWC.get()
+                .isOutsideFootprint(
+                        this, gridSubset, metaTileBounds, (int) tile.getTileIndex()[2])) {
+            return;
+        }
         getMetatilingReponse(tile, tryCache, metaX, metaY);
     }
 
@@ -0,0 +1,67 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+/**
+ * Limits the number of meta tiles rendered concurrently by a seeding task, adapting the limit to
+ * the observed render latency, which for database backed layers is dominated by the backend. The
+ * limit grows by one at each round of renders while the latency stays close to the best one seen so
+ * far, and is cut by a quarter when the latency doubles, i.e., when the backend is saturated.
+ */
+class AdaptiveConcurrencyLimit {
+
+    /** Smoothing factor of the latency moving average */
+    static final double ALPHA = 0.2;
+
+    private final int max;
+
+    private int limit = 1;
+
+    private int active;
+
+    private int completed;
+
+    private double latency = -1;
+
+    private double baseline = -1;
+
+    AdaptiveConcurrencyLimit(int max) {
+        this.max = Math.max(1, max);
+    }
+
+    /** Waits until a render can be started */
+    synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+    }
+
+    /** Reports the end of a render, along with its latency */
+    synchronized void release(long latencyNanos) {
+        active--;
+        latency = latency < 0 ? latencyNanos : latency * (1 - ALPHA) + latencyNanos * ALPHA;
+        if (baseline < 0 || latency < baseline) {
+            baseline = latency;
+        } else {
+            // let the baseline follow slow changes, e.g., moving to a denser area
+            baseline += (latency - baseline) * 0.01;
+        }
+        // adjust once per round, so that each change can show its effects
+        if (++completed >= limit) {
+            completed = 0;
+            if (latency > baseline * 2) {
+                limit = Math.max(1, limit * 3 / 4);
+            } else if (latency < baseline * 1.5 && limit < max) {
+                limit++;
+            }
+        }
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+}
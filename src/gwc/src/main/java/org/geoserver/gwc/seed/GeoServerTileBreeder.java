@@ -0,0 +1,113 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.seed.GWCTask;
+import org.geowebcache.seed.TileBreeder;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileRange;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * A {@link TileBreeder} that, when the {@code GWC_PARALLEL_SEEDING} property is set to true, seeds
+ * GeoServer layers with a single {@link ParallelSeedTask} per request, instead of a set of
+ * independent seed tasks each rendering one meta tile at a time. Truncation, and seeding of other
+ * kinds of layers, are handled as usual.
+ */
+public class GeoServerTileBreeder extends TileBreeder {
+
+    static final Logger LOGGER = Logging.getLogger(GeoServerTileBreeder.class);
+
+    static final boolean PARALLEL_SEEDING = Boolean.getBoolean("GWC_PARALLEL_SEEDING");
+
+    private final boolean parallelSeeding;
+
+    private StorageBroker storageBroker;
+
+    public GeoServerTileBreeder() {
+        this(PARALLEL_SEEDING);
+    }
+
+    GeoServerTileBreeder(boolean parallelSeeding) {
+        this.parallelSeeding = parallelSeeding;
+    }
+
+    @Override
+    public void setStorageBroker(StorageBroker sb) {
+        super.setStorageBroker(sb);
+        this.storageBroker = sb;
+    }
+
+    @Override
+    public GWCTask[] createTasks(
+            TileRange tr, TileLayer tl, GWCTask.TYPE type, int threadCount, boolean filterUpdate)
+            throws GeoWebCacheException {
+        if (!parallelSeeding
+                || !(tl instanceof GeoServerTileLayer)
+                || !(type == GWCTask.TYPE.SEED || type == GWCTask.TYPE.RESEED)) {
+            return super.createTasks(tr, tl, type, threadCount, filterUpdate);
+        }
+        GridSubset gridSubset = tl.getGridSubset(tr.getGridSetId());
+        List<BoundingBox> dataBounds = getDataBounds((GeoServerTileLayer) tl, gridSubset);
+        ParallelSeedTask task =
+                new ParallelSeedTask(storageBroker, tr, tl, type, threadCount, dataBounds);
+        task.setThreadInfo(new AtomicInteger(), 0);
+        return new GWCTask[] {task};
+    }
+
+    /**
+     * Returns the bounds of the layers making up a layer group, in the gridset CRS, or an empty
+     * list for single layers, whose bounds are already the ones of the gridset coverage
+     */
+    List<BoundingBox> getDataBounds(GeoServerTileLayer layer, GridSubset gridSubset) {
+        PublishedInfo published = layer.getPublishedInfo();
+        if (!(published instanceof LayerGroupInfo)) {
+            return Collections.emptyList();
+        }
+        try {
+            CoordinateReferenceSystem crs =
+                    CRS.decode("EPSG:" + gridSubset.getSRS().getNumber(), true);
+            List<BoundingBox> result = new ArrayList<>();
+            for (LayerInfo member : ((LayerGroupInfo) published).layers()) {
+                ReferencedEnvelope bounds = member.getResource().getLatLonBoundingBox();
+                if (bounds == null) {
+                    // cannot tell, seed everything
+                    return Collections.emptyList();
+                }
+                ReferencedEnvelope transformed = bounds.transform(crs, true);
+                result.add(
+                        new BoundingBox(
+                                transformed.getMinX(),
+                                transformed.getMinY(),
+                                transformed.getMaxX(),
+                                transformed.getMaxY()));
+            }
+            return result;
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.FINE,
+                    "Could not compute the data bounds of " + layer.getName() + ", seeding all",
+                    e);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.seed.GWCTask;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileRange;
+
+/**
+ * Seeds a {@link TileRange} using a pool of worker threads sharing a queue of blocks of meta tiles.
+ * Zoom levels are seeded in order, and within each zoom level the blocks are sorted by {@link
+ * TileRequestDensity request density}, so that the most requested areas get cached first. Blocks
+ * not intersecting the layer data bounds are skipped altogether, and the number of meta tiles
+ * rendered concurrently adapts to the render latency, see {@link AdaptiveConcurrencyLimit}.
+ */
+class ParallelSeedTask extends GWCTask {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelSeedTask.class);
+
+    /** Target number of blocks each zoom level is split into */
+    static final int TARGET_BLOCKS = 4096;
+
+    /** Max number of failed meta tiles before giving up */
+    static final int MAX_FAILURES = 1000;
+
+    private final StorageBroker storageBroker;
+
+    private final TileRange tileRange;
+
+    private final TileLayer layer;
+
+    private final int threadCount;
+
+    private final List<BoundingBox> dataBounds;
+
+    private final AtomicLong done = new AtomicLong();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private ExecutorService workers;
+
+    /**
+     * @param dataBounds the data bounds in the gridset CRS, areas outside of them are skipped. An
+     *     empty list disables the check
+     */
+    ParallelSeedTask(
+            StorageBroker storageBroker,
+            TileRange tileRange,
+            TileLayer layer,
+            TYPE type,
+            int threadCount,
+            List<BoundingBox> dataBounds) {
+        this.storageBroker = storageBroker;
+        this.tileRange = tileRange;
+        this.layer = layer;
+        this.threadCount = Math.max(1, threadCount);
+        this.dataBounds = dataBounds;
+        this.parsedType = type;
+        this.layerName = layer.getName();
+    }
+
+    @Override
+    protected void doActionInternal() throws GeoWebCacheException, InterruptedException {
+        final GridSubset gridSubset = layer.getGridSubset(tileRange.getGridSetId());
+        final int[] metaTiling = layer.getMetaTilingFactors();
+        final Queue<Block> blocks = new ConcurrentLinkedQueue<>();
+        long total = 0;
+        for (int z = tileRange.getZoomStart(); z <= tileRange.getZoomStop(); z++) {
+            long[] bounds = tileRange.rangeBounds(z);
+            if (bounds == null) {
+                continue;
+            }
+            total += (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+            blocks.addAll(plan(gridSubset, bounds, z, metaTiling));
+        }
+        this.tilesTotal = total;
+        this.tilesDone = 0;
+
+        final long start = System.currentTimeMillis();
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(threadCount);
+        final ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        workers =
+                Executors.newFixedThreadPool(
+                        threadCount,
+                        r -> {
+                            Thread t = new Thread(r, "GWC parallel seeder " + layerName);
+                            t.setDaemon(true);
+                            return t;
+                        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(
+                    workers.submit(
+                            () -> {
+                                transfer.apply();
+                                try {
+                                    work(blocks, limit, metaTiling);
+                                } finally {
+                                    transfer.cleanup();
+                                }
+                                return null;
+                            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                while (!future.isDone()) {
+                    checkInterrupted();
+                    if (terminate) {
+                        blocks.clear();
+                    }
+                    updateProgress(start);
+                    Thread.sleep(500);
+                }
+            }
+        } finally {
+            blocks.clear();
+            updateProgress(start);
+        }
+        if (failures.get() > MAX_FAILURES) {
+            throw new GeoWebCacheException(
+                    "Seeding of " + layerName + " aborted after " + failures.get() + " failures");
+        }
+    }
+
+    private void updateProgress(long start) {
+        long tiles = done.get();
+        this.tilesDone = tiles;
+        this.timeSpent = (System.currentTimeMillis() - start) / 1000;
+        this.timeRemaining =
+                tiles > 0 ? (long) (timeSpent * (double) (tilesTotal - tiles) / tiles) : -1;
+    }
+
+    /** Splits a zoom level in blocks of meta tiles, sorted by request density */
+    List<Block> plan(GridSubset gridSubset, long[] bounds, int z, int[] metaTiling) {
+        // align on the meta tile grid
+        long minX = bounds[0] - bounds[0] % metaTiling[0];
+        long minY = bounds[1] - bounds[1] % metaTiling[1];
+        long metaCols = (bounds[2] - minX) / metaTiling[0] + 1;
+        long metaRows = (bounds[3] - minY) / metaTiling[1] + 1;
+        long side =
+                Math.max(
+                        1,
+                        (long) Math.ceil(Math.sqrt((double) metaCols * metaRows / TARGET_BLOCKS)));
+        long stepX = side * metaTiling[0];
+        long stepY = side * metaTiling[1];
+
+        List<Block> result = new ArrayList<>();
+        for (long y = minY; y <= bounds[3]; y += stepY) {
+            for (long x = minX; x <= bounds[2]; x += stepX) {
+                long[] rect = {
+                    Math.max(x, bounds[0]),
+                    Math.max(y, bounds[1]),
+                    Math.min(x + stepX - 1, bounds[2]),
+                    Math.min(y + stepY - 1, bounds[3]),
+                    z
+                };
+                BoundingBox blockBounds = gridSubset.boundsFromRectangle(rect);
+                if (!intersectsData(blockBounds)) {
+                    // still account for the tiles, to get a consistent progress
+                    done.addAndGet((rect[2] - rect[0] + 1) * (rect[3] - rect[1] + 1));
+                    continue;
+                }
+                long density = TileRequestDensity.density(layerName, gridSubset, blockBounds);
+                result.add(new Block(rect, density));
+            }
+        }
+        result.sort(Comparator.comparingLong((Block b) -> b.density).reversed());
+        return result;
+    }
+
+    private boolean intersectsData(BoundingBox bounds) {
+        if (dataBounds.isEmpty()) {
+            return true;
+        }
+        for (BoundingBox data : dataBounds) {
+            if (data.intersects(bounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void work(Queue<Block> blocks, AdaptiveConcurrencyLimit limit, int[] metaTiling)
+            throws InterruptedException {
+        final boolean tryCache = parsedType == TYPE.SEED;
+        Block block;
+        while ((block = blocks.poll()) != null && failures.get() <= MAX_FAILURES) {
+            long[] rect = block.rect;
+            int z = (int) rect[4];
+            long startX = rect[0] - rect[0] % metaTiling[0];
+            long startY = rect[1] - rect[1] % metaTiling[1];
+            for (long y = startY; y <= rect[3]; y += metaTiling[1]) {
+                for (long x = startX; x <= rect[2]; x += metaTiling[0]) {
+                    if (terminate || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    long[] metaRect = {
+                        Math.max(x, rect[0]),
+                        Math.max(y, rect[1]),
+                        Math.min(x + metaTiling[0] - 1, rect[2]),
+                        Math.min(y + metaTiling[1] - 1, rect[3])
+                    };
+                    long[] gridLoc = firstContained(metaRect, z);
+                    long tiles = (metaRect[2] - metaRect[0] + 1) * (metaRect[3] - metaRect[1] + 1);
+                    if (gridLoc != null) {
+                        limit.acquire();
+                        long renderStart = System.nanoTime();
+                        try {
+                            seed(gridLoc, tryCache);
+                        } finally {
+                            limit.release(System.nanoTime() - renderStart);
+                        }
+                    }
+                    done.addAndGet(tiles);
+                }
+            }
+        }
+    }
+
+    /** Returns the first tile of the meta tile contained in the range, or null if none is */
+    private long[] firstContained(long[] metaRect, int z) {
+        for (long y = metaRect[1]; y <= metaRect[3]; y++) {
+            for (long x = metaRect[0]; x <= metaRect[2]; x++) {
+                long[] idx = {x, y, z};
+                if (tileRange.contains(idx)) {
+                    return idx;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void seed(long[] gridLoc, boolean tryCache) {
+        ConveyorTile tile =
+                new ConveyorTile(
+                        storageBroker,
+                        layerName,
+                        tileRange.getGridSetId(),
+                        gridLoc,
+                        tileRange.getMimeType(),
+                        tileRange.getParameters(),
+                        null,
+                        null);
+        tile.setTileLayer(layer);
+        try {
+            layer.seedTile(tile, tryCache);
+        } catch (Exception e) {
+            int failed = failures.incrementAndGet();
+            LOGGER.log(
+                    Level.WARNING,
+                    "Failed to seed tile " + Arrays.toString(gridLoc) + " of " + layerName,
+                    e);
+            if (failed > MAX_FAILURES) {
+                LOGGER.severe("Too many failures, aborting the seeding of " + layerName);
+            }
+        }
+    }
+
+    @Override
+    protected void dispose() {
+        if (workers != null) {
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A rectangle of tiles, {minx, miny, maxx, maxy, z}, along with its request density */
+    static class Block {
+        final long[] rect;
+
+        final long density;
+
+        Block(long[] rect, long density) {
+            this.rect = rect;
+            this.density = density;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+
+/**
+ * Keeps a coarse, in memory, histogram of where tiles get requested, for each layer and gridset, so
+ * that seeding can render first the areas users look at the most. The histogram is a {@link #CELLS}
+ * by {@link #CELLS} grid over the gridset extent, regardless of the zoom level.
+ *
+ * <p>Requests are recorded only when parallel seeding is enabled, for at most {@link #MAX_ENTRIES}
+ * layer and gridset pairs. The entries of a layer are dropped when the layer is removed or renamed.
+ */
+public class TileRequestDensity {
+
+    static final int CELLS = 64;
+
+    /** Bounds the layer and gridset pairs tracked, about 16KB each */
+    static final int MAX_ENTRIES = 1024;
+
+    private static final Map<String, AtomicIntegerArray> DENSITIES = new ConcurrentHashMap<>();
+
+    private TileRequestDensity() {}
+
+    /** Returns true if the requests are being recorded, that is, if parallel seeding is enabled */
+    public static boolean isEnabled() {
+        return GeoServerTileBreeder.PARALLEL_SEEDING;
+    }
+
+    /** Records a request for the given tile, if enabled */
+    public static void record(String layerName, GridSubset gridSubset, long[] tileIndex) {
+        if (isEnabled()) {
+            add(layerName, gridSubset, tileIndex);
+        }
+    }
+
+    /** Records a request for the given tile, unless too many layers are tracked already */
+    static void add(String layerName, GridSubset gridSubset, long[] tileIndex) {
+        String key = key(layerName, gridSubset);
+        AtomicIntegerArray density = DENSITIES.get(key);
+        if (density == null) {
+            if (DENSITIES.size() >= MAX_ENTRIES) {
+                return;
+            }
+            density = DENSITIES.computeIfAbsent(key, k -> new AtomicIntegerArray(CELLS * CELLS));
+        }
+        BoundingBox extent = gridSubset.getOriginalExtent();
+        BoundingBox tile = gridSubset.boundsFromIndex(tileIndex);
+        int col = cell(extent.getMinX(), extent.getMaxX(), (tile.getMinX() + tile.getMaxX()) / 2);
+        int row = cell(extent.getMinY(), extent.getMaxY(), (tile.getMinY() + tile.getMaxY()) / 2);
+        density.incrementAndGet(row * CELLS + col);
+    }
+
+    /** Returns the number of requests recorded in the cells touched by the given bounds */
+    public static long density(String layerName, GridSubset gridSubset, BoundingBox bounds) {
+        AtomicIntegerArray density = DENSITIES.get(key(layerName, gridSubset));
+        if (density == null) {
+            return 0;
+        }
+        BoundingBox extent = gridSubset.getOriginalExtent();
+        int minCol = cell(extent.getMinX(), extent.getMaxX(), bounds.getMinX());
+        int maxCol = cell(extent.getMinX(), extent.getMaxX(), bounds.getMaxX());
+        int minRow = cell(extent.getMinY(), extent.getMaxY(), bounds.getMinY());
+        int maxRow = cell(extent.getMinY(), extent.getMaxY(), bounds.getMaxY());
+        long result = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                result += density.get(row * CELLS + col);
+            }
+        }
+        return result;
+    }
+
+    /** Forgets the requests recorded for the given layer, in all gridsets */
+    public static void remove(String layerName) {
+        String prefix = layerName + "@";
+        DENSITIES.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /** Forgets the requests recorded so far */
+    public static void reset() {
+        DENSITIES.clear();
+    }
+
+    private static String key(String layerName, GridSubset gridSubset) {
+        return layerName + "@" + gridSubset.getName();
+    }
+
+    private static int cell(double min, double max, double value) {
+        int cell = (int) ((value - min) / (max - min) * CELLS);
+        return Math.max(0, Math.min(CELLS - 1, cell));
+    }
+}
@@ -0,0 +1,118 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.geoserver.platform.resource.FileSystemResourceStore;
+import org.geowebcache.grid.BoundingBox;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirtyTileJournalTest {
+
+    static final String LAYER = "topp:states";
+
+    static final String GRIDSET = "EPSG:4326";
+
+    @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FileSystemResourceStore store;
+
+    private DirtyTileJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemResourceStore(tempFolder.getRoot());
+        journal = new DirtyTileJournal(store, true, 1000, 2);
+    }
+
+    @Test
+    public void testDirty() {
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 10, 10), 100);
+
+        BoundingBox tile = new BoundingBox(5, 5, 15, 15);
+        // created before the edit
+        assertTrue(journal.isDirty(LAYER, GRIDSET, tile, 50));
+        // re-rendered after the edit
+        assertFalse(journal.isDirty(LAYER, GRIDSET, tile, 150));
+        // not touched by the edit
+        assertFalse(journal.isDirty(LAYER, GRIDSET, new BoundingBox(20, 20, 30, 30), 50));
+        // other gridsets and layers
+        assertFalse(journal.isDirty(LAYER, "EPSG:900913", tile, 50));
+        assertFalse(journal.isDirty("topp:roads", GRIDSET, tile, 50));
+    }
+
+    @Test
+    public void testPersistence() {
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 10, 10), 100);
+
+        DirtyTileJournal reloaded = new DirtyTileJournal(store, true, 1000, 2);
+        assertTrue(reloaded.isDirty(LAYER, GRIDSET, new BoundingBox(5, 5, 15, 15), 50));
+
+        reloaded.clear(LAYER);
+        DirtyTileJournal cleared = new DirtyTileJournal(store, true, 1000, 2);
+        assertFalse(cleared.isDirty(LAYER, GRIDSET, new BoundingBox(5, 5, 15, 15), 50));
+    }
+
+    @Test
+    public void testCompaction() {
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 1, 1), 100);
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(2, 2, 3, 3), 200);
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(4, 4, 5, 5), 1500);
+
+        List<BoundingBox> truncated = new ArrayList<>();
+        // the first region is beyond the max entries, the second one too old, they are far apart
+        // and get truncated one by one
+        journal.compact(1500, (layer, gridSet, bounds) -> truncated.add(bounds));
+
+        assertEquals(2, truncated.size());
+        assertTrue(truncated.contains(new BoundingBox(0, 0, 1, 1)));
+        assertTrue(truncated.contains(new BoundingBox(2, 2, 3, 3)));
+        assertFalse(journal.isDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 3, 3), 50));
+        assertTrue(journal.isDirty(LAYER, GRIDSET, new BoundingBox(4, 4, 5, 5), 50));
+    }
+
+    @Test
+    public void testCompactionMergesOverlapping() {
+        journal = new DirtyTileJournal(store, true, 1000, 10);
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 2, 2), 100);
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(1, 1, 3, 3), 200);
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(10, 10, 11, 11), 300);
+
+        List<BoundingBox> truncated = new ArrayList<>();
+        journal.compact(2000, (layer, gridSet, bounds) -> truncated.add(bounds));
+
+        assertEquals(2, truncated.size());
+        assertTrue(truncated.contains(new BoundingBox(0, 0, 3, 3)));
+        assertTrue(truncated.contains(new BoundingBox(10, 10, 11, 11)));
+    }
+
+    @Test
+    public void testCompactionKeepsUntilTruncated() {
+        journal.markDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 1, 1), 100);
+
+        // still dirty while the truncation runs, and if it fails
+        journal.compact(
+                1500,
+                (layer, gridSet, bounds) -> {
+                    assertTrue(journal.isDirty(LAYER, GRIDSET, bounds, 50));
+                    return false;
+                });
+        assertTrue(journal.isDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 1, 1), 50));
+        DirtyTileJournal reloaded = new DirtyTileJournal(store, true, 1000, 2);
+        assertTrue(reloaded.isDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 1, 1), 50));
+
+        // retried at the next compaction
+        journal.compact(1600, (layer, gridSet, bounds) -> true);
+        assertFalse(journal.isDirty(LAYER, GRIDSET, new BoundingBox(0, 0, 1, 1), 50));
+    }
+}
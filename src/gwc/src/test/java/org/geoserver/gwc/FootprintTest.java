@@ -0,0 +1,59 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+
+public class FootprintTest {
+
+    @Test
+    public void testMarkIntersects() {
+        Footprint footprint = new Footprint(new Envelope(0, 100, 0, 100), 10);
+        assertFalse(footprint.intersects(new Envelope(0, 100, 0, 100)));
+
+        footprint.mark(new Envelope(11, 12, 11, 12));
+        assertTrue(footprint.intersects(new Envelope(10, 20, 10, 20)));
+        assertTrue(footprint.intersects(new Envelope(0, 100, 0, 100)));
+        assertFalse(footprint.intersects(new Envelope(50, 60, 50, 60)));
+        // outside of the grid
+        assertFalse(footprint.intersects(new Envelope(200, 300, 200, 300)));
+    }
+
+    @Test
+    public void testDilate() {
+        Footprint footprint = new Footprint(new Envelope(0, 100, 0, 100), 10);
+        footprint.mark(new Envelope(55, 56, 55, 56));
+        assertFalse(footprint.intersects(new Envelope(41, 49, 41, 49)));
+
+        footprint.dilate();
+        assertTrue(footprint.intersects(new Envelope(41, 49, 41, 49)));
+        assertTrue(footprint.intersects(new Envelope(61, 69, 61, 69)));
+        assertFalse(footprint.intersects(new Envelope(31, 39, 31, 39)));
+        assertEquals(9, footprint.cells.cardinality());
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        Footprint footprint = new Footprint(new Envelope(-180, 180, -90, 90), 16);
+        footprint.mark(new Envelope(10, 20, 10, 20));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        footprint.write(new DataOutputStream(bos));
+
+        Footprint read =
+                Footprint.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(footprint.extent, read.extent);
+        assertEquals(footprint.size, read.size);
+        assertEquals(footprint.cells, read.cells);
+    }
+}
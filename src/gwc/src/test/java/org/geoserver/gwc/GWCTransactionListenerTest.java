@@ -6,19 +6,24 @@
 package org.geoserver.gwc;
 
 import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -211,6 +216,75 @@ public void testAfterTransaction() throws Exception {
         verify(mediator, times(1)).truncate(eq("theGroup"), eq(expectedEnv));
     }
 
+    @Test
+    public void testDataStoreChangeEmptyBounds() {
+        Map<Object, Object> extendedProperties = new HashMap<>();
+        // e.g. a delete that did not match any feature
+        issueInsert(extendedProperties, new ReferencedEnvelope(WGS84));
+
+        assertFalse(
+                extendedProperties.containsKey(
+                        GWCTransactionListener.GWC_TRANSACTION_INFO_PLACEHOLDER));
+    }
+
+    @Test
+    public void testAfterTransactionDeferred() throws Exception {
+        listener = new GWCTransactionListener(mediator, 100);
+        when(mediator.getDeclaredCrs(anyString())).thenReturn(WGS84);
+        try {
+            ReferencedEnvelope affectedBounds1 = new ReferencedEnvelope(-180, 0, 0, 90, WGS84);
+            ReferencedEnvelope affectedBounds2 = new ReferencedEnvelope(0, 180, 0, 90, WGS84);
+            for (ReferencedEnvelope bounds : Arrays.asList(affectedBounds1, affectedBounds2)) {
+                // two separate transactions
+                Map<Object, Object> extendedProperties = new HashMap<>();
+                issueInsert(extendedProperties, bounds);
+                TransactionRequest request = mock(TransactionRequest.class);
+                when(request.getExtendedProperties()).thenReturn(extendedProperties);
+                listener.afterTransaction(request, mock(TransactionResponse.class), true);
+            }
+
+            ReferencedEnvelope expectedEnv = new ReferencedEnvelope(affectedBounds1);
+            expectedEnv.expandToInclude(affectedBounds2);
+
+            // the two dirty regions are coalesced into a single truncation per layer
+            verify(mediator, timeout(5000).times(1)).truncate(eq("theLayer"), eq(expectedEnv));
+            verify(mediator, timeout(5000).times(1)).truncate(eq("theGroup"), eq(expectedEnv));
+            verify(mediator, times(2)).truncate(anyString(), any(ReferencedEnvelope.class));
+        } finally {
+            listener.destroy();
+        }
+    }
+
+    @Test
+    public void testAfterTransactionDeferredDistantRegions() throws Exception {
+        listener = new GWCTransactionListener(mediator, 1000);
+        when(mediator.getDeclaredCrs(anyString())).thenReturn(WGS84);
+        try {
+            ReferencedEnvelope affectedBounds1 = new ReferencedEnvelope(-180, -170, 0, 10, WGS84);
+            ReferencedEnvelope affectedBounds2 = new ReferencedEnvelope(170, 180, 0, 10, WGS84);
+            for (ReferencedEnvelope bounds : Arrays.asList(affectedBounds1, affectedBounds2)) {
+                Map<Object, Object> extendedProperties = new HashMap<>();
+                issueInsert(extendedProperties, bounds);
+                TransactionRequest request = mock(TransactionRequest.class);
+                when(request.getExtendedProperties()).thenReturn(extendedProperties);
+                listener.afterTransaction(request, mock(TransactionResponse.class), true);
+            }
+            // two regions for each of the two layers
+            assertEquals(4, listener.getQueuedRegions());
+            assertEquals(4, listener.getPendingRegions());
+
+            // the regions are far apart, truncated separately rather than their union
+            verify(mediator, timeout(5000).times(1)).truncate(eq("theLayer"), eq(affectedBounds1));
+            verify(mediator, timeout(5000).times(1)).truncate(eq("theLayer"), eq(affectedBounds2));
+            verify(mediator, timeout(5000).times(4))
+                    .truncate(anyString(), any(ReferencedEnvelope.class));
+            assertEquals(4, listener.getQueuedTruncations());
+            assertEquals(0, listener.getPendingRegions());
+        } finally {
+            listener.destroy();
+        }
+    }
+
     /**
      * Issues a fake dataStoreChange insert event that affects two tile layers: "theLayer" and
      * "theGroup"
@@ -0,0 +1,110 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HotTileCacheProviderTest {
+
+    static final int TILE_SIZE = 400 * 1024;
+
+    private HotTileCacheProvider cache;
+
+    @Before
+    public void setUp() {
+        CacheConfiguration configuration = new CacheConfiguration();
+        // room for two tiles
+        configuration.setHardMemoryLimit(1);
+        configuration.setConcurrencyLevel(1);
+        cache = new HotTileCacheProvider(configuration);
+    }
+
+    @Test
+    public void testPutGet() throws Exception {
+        cache.putTileObj(tile("layer", 0));
+        TileObject cached = cache.getTileObj(tile("layer", 0));
+        assertNotNull(cached);
+        assertEquals(TILE_SIZE, cached.getBlob().getSizeInBytes());
+        assertNull(cache.getTileObj(tile("layer", 1)));
+        assertNull(cache.getTileObj(tile("other", 0)));
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        cache.putTileObj(tile("layer", 0));
+        cache.putTileObj(tile("layer", 1));
+
+        // never requested, not admitted when full
+        cache.putTileObj(tile("layer", 2));
+        assertNull(cache.getTileObj(tile("layer", 2)));
+        assertNotNull(cache.getTileObj(tile("layer", 0)));
+        assertNotNull(cache.getTileObj(tile("layer", 1)));
+
+        // requested more often than the least recently used one, replaces it
+        cache.getTileObj(tile("layer", 2));
+        cache.getTileObj(tile("layer", 2));
+        cache.putTileObj(tile("layer", 2));
+        assertNotNull(cache.getTileObj(tile("layer", 2)));
+        assertNull(cache.getTileObj(tile("layer", 0)));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testRemoveLayer() throws Exception {
+        cache.putTileObj(tile("layer", 0));
+        cache.putTileObj(tile("other", 0));
+
+        cache.removeLayer("layer");
+        assertNull(cache.getTileObj(tile("layer", 0)));
+        assertNotNull(cache.getTileObj(tile("other", 0)));
+        assertEquals(TILE_SIZE, cache.getStatistics().getActualSize());
+    }
+
+    @Test
+    public void testUncachedLayer() throws Exception {
+        cache.addUncachedLayer("layer");
+        cache.putTileObj(tile("layer", 0));
+        assertNull(cache.getTileObj(tile("layer", 0)));
+        assertFalse(cache.getLayerHitRatios().containsKey("layer"));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        cache.putTileObj(tile("layer", 0));
+        cache.getTileObj(tile("layer", 0));
+        cache.getTileObj(tile("layer", 0));
+        cache.getTileObj(tile("layer", 0));
+        cache.getTileObj(tile("layer", 1));
+        cache.getTileObj(tile("other", 0));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(60, statistics.getHitRate(), 1e-6);
+        assertEquals(0.75, cache.getLayerHitRatios().get("layer"), 1e-6);
+        assertEquals(0, cache.getLayerHitRatios().get("other"), 1e-6);
+    }
+
+    private TileObject tile(String layerName, long x) {
+        return TileObject.createCompleteTileObject(
+                layerName,
+                new long[] {x, 0, 0},
+                "EPSG:4326",
+                "image/png",
+                Collections.emptyMap(),
+                new ByteArrayResource(new byte[TILE_SIZE]));
+    }
+}
@@ -0,0 +1,289 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.geoserver.platform.resource.FileSystemResourceStore;
+import org.geoserver.platform.resource.Resource;
+import org.geowebcache.diskquota.QuotaStore;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class QuotaUpdateBatcherTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemResourceStore resourceStore;
+
+    private QuotaStore store;
+
+    private TileSet tileSet = new TileSet("layer", "EPSG:4326", "image/png", null);
+
+    private TilePage page = new TilePage(tileSet.getId(), 1, 2, 3);
+
+    @Before
+    public void setUp() {
+        resourceStore = new FileSystemResourceStore(folder.getRoot());
+        store = mock(QuotaStore.class);
+    }
+
+    @Test
+    public void testQuotaUpdatesBatched() throws Exception {
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        batcher.addToQuotaAndTileCounts(tileSet, quota(1000), tileCounts(1));
+        batcher.addToQuotaAndTileCounts(tileSet, quota(500), tileCounts(2));
+        verifyNoInteractions(store);
+
+        batcher.flush();
+        ArgumentCaptor<Quota> quota = ArgumentCaptor.forClass(Quota.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> payloads =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(store, times(1))
+                .addToQuotaAndTileCounts(eq(tileSet), quota.capture(), payloads.capture());
+        assertEquals(BigInteger.valueOf(1500), quota.getValue().getBytes());
+        assertEquals(1, payloads.getValue().size());
+        assertEquals(3, payloads.getValue().iterator().next().getNumTiles());
+
+        // nothing left to apply
+        batcher.flush();
+        verify(store, times(1)).addToQuotaAndTileCounts(any(), any(), any());
+        assertEquals(Resource.Type.UNDEFINED, getJournal().getType());
+    }
+
+    @Test
+    public void testHitsBatched() throws Exception {
+        PageStats stats = mock(PageStats.class);
+        when(store.addHitsAndSetAccesTime(anyCollection()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(stats)));
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        Future<List<PageStats>> first = batcher.addHitsAndSetAccesTime(hits(page, 2, 1000));
+        Future<List<PageStats>> second = batcher.addHitsAndSetAccesTime(hits(page, 3, 2000));
+        assertFalse(first.isDone());
+
+        batcher.flush();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> payloads =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(store, times(1)).addHitsAndSetAccesTime(payloads.capture());
+        PageStatsPayload payload = payloads.getValue().iterator().next();
+        assertEquals(5, payload.getNumHits());
+        assertEquals(2000, payload.getLastAccessTime());
+        assertEquals(Collections.singletonList(stats), first.get());
+        assertEquals(Collections.singletonList(stats), second.get());
+    }
+
+    @Test
+    public void testHitsStatsByRequest() throws Exception {
+        TilePage other = new TilePage(tileSet.getId(), 4, 5, 6);
+        PageStats pageStats = mock(PageStats.class);
+        PageStats otherStats = mock(PageStats.class);
+        when(store.addHitsAndSetAccesTime(anyCollection()))
+                .thenAnswer(
+                        invocation -> {
+                            Collection<PageStatsPayload> payloads = invocation.getArgument(0);
+                            List<PageStats> result = new ArrayList<>();
+                            for (PageStatsPayload payload : payloads) {
+                                boolean isPage = payload.getPage().getPageX() == page.getPageX();
+                                result.add(isPage ? pageStats : otherStats);
+                            }
+                            return CompletableFuture.completedFuture(result);
+                        });
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        Future<List<PageStats>> first = batcher.addHitsAndSetAccesTime(hits(page, 1, 1000));
+        Future<List<PageStats>> second = batcher.addHitsAndSetAccesTime(hits(other, 1, 1000));
+
+        batcher.flush();
+        // each caller gets the stats of its own pages only
+        assertEquals(Collections.singletonList(pageStats), first.get());
+        assertEquals(Collections.singletonList(otherStats), second.get());
+    }
+
+    @Test
+    public void testCountsBeyondIntRange() throws Exception {
+        when(store.addHitsAndSetAccesTime(anyCollection()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        batcher.addToQuotaAndTileCounts(tileSet, quota(0), tileCounts(Integer.MAX_VALUE));
+        batcher.addToQuotaAndTileCounts(tileSet, quota(0), tileCounts(Integer.MAX_VALUE));
+        batcher.addHitsAndSetAccesTime(hits(page, Integer.MAX_VALUE, 1000));
+        batcher.addHitsAndSetAccesTime(hits(page, 2, 1000));
+
+        batcher.flush();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> tileCounts =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(store).addToQuotaAndTileCounts(eq(tileSet), any(), tileCounts.capture());
+        long tiles = 0;
+        for (PageStatsPayload payload : tileCounts.getValue()) {
+            tiles += payload.getNumTiles();
+        }
+        assertEquals(2L * Integer.MAX_VALUE, tiles);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> hits =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(store).addHitsAndSetAccesTime(hits.capture());
+        long numHits = 0;
+        for (PageStatsPayload payload : hits.getValue()) {
+            assertTrue(payload.getNumHits() > 0);
+            numHits += payload.getNumHits();
+        }
+        assertEquals(Integer.MAX_VALUE + 2L, numHits);
+    }
+
+    @Test
+    public void testPartialFailureNotReapplied() throws Exception {
+        TileSet otherTileSet = new TileSet("other", "EPSG:4326", "image/png", null);
+        doThrow(new IllegalStateException("database down"))
+                .doNothing()
+                .when(store)
+                .addToQuotaAndTileCounts(eq(otherTileSet), any(), any());
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        batcher.addToQuotaAndTileCounts(tileSet, quota(1000), tileCounts(1));
+        batcher.addToQuotaAndTileCounts(otherTileSet, quota(500), Collections.emptyList());
+        try {
+            batcher.flush();
+            fail("Expected the flush to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        batcher.flush();
+        // whatever the order, each tile set got its quota applied once
+        verify(store, times(1)).addToQuotaAndTileCounts(eq(tileSet), any(), any());
+        verify(store, times(2)).addToQuotaAndTileCounts(eq(otherTileSet), any(), any());
+        assertEquals(Resource.Type.UNDEFINED, getJournal().getType());
+    }
+
+    @Test
+    public void testReplaySkipsApplied() throws Exception {
+        when(store.addHitsAndSetAccesTime(anyCollection()))
+                .thenThrow(new IllegalStateException("database down"));
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        batcher.addToQuotaAndTileCounts(tileSet, quota(1000), tileCounts(4));
+        batcher.addHitsAndSetAccesTime(hits(page, 2, 1000));
+        try {
+            batcher.flush();
+            fail("Expected the flush to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verify(store).addToQuotaAndTileCounts(eq(tileSet), any(), any());
+
+        // as if restarted after a crash, only the hits are left to apply
+        QuotaStore restarted = mock(QuotaStore.class);
+        when(restarted.addHitsAndSetAccesTime(anyCollection()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+        QuotaUpdateBatcher replaying = new QuotaUpdateBatcher(resourceStore, () -> restarted, 0);
+        replaying.close();
+        verify(restarted, never()).addToQuotaAndTileCounts(any(), any(), any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> payloads =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(restarted).addHitsAndSetAccesTime(payloads.capture());
+        assertEquals(2, payloads.getValue().iterator().next().getNumHits());
+        assertEquals(Resource.Type.UNDEFINED, getJournal().getType());
+    }
+
+    @Test
+    public void testJournalReplayed() throws Exception {
+        doThrow(new IllegalStateException("database down"))
+                .when(store)
+                .addToQuotaAndTileCounts(any(), any(), any());
+        QuotaUpdateBatcher batcher = new QuotaUpdateBatcher(resourceStore, () -> store, 0);
+        batcher.addToQuotaAndTileCounts(tileSet, quota(1000), tileCounts(4));
+        try {
+            batcher.flush();
+            fail("Expected the flush to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(Resource.Type.RESOURCE, getJournal().getType());
+
+        // as if restarted after a crash
+        QuotaStore restarted = mock(QuotaStore.class);
+        QuotaUpdateBatcher replaying = new QuotaUpdateBatcher(resourceStore, () -> restarted, 0);
+        replaying.close();
+        ArgumentCaptor<Quota> quota = ArgumentCaptor.forClass(Quota.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PageStatsPayload>> payloads =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(restarted).addToQuotaAndTileCounts(eq(tileSet), quota.capture(), payloads.capture());
+        assertEquals(BigInteger.valueOf(1000), quota.getValue().getBytes());
+        PageStatsPayload payload = payloads.getValue().iterator().next();
+        assertEquals(page, payload.getPage());
+        assertEquals(4, payload.getNumTiles());
+        assertEquals(Resource.Type.UNDEFINED, getJournal().getType());
+    }
+
+    @Test
+    public void testPageLookupsDoNotFlush() throws Exception {
+        ConfigurableQuotaStore configurable = new ConfigurableQuotaStore(store);
+        configurable.enableBatching(resourceStore, 0);
+        configurable.addToQuotaAndTileCounts(tileSet, quota(1000), tileCounts(1));
+
+        configurable.getLeastRecentlyUsedPage(Collections.singleton("layer"));
+        configurable.getLeastFrequentlyUsedPage(Collections.singleton("layer"));
+        configurable.getTilesForPage(page);
+        verify(store, never()).addToQuotaAndTileCounts(any(), any(), any());
+
+        // the used quota must be exact
+        configurable.getGloballyUsedQuota();
+        verify(store).addToQuotaAndTileCounts(eq(tileSet), any(), any());
+    }
+
+    private Resource getJournal() {
+        return resourceStore.get(QuotaUpdateBatcher.JOURNAL);
+    }
+
+    private Quota quota(long bytes) {
+        Quota quota = new Quota();
+        quota.setBytes(BigInteger.valueOf(bytes));
+        return quota;
+    }
+
+    private Collection<PageStatsPayload> tileCounts(int numTiles) {
+        PageStatsPayload payload = new PageStatsPayload(page);
+        payload.setNumTiles(numTiles);
+        return Collections.singletonList(payload);
+    }
+
+    private Collection<PageStatsPayload> hits(TilePage page, int numHits, long lastAccessTime) {
+        PageStatsPayload payload = new PageStatsPayload(page);
+        payload.setNumHits(numHits);
+        payload.setLastAccessTime(lastAccessTime);
+        return Collections.singletonList(payload);
+    }
+}
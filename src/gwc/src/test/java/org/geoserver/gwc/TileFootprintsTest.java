@@ -0,0 +1,143 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSubset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks the footprints against the styles of a real layer */
+public class TileFootprintsTest extends GeoServerSystemTestSupport {
+
+    static final String BIG_MARK = "footprintBigMark";
+
+    static final String LABEL = "footprintLabel";
+
+    static final String GEOMETRY_FUNCTION = "footprintGeometryFunction";
+
+    TileFootprints footprints;
+
+    GeoServerTileLayer layer;
+
+    String originalStyle;
+
+    @Override
+    protected void setUpSpring(List<String> springContextLocations) {
+        super.setUpSpring(springContextLocations);
+        springContextLocations.add("gwc-integration-test.xml");
+    }
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        super.onSetUp(testData);
+        Catalog catalog = getCatalog();
+        testData.addStyle(BIG_MARK, BIG_MARK + ".sld", TileFootprintsTest.class, catalog);
+        testData.addStyle(LABEL, LABEL + ".sld", TileFootprintsTest.class, catalog);
+        testData.addStyle(
+                GEOMETRY_FUNCTION, GEOMETRY_FUNCTION + ".sld", TileFootprintsTest.class, catalog);
+    }
+
+    @Before
+    public void setupFootprints() throws Exception {
+        footprints = new TileFootprints(getResourceLoader(), true);
+        String layerName = getLayerId(MockData.LAKES);
+        layer = (GeoServerTileLayer) GWC.get().getTileLayerByName(layerName);
+        originalStyle = getCatalog().getLayerByName(layerName).getDefaultStyle().getName();
+    }
+
+    @After
+    public void cleanupFootprints() {
+        footprints.remove(layer.getName());
+        footprints.dispose();
+        setDefaultStyle(originalStyle);
+    }
+
+    @Test
+    public void testStyleBuffer() {
+        // the default lakes style has no sizeable symbols
+        int buffer = footprints.getStyleBuffer(layer);
+        assertTrue(buffer >= 0 && buffer < 4);
+
+        // the buffer follows the style changes
+        setDefaultStyle(BIG_MARK);
+        assertEquals(64, footprints.getStyleBuffer(layer));
+    }
+
+    @Test
+    public void testUnsupportedStyles() {
+        setDefaultStyle(LABEL);
+        assertEquals(TileFootprints.UNSUPPORTED, footprints.getStyleBuffer(layer));
+        setDefaultStyle(GEOMETRY_FUNCTION);
+        assertEquals(TileFootprints.UNSUPPORTED, footprints.getStyleBuffer(layer));
+    }
+
+    @Test
+    public void testEmptyWithBuffer() throws Exception {
+        GridSubset gridSubset = layer.getGridSubset("EPSG:4326");
+        LayerInfo layerInfo = getCatalog().getLayerByName(layer.getName());
+        ReferencedEnvelope data = layerInfo.getResource().getLatLonBoundingBox();
+
+        // a zoom level where the lakes are about 100 pixels wide
+        GridSet gridSet = gridSubset.getGridSet();
+        int zoom = 0;
+        while (zoom < gridSet.getNumLevels() - 1
+                && gridSet.getGrid(zoom).getResolution() > data.getWidth() / 100) {
+            zoom++;
+        }
+        double resolution = gridSet.getGrid(zoom).getResolution();
+
+        // an area 20 pixels east of the lakes
+        double gap = 20 * resolution;
+        BoundingBox east =
+                new BoundingBox(
+                        data.getMaxX() + gap,
+                        data.getMinY(),
+                        data.getMaxX() + gap + data.getWidth(),
+                        data.getMaxY());
+        waitForFootprint(gridSubset, east, zoom);
+
+        // with the default style nothing gets painted there
+        assertTrue(footprints.isEmpty(layer, gridSubset, east, zoom));
+        // with a 64 pixels symbol the lakes might be painted there
+        setDefaultStyle(BIG_MARK);
+        assertFalse(footprints.isEmpty(layer, gridSubset, east, zoom));
+        // and with labels the footprint is not used at all
+        setDefaultStyle(LABEL);
+        BoundingBox farAway = new BoundingBox(100, 10, 110, 20);
+        assertFalse(footprints.isEmpty(layer, gridSubset, farAway, 0));
+    }
+
+    /** The footprint is built in the background on the first request */
+    private void waitForFootprint(GridSubset gridSubset, BoundingBox empty, int zoom)
+            throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!footprints.isEmpty(layer, gridSubset, empty, zoom)
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void setDefaultStyle(String styleName) {
+        Catalog catalog = getCatalog();
+        LayerInfo layerInfo = catalog.getLayerByName(getLayerId(MockData.LAKES));
+        layerInfo.setDefaultStyle(catalog.getStyleByName(styleName));
+        catalog.save(layerInfo);
+    }
+}
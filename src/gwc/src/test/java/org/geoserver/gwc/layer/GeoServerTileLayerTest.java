@@ -37,6 +37,7 @@
 import java.awt.image.BufferedImage;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
@@ -53,6 +54,8 @@
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -939,6 +942,140 @@ public void testGetTile() throws Exception {
         new GetTileMockTester();
     }
 
+    @Test
+    public void testGetTileCoalescing() throws Exception {
+        resource.setLatLonBoundingBox(new ReferencedEnvelope(-180, 180, -90, 90, WGS84));
+        resource.setNativeBoundingBox(new ReferencedEnvelope(-180, 180, -90, 90, WGS84));
+
+        BufferedImage image = new BufferedImage(512, 256, BufferedImage.TYPE_INT_ARGB);
+        RenderedImageMap map = new RenderedImageMap(new WMSMapContent(), image, "image/png");
+        when(mockGWC.dispatchOwsRequest(any(), any()))
+                .thenAnswer(
+                        invocation -> {
+                            // wait for the other request to be waiting on this render
+                            waitFor(
+                                    () ->
+                                            GeoServerTileLayer.METATILE_RENDERS.values().stream()
+                                                    .anyMatch(f -> f.getNumberOfDependents() > 0));
+                            GeoServerTileLayer.WEB_MAP.set(map);
+                            return null;
+                        });
+        RenderedImageMapResponse encoder = mock(RenderedImageMapResponse.class);
+        Mockito.doAnswer(
+                        invocation -> {
+                            ((OutputStream) invocation.getArgument(1)).write(new byte[] {1, 2, 3});
+                            return null;
+                        })
+                .when(encoder)
+                .formatImageOutputStream(any(), any(), any());
+        MimeType mimeType = MimeType.createFromFormat("image/png");
+        when(mockGWC.getResponseEncoder(eq(mimeType), any())).thenReturn(encoder);
+        StorageBroker storageBroker = mock(StorageBroker.class);
+        when(storageBroker.get(any())).thenReturn(false);
+
+        layerInfoTileLayer = new GeoServerTileLayer(layerInfo, defaults, gridSetBroker);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ConveyorTile> first =
+                    executor.submit(
+                            () -> layerInfoTileLayer.getTile(newTile(storageBroker, mimeType, 0)));
+            // wait for the first request to start rendering the meta tile
+            waitFor(() -> !GeoServerTileLayer.METATILE_RENDERS.isEmpty());
+            // request the other tile of the same meta tile
+            Future<ConveyorTile> second =
+                    executor.submit(
+                            () -> layerInfoTileLayer.getTile(newTile(storageBroker, mimeType, 1)));
+
+            assertEquals(3, first.get(10, TimeUnit.SECONDS).getBlob().getSizeInBytes());
+            assertEquals(3, second.get(10, TimeUnit.SECONDS).getBlob().getSizeInBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+        // rendered only once, the second tile was taken from the in memory result
+        verify(mockGWC, times(1)).dispatchOwsRequest(any(), any());
+        assertTrue(GeoServerTileLayer.METATILE_RENDERS.isEmpty());
+    }
+
+    @Test
+    public void testGetTileIdenticalRequestsCoalescing() throws Exception {
+        resource.setLatLonBoundingBox(new ReferencedEnvelope(-180, 180, -90, 90, WGS84));
+        resource.setNativeBoundingBox(new ReferencedEnvelope(-180, 180, -90, 90, WGS84));
+
+        BufferedImage image = new BufferedImage(512, 256, BufferedImage.TYPE_INT_ARGB);
+        RenderedImageMap map = new RenderedImageMap(new WMSMapContent(), image, "image/png");
+        when(mockGWC.dispatchOwsRequest(any(), any()))
+                .thenAnswer(
+                        invocation -> {
+                            // wait for the other request to be waiting on this one
+                            waitFor(
+                                    () ->
+                                            GeoServerTileLayer.TILE_REQUESTS.values().stream()
+                                                    .anyMatch(t -> t.waiters.get() > 0));
+                            GeoServerTileLayer.WEB_MAP.set(map);
+                            return null;
+                        });
+        RenderedImageMapResponse encoder = mock(RenderedImageMapResponse.class);
+        Mockito.doAnswer(
+                        invocation -> {
+                            ((OutputStream) invocation.getArgument(1)).write(new byte[] {1, 2, 3});
+                            return null;
+                        })
+                .when(encoder)
+                .formatImageOutputStream(any(), any(), any());
+        MimeType mimeType = MimeType.createFromFormat("image/png");
+        when(mockGWC.getResponseEncoder(eq(mimeType), any())).thenReturn(encoder);
+        StorageBroker storageBroker = mock(StorageBroker.class);
+        when(storageBroker.get(any())).thenReturn(false);
+
+        layerInfoTileLayer = new GeoServerTileLayer(layerInfo, defaults, gridSetBroker);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ConveyorTile> first =
+                    executor.submit(
+                            () -> layerInfoTileLayer.getTile(newTile(storageBroker, mimeType, 0)));
+            // wait for the first request to be in progress
+            waitFor(() -> !GeoServerTileLayer.TILE_REQUESTS.isEmpty());
+            // request the very same tile
+            Future<ConveyorTile> second =
+                    executor.submit(
+                            () -> layerInfoTileLayer.getTile(newTile(storageBroker, mimeType, 0)));
+
+            assertEquals(3, first.get(10, TimeUnit.SECONDS).getBlob().getSizeInBytes());
+            assertEquals(3, second.get(10, TimeUnit.SECONDS).getBlob().getSizeInBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+        // rendered only once, the second request shared the outcome of the first
+        verify(mockGWC, times(1)).dispatchOwsRequest(any(), any());
+        // and did not hit the blob store either, the two lookups are the ones of the first
+        // request, before and after acquiring the meta tile lock
+        verify(storageBroker, times(2)).get(any());
+        assertTrue(GeoServerTileLayer.TILE_REQUESTS.isEmpty());
+    }
+
+    /** Waits for the condition to hold, failing instead of hanging if it never does */
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for the concurrent request");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private ConveyorTile newTile(StorageBroker storageBroker, MimeType mimeType, long x) {
+        return new ConveyorTile(
+                storageBroker,
+                layerInfoTileLayer.getName(),
+                "EPSG:4326",
+                new long[] {x, 0, 0},
+                mimeType,
+                null,
+                null,
+                null);
+    }
+
     private FeatureTypeInfo getMockTimeFeatureType() {
         FeatureTypeInfo resource = mock(FeatureTypeInfo.class);
         MetadataMap metadata = new MetadataMap();
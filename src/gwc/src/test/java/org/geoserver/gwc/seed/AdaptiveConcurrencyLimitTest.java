@@ -0,0 +1,40 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void testGrowsWhileLatencyIsStable() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4);
+        assertEquals(1, limit.getLimit());
+        for (int i = 0; i < 20; i++) {
+            limit.acquire();
+            limit.release(1000);
+        }
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void testShrinksWhenLatencyGrows() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8);
+        for (int i = 0; i < 50; i++) {
+            limit.acquire();
+            limit.release(1000);
+        }
+        assertEquals(8, limit.getLimit());
+        // the backend gets saturated
+        for (int i = 0; i < 50; i++) {
+            limit.acquire();
+            limit.release(10000);
+        }
+        assertTrue(limit.getLimit() < 8);
+    }
+}
@@ -0,0 +1,77 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.seed;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import org.geowebcache.config.DefaultGridsets;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.GridSubsetFactory;
+import org.junit.After;
+import org.junit.Test;
+
+public class TileRequestDensityTest {
+
+    GridSubset gridSubset;
+
+    public TileRequestDensityTest() {
+        GridSetBroker broker =
+                new GridSetBroker(Collections.singletonList(new DefaultGridsets(true, true)));
+        GridSet gridSet = broker.getDefaults().worldEpsg4326();
+        gridSubset = GridSubsetFactory.createGridSubSet(gridSet);
+    }
+
+    @After
+    public void reset() {
+        TileRequestDensity.reset();
+    }
+
+    @Test
+    public void testRecordDisabled() {
+        // parallel seeding is off by default, nothing gets recorded
+        TileRequestDensity.record("layer", gridSubset, new long[] {0, 0, 0});
+        assertEquals(0, TileRequestDensity.density("layer", gridSubset, world()));
+    }
+
+    @Test
+    public void testDensity() {
+        // the west and east halves of the world at zoom level 0
+        TileRequestDensity.add("layer", gridSubset, new long[] {0, 0, 0});
+        TileRequestDensity.add("layer", gridSubset, new long[] {1, 0, 0});
+        TileRequestDensity.add("layer", gridSubset, new long[] {1, 0, 0});
+        assertEquals(3, TileRequestDensity.density("layer", gridSubset, world()));
+        assertEquals(
+                2,
+                TileRequestDensity.density("layer", gridSubset, new BoundingBox(10, -90, 180, 90)));
+        assertEquals(0, TileRequestDensity.density("other", gridSubset, world()));
+    }
+
+    @Test
+    public void testRemove() {
+        TileRequestDensity.add("layer", gridSubset, new long[] {0, 0, 0});
+        TileRequestDensity.add("layer2", gridSubset, new long[] {0, 0, 0});
+        TileRequestDensity.remove("layer");
+        assertEquals(0, TileRequestDensity.density("layer", gridSubset, world()));
+        assertEquals(1, TileRequestDensity.density("layer2", gridSubset, world()));
+    }
+
+    @Test
+    public void testBounded() {
+        for (int i = 0; i < TileRequestDensity.MAX_ENTRIES + 10; i++) {
+            TileRequestDensity.add("layer" + i, gridSubset, new long[] {0, 0, 0});
+        }
+        assertEquals(1, TileRequestDensity.density("layer0", gridSubset, world()));
+        String last = "layer" + (TileRequestDensity.MAX_ENTRIES + 9);
+        assertEquals(0, TileRequestDensity.density(last, gridSubset, world()));
+    }
+
+    private BoundingBox world() {
+        return new BoundingBox(-180, -90, 180, 90);
+    }
+}
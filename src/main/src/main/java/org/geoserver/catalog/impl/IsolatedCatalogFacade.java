@@ -28,6 +28,7 @@
 import org.geoserver.catalog.util.CloseableIteratorAdapter;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.LocalWorkspace;
+import org.geotools.util.decorate.Wrapper;
 import org.opengis.filter.Filter;
 import org.opengis.filter.sort.SortBy;
 
@@ -36,7 +37,7 @@
  * the context of the corresponding virtual service. REST API and direct code access will have full
  * access to isolated resources.
  */
-final class IsolatedCatalogFacade implements CatalogFacade {
+final class IsolatedCatalogFacade implements CatalogFacade, Wrapper {
 
     // wrapped catalog facade
     private final CatalogFacade facade;
@@ -45,6 +46,19 @@ final class IsolatedCatalogFacade implements CatalogFacade {
         this.facade = facade;
     }
 
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(facade);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws IllegalArgumentException {
+        if (iface.isInstance(facade)) {
+            return iface.cast(facade);
+        }
+        throw new IllegalArgumentException("Cannot unwrap to " + iface);
+    }
+
     @Override
     public Catalog getCatalog() {
         return facade.getCatalog();
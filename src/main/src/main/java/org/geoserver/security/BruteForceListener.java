@@ -4,12 +4,13 @@
  */
 package org.geoserver.security;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
 import org.geoserver.security.config.BruteForcePreventionConfig;
 import org.geotools.util.logging.Logging;
@@ -21,7 +22,11 @@
 import org.springframework.security.core.userdetails.UserDetails;
 
 /**
- * Brute force attack preventer
+ * Brute force attack preventer.
+ *
+ * <p>A failed login locks the user for a random delay, during which any login attempt for the same
+ * user is rejected right away with a {@code Retry-After} header, rather than holding the request
+ * thread until the delay is over.
  *
  * @author Andrea Aime - GeoSolutions
  */
@@ -30,11 +35,34 @@
 
     static final Logger LOGGER = Logging.getLogger(BruteForceListener.class);
 
+    static final String RETRY_AFTER = "Retry-After";
+
+    /** Max number of users whose lock is tracked, the least recently used are dropped first */
+    static final int MAX_LOCKED_USERS = 10000;
+
+    static final String ADDRESS_PREFIX = "address:";
+
+    static final String REJECTED_PREFIX = "rejected:";
+
+    /**
+     * Simple single node failed login tracker, bounded in size. Should be made pluggable to allow
+     * by some sort of network service for a clustered installation
+     */
+    LoginFailureSketch failures = new LoginFailureSketch();
+
     /**
-     * Simple single node delayed login tracker. Should be made pluggable to allow by some sort of
-     * network service for a clustered installation
+     * The time each user is locked until, by exact user name, so that a failed login never locks
+     * another user. Bounded in size, an attack going through many user names can only make the
+     * locks of the least recently seen users expire early
      */
-    Map<String, AtomicInteger> delayedUsers = new ConcurrentHashMap<>();
+    Map<String, Long> locks =
+            Collections.synchronizedMap(
+                    new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                            return size() > MAX_LOCKED_USERS;
+                        }
+                    });
 
     private GeoServerSecurityManager securityManager;
 
@@ -76,44 +104,79 @@ public void onApplicationEvent(AbstractAuthenticationEvent event) {
                             + authentication);
         }
 
-        // do we have a delayed login in flight already? If so, kill this login attempt
-        // no matter if successful or not
-        final AtomicInteger counter = delayedUsers.get(name);
-        if (counter != null) {
-            int count = counter.incrementAndGet();
-            logFailedRequest(request, name, count);
-            throw new ConcurrentAuthenticationException(name, count);
+        // is the user still in the delay period of a previous failed login? If so, kill this
+        // login attempt no matter if successful or not, without holding the request thread
+        long now = System.currentTimeMillis();
+        long windowMillis = getWindowMillis(config);
+        long window = now / windowMillis;
+        if (name != null) {
+            long lockedUntil = getLockedUntil(name, now);
+            if (lockedUntil > now) {
+                int count = failures.addFailure(REJECTED_PREFIX + name, window);
+                logFailedRequest(request, name, count, 0);
+                setRetryAfter(lockedUntil - now);
+                throw new ConcurrentAuthenticationException(name, count);
+            }
         }
 
         if (event instanceof AuthenticationFailureBadCredentialsEvent
                 || event instanceof AuthenticationFailureProviderNotFoundEvent) {
-            // are we above the max number of blocked threads already?
-            int maxBlockedThreads = config.getMaxBlockedThreads();
-            if (maxBlockedThreads > 0 && delayedUsers.size() > maxBlockedThreads) {
-                throw new MaxBlockedThreadsException(1);
-            }
+            int addressFailures =
+                    request != null
+                            ? failures.addFailure(ADDRESS_PREFIX + request.getRemoteAddr(), window)
+                            : 0;
+            logFailedRequest(request, name, 0, addressFailures);
 
-            delayedUsers.put(name, new AtomicInteger(1));
-            try {
-                logFailedRequest(request, name, 0);
-                long delay = computeDelay(config);
-                if (delay > 0) {
-                    if (LOGGER.isLoggable(Level.INFO)) {
-                        LOGGER.info(
-                                "Brute force attack prevention, delaying login for "
-                                        + delay
-                                        + "ms");
-                    }
-                    Thread.sleep(delay);
+            // lock the user first, the global limit must not let it try again right away
+            long delay = computeDelay(config);
+            if (delay > 0 && name != null) {
+                if (LOGGER.isLoggable(Level.INFO)) {
+                    LOGGER.info(
+                            "Brute force attack prevention, delaying login for " + delay + "ms");
                 }
-            } catch (InterruptedException e) {
-                // duh
-            } finally {
-                delayedUsers.remove(name);
+                locks.merge(name, now + delay, Math::max);
+                setRetryAfter(delay);
+            }
+
+            // are we above the max number of delayed logins already?
+            int delayed = failures.addTotalFailure(window);
+            int maxBlockedThreads = config.getMaxBlockedThreads();
+            if (maxBlockedThreads > 0 && delayed > maxBlockedThreads) {
+                setRetryAfter(Math.max(delay, windowMillis - now % windowMillis));
+                throw new MaxBlockedThreadsException(delayed);
             }
         }
     }
 
+    /** Returns the time the user is locked until, dropping the lock if expired */
+    private long getLockedUntil(String name, long now) {
+        Long lockedUntil = locks.get(name);
+        if (lockedUntil == null) {
+            return 0;
+        }
+        if (lockedUntil <= now) {
+            locks.remove(name, lockedUntil);
+        }
+        return lockedUntil;
+    }
+
+    /**
+     * The failures are counted in windows as long as the max delay, which is also the longest time
+     * a user can be locked
+     */
+    private long getWindowMillis(BruteForcePreventionConfig config) {
+        return Math.max(config.getMaxDelaySeconds(), 1) * 1000L;
+    }
+
+    /** Tells the client how long to wait before logging in again */
+    private void setRetryAfter(long delay) {
+        HttpServletResponse response = GeoServerSecurityFilterChainProxy.RESPONSE.get();
+        if (response != null && !response.isCommitted()) {
+            long seconds = (delay + 999) / 1000;
+            response.setHeader(RETRY_AFTER, String.valueOf(seconds));
+        }
+    }
+
     private boolean requestAddressInWhiteList(
             HttpServletRequest request, BruteForcePreventionConfig config) {
         // is there a white list?
@@ -147,18 +210,24 @@ private String getUserName(Authentication authentication) {
         return authentication.getName();
     }
 
-    private void logFailedRequest(HttpServletRequest request, String name, int count) {
-        StringBuilder sb = new StringBuilder("Failed login, user ").append(name).append(" from ");
-        sb.append(request.getRemoteAddr());
-        // log x-forwarded-for too, but not exclusively as it can be spoofed
-        String forwardedFor = request.getHeader("X-Forwarded-For");
-        if (forwardedFor != null) {
-            sb.append(", forwarded for ").append(forwardedFor);
+    private void logFailedRequest(
+            HttpServletRequest request, String name, int count, int addressFailures) {
+        StringBuilder sb = new StringBuilder("Failed login, user ").append(name);
+        if (request != null) {
+            sb.append(" from ").append(request.getRemoteAddr());
+            // log x-forwarded-for too, but not exclusively as it can be spoofed
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null) {
+                sb.append(", forwarded for ").append(forwardedFor);
+            }
         }
         if (count > 0) {
-            sb.append(", stopped ")
-                    .append(count)
-                    .append(" concurrent logins during authentication delay");
+            sb.append(", stopped ").append(count).append(" logins during authentication delay");
+        }
+        if (addressFailures > 1) {
+            sb.append(", ")
+                    .append(addressFailures)
+                    .append(" failed logins from this address in the last delay period");
         }
 
         LOGGER.warning(sb.toString());
@@ -166,7 +235,8 @@ private void logFailedRequest(HttpServletRequest request, String name, int count
 
     @Override
     public void onReset() {
-        delayedUsers.clear();
+        failures.clear();
+        locks.clear();
     }
 
     @Override
@@ -181,6 +251,7 @@ public void beforeReload() {
 
     @Override
     public void onReload() {
-        delayedUsers.clear();
+        failures.clear();
+        locks.clear();
     }
 }
@@ -0,0 +1,363 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.LockingCatalogFacade;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.DefaultCatalogFacade;
+import org.geoserver.catalog.impl.ProxyUtils;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
+import org.geotools.util.decorate.Wrapper;
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.Filter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Memoizes the access limits computed by the delegate {@link ResourceAccessManager}, so that the
+ * many lookups performed by {@link SecureCatalogImpl} for the same user and catalog object while
+ * handling a request, e.g., a capabilities document or a multi layer map, are computed only once.
+ *
+ * <p>Limits are memoized in the Spring request attributes, and thus live as long as the request.
+ * When wrapping a {@link DefaultResourceAccessManager}, whose decisions depend only on the roles of
+ * the user, limits can also be shared among requests for {@code
+ * org.geoserver.security.accessLimitsCacheTTL} seconds, keyed by role set. Any catalog change, or
+ * change of the data access rules, invalidates both.
+ *
+ * <p>With a {@link DefaultResourceAccessManager} the security filters for layers and groups are
+ * also backed by a {@link PublishedVisibilityIndex}, so that listing them does not evaluate the
+ * rules each time.
+ */
+public class CachingResourceAccessManager extends ResourceAccessManagerWrapper
+        implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CachingResourceAccessManager.class);
+
+    /** Time to live, in seconds, of the limits shared among requests, disabled if not positive */
+    public static final String CACHE_TTL_KEY = "org.geoserver.security.accessLimitsCacheTTL";
+
+    static final String REQUEST_MEMO = CachingResourceAccessManager.class.getName() + ".MEMO";
+
+    static final int MAX_SHARED_ENTRIES = 10000;
+
+    /** Bumped at each catalog change */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Cache<List<Object>, Optional<Object>> shared;
+
+    private final PublishedVisibilityIndex visibility;
+
+    public CachingResourceAccessManager(ResourceAccessManager delegate, Catalog catalog) {
+        this(delegate, catalog, getTimeToLive());
+    }
+
+    /**
+     * @param delegate the access manager computing the limits
+     * @param catalog the raw catalog, whose changes invalidate the memoized limits
+     * @param timeToLive time to live of the limits shared among requests, in seconds
+     */
+    public CachingResourceAccessManager(
+            ResourceAccessManager delegate, Catalog catalog, long timeToLive) {
+        setDelegate(delegate);
+        catalog.addListener(this);
+        if (timeToLive > 0 && delegate instanceof DefaultResourceAccessManager) {
+            this.shared =
+                    CacheBuilder.newBuilder()
+                            .maximumSize(MAX_SHARED_ENTRIES)
+                            .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                            .build();
+        } else {
+            this.shared = null;
+        }
+        if (delegate instanceof DefaultResourceAccessManager) {
+            this.visibility =
+                    new PublishedVisibilityIndex(
+                            (DefaultResourceAccessManager) delegate, isFilteringInMemory(catalog));
+        } else {
+            this.visibility = null;
+        }
+    }
+
+    /**
+     * Checks if the catalog evaluates the query filters in memory, rather than encoding them, e.g.,
+     * in SQL
+     */
+    static boolean isFilteringInMemory(Catalog catalog) {
+        if (!(catalog instanceof CatalogImpl)) {
+            return false;
+        }
+        CatalogFacade facade =
+                ProxyUtils.unwrap(((CatalogImpl) catalog).getFacade(), LockingCatalogFacade.class);
+        if (facade instanceof Wrapper && ((Wrapper) facade).isWrapperFor(CatalogFacade.class)) {
+            facade = ((Wrapper) facade).unwrap(CatalogFacade.class);
+        }
+        return facade instanceof DefaultCatalogFacade;
+    }
+
+    private static long getTimeToLive() {
+        String value = GeoServerExtensions.getProperty(CACHE_TTL_KEY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + CACHE_TTL_KEY + ": " + value);
+            return 0;
+        }
+    }
+
+    @Override
+    public WorkspaceAccessLimits getAccessLimits(Authentication user, WorkspaceInfo workspace) {
+        return cached(
+                "workspace", user, workspace, null, () -> super.getAccessLimits(user, workspace));
+    }
+
+    @Override
+    public DataAccessLimits getAccessLimits(Authentication user, LayerInfo layer) {
+        return cached("layer", user, layer, null, () -> super.getAccessLimits(user, layer));
+    }
+
+    @Override
+    public DataAccessLimits getAccessLimits(
+            Authentication user, LayerInfo layer, List<LayerGroupInfo> containers) {
+        return cached(
+                "layer",
+                user,
+                layer,
+                containers,
+                () -> super.getAccessLimits(user, layer, containers));
+    }
+
+    @Override
+    public DataAccessLimits getAccessLimits(Authentication user, ResourceInfo resource) {
+        return cached(
+                "resource", user, resource, null, () -> super.getAccessLimits(user, resource));
+    }
+
+    @Override
+    public StyleAccessLimits getAccessLimits(Authentication user, StyleInfo style) {
+        return cached("style", user, style, null, () -> super.getAccessLimits(user, style));
+    }
+
+    @Override
+    public LayerGroupAccessLimits getAccessLimits(Authentication user, LayerGroupInfo layerGroup) {
+        return cached(
+                "group", user, layerGroup, null, () -> super.getAccessLimits(user, layerGroup));
+    }
+
+    @Override
+    public LayerGroupAccessLimits getAccessLimits(
+            Authentication user, LayerGroupInfo layerGroup, List<LayerGroupInfo> containers) {
+        return cached(
+                "group",
+                user,
+                layerGroup,
+                containers,
+                () -> super.getAccessLimits(user, layerGroup, containers));
+    }
+
+    @Override
+    public Filter getSecurityFilter(Authentication user, Class<? extends CatalogInfo> clazz) {
+        if (visibility != null
+                && (LayerInfo.class.equals(clazz)
+                        || LayerGroupInfo.class.equals(clazz)
+                        || PublishedInfo.class.equals(clazz))) {
+            @SuppressWarnings("unchecked")
+            Filter filter =
+                    visibility.getSecurityFilter(user, (Class<? extends PublishedInfo>) clazz);
+            if (filter != null) {
+                return filter;
+            }
+        }
+        return delegate.getSecurityFilter(user, clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(
+            String type,
+            Authentication user,
+            CatalogInfo info,
+            List<LayerGroupInfo> containers,
+            Supplier<T> loader) {
+        if (info == null || info.getId() == null) {
+            // not saved yet, or going to be created
+            return loader.get();
+        }
+        List<Object> context = getContext(type, info, containers);
+
+        Map<List<Object>, Optional<Object>> memo = getRequestMemo();
+        List<Object> memoKey = null;
+        if (memo != null) {
+            memoKey = new ArrayList<>(context);
+            memoKey.add(user);
+            Optional<Object> limits = memo.get(memoKey);
+            if (limits != null) {
+                return (T) limits.orElse(null);
+            }
+        }
+
+        Optional<Object> limits;
+        if (shared != null) {
+            List<Object> sharedKey = new ArrayList<>(context);
+            sharedKey.add(getRoles(user));
+            try {
+                limits = shared.get(sharedKey, () -> Optional.ofNullable(loader.get()));
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        } else {
+            limits = Optional.ofNullable(loader.get());
+        }
+
+        if (memo != null) {
+            memo.put(memoKey, limits);
+        }
+        return (T) limits.orElse(null);
+    }
+
+    /** The state, besides the user, the limits of a catalog object depend on */
+    private List<Object> getContext(
+            String type, CatalogInfo info, List<LayerGroupInfo> containers) {
+        List<String> containerIds = Collections.emptyList();
+        if (containers != null && !containers.isEmpty()) {
+            containerIds = new ArrayList<>(containers.size());
+            for (LayerGroupInfo container : containers) {
+                containerIds.add(container.getId());
+            }
+        }
+        Request request = Dispatcher.REQUEST.get();
+        return new ArrayList<>(
+                Arrays.asList(
+                        type,
+                        info.getId(),
+                        containerIds,
+                        request != null ? request.getService() : null,
+                        AdminRequest.get() != null,
+                        GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest(),
+                        generation.get(),
+                        getRulesVersion()));
+    }
+
+    private long getRulesVersion() {
+        if (delegate instanceof DefaultResourceAccessManager) {
+            return ((DefaultResourceAccessManager) delegate).getRulesLastModified();
+        }
+        return 0;
+    }
+
+    /** The roles of the user, or null for anonymous access */
+    private Set<String> getRoles(Authentication user) {
+        if (user == null || user.getAuthorities() == null) {
+            return null;
+        }
+        Set<String> roles = new HashSet<>();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        return roles;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<List<Object>, Optional<Object>> getRequestMemo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        try {
+            Map<List<Object>, Optional<Object>> memo =
+                    (Map<List<Object>, Optional<Object>>)
+                            attributes.getAttribute(REQUEST_MEMO, RequestAttributes.SCOPE_REQUEST);
+            if (memo == null) {
+                memo = new ConcurrentHashMap<>();
+                attributes.setAttribute(REQUEST_MEMO, memo, RequestAttributes.SCOPE_REQUEST);
+            }
+            return memo;
+        } catch (IllegalStateException e) {
+            // background job carrying the attributes of a request already completed
+            return null;
+        }
+    }
+
+    /** Drops all the memoized limits */
+    public void invalidate() {
+        generation.incrementAndGet();
+        if (shared != null) {
+            shared.invalidateAll();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        invalidate();
+        if (visibility != null) {
+            visibility.added(event.getSource());
+        }
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate();
+        if (visibility != null) {
+            visibility.removed(event.getSource());
+        }
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the post modify one
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate();
+        if (visibility != null) {
+            visibility.changed(event.getSource());
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        invalidate();
+        if (visibility != null) {
+            visibility.clear();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+/**
+ * Selects the {@link RequestFilterChain} handling a request without testing the patterns of all the
+ * chains in turn.
+ *
+ * <p>The patterns are compiled into a trie of the literal path segments they start with. A request
+ * path walks the trie once, collecting only the patterns whose literal prefix it matches; plain
+ * sub-path patterns, e.g. {@code /gwc/rest/**}, are matched by the walk alone, while the others are
+ * checked with their {@link IncludeQueryStringAntPathRequestMatcher}. The first chain, in
+ * configuration order, having a matching pattern and HTTP method wins, as it would when testing the
+ * chains one after the other.
+ *
+ * <p>The selected chain is also cached by HTTP method and path, unless it depended on a query
+ * string pattern.
+ */
+class FilterChainSelector {
+
+    /** Max number of paths whose selection is cached, the cache is cleared when exceeded */
+    static final int MAX_CACHED_PATHS = 10000;
+
+    static final String SELECTION_ATTRIBUTE = FilterChainSelector.class.getName() + ".SELECTION";
+
+    static final int NO_MATCH = -1;
+
+    private static final String MATCH_ALL = "/**";
+
+    private static final String QUERYSTRING_SEPARATOR = "|";
+
+    private final Node root = new Node();
+
+    private final Map<String, Integer> cache = new ConcurrentHashMap<>();
+
+    private int chains;
+
+    private int patterns;
+
+    /**
+     * Adds the next chain, in configuration order
+     *
+     * @param methods the HTTP methods matched by the chain, or null for any
+     * @param chainPatterns the patterns of the chain, comma separated lists already split
+     * @return a matcher selecting requests for which the chain is the first matching one
+     */
+    synchronized RequestMatcher add(
+            Set<HTTPMethod> methods, List<String> chainPatterns, RequestMatcher matcher) {
+        int chain = chains++;
+        if (chainPatterns != null) {
+            for (String pattern : chainPatterns) {
+                addPattern(chain, methods, pattern);
+            }
+        }
+        cache.clear();
+        return new SelectedChainMatcher(chain, matcher);
+    }
+
+    private void addPattern(int chain, Set<HTTPMethod> methods, String pattern) {
+        String path = pattern;
+        boolean queryString = pattern.contains(QUERYSTRING_SEPARATOR);
+        if (queryString) {
+            path = pattern.substring(0, pattern.indexOf(QUERYSTRING_SEPARATOR));
+        }
+        path = path.toLowerCase();
+        if (path.equals("**")) {
+            path = MATCH_ALL;
+        }
+
+        Node node = root;
+        boolean subpath = false;
+        if (path.startsWith("/")) {
+            String[] segments = path.substring(1).split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.equals("**")
+                        && i == segments.length - 1
+                        && path.indexOf('?') == -1
+                        && path.indexOf('*') == path.length() - 2) {
+                    subpath = true;
+                    break;
+                }
+                if (isWildcard(segment)) {
+                    break;
+                }
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        node.candidates.add(
+                new Candidate(
+                        patterns++,
+                        chain,
+                        methods,
+                        subpath && !queryString,
+                        queryString,
+                        new IncludeQueryStringAntPathRequestMatcher(pattern)));
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.indexOf('*') != -1
+                || segment.indexOf('?') != -1
+                || segment.indexOf('{') != -1;
+    }
+
+    /** Returns the index of the chain handling the request, or {@link #NO_MATCH} */
+    int select(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (request.getPathInfo() != null) {
+            path += request.getPathInfo();
+        }
+        path = path.toLowerCase();
+        String key = request.getMethod() + " " + path;
+
+        Object selection = request.getAttribute(SELECTION_ATTRIBUTE);
+        if (selection instanceof Selection && ((Selection) selection).isFor(this, key)) {
+            return ((Selection) selection).chain;
+        }
+        Integer chain = cache.get(key);
+        if (chain == null) {
+            chain = select(request, path, key);
+        }
+        request.setAttribute(SELECTION_ATTRIBUTE, new Selection(this, key, chain));
+        return chain;
+    }
+
+    private int select(HttpServletRequest request, String path, String key) {
+        List<Candidate> candidates = new ArrayList<>(root.candidates);
+        if (path.startsWith("/")) {
+            Node node = root;
+            int start = 1;
+            while (node != null && start <= path.length()) {
+                int end = path.indexOf('/', start);
+                if (end == -1) {
+                    end = path.length();
+                }
+                node = node.children.get(path.substring(start, end));
+                if (node != null) {
+                    candidates.addAll(node.candidates);
+                }
+                start = end + 1;
+            }
+        }
+        candidates.sort(Comparator.comparingInt(c -> c.order));
+
+        boolean cacheable = true;
+        int selected = NO_MATCH;
+        HTTPMethod method = null;
+        for (Candidate candidate : candidates) {
+            if (candidate.methods != null) {
+                if (method == null) {
+                    method = HTTPMethod.fromString(request.getMethod());
+                }
+                if (!candidate.methods.contains(method)) {
+                    continue;
+                }
+            }
+            if (candidate.subpath) {
+                selected = candidate.chain;
+                break;
+            }
+            if (candidate.queryString) {
+                cacheable = false;
+            }
+            if (candidate.matcher.matches(request)) {
+                selected = candidate.chain;
+                break;
+            }
+        }
+
+        if (cacheable) {
+            if (cache.size() >= MAX_CACHED_PATHS) {
+                cache.clear();
+            }
+            cache.put(key, selected);
+        }
+        return selected;
+    }
+
+    /** Number of paths whose selection is cached */
+    int getCacheSize() {
+        return cache.size();
+    }
+
+    /** A trie node, reached by the literal segments of the patterns */
+    static class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+
+        final List<Candidate> candidates = new ArrayList<>();
+    }
+
+    /** A pattern whose literal prefix has been matched */
+    static class Candidate {
+
+        /** The position of the pattern in the configuration */
+        final int order;
+
+        final int chain;
+
+        final Set<HTTPMethod> methods;
+
+        /** True if matching the literal prefix is enough */
+        final boolean subpath;
+
+        final boolean queryString;
+
+        final RequestMatcher matcher;
+
+        Candidate(
+                int order,
+                int chain,
+                Set<HTTPMethod> methods,
+                boolean subpath,
+                boolean queryString,
+                RequestMatcher matcher) {
+            this.order = order;
+            this.chain = chain;
+            this.methods = methods;
+            this.subpath = subpath;
+            this.queryString = queryString;
+            this.matcher = matcher;
+        }
+    }
+
+    /** The chain selected for a request, saved to answer the matchers of the following chains */
+    static class Selection {
+
+        final FilterChainSelector selector;
+
+        final String key;
+
+        final int chain;
+
+        Selection(FilterChainSelector selector, String key, int chain) {
+            this.selector = selector;
+            this.key = key;
+            this.chain = chain;
+        }
+
+        boolean isFor(FilterChainSelector selector, String key) {
+            return this.selector == selector && this.key.equals(key);
+        }
+    }
+
+    /** Matches the requests for which a chain is the selected one */
+    class SelectedChainMatcher implements RequestMatcher {
+
+        private final int chain;
+
+        private final RequestMatcher matcher;
+
+        SelectedChainMatcher(int chain, RequestMatcher matcher) {
+            this.chain = chain;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(HttpServletRequest request) {
+            return select(request) == chain;
+        }
+
+        /** The matcher of the chain, testing the chain alone */
+        RequestMatcher getMatcher() {
+            return matcher;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(matcher);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.security.config.SecurityManagerConfig;
 import org.geoserver.security.filter.GeoServerSecurityContextPersistenceFilter;
@@ -40,6 +41,8 @@
 
     static ThreadLocal<HttpServletRequest> REQUEST = new ThreadLocal<>();
 
+    static ThreadLocal<HttpServletResponse> RESPONSE = new ThreadLocal<>();
+
     /**
      * Request header attribute indicating if the request was running through a Geoserver security
      * filter chain. The default is <code>false</code>.
@@ -138,10 +141,12 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
         request.setAttribute(SECURITY_ENABLED_ATTRIBUTE, Boolean.FALSE);
         // set the request thread local
         REQUEST.set((HttpServletRequest) request);
+        RESPONSE.set((HttpServletResponse) response);
         try {
             proxy.doFilter(request, response, chain);
         } finally {
             REQUEST.remove();
+            RESPONSE.remove();
         }
     }
 
@@ -173,9 +178,15 @@ void createFilterChain() {
         //        Map<RequestMatcher,List<Filter>> filterChainMap =
         //                new LinkedHashMap<RequestMatcher,List<Filter>>();
 
+        // selects the chain with a trie of the patterns, rather than testing each chain in turn
+        FilterChainSelector selector = new FilterChainSelector();
         List<SecurityFilterChain> filterChains = new ArrayList<>();
         for (RequestFilterChain chain : filterChain.getRequestChains()) {
-            RequestMatcher matcher = matcherForChain(chain);
+            RequestMatcher matcher =
+                    selector.add(
+                            methodsForChain(chain),
+                            patternsForChain(chain),
+                            matcherForChain(chain));
             List<Filter> filters = new ArrayList<>();
             for (String filterName : chain.getCompiledFilterNames()) {
                 try {
@@ -216,25 +227,37 @@ void createFilterChain() {
      */
     public GeoServerRequestMatcher matcherForChain(RequestFilterChain chain) {
 
-        Set<HTTPMethod> methods = chain.getHttpMethods();
-        if (chain.isMatchHTTPMethod() == false) methods = null;
+        Set<HTTPMethod> methods = methodsForChain(chain);
+
+        List<String> patterns = patternsForChain(chain);
+
+        if (patterns == null) return new GeoServerRequestMatcher(methods, (RequestMatcher[]) null);
+
+        RequestMatcher[] matchers = new RequestMatcher[patterns.size()];
+        for (int i = 0; i < matchers.length; i++) {
+            matchers[i] = new IncludeQueryStringAntPathRequestMatcher(patterns.get(i));
+        }
+        return new GeoServerRequestMatcher(methods, matchers);
+    }
+
+    /** The HTTP methods matched by the chain, <code>null</code> for any */
+    static Set<HTTPMethod> methodsForChain(RequestFilterChain chain) {
+        if (chain.isMatchHTTPMethod() == false) return null;
+        return chain.getHttpMethods();
+    }
 
+    /** The patterns of the chain, with multiple patterns separated by a comma resolved */
+    static List<String> patternsForChain(RequestFilterChain chain) {
         List<String> tmp = chain.getPatterns();
 
-        if (tmp == null) return new GeoServerRequestMatcher(methods, (RequestMatcher[]) null);
+        if (tmp == null) return null;
 
-        // resolve multiple patterns separated by a comma
         List<String> patterns = new ArrayList<>();
         for (String pattern : tmp) {
             String[] array = pattern.split(",");
             for (String singlePattern : array) patterns.add(singlePattern);
         }
-
-        RequestMatcher[] matchers = new RequestMatcher[patterns.size()];
-        for (int i = 0; i < matchers.length; i++) {
-            matchers[i] = new IncludeQueryStringAntPathRequestMatcher(patterns.get(i));
-        }
-        return new GeoServerRequestMatcher(methods, matchers);
+        return patterns;
     }
 
     /** looks up a named filter */
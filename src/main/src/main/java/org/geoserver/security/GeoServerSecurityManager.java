@@ -69,8 +69,8 @@
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resource.Type;
 import org.geoserver.security.auth.AuthenticationCache;
+import org.geoserver.security.auth.ConcurrentAuthenticationCacheImpl;
 import org.geoserver.security.auth.GeoServerRootAuthenticationProvider;
-import org.geoserver.security.auth.GuavaAuthenticationCacheImpl;
 import org.geoserver.security.auth.UsernamePasswordAuthenticationProvider;
 import org.geoserver.security.concurrent.LockingKeyStoreProvider;
 import org.geoserver.security.concurrent.LockingRoleService;
@@ -695,7 +695,7 @@ public AuthenticationCache getAuthenticationCache() {
 
     AuthenticationCache lookupAuthenticationCache() {
         AuthenticationCache authCache = GeoServerExtensions.bean(AuthenticationCache.class);
-        return authCache != null ? authCache : new GuavaAuthenticationCacheImpl(1000);
+        return authCache != null ? authCache : new ConcurrentAuthenticationCacheImpl(1000);
     }
 
     public RememberMeServices getRememberMeService() {
@@ -0,0 +1,111 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock free count of failed logins, used by {@link BruteForceListener}.
+ *
+ * <p>Keys (user names, addresses) are hashed into a few rows of cells, as in a count-min sketch, so
+ * the memory used does not grow with the number of keys an attack goes through. Each cell holds a
+ * failure count for a time window, reset when a new window starts. Reads take the minimum over the
+ * rows: a collision can make a key look failing more than it is, never less. The counts are used
+ * for reporting and limiting only, never to lock a user out.
+ */
+final class LoginFailureSketch {
+
+    static final int DEPTH = 4;
+
+    static final int WIDTH = 1 << 12;
+
+    private final int depth;
+
+    private final int width;
+
+    /** Random per instance, so that colliding keys cannot be computed in advance */
+    private final int[] seeds;
+
+    /** Packed as window << 32 | count */
+    private final AtomicLongArray failures;
+
+    private final AtomicLong totalFailures = new AtomicLong();
+
+    LoginFailureSketch() {
+        this(DEPTH, WIDTH);
+    }
+
+    LoginFailureSketch(int depth, int width) {
+        if (depth < 1 || width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException(
+                    "Depth must be positive and width a power of two, got "
+                            + depth
+                            + " and "
+                            + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.seeds = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            seeds[i] = ThreadLocalRandom.current().nextInt();
+        }
+        this.failures = new AtomicLongArray(depth * width);
+    }
+
+    private int cell(int row, String key) {
+        // murmur3 finalizer, spreads the bits of the seeded hash code
+        int h = key.hashCode() ^ seeds[row];
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return row * width + (h & (width - 1));
+    }
+
+    /** Counts a failure for the key in the given time window, returns the updated estimate */
+    int addFailure(String key, long window) {
+        int result = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long packed = failures.updateAndGet(cell(row, key), p -> increment(p, window));
+            result = Math.min(result, (int) packed);
+        }
+        return result;
+    }
+
+    /** Returns the failures of the key in the given time window */
+    int getFailures(String key, long window) {
+        int result = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            result = Math.min(result, count(failures.get(cell(row, key)), window));
+        }
+        return result;
+    }
+
+    /** Counts a failure in the given time window, whatever the key, returns the updated total */
+    int addTotalFailure(long window) {
+        return (int) totalFailures.updateAndGet(p -> increment(p, window));
+    }
+
+    private static long increment(long packed, long window) {
+        if (count(packed, window) == 0) {
+            return (window << 32) | 1;
+        }
+        return packed + 1;
+    }
+
+    private static int count(long packed, long window) {
+        return (int) (packed >>> 32) == (int) window ? (int) packed : 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < failures.length(); i++) {
+            failures.set(i, 0);
+        }
+        totalFailures.set(0);
+    }
+}
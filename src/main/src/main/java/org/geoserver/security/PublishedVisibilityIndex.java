@@ -0,0 +1,290 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
+import org.geotools.filter.expression.InternalVolatileFunction;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Keeps, for each distinct set of roles, which layers and layer groups are visible according to a
+ * {@link DefaultResourceAccessManager}, as a bit set indexed by published id, so that listing the
+ * published of a large catalog, e.g. for a capabilities document, does not evaluate the rules for
+ * each of them over and over.
+ *
+ * <p>Visibility is computed lazily, the first time a published is listed for a role set, and
+ * updated incrementally as the catalog changes: a modified or removed published is evaluated again
+ * on the next listing, while changes to workspaces, stores or resources, which can move published
+ * around in the rule tree, cause all of them to be evaluated again. A change of the rules drops all
+ * the views.
+ *
+ * <p>The index is used only when the catalog evaluates the filters in memory, a catalog able to
+ * encode the rule filters in its queries gets them as they are.
+ */
+class PublishedVisibilityIndex {
+
+    /** Max number of role sets tracked, all views are dropped when exceeded */
+    static final int MAX_VIEWS = 1000;
+
+    private final DefaultResourceAccessManager manager;
+
+    /** Whether the catalog evaluates the filters in memory, rather than encoding them */
+    private final boolean inMemory;
+
+    /** The bit of each published id in the views */
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final Map<List<Object>, View> views = new ConcurrentHashMap<>();
+
+    private volatile long rulesVersion;
+
+    PublishedVisibilityIndex(DefaultResourceAccessManager manager, boolean inMemory) {
+        this.manager = manager;
+        this.inMemory = inMemory;
+        this.rulesVersion = manager.getRulesLastModified();
+    }
+
+    /**
+     * Returns a filter selecting the layers and groups visible to the user, or {@code null} if the
+     * index cannot be used in the current catalog mode. The rule filter is returned as is when it
+     * is {@link Filter#INCLUDE} or {@link Filter#EXCLUDE}, or when the catalog can encode it.
+     */
+    Filter getSecurityFilter(Authentication user, Class<? extends PublishedInfo> clazz) {
+        if (manager.getMode() == CatalogMode.CHALLENGE) {
+            // challenge mode does not pre-filter by rules
+            return null;
+        }
+        long version = manager.getRulesLastModified();
+        if (version != rulesVersion) {
+            views.clear();
+            rulesVersion = version;
+        }
+        List<Object> key =
+                Arrays.asList(
+                        getRoles(user),
+                        AdminRequest.get() != null,
+                        GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest());
+        if (views.size() >= MAX_VIEWS && !views.containsKey(key)) {
+            views.clear();
+        }
+        View view = views.computeIfAbsent(key, k -> new View(user));
+
+        Filter rules = view.getFilter(clazz);
+        if (rules == Filter.INCLUDE || rules == Filter.EXCLUDE || !inMemory) {
+            return rules;
+        }
+        FilterFactory factory = Predicates.factory;
+        return factory.equals(factory.literal(Boolean.TRUE), new VisibleFunction(view));
+    }
+
+    /** Number of role sets currently tracked */
+    int size() {
+        return views.size();
+    }
+
+    /** Number of published ids currently mapped to a bit */
+    int getIndexSize() {
+        return indexes.size();
+    }
+
+    /** Updates the views after a catalog object has been added */
+    void added(CatalogInfo info) {
+        if (info instanceof PublishedInfo) {
+            // might match a rule that was dangling until now
+            views.values().forEach(View::resetFilters);
+        }
+    }
+
+    /** Updates the views after a catalog object has been removed */
+    void removed(CatalogInfo info) {
+        info = ModificationProxy.unwrap(info);
+        if (info instanceof PublishedInfo && info.getId() != null) {
+            // the bit is not reused, clear it so that the views do not keep a stale visibility
+            Integer index = indexes.remove(info.getId());
+            for (View view : views.values()) {
+                view.resetFilters();
+                if (index != null) {
+                    view.drop(index);
+                }
+            }
+        } else {
+            changed(info);
+        }
+    }
+
+    /** Updates the views after a catalog object has been modified */
+    void changed(CatalogInfo info) {
+        info = ModificationProxy.unwrap(info);
+        if (info instanceof PublishedInfo) {
+            Integer index = indexes.get(info.getId());
+            for (View view : views.values()) {
+                view.resetFilters();
+                if (index != null) {
+                    view.forget(index);
+                }
+            }
+        } else if (info instanceof WorkspaceInfo
+                || info instanceof NamespaceInfo
+                || info instanceof StoreInfo
+                || info instanceof ResourceInfo) {
+            views.values().forEach(View::forgetAll);
+        }
+    }
+
+    /** Drops all the views */
+    void clear() {
+        views.clear();
+    }
+
+    private int getIndex(String id) {
+        return indexes.computeIfAbsent(id, k -> nextIndex.getAndIncrement());
+    }
+
+    /** The roles of the user, or null for anonymous access */
+    private static Set<String> getRoles(Authentication user) {
+        if (user == null || user.getAuthorities() == null) {
+            return null;
+        }
+        Set<String> roles = new HashSet<>();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        return roles;
+    }
+
+    /** The visibility of the published for a given role set */
+    class View {
+
+        /** A user with the role set, used to build the rule filters */
+        private final Authentication user;
+
+        private final BitSet known = new BitSet();
+
+        private final BitSet visible = new BitSet();
+
+        private Filter layerFilter;
+
+        private Filter groupFilter;
+
+        private Filter publishedFilter;
+
+        /** Bumped when visibility is reset, to discard evaluations running meanwhile */
+        private long epoch;
+
+        View(Authentication user) {
+            this.user = user;
+        }
+
+        boolean isVisible(PublishedInfo info) {
+            if (info.getId() == null) {
+                return getFilter(info).evaluate(info);
+            }
+            int index = getIndex(info.getId());
+            Filter filter;
+            long evaluationEpoch;
+            synchronized (this) {
+                if (known.get(index)) {
+                    return visible.get(index);
+                }
+                filter = getFilter(info);
+                evaluationEpoch = epoch;
+            }
+            // evaluate out of the lock, the rule filters can be large
+            boolean result = filter.evaluate(info);
+            synchronized (this) {
+                if (evaluationEpoch == epoch) {
+                    known.set(index);
+                    visible.set(index, result);
+                }
+            }
+            return result;
+        }
+
+        private synchronized Filter getFilter(PublishedInfo info) {
+            return getFilter(
+                    info instanceof LayerGroupInfo ? LayerGroupInfo.class : LayerInfo.class);
+        }
+
+        synchronized Filter getFilter(Class<? extends PublishedInfo> clazz) {
+            if (layerFilter == null) {
+                layerFilter = manager.getSecurityFilter(user, LayerInfo.class);
+                groupFilter = manager.getSecurityFilter(user, LayerGroupInfo.class);
+            }
+            if (LayerInfo.class.equals(clazz)) {
+                return layerFilter;
+            } else if (LayerGroupInfo.class.equals(clazz)) {
+                return groupFilter;
+            }
+            if (publishedFilter == null) {
+                publishedFilter = manager.getSecurityFilter(user, clazz);
+            }
+            return publishedFilter;
+        }
+
+        synchronized void resetFilters() {
+            epoch++;
+            layerFilter = null;
+            groupFilter = null;
+            publishedFilter = null;
+        }
+
+        synchronized void forget(int index) {
+            epoch++;
+            known.clear(index);
+        }
+
+        synchronized void drop(int index) {
+            epoch++;
+            known.clear(index);
+            visible.clear(index);
+        }
+
+        synchronized void forgetAll() {
+            known.clear();
+            resetFilters();
+        }
+    }
+
+    /** Returns true if the published passed to it is visible in the view */
+    static class VisibleFunction extends InternalVolatileFunction {
+
+        private final View view;
+
+        VisibleFunction(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public Boolean evaluate(Object object) {
+            if (object instanceof PublishedInfo) {
+                return view.isVisible((PublishedInfo) object);
+            }
+            return false;
+        }
+    }
+}
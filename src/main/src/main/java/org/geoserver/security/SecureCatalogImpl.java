@@ -106,6 +106,11 @@ static ResourceAccessManager lookupResourceAccessManager() throws Exception {
         if (manager == null) {
             manager = buildDefaultResourceAccessManager();
         }
+        // memoize the limits of the actual manager, catalog filters are cheap and request dependent
+        Catalog rawCatalog = (Catalog) GeoServerExtensions.bean("rawCatalog");
+        if (rawCatalog != null) {
+            manager = new CachingResourceAccessManager(manager, rawCatalog);
+        }
         CatalogFilterAccessManager lwManager = new CatalogFilterAccessManager();
         lwManager.setDelegate(manager);
         return lwManager;
@@ -23,7 +23,7 @@ public class AuthenticationCacheEntry {
     private int timeToLiveSeconds;
 
     /** Time stamp of last access in milliseconds */
-    private long lastAccessed;
+    private volatile long lastAccessed;
     /** Time stamp of creation in milliseconds */
     private long created;
 
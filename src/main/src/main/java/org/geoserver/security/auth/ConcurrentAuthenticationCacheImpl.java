@@ -0,0 +1,249 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Implementation of GeoServer AuthenticationCache based on a {@link ConcurrentHashMap}, with the
+ * same configuration as {@link GuavaAuthenticationCacheImpl}.
+ *
+ * <p>Lookups do not take any lock nor reorder the entries, they only check and update the entry
+ * time stamps: expired entries are ignored, and removed, along with the least recently accessed
+ * ones when the max number of entries is exceeded, by a background sweeper. Credentials are not
+ * kept in memory, entries are keyed by filter name and a digest of the cache key.
+ */
+public class ConcurrentAuthenticationCacheImpl implements AuthenticationCache, DisposableBean {
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.security");
+
+    private final int maxEntries;
+
+    private final int timeToIdleSeconds, timeToLiveSeconds;
+
+    private final Map<AuthenticationCacheKey, AuthenticationCacheEntry> cache;
+
+    private final ScheduledExecutorService scheduler;
+
+    /** True while a sweep triggered by a put is pending */
+    private final AtomicBoolean sweepPending = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    // Use a counter to ensure a unique prefix for each pool.
+    private static AtomicInteger poolCounter = new AtomicInteger();
+
+    public ConcurrentAuthenticationCacheImpl(int maxEntries) {
+        this(
+                maxEntries,
+                DEFAULT_IDLE_TIME,
+                DEFAULT_LIVE_TIME,
+                GuavaAuthenticationCacheImpl.DEFAULT_CLEANUP_TIME,
+                GuavaAuthenticationCacheImpl.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public ConcurrentAuthenticationCacheImpl(
+            int maxEntries,
+            int timeToIdleSeconds,
+            int timeToLiveSeconds,
+            int cleanUpSeconds,
+            int concurrencyLevel) {
+        this.maxEntries = maxEntries;
+        this.timeToIdleSeconds = timeToIdleSeconds;
+        this.timeToLiveSeconds = timeToLiveSeconds;
+        this.cache = new ConcurrentHashMap<>(16, 0.75f, concurrencyLevel);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(getThreadFactory());
+        scheduler.scheduleAtFixedRate(
+                this::sweep, cleanUpSeconds, cleanUpSeconds, TimeUnit.SECONDS);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(
+                    "AuthenticationCache Initialized with "
+                            + maxEntries
+                            + " Max Entries, "
+                            + timeToIdleSeconds
+                            + " seconds idle time, "
+                            + timeToLiveSeconds
+                            + " seconds time to live and a sweeper running every "
+                            + cleanUpSeconds
+                            + " seconds");
+        }
+    }
+
+    private ThreadFactory getThreadFactory() {
+        CustomizableThreadFactory tFactory =
+                new CustomizableThreadFactory(
+                        String.format("ConcurrentAuthCache-%d-", poolCounter.getAndIncrement()));
+        tFactory.setDaemon(true);
+        return tFactory;
+    }
+
+    /** Removes the expired entries, and the least recently accessed ones beyond max entries */
+    void sweep() {
+        sweepPending.set(false);
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<AuthenticationCacheKey, AuthenticationCacheEntry> e : cache.entrySet()) {
+            if (e.getValue().hasExpired(now) && cache.remove(e.getKey(), e.getValue())) {
+                removed++;
+            }
+        }
+
+        int excess = cache.size() - maxEntries;
+        if (excess > 0) {
+            List<Map.Entry<AuthenticationCacheKey, AuthenticationCacheEntry>> entries =
+                    new ArrayList<>(cache.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().getLastAccessed()));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                Map.Entry<AuthenticationCacheKey, AuthenticationCacheEntry> e = entries.get(i);
+                if (cache.remove(e.getKey(), e.getValue())) {
+                    removed++;
+                }
+            }
+        }
+        evictions.add(removed);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "AuthenticationCache sweeper removed "
+                            + removed
+                            + " entries, cache entries #: "
+                            + cache.size());
+        }
+    }
+
+    private AuthenticationCacheKey key(String filterName, String cacheKey) {
+        return new AuthenticationCacheKey(filterName, digest(cacheKey));
+    }
+
+    static String digest(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(cacheKey.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // mandatory in every JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        cache.clear();
+    }
+
+    @Override
+    public void removeAll(String filterName) {
+        if (filterName == null) return;
+        cache.keySet().removeIf(key -> filterName.equals(key.getFilterName()));
+    }
+
+    @Override
+    public void remove(String filterName, String cacheKey) {
+        cache.remove(key(filterName, cacheKey));
+    }
+
+    @Override
+    public Authentication get(String filterName, String cacheKey) {
+        AuthenticationCacheEntry entry = cache.get(key(filterName, cacheKey));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        long currentTime = System.currentTimeMillis();
+        if (entry.hasExpired(currentTime)) {
+            // left to the sweeper
+            misses.increment();
+            return null;
+        }
+        entry.setLastAccessed(currentTime);
+        hits.increment();
+        return entry.getAuthentication();
+    }
+
+    @Override
+    public void put(
+            String filterName,
+            String cacheKey,
+            Authentication auth,
+            Integer timeToIdleSeconds,
+            Integer timeToLiveSeconds) {
+        timeToIdleSeconds = timeToIdleSeconds != null ? timeToIdleSeconds : this.timeToIdleSeconds;
+        timeToLiveSeconds = timeToLiveSeconds != null ? timeToLiveSeconds : this.timeToLiveSeconds;
+        cache.put(
+                key(filterName, cacheKey),
+                new AuthenticationCacheEntry(auth, timeToIdleSeconds, timeToLiveSeconds));
+        if (cache.size() > maxEntries && sweepPending.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::sweep);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                sweepPending.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void put(String filterName, String cacheKey, Authentication auth) {
+        put(filterName, cacheKey, auth, timeToIdleSeconds, timeToLiveSeconds);
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    /** Number of entries, including the expired ones not swept yet */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Number of lookups that found a valid entry */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** Number of lookups that found no entry, or an expired one */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** Number of entries removed by the sweeper */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+}
@@ -13,17 +13,25 @@
 import java.util.Properties;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
 import org.geoserver.security.GeoServerRoleService;
 import org.geoserver.security.GeoServerRoleStore;
 import org.geoserver.security.config.SecurityNamedServiceConfig;
 import org.geoserver.security.event.RoleLoadedEvent;
 import org.geoserver.security.event.RoleLoadedListener;
 import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.SnapshotCache;
+import org.geoserver.security.impl.SnapshotChanges;
 
 /**
  * This is a wrapper class for a {@link GeoServerRoleService}. This wrapper protects internal data
  * structures using read/write locks
  *
+ * <p>The read methods are answered by a {@link RoleSnapshot} of the service, loaded on first use
+ * and replaced when the service is loaded again or a store created by this wrapper stores its
+ * changes, without taking the lock.
+ *
  * @author christian
  */
 public class LockingRoleService extends AbstractLockingService
@@ -31,6 +39,19 @@ public class LockingRoleService extends AbstractLockingService
 
     protected Set<RoleLoadedListener> listeners = Collections.synchronizedSet(new HashSet<>());
 
+    protected final SnapshotCache<RoleSnapshot> snapshots = new SnapshotCache<>();
+
+    /**
+     * Bumped each time the snapshot is dropped or refreshed, a store can refresh it incrementally
+     * only if it did not change since the store read the service
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Set while a store of this wrapper is storing, the reload it causes is not a foreign change
+     */
+    private final ThreadLocal<Boolean> storing = new ThreadLocal<>();
+
     /** Constructor for the locking wrapper */
     public LockingRoleService(GeoServerRoleService service) {
         super(service);
@@ -45,8 +66,72 @@ public GeoServerRoleService getService() {
 
     @Override
     public GeoServerRoleStore createStore() throws IOException {
+        long read = generation.get();
         GeoServerRoleStore store = getService().createStore();
-        return store != null ? new LockingRoleStore(store) : null;
+        return store != null ? new LockingRoleStore(store, this, read) : null;
+    }
+
+    /**
+     * Returns the snapshot of the wrapped service, loading it under READ_LOCK if missing
+     *
+     * @return the snapshot, or null if it is being loaded by another thread
+     */
+    protected RoleSnapshot getSnapshot() {
+        return snapshots.get(
+                () -> {
+                    readLock();
+                    try {
+                        return RoleSnapshot.build(getService());
+                    } finally {
+                        readUnLock();
+                    }
+                });
+    }
+
+    /** Returns the current snapshot generation, to be passed to {@link #storeChanged} */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /** Marks the current thread as storing through a store of this wrapper, or not */
+    void setStoring(boolean storing) {
+        if (storing) {
+            this.storing.set(Boolean.TRUE);
+        } else {
+            this.storing.remove();
+        }
+    }
+
+    /**
+     * Reloads the entries touched by the changes stored by a store of this service, or the whole
+     * snapshot if the service changed otherwise since the store read it
+     *
+     * @param read the generation when the store read the service
+     * @return the generation after the refresh
+     */
+    long storeChanged(SnapshotChanges changes, long read) {
+        if (!generation.compareAndSet(read, read + 1)) {
+            invalidateSnapshot();
+            return generation.get();
+        }
+        if (!changes.isEmpty()) {
+            snapshots.update(
+                    snapshot -> {
+                        readLock();
+                        try {
+                            return snapshot.refresh(getService(), changes);
+                        } finally {
+                            readUnLock();
+                        }
+                    });
+        }
+        return read + 1;
+    }
+
+    /** Drops the snapshot, the next read loads it again */
+    protected void invalidateSnapshot() {
+        generation.incrementAndGet();
+        snapshots.invalidate();
     }
 
     /**
@@ -59,18 +144,23 @@ public void load() throws IOException {
         writeLock();
         try {
             getService().load();
+            invalidateSnapshot();
         } finally {
             writeUnLock();
         }
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getRolesForUser(java.lang.String)
      */
     @Override
     public SortedSet<GeoServerRole> getRolesForUser(String username) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRolesForUser(username);
+        }
         readLock();
         try {
             return getService().getRolesForUser(username);
@@ -80,12 +170,16 @@ public SortedSet<GeoServerRole> getRolesForUser(String username) throws IOExcept
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getRolesForGroup(java.lang.String)
      */
     @Override
     public SortedSet<GeoServerRole> getRolesForGroup(String groupname) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRolesForGroup(groupname);
+        }
         readLock();
         try {
             return getService().getRolesForGroup(groupname);
@@ -95,12 +189,16 @@ public SortedSet<GeoServerRole> getRolesForGroup(String groupname) throws IOExce
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getRoles()
      */
     @Override
     public SortedSet<GeoServerRole> getRoles() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoles();
+        }
         readLock();
         try {
             return getService().getRoles();
@@ -125,13 +223,17 @@ public GeoServerRole createRoleObject(String role) throws IOException {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see
      *     org.geoserver.security.GeoServerRoleService#getParentRole(org.geoserver.security.impl.GeoServerRole)
      */
     @Override
     public GeoServerRole getParentRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getParentRole(role);
+        }
         readLock();
         try {
             return getService().getParentRole(role);
@@ -141,12 +243,16 @@ public GeoServerRole getParentRole(GeoServerRole role) throws IOException {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getRoleByName(java.lang.String)
      */
     @Override
     public GeoServerRole getRoleByName(String role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoleByName(role);
+        }
         readLock();
         try {
             return getService().getRoleByName(role);
@@ -193,17 +299,25 @@ public void rolesChanged(RoleLoadedEvent event) {
         //            writeUnLock();
         //        else
         //            readUnLock();
+        if (storing.get() == null) {
+            // not caused by a store of this wrapper, which refreshes the snapshot by itself
+            invalidateSnapshot();
+        }
         fireRoleChangedEvent();
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see
      *     org.geoserver.security.GeoServerRoleService#getGroupNamesForRole(org.geoserver.security.impl.GeoServerRole)
      */
     @Override
     public SortedSet<String> getGroupNamesForRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupNamesForRole(role);
+        }
         readLock();
         try {
             return getService().getGroupNamesForRole(role);
@@ -213,13 +327,17 @@ public SortedSet<String> getGroupNamesForRole(GeoServerRole role) throws IOExcep
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see
      *     org.geoserver.security.GeoServerRoleService#getUserNamesForRole(org.geoserver.security.impl.GeoServerRole)
      */
     @Override
     public SortedSet<String> getUserNamesForRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUserNamesForRole(role);
+        }
         readLock();
         try {
             return getService().getUserNamesForRole(role);
@@ -229,12 +347,16 @@ public SortedSet<String> getUserNamesForRole(GeoServerRole role) throws IOExcept
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getParentMappings()
      */
     @Override
     public Map<String, String> getParentMappings() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getParentMappings();
+        }
         readLock();
         try {
             return getService().getParentMappings();
@@ -273,6 +395,7 @@ public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOExc
         writeLock();
         try {
             getService().initializeFromConfig(config);
+            invalidateSnapshot();
         } finally {
             writeUnLock();
         }
@@ -291,12 +414,16 @@ public GeoServerRole getGroupAdminRole() {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerRoleService#getRoleCount()
      */
     @Override
     public int getRoleCount() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoleCount();
+        }
         readLock();
         try {
             return getService().getRoleCount();
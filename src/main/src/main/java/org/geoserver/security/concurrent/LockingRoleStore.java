@@ -10,6 +10,8 @@
 import org.geoserver.security.GeoServerRoleService;
 import org.geoserver.security.GeoServerRoleStore;
 import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.SnapshotChanges;
 
 /**
  * This is a wrapper class for a {@link GeoServerRoleStore} Thsi wrapper protects internal data
@@ -19,11 +21,42 @@
  */
 public class LockingRoleStore extends LockingRoleService implements GeoServerRoleStore {
 
+    /** The wrapper of the service this store was created from, notified of the stored changes */
+    protected LockingRoleService source;
+
+    /** The changes not stored yet, protected by the write lock */
+    protected SnapshotChanges changes = new SnapshotChanges();
+
+    /** The generation of the source snapshot when the store read the service */
+    protected long read;
+
     /** Constructor for the locking wrapper */
     public LockingRoleStore(GeoServerRoleStore store) {
         super(store);
     }
 
+    /** Constructor for the locking wrapper of a store created from a locking service */
+    public LockingRoleStore(GeoServerRoleStore store, LockingRoleService source) {
+        this(store, source, source.getGeneration());
+    }
+
+    /**
+     * Constructor for the locking wrapper of a store created from a locking service
+     *
+     * @param read the generation of the source snapshot when the store read the service
+     */
+    LockingRoleStore(GeoServerRoleStore store, LockingRoleService source, long read) {
+        this(store);
+        this.source = source;
+        this.read = read;
+    }
+
+    /** A store must see its own changes, no snapshot */
+    @Override
+    protected RoleSnapshot getSnapshot() {
+        return null;
+    }
+
     /** @return the wrapped store */
     public GeoServerRoleStore getStore() {
         return (GeoServerRoleStore) super.getService();
@@ -40,6 +73,7 @@ public void addRole(GeoServerRole role) throws IOException {
         writeLock();
         try {
             getStore().addRole(role);
+            changes.all();
         } finally {
             writeUnLock();
         }
@@ -56,6 +90,7 @@ public void updateRole(GeoServerRole role) throws IOException {
         writeLock();
         try {
             getStore().updateRole(role);
+            changes.all();
         } finally {
             writeUnLock();
         }
@@ -71,6 +106,7 @@ public void updateRole(GeoServerRole role) throws IOException {
     public boolean removeRole(GeoServerRole role) throws IOException {
         writeLock();
         try {
+            changes.all();
             return getStore().removeRole(role);
         } finally {
             writeUnLock();
@@ -89,6 +125,7 @@ public void associateRoleToGroup(GeoServerRole role, String groupname) throws IO
         writeLock();
         try {
             getStore().associateRoleToGroup(role, groupname);
+            changes.group(groupname);
         } finally {
             writeUnLock();
         }
@@ -106,6 +143,7 @@ public void disAssociateRoleFromGroup(GeoServerRole role, String groupname) thro
         writeLock();
         try {
             getStore().disAssociateRoleFromGroup(role, groupname);
+            changes.group(groupname);
         } finally {
             writeUnLock();
         }
@@ -123,6 +161,7 @@ public void associateRoleToUser(GeoServerRole role, String username) throws IOEx
         writeLock();
         try {
             getStore().associateRoleToUser(role, username);
+            changes.user(username);
         } finally {
             writeUnLock();
         }
@@ -140,6 +179,7 @@ public void disAssociateRoleFromUser(GeoServerRole role, String username) throws
         writeLock();
         try {
             getStore().disAssociateRoleFromUser(role, username);
+            changes.user(username);
         } finally {
             writeUnLock();
         }
@@ -154,7 +194,38 @@ public void disAssociateRoleFromUser(GeoServerRole role, String username) throws
     public void store() throws IOException {
         writeLock();
         try {
-            getStore().store();
+            if (source == null) {
+                getStore().store();
+            } else {
+                // the service gets reloaded, refresh only the changed entries of its snapshot
+                source.setStoring(true);
+                try {
+                    getStore().store();
+                } finally {
+                    source.setStoring(false);
+                }
+                read = source.storeChanged(changes.copy(), read);
+            }
+            changes.clear();
+        } finally {
+            writeUnLock();
+        }
+    }
+
+    /**
+     * WRITE_LOCK
+     *
+     * @see org.geoserver.security.GeoServerRoleService#load()
+     */
+    @Override
+    public void load() throws IOException {
+        writeLock();
+        try {
+            if (source != null) {
+                read = source.getGeneration();
+            }
+            getStore().load();
+            changes.clear();
         } finally {
             writeUnLock();
         }
@@ -187,6 +258,7 @@ public void setParentRole(GeoServerRole role, GeoServerRole parentRole) throws I
         writeLock();
         try {
             getStore().setParentRole(role, parentRole);
+            changes.all();
         } finally {
             writeUnLock();
         }
@@ -202,6 +274,7 @@ public void clear() throws IOException {
         writeLock();
         try {
             getStore().clear();
+            changes.all();
         } finally {
             writeUnLock();
         }
@@ -218,6 +291,7 @@ public void initializeFromService(GeoServerRoleService service) throws IOExcepti
         writeLock();
         try {
             getStore().initializeFromService(service);
+            changes.all();
         } finally {
             writeUnLock();
         }
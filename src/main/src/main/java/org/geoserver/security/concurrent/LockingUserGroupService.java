@@ -11,6 +11,7 @@
 import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
 import org.geoserver.security.GeoServerUserGroupService;
 import org.geoserver.security.GeoServerUserGroupStore;
 import org.geoserver.security.config.SecurityNamedServiceConfig;
@@ -18,6 +19,9 @@
 import org.geoserver.security.event.UserGroupLoadedListener;
 import org.geoserver.security.impl.GeoServerUser;
 import org.geoserver.security.impl.GeoServerUserGroup;
+import org.geoserver.security.impl.SnapshotCache;
+import org.geoserver.security.impl.SnapshotChanges;
+import org.geoserver.security.impl.UserGroupSnapshot;
 import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -26,6 +30,10 @@
  * This is a wrapper class for a {@link GeoServerUserGroupService} This wrapper protects internal
  * data structures using read/write locks
  *
+ * <p>The group lookups are answered by a {@link UserGroupSnapshot} of the service, loaded on first
+ * use and replaced when the service is loaded again or a store created by this wrapper stores its
+ * changes, without taking the lock.
+ *
  * @author christian
  */
 public class LockingUserGroupService extends AbstractLockingService
@@ -33,6 +41,19 @@ public class LockingUserGroupService extends AbstractLockingService
 
     protected Set<UserGroupLoadedListener> listeners = Collections.synchronizedSet(new HashSet<>());
 
+    protected final SnapshotCache<UserGroupSnapshot> snapshots = new SnapshotCache<>();
+
+    /**
+     * Bumped each time the snapshot is dropped or refreshed, a store can refresh it incrementally
+     * only if it did not change since the store read the service
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Set while a store of this wrapper is storing, the reload it causes is not a foreign change
+     */
+    private final ThreadLocal<Boolean> storing = new ThreadLocal<>();
+
     /** Constructor for the locking wrapper */
     public LockingUserGroupService(GeoServerUserGroupService service) {
         super(service);
@@ -47,17 +68,85 @@ public GeoServerUserGroupService getService() {
 
     @Override
     public GeoServerUserGroupStore createStore() throws IOException {
+        long read = generation.get();
         GeoServerUserGroupStore store = getService().createStore();
-        return store != null ? new LockingUserGroupStore(store) : null;
+        return store != null ? new LockingUserGroupStore(store, this, read) : null;
     }
 
     /**
-     * READ_LOCK
+     * Returns the snapshot of the wrapped service, loading it under READ_LOCK if missing
+     *
+     * @return the snapshot, or null if it is being loaded by another thread
+     */
+    protected UserGroupSnapshot getSnapshot() {
+        return snapshots.get(
+                () -> {
+                    readLock();
+                    try {
+                        return UserGroupSnapshot.build(getService());
+                    } finally {
+                        readUnLock();
+                    }
+                });
+    }
+
+    /** Returns the current snapshot generation, to be passed to {@link #storeChanged} */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /** Marks the current thread as storing through a store of this wrapper, or not */
+    void setStoring(boolean storing) {
+        if (storing) {
+            this.storing.set(Boolean.TRUE);
+        } else {
+            this.storing.remove();
+        }
+    }
+
+    /**
+     * Reloads the entries touched by the changes stored by a store of this service, or the whole
+     * snapshot if the service changed otherwise since the store read it
+     *
+     * @param read the generation when the store read the service
+     * @return the generation after the refresh
+     */
+    long storeChanged(SnapshotChanges changes, long read) {
+        if (!generation.compareAndSet(read, read + 1)) {
+            invalidateSnapshot();
+            return generation.get();
+        }
+        if (!changes.isEmpty()) {
+            snapshots.update(
+                    snapshot -> {
+                        readLock();
+                        try {
+                            return snapshot.refresh(getService(), changes);
+                        } finally {
+                            readUnLock();
+                        }
+                    });
+        }
+        return read + 1;
+    }
+
+    /** Drops the snapshot, the next read loads it again */
+    protected void invalidateSnapshot() {
+        generation.incrementAndGet();
+        snapshots.invalidate();
+    }
+
+    /**
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerUserGroupService#getGroupByGroupname(java.lang.String)
      */
     @Override
     public GeoServerUserGroup getGroupByGroupname(String groupname) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupByGroupname(groupname);
+        }
         readLock();
         try {
             return getService().getGroupByGroupname(groupname);
@@ -93,6 +182,7 @@ public void load() throws IOException {
         writeLock();
         try {
             getService().load();
+            invalidateSnapshot();
         } finally {
             writeUnLock();
         }
@@ -146,12 +236,16 @@ public SortedSet<GeoServerUser> getUsers() throws IOException {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerUserGroupService#getUserGroups()
      */
     @Override
     public SortedSet<GeoServerUserGroup> getUserGroups() throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUserGroups();
+        }
         readLock();
         try {
             return getService().getUserGroups();
@@ -161,13 +255,17 @@ public SortedSet<GeoServerUserGroup> getUserGroups() throws IOException {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see
      *     org.geoserver.security.GeoServerUserGroupService#getUsersForGroup(org.geoserver.security.impl.GeoServerUserGroup)
      */
     @Override
     public SortedSet<GeoServerUser> getUsersForGroup(GeoServerUserGroup group) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUsersForGroup(group);
+        }
         readLock();
         try {
             return getService().getUsersForGroup(group);
@@ -177,13 +275,17 @@ public SortedSet<GeoServerUser> getUsersForGroup(GeoServerUserGroup group) throw
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see
      *     org.geoserver.security.GeoServerUserGroupService#getGroupsForUser(org.geoserver.security.impl.GeoServerUser)
      */
     @Override
     public SortedSet<GeoServerUserGroup> getGroupsForUser(GeoServerUser user) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupsForUser(user.getUsername());
+        }
         readLock();
         try {
             return getService().getGroupsForUser(user);
@@ -234,6 +336,10 @@ public void usersAndGroupsChanged(UserGroupLoadedEvent event) {
         //            writeUnLock();
         //        else
         //            readUnLock();
+        if (storing.get() == null) {
+            // not caused by a store of this wrapper, which refreshes the snapshot by itself
+            invalidateSnapshot();
+        }
         fireUserGroupLoadedEvent();
     }
 
@@ -248,6 +354,7 @@ public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOExc
         writeLock();
         try {
             getService().initializeFromConfig(config);
+            invalidateSnapshot();
         } finally {
             writeUnLock();
         }
@@ -298,12 +405,16 @@ public int getUserCount() throws IOException {
     }
 
     /**
-     * READ_LOCK
+     * NO_LOCK if the snapshot is loaded, READ_LOCK otherwise
      *
      * @see org.geoserver.security.GeoServerUserGroupService#getGroupCount()
      */
     @Override
     public int getGroupCount() throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupCount();
+        }
         readLock();
         try {
             return getService().getGroupCount();
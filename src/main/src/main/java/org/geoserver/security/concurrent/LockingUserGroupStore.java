@@ -11,6 +11,8 @@
 import org.geoserver.security.GeoServerUserGroupStore;
 import org.geoserver.security.impl.GeoServerUser;
 import org.geoserver.security.impl.GeoServerUserGroup;
+import org.geoserver.security.impl.SnapshotChanges;
+import org.geoserver.security.impl.UserGroupSnapshot;
 import org.geoserver.security.validation.PasswordPolicyException;
 
 /**
@@ -22,11 +24,43 @@
 public class LockingUserGroupStore extends LockingUserGroupService
         implements GeoServerUserGroupStore {
 
+    /** The wrapper of the service this store was created from, notified of the stored changes */
+    protected LockingUserGroupService source;
+
+    /** The changes not stored yet, protected by the write lock */
+    protected SnapshotChanges changes = new SnapshotChanges();
+
+    /** The generation of the source snapshot when the store read the service */
+    protected long read;
+
     /** Constructor for the locking wrapper */
     public LockingUserGroupStore(GeoServerUserGroupStore store) {
         super(store);
     }
 
+    /** Constructor for the locking wrapper of a store created from a locking service */
+    public LockingUserGroupStore(GeoServerUserGroupStore store, LockingUserGroupService source) {
+        this(store, source, source.getGeneration());
+    }
+
+    /**
+     * Constructor for the locking wrapper of a store created from a locking service
+     *
+     * @param read the generation of the source snapshot when the store read the service
+     */
+    LockingUserGroupStore(
+            GeoServerUserGroupStore store, LockingUserGroupService source, long read) {
+        this(store);
+        this.source = source;
+        this.read = read;
+    }
+
+    /** A store must see its own changes, no snapshot */
+    @Override
+    protected UserGroupSnapshot getSnapshot() {
+        return null;
+    }
+
     /** @return the wrapped store */
     public GeoServerUserGroupStore getStore() {
         return (GeoServerUserGroupStore) super.getService();
@@ -42,6 +76,7 @@ public GeoServerUserGroupStore getStore() {
     public void addUser(GeoServerUser user) throws IOException, PasswordPolicyException {
         writeLock();
         try {
+            changes.user(user.getUsername());
             getStore().addUser(user);
         } finally {
             writeUnLock();
@@ -58,6 +93,7 @@ public void addUser(GeoServerUser user) throws IOException, PasswordPolicyExcept
     public void updateUser(GeoServerUser user) throws IOException, PasswordPolicyException {
         writeLock();
         try {
+            changes.user(user.getUsername());
             getStore().updateUser(user);
         } finally {
             writeUnLock();
@@ -74,6 +110,7 @@ public void updateUser(GeoServerUser user) throws IOException, PasswordPolicyExc
     public boolean removeUser(GeoServerUser user) throws IOException {
         writeLock();
         try {
+            changes.user(user.getUsername());
             return getStore().removeUser(user);
         } finally {
             writeUnLock();
@@ -90,6 +127,7 @@ public boolean removeUser(GeoServerUser user) throws IOException {
     public void addGroup(GeoServerUserGroup group) throws IOException {
         writeLock();
         try {
+            changes.all();
             getStore().addGroup(group);
         } finally {
             writeUnLock();
@@ -106,6 +144,7 @@ public void addGroup(GeoServerUserGroup group) throws IOException {
     public void updateGroup(GeoServerUserGroup group) throws IOException {
         writeLock();
         try {
+            changes.all();
             getStore().updateGroup(group);
         } finally {
             writeUnLock();
@@ -122,6 +161,7 @@ public void updateGroup(GeoServerUserGroup group) throws IOException {
     public boolean removeGroup(GeoServerUserGroup group) throws IOException {
         writeLock();
         try {
+            changes.all();
             return getStore().removeGroup(group);
         } finally {
             writeUnLock();
@@ -137,7 +177,38 @@ public boolean removeGroup(GeoServerUserGroup group) throws IOException {
     public void store() throws IOException {
         writeLock();
         try {
-            getStore().store();
+            if (source == null) {
+                getStore().store();
+            } else {
+                // the service gets reloaded, refresh only the changed entries of its snapshot
+                source.setStoring(true);
+                try {
+                    getStore().store();
+                } finally {
+                    source.setStoring(false);
+                }
+                read = source.storeChanged(changes.copy(), read);
+            }
+            changes.clear();
+        } finally {
+            writeUnLock();
+        }
+    }
+
+    /**
+     * WRITE_LOCK
+     *
+     * @see org.geoserver.security.GeoServerUserGroupService#load()
+     */
+    @Override
+    public void load() throws IOException {
+        writeLock();
+        try {
+            if (source != null) {
+                read = source.getGeneration();
+            }
+            getStore().load();
+            changes.clear();
         } finally {
             writeUnLock();
         }
@@ -155,6 +226,7 @@ public void associateUserToGroup(GeoServerUser user, GeoServerUserGroup group)
             throws IOException {
         writeLock();
         try {
+            changes.user(user.getUsername());
             getStore().associateUserToGroup(user, group);
         } finally {
             writeUnLock();
@@ -173,6 +245,7 @@ public void disAssociateUserFromGroup(GeoServerUser user, GeoServerUserGroup gro
             throws IOException {
         writeLock();
         try {
+            changes.user(user.getUsername());
             getStore().disAssociateUserFromGroup(user, group);
         } finally {
             writeUnLock();
@@ -202,6 +275,7 @@ public boolean isModified() {
     public void clear() throws IOException {
         writeLock();
         try {
+            changes.all();
             getStore().clear();
         } finally {
             writeUnLock();
@@ -218,6 +292,7 @@ public void clear() throws IOException {
     public void initializeFromService(GeoServerUserGroupService service) throws IOException {
         writeLock();
         try {
+            changes.all();
             getStore().initializeFromService(service);
         } finally {
             writeUnLock();
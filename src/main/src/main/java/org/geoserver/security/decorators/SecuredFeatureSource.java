@@ -6,11 +6,13 @@
 package org.geoserver.security.decorators;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.security.AccessLevel;
 import org.geoserver.security.AccessLimits;
 import org.geoserver.security.VectorAccessLimits;
@@ -21,16 +23,22 @@
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.store.ReTypingFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.collection.ClippedFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.FilterCapabilities;
+import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.PropertyName;
 
 /**
@@ -48,6 +56,14 @@
 
     static final Logger LOGGER = Logging.getLogger(SecuredFeatureSource.class);
 
+    /**
+     * Whether features the clip limits would discard are filtered out by the store, when it can
+     * encode the filter natively. Enabled by default.
+     */
+    public static final String PUSH_CLIP_FILTER_KEY = "org.geoserver.security.pushClipFilter";
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
     WrapperPolicy policy;
 
     protected SecuredFeatureSource(FeatureSource<T, F> delegate, WrapperPolicy policy) {
@@ -79,6 +95,7 @@ public FeatureCollection<T, F> getFeatures(Query query) throws IOException {
         // mix the external query with the access limits one
         final Query readQuery = getReadQuery();
         final Query mixed = mixQueries(query, readQuery);
+        pushClipFilter(mixed);
         int limitedAttributeSize = mixed.getProperties() != null ? mixed.getProperties().size() : 0;
         final FeatureCollection<T, F> fc = delegate.getFeatures(mixed);
         FeatureCollection<T, F> result = null;
@@ -148,6 +165,74 @@ private FeatureCollection<T, F> decoratesForClipping(
         return collection;
     }
 
+    /**
+     * Adds to the query a filter selecting the features that can survive clipping, so that a store
+     * able to encode it, e.g. a database, does not return the features the clipping collections
+     * would then discard. The clipping itself is still performed in memory.
+     */
+    void pushClipFilter(Query query) throws IOException {
+        AccessLimits limits = policy.getLimits();
+        if (!(limits instanceof VectorAccessLimits)
+                || ((VectorAccessLimits) limits).getClipVectorFilter() == null
+                || !isPushClipFilterEnabled()) {
+            return;
+        }
+        DataAccess<T, F> store = delegate.getDataStore();
+        if (!(store instanceof JDBCDataStore)
+                || !(delegate.getSchema() instanceof SimpleFeatureType)) {
+            // other stores would evaluate the filter in memory, no gain
+            return;
+        }
+        Filter clipFilter =
+                getClipFilter(
+                        (VectorAccessLimits) limits, (SimpleFeatureType) delegate.getSchema());
+        if (clipFilter == null) {
+            return;
+        }
+        FilterCapabilities capabilities = ((JDBCDataStore) store).getFilterCapabilities();
+        if (capabilities == null || !capabilities.fullySupports(clipFilter)) {
+            return;
+        }
+        Filter filter = query.getFilter();
+        if (filter == null || filter == Filter.INCLUDE) {
+            query.setFilter(clipFilter);
+        } else {
+            query.setFilter(FF.and(filter, clipFilter));
+        }
+    }
+
+    static boolean isPushClipFilterEnabled() {
+        String value = GeoServerExtensions.getProperty(PUSH_CLIP_FILTER_KEY);
+        return value == null || Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Returns a filter matching the features whose default geometry intersects the clip geometry,
+     * or with any geometry intersecting the intersects one, that is, a superset of the features
+     * kept by the clipping collections.
+     */
+    static Filter getClipFilter(VectorAccessLimits limits, SimpleFeatureType schema) {
+        GeometryDescriptor defaultGeometry = schema.getGeometryDescriptor();
+        if (defaultGeometry == null) {
+            return null;
+        }
+        List<Filter> filters = new ArrayList<>();
+        String geometryName = defaultGeometry.getLocalName();
+        filters.add(
+                FF.intersects(FF.property(geometryName), FF.literal(limits.getClipVectorFilter())));
+        filters.add(FF.isNull(FF.property(geometryName)));
+        Geometry intersects = limits.getIntersectVectorFilter();
+        if (intersects != null) {
+            for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+                if (ad instanceof GeometryDescriptor) {
+                    filters.add(
+                            FF.intersects(FF.property(ad.getLocalName()), FF.literal(intersects)));
+                }
+            }
+        }
+        return FF.or(filters);
+    }
+
     protected Query getReadQuery() {
         if (policy.getAccessLevel() == AccessLevel.HIDDEN
                 || policy.getAccessLevel() == AccessLevel.METADATA) {
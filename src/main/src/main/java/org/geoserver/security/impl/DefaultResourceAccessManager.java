@@ -126,6 +126,11 @@ public CatalogMode getMode() {
         return dao.getMode();
     }
 
+    /** Returns the last modification time of the rules, changes whenever they are reloaded */
+    public long getRulesLastModified() {
+        return dao.getLastModified();
+    }
+
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         checkPropertyFile();
         SecureTreeNode node = root.getDeepestNode(new String[] {workspace.getName()});
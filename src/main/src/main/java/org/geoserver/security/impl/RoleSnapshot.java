@@ -0,0 +1,166 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.geoserver.security.GeoServerRoleService;
+
+/**
+ * An immutable copy of the content of a {@link GeoServerRoleService}, indexed by role, user and
+ * group name, answering the read methods of the service without querying it.
+ *
+ * <p>The user and group names of a role are kept in inverted indexes, instead of being computed
+ * scanning all the assignments.
+ */
+public class RoleSnapshot {
+
+    static final SortedSet<GeoServerRole> NO_ROLES =
+            Collections.unmodifiableSortedSet(new TreeSet<>());
+
+    static final SortedSet<String> NO_NAMES = Collections.unmodifiableSortedSet(new TreeSet<>());
+
+    private final SortedSet<GeoServerRole> roles;
+
+    private final Map<String, GeoServerRole> rolesByName;
+
+    private final Map<String, String> parentMappings;
+
+    private final Map<String, SortedSet<GeoServerRole>> rolesByUser;
+
+    private final Map<String, SortedSet<GeoServerRole>> rolesByGroup;
+
+    private final Map<String, SortedSet<String>> usersByRole;
+
+    private final Map<String, SortedSet<String>> groupsByRole;
+
+    RoleSnapshot(
+            SortedSet<GeoServerRole> roles,
+            Map<String, String> parentMappings,
+            Map<String, SortedSet<GeoServerRole>> rolesByUser,
+            Map<String, SortedSet<GeoServerRole>> rolesByGroup) {
+        this.roles = Collections.unmodifiableSortedSet(new TreeSet<>(roles));
+        Map<String, GeoServerRole> rolesByName = new HashMap<>();
+        for (GeoServerRole role : roles) {
+            rolesByName.put(role.getAuthority(), role);
+        }
+        this.rolesByName = rolesByName;
+        this.parentMappings = Collections.unmodifiableMap(new HashMap<>(parentMappings));
+        this.rolesByUser = rolesByUser;
+        this.rolesByGroup = rolesByGroup;
+        this.usersByRole = invert(rolesByUser);
+        this.groupsByRole = invert(rolesByGroup);
+    }
+
+    private static Map<String, SortedSet<String>> invert(
+            Map<String, SortedSet<GeoServerRole>> assignments) {
+        Map<String, SortedSet<String>> inverted = new HashMap<>();
+        for (Map.Entry<String, SortedSet<GeoServerRole>> entry : assignments.entrySet()) {
+            for (GeoServerRole role : entry.getValue()) {
+                inverted.computeIfAbsent(role.getAuthority(), k -> new TreeSet<>())
+                        .add(entry.getKey());
+            }
+        }
+        inverted.replaceAll((k, v) -> Collections.unmodifiableSortedSet(v));
+        return inverted;
+    }
+
+    /** Loads the whole content of the service */
+    public static RoleSnapshot build(GeoServerRoleService service) throws IOException {
+        SortedSet<GeoServerRole> roles = service.getRoles();
+        Map<String, SortedSet<GeoServerRole>> rolesByUser = new HashMap<>();
+        Map<String, SortedSet<GeoServerRole>> rolesByGroup = new HashMap<>();
+        for (GeoServerRole role : roles) {
+            for (String username : service.getUserNamesForRole(role)) {
+                rolesByUser.computeIfAbsent(username, k -> new TreeSet<>()).add(role);
+            }
+            for (String groupname : service.getGroupNamesForRole(role)) {
+                rolesByGroup.computeIfAbsent(groupname, k -> new TreeSet<>()).add(role);
+            }
+        }
+        rolesByUser.replaceAll((k, v) -> Collections.unmodifiableSortedSet(v));
+        rolesByGroup.replaceAll((k, v) -> Collections.unmodifiableSortedSet(v));
+        return new RoleSnapshot(roles, service.getParentMappings(), rolesByUser, rolesByGroup);
+    }
+
+    /**
+     * Returns a copy of this snapshot with the assignments of the changed users and groups loaded
+     * again from the service, or a new snapshot if the roles themselves changed.
+     */
+    public RoleSnapshot refresh(GeoServerRoleService service, SnapshotChanges changes)
+            throws IOException {
+        if (changes.isAll()) {
+            return build(service);
+        }
+        if (changes.isEmpty()) {
+            return this;
+        }
+        Map<String, SortedSet<GeoServerRole>> rolesByUser = new HashMap<>(this.rolesByUser);
+        for (String username : changes.getUsers()) {
+            reload(rolesByUser, username, service.getRolesForUser(username));
+        }
+        Map<String, SortedSet<GeoServerRole>> rolesByGroup = new HashMap<>(this.rolesByGroup);
+        for (String groupname : changes.getGroups()) {
+            reload(rolesByGroup, groupname, service.getRolesForGroup(groupname));
+        }
+        return new RoleSnapshot(roles, parentMappings, rolesByUser, rolesByGroup);
+    }
+
+    private void reload(
+            Map<String, SortedSet<GeoServerRole>> assignments,
+            String name,
+            SortedSet<GeoServerRole> loaded) {
+        if (loaded == null || loaded.isEmpty()) {
+            assignments.remove(name);
+        } else {
+            SortedSet<GeoServerRole> roles = new TreeSet<>();
+            for (GeoServerRole role : loaded) {
+                roles.add(rolesByName.getOrDefault(role.getAuthority(), role));
+            }
+            assignments.put(name, Collections.unmodifiableSortedSet(roles));
+        }
+    }
+
+    public SortedSet<GeoServerRole> getRoles() {
+        return roles;
+    }
+
+    public GeoServerRole getRoleByName(String role) {
+        return rolesByName.get(role);
+    }
+
+    public GeoServerRole getParentRole(GeoServerRole role) {
+        String parent = parentMappings.get(role.getAuthority());
+        return parent == null ? null : rolesByName.get(parent);
+    }
+
+    public Map<String, String> getParentMappings() {
+        return parentMappings;
+    }
+
+    public SortedSet<GeoServerRole> getRolesForUser(String username) {
+        return rolesByUser.getOrDefault(username, NO_ROLES);
+    }
+
+    public SortedSet<GeoServerRole> getRolesForGroup(String groupname) {
+        return rolesByGroup.getOrDefault(groupname, NO_ROLES);
+    }
+
+    public SortedSet<String> getUserNamesForRole(GeoServerRole role) {
+        return usersByRole.getOrDefault(role.getAuthority(), NO_NAMES);
+    }
+
+    public SortedSet<String> getGroupNamesForRole(GeoServerRole role) {
+        return groupsByRole.getOrDefault(role.getAuthority(), NO_NAMES);
+    }
+
+    public int getRoleCount() {
+        return roles.size();
+    }
+}
@@ -0,0 +1,112 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Holds an immutable snapshot of a security service, replaced as a whole when the service changes
+ * (copy on write).
+ *
+ * <p>Reading the snapshot never blocks: when it is missing a single thread loads it, while the
+ * others get {@code null} back and are expected to query the service directly. No monitor is held
+ * while loading or updating, so the loaders are free to take the service locks. Every change of
+ * state is published with a compare and set against the state seen before loading or updating, a
+ * snapshot built concurrently with an invalidation or another update is discarded instead of hiding
+ * the newer data.
+ *
+ * @param <S> the snapshot type
+ */
+public class SnapshotCache<S> {
+
+    static final Logger LOGGER = Logging.getLogger(SnapshotCache.class);
+
+    /** Builds a snapshot from the service */
+    @FunctionalInterface
+    public interface Loader<S> {
+        S load() throws IOException;
+    }
+
+    /** Builds a new snapshot from the current one */
+    @FunctionalInterface
+    public interface Updater<S> {
+        S update(S snapshot) throws IOException;
+    }
+
+    /** A state of the cache, compared by identity */
+    static final class State<S> {
+
+        final S snapshot;
+
+        State(S snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final AtomicReference<State<S>> state = new AtomicReference<>(new State<>(null));
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    /**
+     * Returns the current snapshot, loading it if missing.
+     *
+     * @return the snapshot, or null if another thread is loading it, or loading failed
+     */
+    public S get(Loader<S> loader) {
+        State<S> current = state.get();
+        if (current.snapshot != null) {
+            return current.snapshot;
+        }
+        if (!loading.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            S loaded = loader.load();
+            return state.compareAndSet(current, new State<>(loaded)) ? loaded : null;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the security service snapshot", e);
+            return null;
+        } finally {
+            loading.set(false);
+        }
+    }
+
+    /** Returns the current snapshot, without loading it */
+    public S peek() {
+        return state.get().snapshot;
+    }
+
+    /** Drops the snapshot, the next read will load it again */
+    public void invalidate() {
+        state.set(new State<>(null));
+    }
+
+    /**
+     * Replaces the current snapshot with an updated copy. If there is no snapshot, or it changes
+     * while updating, it is invalidated instead.
+     */
+    public void update(Updater<S> updater) {
+        State<S> current = state.get();
+        if (current.snapshot == null) {
+            // make sure a snapshot being loaded is not published
+            invalidate();
+            return;
+        }
+        try {
+            S updated = updater.update(current.snapshot);
+            if (!state.compareAndSet(current, new State<>(updated))) {
+                invalidate();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to update the security service snapshot", e);
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the users and groups modified by a store before {@link
+ * org.geoserver.security.GeoServerRoleStore#store()} or {@link
+ * org.geoserver.security.GeoServerUserGroupStore#store()}, so that only their entries are reloaded
+ * into the {@link RoleSnapshot} or {@link UserGroupSnapshot} of the service. Changes to roles or
+ * groups themselves require a full reload.
+ *
+ * <p>Not thread safe, stores are protected by their own locking.
+ */
+public class SnapshotChanges {
+
+    private final Set<String> users = new HashSet<>();
+
+    private final Set<String> groups = new HashSet<>();
+
+    private boolean all;
+
+    /** Records a change to the role or group assignments of a user */
+    public void user(String username) {
+        if (username != null) users.add(username);
+    }
+
+    /** Records a change to the role assignments of a group */
+    public void group(String groupname) {
+        if (groupname != null) groups.add(groupname);
+    }
+
+    /** Records a change requiring a full reload */
+    public void all() {
+        all = true;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isEmpty() {
+        return !all && users.isEmpty() && groups.isEmpty();
+    }
+
+    public Set<String> getUsers() {
+        return Collections.unmodifiableSet(users);
+    }
+
+    public Set<String> getGroups() {
+        return Collections.unmodifiableSet(groups);
+    }
+
+    /** Returns a copy of the changes */
+    public SnapshotChanges copy() {
+        SnapshotChanges copy = new SnapshotChanges();
+        copy.users.addAll(users);
+        copy.groups.addAll(groups);
+        copy.all = all;
+        return copy;
+    }
+
+    public void clear() {
+        users.clear();
+        groups.clear();
+        all = false;
+    }
+}
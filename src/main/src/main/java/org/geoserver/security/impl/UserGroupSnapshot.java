@@ -0,0 +1,140 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.geoserver.security.GeoServerUserGroupService;
+
+/**
+ * An immutable copy of the groups of a {@link GeoServerUserGroupService} and of their members,
+ * indexed by group and user name, answering the group lookups of the service without querying it.
+ */
+public class UserGroupSnapshot {
+
+    static final SortedSet<GeoServerUser> NO_USERS =
+            Collections.unmodifiableSortedSet(new TreeSet<>());
+
+    static final SortedSet<GeoServerUserGroup> NO_GROUPS =
+            Collections.unmodifiableSortedSet(new TreeSet<>());
+
+    private final SortedSet<GeoServerUserGroup> groups;
+
+    private final Map<String, GeoServerUserGroup> groupsByName;
+
+    private final Map<String, SortedSet<GeoServerUser>> usersByGroup;
+
+    private final Map<String, SortedSet<GeoServerUserGroup>> groupsByUser;
+
+    UserGroupSnapshot(
+            SortedSet<GeoServerUserGroup> groups,
+            Map<String, SortedSet<GeoServerUser>> usersByGroup) {
+        this.groups = Collections.unmodifiableSortedSet(new TreeSet<>(groups));
+        Map<String, GeoServerUserGroup> groupsByName = new HashMap<>();
+        for (GeoServerUserGroup group : groups) {
+            groupsByName.put(group.getGroupname(), group);
+        }
+        this.groupsByName = groupsByName;
+        this.usersByGroup = usersByGroup;
+
+        Map<String, SortedSet<GeoServerUserGroup>> groupsByUser = new HashMap<>();
+        for (Map.Entry<String, SortedSet<GeoServerUser>> entry : usersByGroup.entrySet()) {
+            GeoServerUserGroup group = groupsByName.get(entry.getKey());
+            if (group == null) {
+                continue;
+            }
+            for (GeoServerUser user : entry.getValue()) {
+                groupsByUser.computeIfAbsent(user.getUsername(), k -> new TreeSet<>()).add(group);
+            }
+        }
+        groupsByUser.replaceAll((k, v) -> Collections.unmodifiableSortedSet(v));
+        this.groupsByUser = groupsByUser;
+    }
+
+    /** Loads all the groups, with their members */
+    public static UserGroupSnapshot build(GeoServerUserGroupService service) throws IOException {
+        SortedSet<GeoServerUserGroup> groups = service.getUserGroups();
+        Map<String, SortedSet<GeoServerUser>> usersByGroup = new HashMap<>();
+        for (GeoServerUserGroup group : groups) {
+            SortedSet<GeoServerUser> users = service.getUsersForGroup(group);
+            if (!users.isEmpty()) {
+                usersByGroup.put(
+                        group.getGroupname(),
+                        Collections.unmodifiableSortedSet(new TreeSet<>(users)));
+            }
+        }
+        return new UserGroupSnapshot(groups, usersByGroup);
+    }
+
+    /**
+     * Returns a copy of this snapshot with the memberships of the changed users loaded again from
+     * the service, or a new snapshot if the groups themselves changed.
+     */
+    public UserGroupSnapshot refresh(GeoServerUserGroupService service, SnapshotChanges changes)
+            throws IOException {
+        if (changes.isAll() || !changes.getGroups().isEmpty()) {
+            return build(service);
+        }
+        if (changes.isEmpty()) {
+            return this;
+        }
+        Map<String, SortedSet<GeoServerUser>> usersByGroup = new HashMap<>(this.usersByGroup);
+        for (String username : changes.getUsers()) {
+            // drop the old memberships, then add the current ones
+            for (GeoServerUserGroup group : getGroupsForUser(username)) {
+                SortedSet<GeoServerUser> users =
+                        new TreeSet<>(usersByGroup.getOrDefault(group.getGroupname(), NO_USERS));
+                users.removeIf(u -> username.equals(u.getUsername()));
+                put(usersByGroup, group.getGroupname(), users);
+            }
+            GeoServerUser user = service.getUserByUsername(username);
+            if (user == null) {
+                continue;
+            }
+            for (GeoServerUserGroup group : service.getGroupsForUser(user)) {
+                SortedSet<GeoServerUser> users = new TreeSet<>();
+                users.addAll(usersByGroup.getOrDefault(group.getGroupname(), NO_USERS));
+                users.add(user);
+                put(usersByGroup, group.getGroupname(), users);
+            }
+        }
+        return new UserGroupSnapshot(groups, usersByGroup);
+    }
+
+    private static void put(
+            Map<String, SortedSet<GeoServerUser>> usersByGroup,
+            String groupname,
+            SortedSet<GeoServerUser> users) {
+        if (users.isEmpty()) {
+            usersByGroup.remove(groupname);
+        } else {
+            usersByGroup.put(groupname, Collections.unmodifiableSortedSet(users));
+        }
+    }
+
+    public SortedSet<GeoServerUserGroup> getUserGroups() {
+        return groups;
+    }
+
+    public GeoServerUserGroup getGroupByGroupname(String groupname) {
+        return groupsByName.get(groupname);
+    }
+
+    public SortedSet<GeoServerUser> getUsersForGroup(GeoServerUserGroup group) {
+        return usersByGroup.getOrDefault(group.getGroupname(), NO_USERS);
+    }
+
+    public SortedSet<GeoServerUserGroup> getGroupsForUser(String username) {
+        return groupsByUser.getOrDefault(username, NO_GROUPS);
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+}
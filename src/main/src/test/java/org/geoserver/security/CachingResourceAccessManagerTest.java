@@ -0,0 +1,166 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+public class CachingResourceAccessManagerTest {
+
+    private Catalog catalog;
+
+    private LayerInfo layer;
+
+    private Authentication bob = user("bob", "ROLE_A");
+
+    private Authentication alice = user("alice", "ROLE_A");
+
+    private Authentication carl = user("carl", "ROLE_B");
+
+    private DataAccessLimits limits = new DataAccessLimits(CatalogMode.HIDE, Filter.INCLUDE);
+
+    @Before
+    public void setUp() {
+        catalog = mock(Catalog.class);
+        layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn("layer-id");
+    }
+
+    @After
+    public void clearRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testRequestMemo() {
+        ResourceAccessManager delegate = mock(ResourceAccessManager.class);
+        when(delegate.getAccessLimits(any(), any(LayerInfo.class))).thenReturn(limits);
+        CachingResourceAccessManager manager =
+                new CachingResourceAccessManager(delegate, catalog, 0);
+        verify(catalog).addListener(manager);
+
+        // no request, no memo
+        manager.getAccessLimits(bob, layer);
+        manager.getAccessLimits(bob, layer);
+        verify(delegate, times(2)).getAccessLimits(bob, layer);
+
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertSame(limits, manager.getAccessLimits(bob, layer));
+        assertSame(limits, manager.getAccessLimits(bob, layer));
+        verify(delegate, times(3)).getAccessLimits(bob, layer);
+
+        // per user
+        manager.getAccessLimits(alice, layer);
+        verify(delegate, times(1)).getAccessLimits(alice, layer);
+
+        // a new request starts afresh
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(new MockHttpServletRequest()));
+        manager.getAccessLimits(bob, layer);
+        verify(delegate, times(4)).getAccessLimits(bob, layer);
+    }
+
+    @Test
+    public void testNullLimitsMemoized() {
+        ResourceAccessManager delegate = mock(ResourceAccessManager.class);
+        CachingResourceAccessManager manager =
+                new CachingResourceAccessManager(delegate, catalog, 0);
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertNull(manager.getAccessLimits(bob, layer, Collections.emptyList()));
+        assertNull(manager.getAccessLimits(bob, layer, Collections.emptyList()));
+        verify(delegate, times(1)).getAccessLimits(bob, layer, Collections.emptyList());
+    }
+
+    @Test
+    public void testCatalogChangeInvalidates() {
+        ResourceAccessManager delegate = mock(ResourceAccessManager.class);
+        when(delegate.getAccessLimits(any(), any(LayerInfo.class))).thenReturn(limits);
+        CachingResourceAccessManager manager =
+                new CachingResourceAccessManager(delegate, catalog, 0);
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(new MockHttpServletRequest()));
+        manager.getAccessLimits(bob, layer);
+        manager.handlePostModifyEvent(null);
+        manager.getAccessLimits(bob, layer);
+        verify(delegate, times(2)).getAccessLimits(bob, layer);
+    }
+
+    @Test
+    public void testSharedAmongRequestsByRoles() {
+        DefaultResourceAccessManager delegate = mock(DefaultResourceAccessManager.class);
+        when(delegate.getAccessLimits(any(), any(LayerInfo.class))).thenReturn(limits);
+        CachingResourceAccessManager manager =
+                new CachingResourceAccessManager(delegate, catalog, 60);
+
+        assertSame(limits, manager.getAccessLimits(bob, layer));
+        // same roles, different user
+        assertSame(limits, manager.getAccessLimits(alice, layer));
+        verify(delegate, times(1)).getAccessLimits(any(), eq(layer));
+
+        manager.getAccessLimits(carl, layer);
+        verify(delegate, times(2)).getAccessLimits(any(), eq(layer));
+
+        // rules reloaded
+        when(delegate.getRulesLastModified()).thenReturn(1L);
+        manager.getAccessLimits(bob, layer);
+        verify(delegate, times(3)).getAccessLimits(any(), eq(layer));
+    }
+
+    @Test
+    public void testNotSharedForOtherManagers() {
+        ResourceAccessManager delegate = mock(ResourceAccessManager.class);
+        CachingResourceAccessManager manager =
+                new CachingResourceAccessManager(delegate, catalog, 60);
+        manager.getAccessLimits(bob, layer);
+        manager.getAccessLimits(alice, layer);
+        verify(delegate, times(2)).getAccessLimits(any(), eq(layer));
+    }
+
+    @Test
+    public void testFilteringInMemory() {
+        assertTrue(CachingResourceAccessManager.isFilteringInMemory(new CatalogImpl()));
+        assertFalse(CachingResourceAccessManager.isFilteringInMemory(catalog));
+
+        CatalogImpl encoding = new CatalogImpl();
+        encoding.setFacade(mock(CatalogFacade.class));
+        assertFalse(CachingResourceAccessManager.isFilteringInMemory(encoding));
+    }
+
+    private static Authentication user(String name, String... roles) {
+        return new UsernamePasswordAuthenticationToken(
+                name,
+                null,
+                Arrays.stream(roles).map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
+    }
+}
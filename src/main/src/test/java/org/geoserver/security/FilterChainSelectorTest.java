@@ -0,0 +1,156 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+public class FilterChainSelectorTest {
+
+    private FilterChainSelector selector;
+
+    /** The matchers of the chains, tested one after the other */
+    private List<GeoServerRequestMatcher> sequential;
+
+    private List<RequestMatcher> selected;
+
+    @Before
+    public void setUp() {
+        selector = new FilterChainSelector();
+        sequential = new ArrayList<>();
+        selected = new ArrayList<>();
+
+        addChain(null, "/web/**", "/gwc/rest/web/**", "/");
+        addChain(null, "/j_spring_security_check", "/j_spring_security_check/");
+        addChain(EnumSet.of(HTTPMethod.GET), "/rest/about/**");
+        addChain(null, "/rest/**");
+        addChain(null, "/gwc/rest/**");
+        addChain(null, "/wms/**|.*request=getmap.*", "/*/wms/**|.*request=getmap.*");
+        addChain(null, "/ows*/**", "/**/wfs");
+        addChain(null, "/**");
+    }
+
+    private void addChain(Set<HTTPMethod> methods, String... patterns) {
+        RequestMatcher[] matchers = new RequestMatcher[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            matchers[i] = new IncludeQueryStringAntPathRequestMatcher(patterns[i]);
+        }
+        GeoServerRequestMatcher matcher = new GeoServerRequestMatcher(methods, matchers);
+        sequential.add(matcher);
+        selected.add(selector.add(methods, Arrays.asList(patterns), matcher));
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        List<String> paths =
+                Arrays.asList(
+                        "",
+                        "/",
+                        "/web",
+                        "/WEB/wicket",
+                        "/webx",
+                        "/gwc/rest/web/foo",
+                        "/gwc/rest",
+                        "/gwc/rest/layers",
+                        "/gwc/restx",
+                        "/j_spring_security_check",
+                        "/j_spring_security_check/",
+                        "/j_spring_security_check/x",
+                        "/rest/about/version",
+                        "/rest/about",
+                        "/rest",
+                        "/wms",
+                        "/topp/wms",
+                        "/ows",
+                        "/ows2/x",
+                        "/a/b/wfs",
+                        "/wfs",
+                        "//web",
+                        "/gwc/service/wmts/rest/topp:states/EPSG:4326/EPSG:4326:3/2/1");
+        for (String method : Arrays.asList("GET", "POST")) {
+            for (String query : Arrays.asList(null, "request=GetMap", "request=GetCapabilities")) {
+                for (String path : paths) {
+                    MockHttpServletRequest request = request(method, path, query);
+                    int expected = sequentialSelect(request);
+                    for (int i = 0; i < selected.size(); i++) {
+                        assertEquals(
+                                method + " " + path + "?" + query + " chain " + i,
+                                i == expected,
+                                selected.get(i).matches(request(method, path, query)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSelectionCached() {
+        assertEquals(4, selector.select(request("GET", "/gwc/rest/layers", null)));
+        assertEquals(1, selector.getCacheSize());
+        assertEquals(4, selector.select(request("GET", "/gwc/rest/layers", null)));
+        assertEquals(1, selector.getCacheSize());
+
+        // depends on the query string, not cached
+        assertEquals(5, selector.select(request("GET", "/wms", "request=GetMap")));
+        assertEquals(7, selector.select(request("GET", "/wms", "request=GetFeatureInfo")));
+        assertEquals(1, selector.getCacheSize());
+
+        // method matters
+        assertEquals(2, selector.select(request("GET", "/rest/about", null)));
+        assertEquals(3, selector.select(request("POST", "/rest/about", null)));
+        assertEquals(3, selector.getCacheSize());
+    }
+
+    @Test
+    public void testSelectionReusedByFollowingChains() {
+        MockHttpServletRequest request = request("GET", "/rest/layers", null);
+        assertFalse(selected.get(0).matches(request));
+        assertTrue(
+                request.getAttribute(FilterChainSelector.SELECTION_ATTRIBUTE)
+                        instanceof FilterChainSelector.Selection);
+        assertTrue(selected.get(3).matches(request));
+
+        // the path changed, e.g. a forward
+        request.setServletPath("/web");
+        assertTrue(selected.get(0).matches(request));
+    }
+
+    @Test
+    public void testNoPatterns() {
+        FilterChainSelector selector = new FilterChainSelector();
+        RequestMatcher matcher =
+                selector.add(
+                        null, null, new GeoServerRequestMatcher(null, (RequestMatcher[]) null));
+        assertFalse(matcher.matches(request("GET", "/web", null)));
+        assertEquals(FilterChainSelector.NO_MATCH, selector.select(request("GET", "/web", null)));
+    }
+
+    private int sequentialSelect(MockHttpServletRequest request) {
+        for (int i = 0; i < sequential.size(); i++) {
+            if (sequential.get(i).matches(request)) {
+                return i;
+            }
+        }
+        return FilterChainSelector.NO_MATCH;
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String query) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        request.setQueryString(query);
+        return request;
+    }
+}
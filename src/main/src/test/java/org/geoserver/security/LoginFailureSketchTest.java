@@ -0,0 +1,50 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LoginFailureSketchTest {
+
+    @Test
+    public void testFailureWindows() {
+        LoginFailureSketch sketch = new LoginFailureSketch();
+        assertEquals(1, sketch.addFailure("address:127.0.0.1", 10));
+        assertEquals(2, sketch.addFailure("address:127.0.0.1", 10));
+        assertEquals(2, sketch.getFailures("address:127.0.0.1", 10));
+        assertEquals(0, sketch.getFailures("address:10.0.0.1", 10));
+
+        // a new window starts from scratch
+        assertEquals(0, sketch.getFailures("address:127.0.0.1", 11));
+        assertEquals(1, sketch.addFailure("address:127.0.0.1", 11));
+
+        assertEquals(1, sketch.addTotalFailure(11));
+        assertEquals(2, sketch.addTotalFailure(11));
+        assertEquals(1, sketch.addTotalFailure(12));
+
+        sketch.clear();
+        assertEquals(0, sketch.getFailures("address:127.0.0.1", 11));
+    }
+
+    @Test
+    public void testBounded() {
+        // many more keys than cells, estimates can only be higher than the real values
+        LoginFailureSketch sketch = new LoginFailureSketch(2, 16);
+        for (int i = 0; i < 1000; i++) {
+            sketch.addFailure("user:" + i, 1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.getFailures("user:" + i, 1) >= 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWidth() {
+        new LoginFailureSketch(4, 1000);
+    }
+}
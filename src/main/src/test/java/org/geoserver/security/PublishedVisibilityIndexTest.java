@@ -0,0 +1,167 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+public class PublishedVisibilityIndexTest {
+
+    private DefaultResourceAccessManager manager;
+
+    private Filter layerRules;
+
+    private Filter groupRules;
+
+    private LayerInfo visible;
+
+    private LayerInfo hidden;
+
+    private LayerGroupInfo group;
+
+    private PublishedVisibilityIndex index;
+
+    @Before
+    public void setUp() {
+        visible = mock(LayerInfo.class);
+        when(visible.getId()).thenReturn("visible");
+        hidden = mock(LayerInfo.class);
+        when(hidden.getId()).thenReturn("hidden");
+        group = mock(LayerGroupInfo.class);
+        when(group.getId()).thenReturn("group");
+
+        layerRules = mock(Filter.class);
+        when(layerRules.evaluate(visible)).thenReturn(true);
+        groupRules = mock(Filter.class);
+        when(groupRules.evaluate(group)).thenReturn(true);
+
+        manager = mock(DefaultResourceAccessManager.class);
+        when(manager.getMode()).thenReturn(CatalogMode.HIDE);
+        when(manager.getSecurityFilter(any(), eq(LayerInfo.class))).thenReturn(layerRules);
+        when(manager.getSecurityFilter(any(), eq(LayerGroupInfo.class))).thenReturn(groupRules);
+        when(manager.getSecurityFilter(any(), eq(PublishedInfo.class)))
+                .thenReturn(mock(Filter.class));
+        index = new PublishedVisibilityIndex(manager, true);
+    }
+
+    @Test
+    public void testEvaluatedOnce() {
+        Filter filter = index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class);
+        assertTrue(filter.evaluate(visible));
+        assertFalse(filter.evaluate(hidden));
+        assertTrue(filter.evaluate(group));
+
+        // same roles, another request
+        filter = index.getSecurityFilter(user("alice", "ROLE_A"), PublishedInfo.class);
+        assertTrue(filter.evaluate(visible));
+        assertFalse(filter.evaluate(hidden));
+        assertTrue(filter.evaluate(group));
+
+        verify(layerRules, times(1)).evaluate(visible);
+        verify(layerRules, times(1)).evaluate(hidden);
+        verify(groupRules, times(1)).evaluate(group);
+        assertEquals(1, index.size());
+
+        // other roles, other view
+        index.getSecurityFilter(user("carl", "ROLE_B"), PublishedInfo.class).evaluate(visible);
+        verify(layerRules, times(2)).evaluate(visible);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        Filter filter = index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class);
+        filter.evaluate(visible);
+        filter.evaluate(hidden);
+
+        // only the modified layer is evaluated again
+        when(layerRules.evaluate(hidden)).thenReturn(true);
+        index.changed(hidden);
+        assertTrue(filter.evaluate(hidden));
+        assertTrue(filter.evaluate(visible));
+        verify(layerRules, times(2)).evaluate(hidden);
+        verify(layerRules, times(1)).evaluate(visible);
+
+        // a workspace change affects all of them
+        index.changed(mock(WorkspaceInfo.class));
+        filter.evaluate(visible);
+        verify(layerRules, times(2)).evaluate(visible);
+    }
+
+    @Test
+    public void testRulesChange() {
+        index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class).evaluate(visible);
+        when(manager.getRulesLastModified()).thenReturn(1L);
+        index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class).evaluate(visible);
+        verify(layerRules, times(2)).evaluate(visible);
+    }
+
+    @Test
+    public void testRemoved() {
+        Filter filter = index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class);
+        assertTrue(filter.evaluate(visible));
+        assertEquals(1, index.getIndexSize());
+
+        // the id is dropped, and the layer evaluated again if it comes back
+        index.removed(visible);
+        assertEquals(0, index.getIndexSize());
+        assertTrue(filter.evaluate(visible));
+        verify(layerRules, times(2)).evaluate(visible);
+    }
+
+    @Test
+    public void testIncludeExclude() {
+        when(manager.getSecurityFilter(any(), eq(LayerInfo.class))).thenReturn(Filter.INCLUDE);
+        when(manager.getSecurityFilter(any(), eq(LayerGroupInfo.class))).thenReturn(Filter.EXCLUDE);
+        Authentication user = user("bob", "ROLE_A");
+        assertSame(Filter.INCLUDE, index.getSecurityFilter(user, LayerInfo.class));
+        assertSame(Filter.EXCLUDE, index.getSecurityFilter(user, LayerGroupInfo.class));
+    }
+
+    @Test
+    public void testEncodingCatalog() {
+        // a catalog encoding the filters gets the rules as they are
+        index = new PublishedVisibilityIndex(manager, false);
+        Authentication user = user("bob", "ROLE_A");
+        assertSame(layerRules, index.getSecurityFilter(user, LayerInfo.class));
+        assertSame(groupRules, index.getSecurityFilter(user, LayerGroupInfo.class));
+    }
+
+    @Test
+    public void testChallengeMode() {
+        when(manager.getMode()).thenReturn(CatalogMode.CHALLENGE);
+        assertNull(index.getSecurityFilter(user("bob", "ROLE_A"), PublishedInfo.class));
+    }
+
+    private static Authentication user(String name, String... roles) {
+        return new UsernamePasswordAuthenticationToken(
+                name,
+                null,
+                Arrays.stream(roles).map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,102 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.geoserver.security.GeoServerRoleStore;
+import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.security.impl.MemoryRoleService;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.SnapshotChanges;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LockingRoleServiceTest {
+
+    MemoryRoleService memory;
+
+    LockingRoleService service;
+
+    GeoServerRole admin, author;
+
+    @Before
+    public void setUp() throws Exception {
+        memory = new MemoryRoleService();
+        service = new LockingRoleService(memory);
+
+        GeoServerRoleStore store = service.createStore();
+        admin = store.createRoleObject("ROLE_ADMIN");
+        author = store.createRoleObject("ROLE_AUTHOR");
+        store.addRole(admin);
+        store.addRole(author);
+        store.setParentRole(author, admin);
+        store.associateRoleToUser(admin, "alice");
+        store.associateRoleToUser(author, "bob");
+        store.associateRoleToGroup(author, "editors");
+        store.store();
+    }
+
+    @Test
+    public void testReadsFromSnapshot() throws Exception {
+        assertEquals(Collections.singleton(admin), service.getRolesForUser("alice"));
+        assertNotNull(service.snapshots.peek());
+
+        assertEquals(new TreeSet<>(Arrays.asList(admin, author)), service.getRoles());
+        assertEquals(Collections.singleton(author), service.getRolesForGroup("editors"));
+        assertTrue(service.getRolesForUser("carol").isEmpty());
+        assertEquals(admin, service.getParentRole(author));
+        assertNull(service.getParentRole(admin));
+        assertEquals(author, service.getRoleByName("ROLE_AUTHOR"));
+        assertEquals(Collections.singleton("bob"), service.getUserNamesForRole(author));
+        assertEquals(Collections.singleton("editors"), service.getGroupNamesForRole(author));
+        assertEquals(2, service.getRoleCount());
+    }
+
+    @Test
+    public void testStoreChanges() throws Exception {
+        assertEquals(Collections.singleton("alice"), service.getUserNamesForRole(admin));
+
+        GeoServerRoleStore store = service.createStore();
+        store.associateRoleToUser(admin, "carol");
+        // the store sees its own changes, the service does not until stored
+        assertEquals(Collections.singleton(admin), store.getRolesForUser("carol"));
+        assertTrue(service.getRolesForUser("carol").isEmpty());
+
+        store.store();
+        assertEquals(Collections.singleton(admin), service.getRolesForUser("carol"));
+        assertEquals(
+                new TreeSet<>(Arrays.asList("alice", "carol")), service.getUserNamesForRole(admin));
+    }
+
+    @Test
+    public void testRefreshChangedEntries() throws Exception {
+        RoleSnapshot snapshot = RoleSnapshot.build(memory);
+
+        GeoServerRoleStore store = memory.createStore();
+        store.disAssociateRoleFromUser(author, "bob");
+        store.associateRoleToGroup(admin, "editors");
+        store.store();
+
+        SnapshotChanges changes = new SnapshotChanges();
+        changes.user("bob");
+        changes.group("editors");
+        RoleSnapshot refreshed = snapshot.refresh(memory, changes);
+        // copy on write
+        assertEquals(Collections.singleton(author), snapshot.getRolesForUser("bob"));
+        assertTrue(refreshed.getRolesForUser("bob").isEmpty());
+        assertTrue(refreshed.getUserNamesForRole(author).isEmpty());
+        assertEquals(
+                new TreeSet<>(Arrays.asList(admin, author)), refreshed.getRolesForGroup("editors"));
+        assertEquals(Collections.singleton("editors"), refreshed.getGroupNamesForRole(admin));
+        assertEquals(Collections.singleton(admin), refreshed.getRolesForUser("alice"));
+    }
+}
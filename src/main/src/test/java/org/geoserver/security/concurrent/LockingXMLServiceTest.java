@@ -0,0 +1,151 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.geoserver.security.AbstractSecurityServiceTest;
+import org.geoserver.security.GeoServerRoleService;
+import org.geoserver.security.GeoServerRoleStore;
+import org.geoserver.security.GeoServerUserGroupService;
+import org.geoserver.security.GeoServerUserGroupStore;
+import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.security.impl.GeoServerUser;
+import org.geoserver.security.impl.GeoServerUserGroup;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.UserGroupSnapshot;
+import org.geoserver.security.validation.PasswordValidator;
+import org.geoserver.security.xml.XMLConstants;
+import org.geoserver.security.xml.XMLRoleService;
+import org.geoserver.security.xml.XMLRoleServiceConfig;
+import org.geoserver.security.xml.XMLUserGroupService;
+import org.geoserver.security.xml.XMLUserGroupServiceConfig;
+import org.junit.Test;
+
+/** Checks the snapshots of the XML services are refreshed, not reloaded, by their own stores */
+public class LockingXMLServiceTest extends AbstractSecurityServiceTest {
+
+    @Override
+    public GeoServerRoleService createRoleService(String serviceName) throws Exception {
+        XMLRoleServiceConfig config = new XMLRoleServiceConfig();
+        config.setName(serviceName);
+        config.setClassName(XMLRoleService.class.getName());
+        // no file watcher, only the stores change the file
+        config.setCheckInterval(0);
+        config.setFileName(XMLConstants.FILE_RR);
+        config.setValidating(true);
+        getSecurityManager().saveRoleService(config);
+        return getSecurityManager().loadRoleService(serviceName);
+    }
+
+    @Override
+    public GeoServerUserGroupService createUserGroupService(String serviceName) throws Exception {
+        XMLUserGroupServiceConfig config = new XMLUserGroupServiceConfig();
+        config.setName(serviceName);
+        config.setClassName(XMLUserGroupService.class.getName());
+        config.setCheckInterval(0);
+        config.setFileName(XMLConstants.FILE_UR);
+        config.setValidating(true);
+        config.setPasswordEncoderName(getPlainTextPasswordEncoder().getName());
+        config.setPasswordPolicyName(PasswordValidator.DEFAULT_NAME);
+        getSecurityManager().saveUserGroupService(config);
+        return getSecurityManager().loadUserGroupService(serviceName);
+    }
+
+    @Test
+    public void testRoleStoreRefreshesSnapshot() throws Exception {
+        LockingRoleService service = (LockingRoleService) createRoleService("lockingRoles");
+
+        GeoServerRoleStore store = service.createStore();
+        GeoServerRole admin = store.createRoleObject("ROLE_ADMIN");
+        GeoServerRole author = store.createRoleObject("ROLE_AUTHOR");
+        store.addRole(admin);
+        store.addRole(author);
+        store.associateRoleToUser(admin, "alice");
+        store.associateRoleToUser(author, "bob");
+        store.associateRoleToGroup(author, "editors");
+        store.store();
+
+        assertEquals(Collections.singleton(admin), service.getRolesForUser("alice"));
+        RoleSnapshot snapshot = service.snapshots.peek();
+        assertNotNull(snapshot);
+
+        store = service.createStore();
+        store.associateRoleToUser(admin, "bob");
+        store.store();
+
+        // the load fired by the XML store did not drop the snapshot
+        RoleSnapshot refreshed = service.snapshots.peek();
+        assertNotNull(refreshed);
+        assertNotSame(snapshot, refreshed);
+        assertEquals(new TreeSet<>(Arrays.asList(admin, author)), service.getRolesForUser("bob"));
+        // only the touched user was reloaded
+        assertSame(snapshot.getRolesForUser("alice"), refreshed.getRolesForUser("alice"));
+        assertSame(snapshot.getRolesForGroup("editors"), refreshed.getRolesForGroup("editors"));
+        assertNotSame(snapshot.getRolesForUser("bob"), refreshed.getRolesForUser("bob"));
+    }
+
+    @Test
+    public void testRoleServiceLoadDropsSnapshot() throws Exception {
+        LockingRoleService service = (LockingRoleService) createRoleService("loadingRoles");
+
+        GeoServerRoleStore store = service.createStore();
+        GeoServerRole admin = store.createRoleObject("ROLE_ADMIN");
+        store.addRole(admin);
+        store.associateRoleToUser(admin, "alice");
+        store.store();
+
+        assertEquals(Collections.singleton(admin), service.getRolesForUser("alice"));
+        assertNotNull(service.snapshots.peek());
+        service.load();
+        assertNull(service.snapshots.peek());
+    }
+
+    @Test
+    public void testUserGroupStoreRefreshesSnapshot() throws Exception {
+        LockingUserGroupService service =
+                (LockingUserGroupService) createUserGroupService("lockingUsers");
+
+        GeoServerUserGroupStore store = service.createStore();
+        GeoServerUserGroup editors = store.createGroupObject("editors", true);
+        GeoServerUserGroup readers = store.createGroupObject("readers", true);
+        GeoServerUser alice = store.createUserObject("alice", "secret", true);
+        GeoServerUser bob = store.createUserObject("bob", "secret", true);
+        store.addGroup(editors);
+        store.addGroup(readers);
+        store.addUser(alice);
+        store.addUser(bob);
+        store.associateUserToGroup(alice, editors);
+        store.associateUserToGroup(bob, readers);
+        store.store();
+
+        assertEquals(Collections.singleton(alice), service.getUsersForGroup(editors));
+        UserGroupSnapshot snapshot = service.snapshots.peek();
+        assertNotNull(snapshot);
+
+        store = service.createStore();
+        GeoServerUser carol = store.createUserObject("carol", "secret", true);
+        store.addUser(carol);
+        store.associateUserToGroup(carol, editors);
+        store.store();
+
+        // the load fired by the XML store did not drop the snapshot
+        UserGroupSnapshot refreshed = service.snapshots.peek();
+        assertNotNull(refreshed);
+        assertNotSame(snapshot, refreshed);
+        assertEquals(Collections.singleton(editors), service.getGroupsForUser(carol));
+        assertEquals(2, service.getUsersForGroup(editors).size());
+        // only the group of the touched user was reloaded
+        assertSame(snapshot.getUsersForGroup(readers), refreshed.getUsersForGroup(readers));
+        assertNotSame(snapshot.getUsersForGroup(editors), refreshed.getUsersForGroup(editors));
+    }
+}
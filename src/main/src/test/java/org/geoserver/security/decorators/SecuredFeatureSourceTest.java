@@ -0,0 +1,86 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.VectorAccessLimits;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+
+public class SecuredFeatureSourceTest {
+
+    WKTReader reader = new WKTReader();
+
+    SimpleFeatureType schema;
+
+    VectorAccessLimits limits;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("roads");
+        tb.add("geom", LineString.class);
+        tb.add("label", Point.class);
+        tb.add("name", String.class);
+        schema = tb.buildFeatureType();
+
+        limits = new VectorAccessLimits(CatalogMode.HIDE, null, null, null, null);
+        limits.setClipVectorFilter(reader.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))"));
+    }
+
+    @Test
+    public void testClipFilter() throws Exception {
+        Filter filter = SecuredFeatureSource.getClipFilter(limits, schema);
+        assertEquals(2, ((Or) filter).getChildren().size());
+
+        assertTrue(filter.evaluate(feature("LINESTRING(5 5, 20 20)", "POINT(20 20)")));
+        assertFalse(filter.evaluate(feature("LINESTRING(15 15, 20 20)", "POINT(5 5)")));
+        // null geometries are left to the clipping collection
+        assertTrue(filter.evaluate(feature(null, null)));
+    }
+
+    @Test
+    public void testClipIntersectsFilter() throws Exception {
+        limits.setIntersectVectorFilter(reader.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))"));
+        Filter filter = SecuredFeatureSource.getClipFilter(limits, schema);
+        assertEquals(4, ((Or) filter).getChildren().size());
+
+        assertTrue(filter.evaluate(feature("LINESTRING(5 5, 20 20)", "POINT(20 20)")));
+        // the label is intersected
+        assertTrue(filter.evaluate(feature("LINESTRING(15 15, 20 20)", "POINT(5 5)")));
+        assertFalse(filter.evaluate(feature("LINESTRING(15 15, 20 20)", "POINT(20 20)")));
+    }
+
+    @Test
+    public void testNoGeometry() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("table");
+        tb.add("name", String.class);
+        assertNull(SecuredFeatureSource.getClipFilter(limits, tb.buildFeatureType()));
+    }
+
+    private SimpleFeature feature(String geom, String label) throws Exception {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        fb.add(geom != null ? (Geometry) reader.read(geom) : null);
+        fb.add(label != null ? (Geometry) reader.read(label) : null);
+        fb.add("road");
+        return fb.buildFeature(null);
+    }
+}
@@ -0,0 +1,87 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class SnapshotCacheTest {
+
+    @Test
+    public void testLoadOnce() {
+        SnapshotCache<String> cache = new SnapshotCache<>();
+        assertNull(cache.peek());
+        assertEquals("a", cache.get(() -> "a"));
+        assertEquals("a", cache.get(() -> "b"));
+        cache.invalidate();
+        assertEquals("c", cache.get(() -> "c"));
+    }
+
+    @Test
+    public void testConcurrentLoad() {
+        SnapshotCache<String> cache = new SnapshotCache<>();
+        // a reader finding the snapshot being loaded does not wait
+        assertEquals(
+                "a",
+                cache.get(
+                        () -> {
+                            assertNull(cache.get(() -> "b"));
+                            return "a";
+                        }));
+    }
+
+    @Test
+    public void testInvalidatedWhileLoading() {
+        SnapshotCache<String> cache = new SnapshotCache<>();
+        assertNull(
+                cache.get(
+                        () -> {
+                            cache.invalidate();
+                            return "stale";
+                        }));
+        assertNull(cache.peek());
+        assertEquals("fresh", cache.get(() -> "fresh"));
+    }
+
+    @Test
+    public void testUpdate() {
+        SnapshotCache<String> cache = new SnapshotCache<>();
+        cache.get(() -> "a");
+        cache.update(s -> s + "b");
+        assertEquals("ab", cache.peek());
+
+        // concurrent update, both dropped
+        cache.update(
+                s -> {
+                    cache.update(s2 -> s2 + "c");
+                    return s + "d";
+                });
+        assertNull(cache.peek());
+
+        // failed update
+        cache.get(() -> "a");
+        cache.update(
+                s -> {
+                    throw new IOException("failed");
+                });
+        assertNull(cache.peek());
+    }
+
+    @Test
+    public void testUpdateWhileLoading() {
+        SnapshotCache<String> cache = new SnapshotCache<>();
+        // a change stored while loading makes the loaded snapshot stale
+        assertNull(
+                cache.get(
+                        () -> {
+                            cache.update(s -> s + "b");
+                            return "a";
+                        }));
+        assertNull(cache.peek());
+    }
+}
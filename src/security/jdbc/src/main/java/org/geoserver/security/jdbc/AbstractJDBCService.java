@@ -22,6 +22,7 @@
 import javax.sql.DataSource;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.io.FileUtils;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.resource.Files;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resources;
@@ -47,11 +48,21 @@ public abstract class AbstractJDBCService extends AbstractGeoServerSecurityServi
     /** Default isolation level to use */
     static final int DEFAULT_ISOLATION_LEVEL = Connection.TRANSACTION_READ_COMMITTED;
 
+    /**
+     * System property enabling the in-memory snapshots of the role and group lookups. Off by
+     * default, as changes made to the tables outside of this service, e.g. by another node of a
+     * cluster, are only picked up when the service is loaded again.
+     */
+    public static final String SNAPSHOT_KEY = "org.geoserver.security.jdbc.snapshot";
+
+    protected boolean snapshotEnabled;
+
     protected AbstractJDBCService() {}
 
     /** initialize a {@link DataSource} form a {@link JdbcSecurityServiceConfig} object */
     public void initializeDSFromConfig(SecurityNamedServiceConfig namedConfig) throws IOException {
         JDBCSecurityServiceConfig config = (JDBCSecurityServiceConfig) namedConfig;
+        snapshotEnabled = Boolean.parseBoolean(GeoServerExtensions.getProperty(SNAPSHOT_KEY));
         if (config.isJndi()) {
             String jndiName = config.getJndiName();
             try {
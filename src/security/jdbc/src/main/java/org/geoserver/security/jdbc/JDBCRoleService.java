@@ -27,6 +27,9 @@
 import org.geoserver.security.event.RoleLoadedEvent;
 import org.geoserver.security.event.RoleLoadedListener;
 import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.SnapshotCache;
+import org.geoserver.security.impl.SnapshotChanges;
 import org.geoserver.security.impl.Util;
 import org.geoserver.security.jdbc.config.JDBCSecurityServiceConfig;
 import org.springframework.util.StringUtils;
@@ -49,6 +52,8 @@ public class JDBCRoleService extends AbstractJDBCService implements GeoServerRol
 
     protected String adminRoleName, groupAdminRoleName;
 
+    protected final SnapshotCache<RoleSnapshot> snapshots = new SnapshotCache<>();
+
     public JDBCRoleService() {}
 
     @Override
@@ -83,6 +88,41 @@ public GeoServerRoleStore createStore() throws IOException {
         return store;
     }
 
+    /**
+     * Returns the in-memory snapshot answering the read methods, if enabled with {@link
+     * #SNAPSHOT_KEY}. The snapshot is loaded in a single transaction on first use, and refreshed
+     * when the service is loaded again or a store of this service stores its changes.
+     *
+     * @return the snapshot, or null if disabled or being loaded by another thread
+     */
+    protected RoleSnapshot getSnapshot() {
+        if (!snapshotEnabled) {
+            return null;
+        }
+        return snapshots.get(
+                () -> {
+                    JDBCRoleStore store = (JDBCRoleStore) createStore();
+                    try {
+                        return RoleSnapshot.build(store);
+                    } finally {
+                        store.load();
+                    }
+                });
+    }
+
+    /** Reloads the entries touched by the changes committed by a store of this service */
+    void storeChanged(SnapshotChanges changes) {
+        snapshots.update(
+                snapshot -> {
+                    JDBCRoleStore store = (JDBCRoleStore) createStore();
+                    try {
+                        return snapshot.refresh(store, changes);
+                    } finally {
+                        store.load();
+                    }
+                });
+    }
+
     /**
      * Uses {@link #initializeDSFromConfig(SecurityNamedServiceConfig)} and {@link
      * #checkORCreateJDBCPropertyFile(String, File, String)}
@@ -115,6 +155,7 @@ public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOExc
         }
         this.adminRoleName = ((SecurityRoleServiceConfig) config).getAdminRoleName();
         this.groupAdminRoleName = ((SecurityRoleServiceConfig) config).getGroupAdminRoleName();
+        snapshots.invalidate();
     }
 
     /** @see org.geoserver.security.jdbc.AbstractJDBCService#getOrderedNamesForCreate() */
@@ -138,6 +179,10 @@ protected String[] getOrderedNamesForDrop() {
     /** @see org.geoserver.security.GeoServerRoleService#getRoleByName(java.lang.String) */
     @Override
     public GeoServerRole getRoleByName(String role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoleByName(role);
+        }
 
         Connection con = null;
         PreparedStatement ps = null, ps2 = null;
@@ -175,6 +220,10 @@ public GeoServerRole getRoleByName(String role) throws IOException {
     /** @see org.geoserver.security.GeoServerRoleService#getRoles() */
     @Override
     public SortedSet<GeoServerRole> getRoles() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoles();
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -217,6 +266,10 @@ public SortedSet<GeoServerRole> getRoles() throws IOException {
     /** @see org.geoserver.security.GeoServerRoleService#getParentMappings() */
     @Override
     public Map<String, String> getParentMappings() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getParentMappings();
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -247,6 +300,10 @@ public GeoServerRole createRoleObject(String role) {
     /** @see org.geoserver.security.GeoServerRoleService#getRolesForUser(java.lang.String) */
     @Override
     public SortedSet<GeoServerRole> getRolesForUser(String username) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRolesForUser(username);
+        }
         Connection con = null;
         PreparedStatement ps = null, ps2 = null;
         ResultSet rs = null, rs2 = null;
@@ -293,6 +350,10 @@ public SortedSet<GeoServerRole> getRolesForUser(String username) throws IOExcept
     /** @see org.geoserver.security.GeoServerRoleService#getRolesForGroup(java.lang.String) */
     @Override
     public SortedSet<GeoServerRole> getRolesForGroup(String groupname) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRolesForGroup(groupname);
+        }
         Connection con = null;
         PreparedStatement ps = null, ps2 = null;
         ResultSet rs = null, rs2 = null;
@@ -339,7 +400,8 @@ public SortedSet<GeoServerRole> getRolesForGroup(String groupname) throws IOExce
     /** @see org.geoserver.security.GeoServerRoleService#load() */
     @Override
     public void load() throws IOException {
-        // do nothing
+        // nothing to load, just drop the snapshot
+        snapshots.invalidate();
     }
 
     /**
@@ -348,6 +410,10 @@ public void load() throws IOException {
      */
     @Override
     public GeoServerRole getParentRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getParentRole(role);
+        }
 
         Connection con = null;
         PreparedStatement ps = null, ps2 = null;
@@ -415,6 +481,10 @@ protected void fireRoleChangedEvent() {
      */
     @Override
     public SortedSet<String> getGroupNamesForRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupNamesForRole(role);
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -443,6 +513,10 @@ public SortedSet<String> getGroupNamesForRole(GeoServerRole role) throws IOExcep
      */
     @Override
     public SortedSet<String> getUserNamesForRole(GeoServerRole role) throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUserNamesForRole(role);
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -470,6 +544,10 @@ public SortedSet<String> getUserNamesForRole(GeoServerRole role) throws IOExcept
      */
     @Override
     public int getRoleCount() throws IOException {
+        RoleSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getRoleCount();
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
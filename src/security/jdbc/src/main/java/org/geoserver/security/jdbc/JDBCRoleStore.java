@@ -15,6 +15,8 @@
 import org.geoserver.security.GeoServerRoleStore;
 import org.geoserver.security.impl.GeoServerRole;
 import org.geoserver.security.impl.RoleHierarchyHelper;
+import org.geoserver.security.impl.RoleSnapshot;
+import org.geoserver.security.impl.SnapshotChanges;
 
 /**
  * JDBC Implementation of {@link GeoServerRoleStore}
@@ -26,6 +28,18 @@ public class JDBCRoleStore extends JDBCRoleService implements GeoServerRoleStore
     protected boolean modified;
     protected Connection connection;
 
+    /** The service this store was initialized from, notified of the committed changes */
+    protected JDBCRoleService jdbcService;
+
+    /** The changes not committed yet */
+    protected SnapshotChanges changes = new SnapshotChanges();
+
+    /** A store must see its own changes, no snapshot */
+    @Override
+    protected RoleSnapshot getSnapshot() {
+        return null;
+    }
+
     /**
      * The identical connection is used until {@link #store()} or {@link #load()} is called. Within
      * a transaction it is not possible to use different connections.
@@ -67,6 +81,7 @@ public void load() throws IOException {
             throw new IOException(ex);
         }
         setModified(false);
+        changes.clear();
     }
 
     protected void addRoleProperties(GeoServerRole role, Connection con)
@@ -109,6 +124,7 @@ public void addRole(GeoServerRole role) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
 
@@ -140,6 +156,7 @@ public void updateRole(GeoServerRole role) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true); // we do as if there was an update
     }
 
@@ -183,6 +200,7 @@ public boolean removeRole(GeoServerRole role) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
         return retval;
     }
@@ -202,6 +220,10 @@ public void store() throws IOException {
             throw new IOException(ex);
         }
         setModified(false);
+        if (jdbcService != null && !changes.isEmpty()) {
+            jdbcService.storeChanged(changes.copy());
+        }
+        changes.clear();
     }
 
     /* (non-Javadoc)
@@ -223,6 +245,7 @@ public void associateRoleToUser(GeoServerRole role, String username) throws IOEx
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(username);
         setModified(true);
     }
 
@@ -245,6 +268,7 @@ public void disAssociateRoleFromUser(GeoServerRole role, String username) throws
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(username);
         setModified(true);
     }
 
@@ -267,6 +291,7 @@ public void associateRoleToGroup(GeoServerRole role, String groupname) throws IO
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.group(groupname);
         setModified(true);
     }
 
@@ -289,6 +314,7 @@ public void disAssociateRoleFromGroup(GeoServerRole role, String groupname) thro
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.group(groupname);
         setModified(true);
     }
 
@@ -331,6 +357,7 @@ public void setParentRole(GeoServerRole role, GeoServerRole parentRole) throws I
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
 
@@ -363,6 +390,7 @@ public void clear() throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
 
@@ -371,7 +399,7 @@ public void clear() throws IOException {
      */
     @Override
     public void initializeFromService(GeoServerRoleService service) throws IOException {
-        JDBCRoleService jdbcService = (JDBCRoleService) service;
+        jdbcService = (JDBCRoleService) service;
         this.name = service.getName();
         this.adminRoleName = jdbcService.adminRoleName;
         this.groupAdminRoleName = jdbcService.groupAdminRoleName;
@@ -32,6 +32,9 @@
 import org.geoserver.security.impl.GeoServerUser;
 import org.geoserver.security.impl.GeoServerUserGroup;
 import org.geoserver.security.impl.RoleCalculator;
+import org.geoserver.security.impl.SnapshotCache;
+import org.geoserver.security.impl.SnapshotChanges;
+import org.geoserver.security.impl.UserGroupSnapshot;
 import org.geoserver.security.impl.Util;
 import org.geoserver.security.jdbc.config.JDBCSecurityServiceConfig;
 import org.geoserver.security.jdbc.config.JDBCUserGroupServiceConfig;
@@ -63,6 +66,8 @@ public class JDBCUserGroupService extends AbstractJDBCService implements GeoServ
 
     protected String passwordEncoderName, passwordValidatorName;
 
+    protected final SnapshotCache<UserGroupSnapshot> snapshots = new SnapshotCache<>();
+
     public JDBCUserGroupService() throws IOException {
         emptyUsers = Collections.unmodifiableSortedSet(new TreeSet<>());
         emptyGroups = Collections.unmodifiableSortedSet(new TreeSet<>());
@@ -90,6 +95,41 @@ public GeoServerUserGroupStore createStore() throws IOException {
         return store;
     }
 
+    /**
+     * Returns the in-memory snapshot answering the group lookups, if enabled with {@link
+     * #SNAPSHOT_KEY}. The snapshot is loaded in a single transaction on first use, and refreshed
+     * when the service is loaded again or a store of this service stores its changes.
+     *
+     * @return the snapshot, or null if disabled or being loaded by another thread
+     */
+    protected UserGroupSnapshot getSnapshot() {
+        if (!snapshotEnabled) {
+            return null;
+        }
+        return snapshots.get(
+                () -> {
+                    JDBCUserGroupStore store = (JDBCUserGroupStore) createStore();
+                    try {
+                        return UserGroupSnapshot.build(store);
+                    } finally {
+                        store.load();
+                    }
+                });
+    }
+
+    /** Reloads the entries touched by the changes committed by a store of this service */
+    void storeChanged(SnapshotChanges changes) {
+        snapshots.update(
+                snapshot -> {
+                    JDBCUserGroupStore store = (JDBCUserGroupStore) createStore();
+                    try {
+                        return snapshot.refresh(store, changes);
+                    } finally {
+                        store.load();
+                    }
+                });
+    }
+
     /**
      * Uses {@link #initializeDSFromConfig(SecurityNamedServiceConfig)} and {@link
      * #checkORCreateJDBCPropertyFile(String, File, String)} for initializing
@@ -139,6 +179,7 @@ public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOExc
             enc.initializeFor(this);
             passwordValidatorName = jdbcConfig.getPasswordPolicyName();
         }
+        snapshots.invalidate();
     }
 
     /** @see org.geoserver.security.jdbc.AbstractJDBCService#getOrderedNamesForCreate() */
@@ -202,6 +243,10 @@ public GeoServerUser getUserByUsername(String username) throws IOException {
      */
     @Override
     public GeoServerUserGroup getGroupByGroupname(String groupname) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupByGroupname(groupname);
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -274,6 +319,10 @@ public SortedSet<GeoServerUser> getUsers() throws IOException {
     /** @see org.geoserver.security.GeoServerUserGroupService#getUserGroups() */
     @Override
     public SortedSet<GeoServerUserGroup> getUserGroups() throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUserGroups();
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -331,6 +380,10 @@ public GeoServerUserGroup createGroupObject(String groupname, boolean isEnabled)
      */
     @Override
     public SortedSet<GeoServerUserGroup> getGroupsForUser(GeoServerUser user) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupsForUser(user.getUsername());
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -364,6 +417,10 @@ public SortedSet<GeoServerUserGroup> getGroupsForUser(GeoServerUser user) throws
      */
     @Override
     public SortedSet<GeoServerUser> getUsersForGroup(GeoServerUserGroup group) throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getUsersForGroup(group);
+        }
         Connection con = null;
         PreparedStatement ps = null, ps2 = null;
         ResultSet rs = null, rs2 = null;
@@ -434,6 +491,10 @@ public int getUserCount() throws IOException {
 
     @Override
     public int getGroupCount() throws IOException {
+        UserGroupSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getGroupCount();
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -457,7 +518,8 @@ public int getGroupCount() throws IOException {
     /** @see org.geoserver.security.GeoServerUserGroupService#load() */
     @Override
     public void load() throws IOException {
-        // do nothing
+        // nothing to load, just drop the snapshot
+        snapshots.invalidate();
     }
 
     /**
@@ -15,6 +15,8 @@
 import org.geoserver.security.GeoServerUserGroupStore;
 import org.geoserver.security.impl.GeoServerUser;
 import org.geoserver.security.impl.GeoServerUserGroup;
+import org.geoserver.security.impl.SnapshotChanges;
+import org.geoserver.security.impl.UserGroupSnapshot;
 import org.geoserver.security.password.GeoServerPasswordEncoder;
 import org.geoserver.security.validation.PasswordPolicyException;
 import org.geoserver.security.validation.PasswordValidatorImpl;
@@ -34,6 +36,15 @@ public JDBCUserGroupStore() throws IOException {
     protected Connection connection;
     protected JDBCUserGroupService jdbcService;
 
+    /** The changes not committed yet */
+    protected SnapshotChanges changes = new SnapshotChanges();
+
+    /** A store must see its own changes, no snapshot */
+    @Override
+    protected UserGroupSnapshot getSnapshot() {
+        return null;
+    }
+
     /**
      * The identical connection is used until {@link #store()} or {@link #load()} is called. Within
      * a transaction it is not possible to use different connections.
@@ -96,6 +107,7 @@ public void load() throws IOException {
             throw new IOException(ex);
         }
         setModified(false);
+        changes.clear();
         // fireUserGroupChangedEvent();
     }
 
@@ -171,6 +183,7 @@ public void addUser(GeoServerUser user) throws IOException, PasswordPolicyExcept
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(user.getUsername());
         setModified(true);
     }
 
@@ -203,6 +216,7 @@ public void updateUser(GeoServerUser user) throws IOException, PasswordPolicyExc
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(user.getUsername());
         setModified(true);
     }
 
@@ -236,6 +250,7 @@ public boolean removeUser(GeoServerUser user) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(user.getUsername());
         setModified(true);
         return retval;
     }
@@ -258,6 +273,7 @@ public void addGroup(GeoServerUserGroup group) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
 
@@ -279,6 +295,7 @@ public void updateGroup(GeoServerUserGroup group) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
 
@@ -307,6 +324,7 @@ public boolean removeGroup(GeoServerUserGroup group) throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
         return retval;
     }
@@ -326,6 +344,10 @@ public void store() throws IOException {
             throw new IOException(ex);
         }
         setModified(false);
+        if (jdbcService != null && !changes.isEmpty()) {
+            jdbcService.storeChanged(changes.copy());
+        }
+        changes.clear();
         // fireUserGroupChangedEvent();
     }
 
@@ -349,6 +371,7 @@ public void associateUserToGroup(GeoServerUser user, GeoServerUserGroup group)
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(user.getUsername());
         setModified(true);
     }
 
@@ -372,6 +395,7 @@ public void disAssociateUserFromGroup(GeoServerUser user, GeoServerUserGroup gro
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.user(user.getUsername());
         setModified(true);
     }
 
@@ -413,6 +437,7 @@ public void clear() throws IOException {
         } finally {
             closeFinally(con, ps, null);
         }
+        changes.all();
         setModified(true);
     }
     /** Delegates to the {@link GeoServerUserGroupService} backend */
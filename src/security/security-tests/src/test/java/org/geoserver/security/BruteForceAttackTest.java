@@ -6,8 +6,9 @@
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNotNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -81,12 +82,22 @@ public void testLoginDelay() throws Exception {
         // successful login, no wait (cannot actually test it)
         setRequestAuth("admin", "geoserver");
         assertEquals(200, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
-        // failing login, at least one second wait
+        // failing login, the response is not delayed but tells when to retry
         setRequestAuth("admin", "foobar");
         long start = System.currentTimeMillis();
-        assertEquals(401, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+        MockHttpServletResponse response = getAsServletResponse(HELLO_GET_REQUEST);
         long end = System.currentTimeMillis();
-        assertThat((end - start), greaterThan(1000l));
+        assertEquals(401, response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+        assertThat((end - start), lessThan(1000l));
+        // during the delay even the right password is rejected
+        setRequestAuth("admin", "geoserver");
+        response = getAsServletResponse(HELLO_GET_REQUEST);
+        assertEquals(401, response.getStatus());
+        assertNotNull(response.getHeader("Retry-After"));
+        // and accepted again after it
+        Thread.sleep(1100);
+        assertEquals(200, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
     }
 
     @Test
@@ -108,6 +119,37 @@ public void testTooManyBlockedThreads() throws Exception {
         testParallelLogin("Unauthorized", i -> "foo" + i);
     }
 
+    @Test
+    public void testLockedOverMaxBlockedThreads() throws Exception {
+        GeoServerSecurityManager manager =
+                applicationContext.getBean(GeoServerSecurityManager.class);
+        final SecurityManagerConfig securityConfig = manager.getSecurityConfig();
+        BruteForcePreventionConfig bruteForceConfig = securityConfig.getBruteForcePrevention();
+        bruteForceConfig.setMaxBlockedThreads(1);
+        manager.saveSecurityConfig(securityConfig);
+
+        setRequestAuth("foo", "foobar");
+        assertEquals(401, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+        setRequestAuth("admin", "foobar");
+        assertEquals(401, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+        // the user is locked even if the failed logins went over the limit
+        setRequestAuth("admin", "geoserver");
+        assertEquals(401, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+        Thread.sleep(1100);
+        assertEquals(200, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+    }
+
+    @Test
+    public void testOtherUsersDoNotLock() throws Exception {
+        // failed logins with many other user names do not lock the admin out
+        for (int i = 0; i < 50; i++) {
+            setRequestAuth("foo" + i, "foobar");
+            assertEquals(401, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+        }
+        setRequestAuth("admin", "geoserver");
+        assertEquals(200, getAsServletResponse(HELLO_GET_REQUEST).getStatus());
+    }
+
     private void testParallelLogin(
             String expectedMessage, Function<Integer, String> userNameGenerator)
             throws InterruptedException, ExecutionException {
@@ -161,9 +203,9 @@ private void testParallelLogin(
         long awaitTime = System.currentTimeMillis() - start;
         service.shutdown();
 
-        // now, either the threads all serialized and waited (extremely unlikely, but
-        // not impossible) or at least one got bumped immediately with a concurrent login message
-        assertTrue(awaitTime > NTHREADS * 1000 || concurrentLoginsPrevented.get() > 0);
+        // no thread waits for the delay, at least one got bumped immediately
+        assertThat(awaitTime, lessThan(NTHREADS * 1000l));
+        assertThat(concurrentLoginsPrevented.get(), greaterThan(0));
     }
 
     // "Too many failed logins waiting on delay already";
@@ -0,0 +1,81 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+/** Unit tests for the ConcurrentHashMap based AuthenticationCache implementation. */
+public class ConcurrentAuthenticationCacheTest extends BaseAuthenticationCacheTest {
+    private static final int CONCURRENCY = 3;
+
+    protected static final int TIME_CLEANUP = 3;
+
+    @Override
+    protected AuthenticationCache createAuthenticationCache() {
+        return new ConcurrentAuthenticationCacheImpl(
+                MAX_ENTRIES, TIME_IDLE, TIME_LIVE, TIME_CLEANUP, CONCURRENCY);
+    }
+
+    @After
+    public void destroy() {
+        ((ConcurrentAuthenticationCacheImpl) cache).destroy();
+    }
+
+    @Test
+    public void testCleanUp() throws InterruptedException {
+        putAuthenticationInCache();
+        Thread.sleep((TIME_CLEANUP + 1) * 1000);
+        assertTrue(((ConcurrentAuthenticationCacheImpl) cache).isEmpty());
+    }
+
+    @Test
+    public void testMetrics() {
+        ConcurrentAuthenticationCacheImpl cache = (ConcurrentAuthenticationCacheImpl) this.cache;
+        putAuthenticationInCache();
+        assertNotNull(cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        assertNotNull(cache.get(SAMPLE_FILTER, SAMPLE_CACHE_KEY));
+        assertNull(cache.get(SAMPLE_FILTER, OTHER_CACHE_KEY));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testMaxEntries() throws InterruptedException {
+        ConcurrentAuthenticationCacheImpl cache =
+                new ConcurrentAuthenticationCacheImpl(2, 100, 100, 100, CONCURRENCY);
+        try {
+            for (int i = 0; i < 3; i++) {
+                cache.put(SAMPLE_FILTER, "key" + i, new UsernamePasswordAuthenticationToken(i, i));
+                Thread.sleep(10);
+            }
+            cache.sweep();
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictionCount());
+            // the least recently accessed went away
+            assertNull(cache.get(SAMPLE_FILTER, "key0"));
+            assertNotNull(cache.get(SAMPLE_FILTER, "key2"));
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void testCredentialsNotKept() {
+        assertEquals(
+                ConcurrentAuthenticationCacheImpl.digest(SAMPLE_CACHE_KEY),
+                ConcurrentAuthenticationCacheImpl.digest(SAMPLE_CACHE_KEY));
+        assertFalse(
+                ConcurrentAuthenticationCacheImpl.digest(SAMPLE_CACHE_KEY)
+                        .contains(SAMPLE_CACHE_KEY));
+    }
+}
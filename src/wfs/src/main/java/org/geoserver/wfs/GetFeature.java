@@ -334,6 +334,11 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
         List<FeatureCollection<? extends FeatureType, ? extends Feature>> results =
                 new ArrayList<>();
         final List<CountExecutor> totalCountExecutors = new ArrayList<>();
+        final List<PrefetchingFeatureCollection> prefetches = new ArrayList<>();
+        final PrefetchingFeatureCollection.Prefetcher prefetcher =
+                queries.size() > 1
+                        ? GeoServerExtensions.bean(PrefetchingFeatureCollection.Prefetcher.class)
+                        : null;
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
@@ -615,6 +620,14 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
                         features = retypeToRequestedProperties(features, metaPropNames);
                     }
 
+                    // read ahead concurrently with the other queries, if enabled
+                    if (prefetcher != null && !request.isResultTypeHits()) {
+                        features = prefetcher.wrap(features, queries.size());
+                        if (features instanceof PrefetchingFeatureCollection) {
+                            prefetches.add((PrefetchingFeatureCollection) features);
+                        }
+                    }
+
                     // allow encoders to grab information about this layer if needs be
                     if (primaryMeta != null) {
                         features = TypeInfoCollectionWrapper.wrap(features, primaryMeta);
@@ -633,6 +646,11 @@ public FeatureCollectionResponse run(GetFeatureRequest request) throws WFSExcept
                 }
             }
 
+            // all queries are valid, start reading from the stores
+            for (PrefetchingFeatureCollection prefetch : prefetches) {
+                prefetcher.start(prefetch);
+            }
+
             totalCount =
                     updateTotalCount(
                             maxFeatures,
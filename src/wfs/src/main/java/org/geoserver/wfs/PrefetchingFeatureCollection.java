@@ -0,0 +1,291 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * A feature collection that opens its feature iterator in a background thread, reading ahead a
+ * bounded number of features. Used when a GetFeature contains multiple queries, so that the queries
+ * hit the stores concurrently instead of paying their latency one after the other, while the output
+ * is still encoded in query order.
+ *
+ * <p>Only the first call to {@link #features()} uses the prefetched features, any further call goes
+ * straight to the delegate. The collections are created and started by the {@link Prefetcher} bean,
+ * which also closes the prefetches that are never consumed (e.g., because the encoding failed) at
+ * the end of the request.
+ */
+public class PrefetchingFeatureCollection extends DecoratingSimpleFeatureCollection {
+
+    static final Logger LOGGER = Logging.getLogger(PrefetchingFeatureCollection.class);
+
+    /** The prefetches started in the current request, and not consumed yet */
+    static final ThreadLocal<List<PrefetchingFeatureCollection>> PENDING = new ThreadLocal<>();
+
+    private final int prefetchSize;
+
+    private Future<Prefetch> prefetch;
+
+    PrefetchingFeatureCollection(SimpleFeatureCollection delegate, int prefetchSize) {
+        super(delegate);
+        this.prefetchSize = prefetchSize;
+    }
+
+    /** Starts reading ahead in a background thread */
+    synchronized void start(ExecutorService executor) {
+        ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        prefetch =
+                executor.submit(
+                        () -> {
+                            transfer.apply();
+                            try {
+                                return readAhead();
+                            } finally {
+                                transfer.cleanup();
+                            }
+                        });
+        List<PrefetchingFeatureCollection> pending = PENDING.get();
+        if (pending == null) {
+            pending = new ArrayList<>();
+            PENDING.set(pending);
+        }
+        pending.add(this);
+    }
+
+    private Prefetch readAhead() {
+        SimpleFeatureIterator it = delegate.features();
+        try {
+            List<SimpleFeature> features = new ArrayList<>(Math.min(prefetchSize, 1024));
+            while (features.size() < prefetchSize && it.hasNext()) {
+                features.add(it.next());
+            }
+            return new Prefetch(features, it);
+        } catch (RuntimeException e) {
+            it.close();
+            throw e;
+        }
+    }
+
+    /** Takes ownership of the prefetch, if still available */
+    private synchronized Future<Prefetch> take() {
+        Future<Prefetch> result = prefetch;
+        prefetch = null;
+        return result;
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        Future<Prefetch> future = take();
+        if (future == null) {
+            return super.features();
+        }
+        try {
+            return future.get().iterator();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for features", e);
+        } catch (ExecutionException e) {
+            // rethrow what the store threw, as if it had been read in this thread
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw new RuntimeException("Failed to read features", cause);
+        }
+    }
+
+    /** Closes the prefetched iterator, if it has not been consumed */
+    void dispose() {
+        Future<Prefetch> future = take();
+        if (future != null) {
+            try {
+                future.get().iterator.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to dispose unused prefetch", e);
+            }
+        }
+    }
+
+    /** The features read ahead, along with the open iterator to read the rest */
+    static class Prefetch {
+        final List<SimpleFeature> features;
+        final SimpleFeatureIterator iterator;
+
+        Prefetch(List<SimpleFeature> features, SimpleFeatureIterator iterator) {
+            this.features = features;
+            this.iterator = iterator;
+        }
+
+        SimpleFeatureIterator iterator() {
+            return new SimpleFeatureIterator() {
+                int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < features.size() || iterator.hasNext();
+                }
+
+                @Override
+                public SimpleFeature next() {
+                    if (index < features.size()) {
+                        // let the prefetched features be garbage collected while encoding
+                        return features.set(index++, null);
+                    }
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                    iterator.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Wraps the GetFeature results into {@link PrefetchingFeatureCollection} and runs the read
+     * ahead in its own thread pool, shut down along with the application context. Closes the
+     * prefetches that have not been consumed at the end of the request.
+     *
+     * <p>The number of features read ahead for each query is set by the {@link #PREFETCH_SIZE_KEY}
+     * property, zero (the default) disables prefetching. The pool size is set by {@link
+     * #PREFETCH_THREADS_KEY}.
+     */
+    public static class Prefetcher extends AbstractDispatcherCallback implements DisposableBean {
+
+        public static final String PREFETCH_SIZE_KEY = "org.geoserver.wfs.getfeature.prefetch";
+
+        public static final String PREFETCH_THREADS_KEY =
+                "org.geoserver.wfs.getfeature.prefetchThreads";
+
+        /** The default prefetch size - disabled by default */
+        public static final int DEFAULT_PREFETCH_SIZE = 0;
+
+        private final int prefetchSize;
+
+        private final int threads;
+
+        private ExecutorService executor;
+
+        private boolean destroyed;
+
+        public Prefetcher() {
+            this(
+                    getInteger(PREFETCH_SIZE_KEY, DEFAULT_PREFETCH_SIZE),
+                    getInteger(
+                            PREFETCH_THREADS_KEY, Runtime.getRuntime().availableProcessors() * 2));
+        }
+
+        public Prefetcher(int prefetchSize, int threads) {
+            this.prefetchSize = prefetchSize;
+            this.threads = Math.max(1, threads);
+        }
+
+        private static int getInteger(String key, int defaultValue) {
+            String value = GeoServerExtensions.getProperty(key);
+            if (value != null) {
+                try {
+                    return Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid value for " + key + ": " + value);
+                }
+            }
+            return defaultValue;
+        }
+
+        /** Number of features read ahead for each query, zero or negative if disabled */
+        public int getPrefetchSize() {
+            return prefetchSize;
+        }
+
+        /**
+         * Wraps the {@link FeatureCollection} into a {@link PrefetchingFeatureCollection} in case
+         * prefetching is enabled, the request contains multiple queries, and the features are
+         * simple ones. The prefetch is not started, see {@link
+         * #start(PrefetchingFeatureCollection)}.
+         */
+        FeatureCollection<? extends FeatureType, ? extends Feature> wrap(
+                FeatureCollection<? extends FeatureType, ? extends Feature> features,
+                int queryCount) {
+            if (prefetchSize > 0
+                    && queryCount > 1
+                    && features.getSchema() instanceof SimpleFeatureType) {
+                return new PrefetchingFeatureCollection(
+                        (SimpleFeatureCollection) features, prefetchSize);
+            } else {
+                return features;
+            }
+        }
+
+        /** Starts reading ahead in a background thread */
+        void start(PrefetchingFeatureCollection collection) {
+            collection.start(getExecutor());
+        }
+
+        private synchronized ExecutorService getExecutor() {
+            if (destroyed) {
+                throw new IllegalStateException("The GetFeature prefetcher has been shut down");
+            }
+            if (executor == null) {
+                executor =
+                        Executors.newFixedThreadPool(
+                                threads,
+                                r -> {
+                                    Thread t = new Thread(r, "GetFeature prefetch");
+                                    t.setDaemon(true);
+                                    return t;
+                                });
+            }
+            return executor;
+        }
+
+        @Override
+        public void finished(Request request) {
+            List<PrefetchingFeatureCollection> pending = PENDING.get();
+            if (pending != null) {
+                PENDING.remove();
+                for (PrefetchingFeatureCollection collection : pending) {
+                    collection.dispose();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void destroy() {
+            destroyed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+}
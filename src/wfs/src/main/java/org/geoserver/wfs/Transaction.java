@@ -14,6 +14,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,16 +27,22 @@
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.request.Delete;
 import org.geoserver.wfs.request.Insert;
+import org.geoserver.wfs.request.Property;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
+import org.geoserver.wfs.request.Update;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureLockException;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Or;
 import org.springframework.context.ApplicationContext;
 
 /**
@@ -50,6 +57,13 @@ public class Transaction {
     private static final int DELETE_BATCH_SIZE =
             Integer.getInteger("org.geoserver.wfs.deleteBatchSize", 100);
 
+    /** Maximum number of features aggregated from consecutive inserts, unbounded by default */
+    private static final int INSERT_BATCH_SIZE =
+            Integer.getInteger("org.geoserver.wfs.insertBatchSize", Integer.MAX_VALUE);
+
+    private static final int UPDATE_BATCH_SIZE =
+            Integer.getInteger("org.geoserver.wfs.updateBatchSize", 100);
+
     /** WFS configuration */
     protected WFSInfo wfs;
 
@@ -425,7 +439,8 @@ protected TransactionResponse execute(TransactionRequest request) throws Excepti
      * @param stores
      * @param elementHandlers
      * @param result
-     * @return a new {@link BatchManager} batching INSERT and DELETE operations where possible.
+     * @return a new {@link BatchManager} batching INSERT, UPDATE and DELETE operations where
+     *     possible.
      */
     protected BatchManager createBatchManager(
             TransactionRequest request,
@@ -434,7 +449,14 @@ protected BatchManager createBatchManager(
             Map<TransactionElement, TransactionElementHandler> elementHandlers,
             TransactionResponse result) {
         return new BatchManager(
-                request, multiplexer, stores, result, elementHandlers, DELETE_BATCH_SIZE);
+                request,
+                multiplexer,
+                stores,
+                result,
+                elementHandlers,
+                DELETE_BATCH_SIZE,
+                INSERT_BATCH_SIZE,
+                UPDATE_BATCH_SIZE);
     }
 
     private TransactionRequest fireBeforeTransaction(TransactionRequest request) {
@@ -632,16 +654,24 @@ public void dataStoreChange(TransactionEvent event) throws WFSException {
     /**
      * {@link BatchManager} restructures the contents of the transaction in order to enable batched
      * execution in the data stores. When processing the {@link TransactionElement}s it aggregates
-     * INSERT and DELETE operations where possible before calling the corresponding {@link
+     * INSERT, UPDATE and DELETE operations where possible before calling the corresponding {@link
      * TransactionElementHandler}s.
+     *
+     * <p>Consecutive UPDATE operations are aggregated only if they target the same type and set the
+     * same values, by OR-ing their filters: the data store then performs a single modification, and
+     * the transaction listeners get a single event covering all the modified features.
      */
     protected static class BatchManager {
+        private static final FilterFactory FF = CommonFactoryFinder.getFilterFactory(null);
+
         private TransactionRequest request;
         private TransactionListener multiplexer;
         private Map<QName, FeatureStore> stores;
         private TransactionResponse result;
         private Map<TransactionElement, TransactionElementHandler> elementHandlers;
         private int maxDeleteCount;
+        private int maxInsertCount;
+        private int maxUpdateCount;
 
         /**
          * Creates a new {@link BatchManager}, ready to {@link #run()} and process the transactions
@@ -662,17 +692,55 @@ public BatchManager(
                 TransactionResponse result,
                 Map<TransactionElement, TransactionElementHandler> elementHandlers,
                 int maxDeleteCount) {
+            this(
+                    request,
+                    multiplexer,
+                    stores,
+                    result,
+                    elementHandlers,
+                    maxDeleteCount,
+                    Integer.MAX_VALUE,
+                    1);
+        }
+
+        /**
+         * Creates a new {@link BatchManager}, ready to {@link #run()} and process the transactions
+         * content.
+         *
+         * @param request The current request
+         * @param multiplexer the current transaction listener
+         * @param stores The map of stores
+         * @param result The result
+         * @param elementHandlers Mapping of {@link TransactionElement} to its corresponding {@link
+         *     TransactionElementHandler}
+         * @param maxDeleteCount Maximum number of deletes to be aggregated into and existing delete
+         * @param maxInsertCount Maximum number of features to be aggregated into an existing insert
+         * @param maxUpdateCount Maximum number of updates to be aggregated into an existing update
+         */
+        public BatchManager(
+                TransactionRequest request,
+                TransactionListener multiplexer,
+                Map<QName, FeatureStore> stores,
+                TransactionResponse result,
+                Map<TransactionElement, TransactionElementHandler> elementHandlers,
+                int maxDeleteCount,
+                int maxInsertCount,
+                int maxUpdateCount) {
             this.request = request;
             this.multiplexer = multiplexer;
             this.stores = stores;
             this.result = result;
             this.elementHandlers = elementHandlers;
             this.maxDeleteCount = maxDeleteCount;
+            this.maxInsertCount = maxInsertCount;
+            this.maxUpdateCount = maxUpdateCount;
         }
 
         private TransactionElement aggrTargetElement;
         private TransactionElementHandler aggrTargetHandler;
         private int aggrDeleteCount = 0;
+        private int aggrUpdateCount = 0;
+        private long aggrInsertCount = 0;
 
         /**
          * Runs the aggregation of the {@link TransactionElement}s and invokes the required {@link
@@ -686,14 +754,12 @@ public void run() {
                 TransactionElement lCurrentElem = lEntry.getKey();
                 TransactionElementHandler lCurrentHandler = lEntry.getValue();
                 if (aggrTargetElement == null) {
-                    aggrTargetElement = lCurrentElem;
-                    aggrTargetHandler = lCurrentHandler;
+                    setAggregationTarget(lCurrentElem, lCurrentHandler);
                 } else if (canAggregate(lCurrentElem)) {
                     aggregate(lCurrentElem);
                 } else {
                     runAggregated();
-                    aggrTargetElement = lCurrentElem;
-                    aggrTargetHandler = lCurrentHandler;
+                    setAggregationTarget(lCurrentElem, lCurrentHandler);
                 }
             }
 
@@ -702,6 +768,15 @@ public void run() {
             }
         }
 
+        private void setAggregationTarget(
+                TransactionElement pElem, TransactionElementHandler pHandler) {
+            aggrTargetElement = pElem;
+            aggrTargetHandler = pHandler;
+            if (pElem instanceof Insert) {
+                aggrInsertCount = ((Insert) pElem).getFeatures().size();
+            }
+        }
+
         /**
          * @param pElem
          * @return true, if the current target element for aggregation can accept the given element
@@ -709,7 +784,25 @@ public void run() {
          */
         private boolean canAggregate(TransactionElement pElem) {
             if (aggrTargetElement instanceof Insert && pElem instanceof Insert) {
-                return true;
+                Insert lTarget = (Insert) aggrTargetElement;
+                Insert lElem = (Insert) pElem;
+                // the id generation mode applies to all the features of the element
+                return lTarget.isIdGenUseExisting() == lElem.isIdGenUseExisting()
+                        && aggrInsertCount + lElem.getFeatures().size() <= maxInsertCount;
+            }
+            if (aggrTargetElement instanceof Update && pElem instanceof Update) {
+                if (aggrUpdateCount >= maxUpdateCount - 1) {
+                    return false;
+                }
+                Update lTarget = (Update) aggrTargetElement;
+                Update lElem = (Update) pElem;
+                QName lTargetType = lTarget.getTypeName();
+                // an update without filter hits all features, cannot be OR-ed
+                return lTargetType != null
+                        && lTargetType.equals(lElem.getTypeName())
+                        && lTarget.getFilter() != null
+                        && lElem.getFilter() != null
+                        && sameValues(lTarget.getUpdateProperties(), lElem.getUpdateProperties());
             }
             if (aggrTargetElement instanceof Delete && pElem instanceof Delete) {
                 if (aggrDeleteCount >= maxDeleteCount - 1) {
@@ -737,6 +830,21 @@ private void aggregate(TransactionElement pElem) {
                 Insert lTarget = (Insert) aggrTargetElement;
                 Insert lElem = (Insert) pElem;
                 lTarget.addFeatures(lElem.getFeatures());
+                aggrInsertCount += lElem.getFeatures().size();
+                lRemoveFromRequest = true;
+            } else if (aggrTargetElement instanceof Update) {
+                Update lTarget = (Update) aggrTargetElement;
+                Update lElem = (Update) pElem;
+                List<Filter> lFilters = new ArrayList<>();
+                if (aggrUpdateCount > 0) {
+                    // the target filter is the OR built by previous aggregations
+                    lFilters.addAll(((Or) lTarget.getFilter()).getChildren());
+                } else {
+                    lFilters.add(lTarget.getFilter());
+                }
+                lFilters.add(lElem.getFilter());
+                lTarget.setFilter(FF.or(lFilters));
+                aggrUpdateCount++;
                 lRemoveFromRequest = true;
             } else if (aggrTargetElement instanceof Delete) {
                 Delete lTarget = (Delete) aggrTargetElement;
@@ -753,10 +861,37 @@ private void aggregate(TransactionElement pElem) {
             }
         }
 
-        /** Calls the current handler with the current element, resetting the delete counter. */
+        /** Checks the two lists of update properties set the same values on the same properties */
+        private boolean sameValues(List<Property> pProperties1, List<Property> pProperties2) {
+            if (pProperties1.size() != pProperties2.size()) {
+                return false;
+            }
+            for (int i = 0; i < pProperties1.size(); i++) {
+                Property p1 = pProperties1.get(i);
+                Property p2 = pProperties2.get(i);
+                Object v1 = p1.getValue();
+                Object v2 = p2.getValue();
+                if (!Objects.equals(p1.getName(), p2.getName()) || !Objects.equals(v1, v2)) {
+                    return false;
+                }
+                // geometries carry their CRS in the user data
+                if (v1 instanceof Geometry
+                        && !Objects.equals(
+                                ((Geometry) v1).getUserData(), ((Geometry) v2).getUserData())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Calls the current handler with the current element, resetting the aggregation counters.
+         */
         private void runAggregated() {
             aggrTargetHandler.execute(aggrTargetElement, request, stores, result, multiplexer);
             aggrDeleteCount = 0;
+            aggrUpdateCount = 0;
+            aggrInsertCount = 0;
         }
     }
 }
@@ -0,0 +1,560 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wfs.GMLInfo.SrsNameStyle;
+import org.geoserver.wfs.TypeInfoCollectionWrapper;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.request.GetFeatureRequest;
+import org.geoserver.wfs.request.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.type.DateUtil;
+import org.geotools.geometry.jts.CompoundCurvedGeometry;
+import org.geotools.geometry.jts.CurvedGeometry;
+import org.geotools.geometry.jts.SingleCurvedGeometry;
+import org.geotools.gml.producer.CoordinateFormatter;
+import org.geotools.gml3.v3_2.GML;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.geotools.wfs.v2_0.WFS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Writes a WFS 2.0 feature collection of simple features as GML 3.2, straight to a {@link
+ * XMLStreamWriter}, without going through the XSD driven {@link org.geotools.xsd.Encoder}. Element
+ * names, namespaces and SRS names are computed once per feature type, geometries are written
+ * directly from their {@link CoordinateSequence}.
+ *
+ * <p>The writer only handles a subset of the requests, see {@link
+ * #canWrite(FeatureCollectionResponse, GetFeatureRequest)}, the others should be handled by the XSD
+ * encoder.
+ */
+class GML32FeatureCollectionWriter {
+
+    static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /** Attributes that are mapped to GML properties by the encoder, not handled here */
+    static final Set<String> GML_ATTRIBUTES =
+            new HashSet<>(
+                    Arrays.asList(
+                            "name",
+                            "description",
+                            "boundedBy",
+                            "metaDataProperty",
+                            "location",
+                            "identifier"));
+
+    /** Prefixes used by the writer itself */
+    static final Set<String> RESERVED_PREFIXES =
+            new HashSet<>(Arrays.asList("wfs", "gml", "xsi", "xml", "xmlns"));
+
+    static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static final int MAX_CACHED_SRS_NAMES = 64;
+
+    private final XMLStreamWriter writer;
+
+    private final String charset;
+
+    private final CoordinateFormatter formatter;
+
+    private final SrsNameStyle srsNameStyle;
+
+    private final boolean featureBounding;
+
+    private final boolean srsDimension;
+
+    private final StringBuffer buffer = new StringBuffer();
+
+    /** The SRS names of the CRS objects met so far, the EPSG code lookup is expensive */
+    private final Map<CoordinateReferenceSystem, String> srsNameCache = new IdentityHashMap<>();
+
+    /**
+     * Creates a new writer
+     *
+     * @param output The output stream
+     * @param charset The output character set
+     * @param formatter The formatter used for coordinates
+     * @param srsNameStyle The style used for srsName attributes
+     * @param featureBounding Whether to encode the bounds of each feature
+     * @param srsDimension Whether to encode the srsDimension attribute on geometries
+     */
+    public GML32FeatureCollectionWriter(
+            OutputStream output,
+            String charset,
+            CoordinateFormatter formatter,
+            SrsNameStyle srsNameStyle,
+            boolean featureBounding,
+            boolean srsDimension)
+            throws IOException {
+        try {
+            this.writer = OUTPUT_FACTORY.createXMLStreamWriter(output, charset);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        this.charset = charset;
+        this.formatter = formatter;
+        this.srsNameStyle = srsNameStyle;
+        this.featureBounding = featureBounding;
+        this.srsDimension = srsDimension;
+    }
+
+    /**
+     * Checks if the response can be written by this class: a single query against a single simple
+     * feature type, not using GML reserved attribute names or a user provided schema, and not
+     * requiring a single feature output.
+     */
+    static boolean canWrite(FeatureCollectionResponse results, GetFeatureRequest request) {
+        if (results.isGetFeatureById()
+                || results.getNumberOfFeatures() == null
+                || results.getFeature().size() != 1) {
+            return false;
+        }
+        List<Query> queries = request.getQueries();
+        if (queries.size() != 1 || queries.get(0).getTypeNames().size() != 1) {
+            return false;
+        }
+        FeatureCollection fc = results.getFeature().get(0);
+        if (!(fc instanceof SimpleFeatureCollection)
+                || !(fc instanceof TypeInfoCollectionWrapper)) {
+            return false;
+        }
+        FeatureTypeInfo info = ((TypeInfoCollectionWrapper) fc).getFeatureTypeInfo();
+        if (info == null
+                || info.getNamespace() == null
+                || RESERVED_PREFIXES.contains(info.getNamespace().getPrefix())) {
+            return false;
+        }
+        try {
+            // a user provided schema might not match the attributes
+            if (info.getFeatureType().getUserData().get("schemaURI") != null) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        SimpleFeatureType schema = ((SimpleFeatureCollection) fc).getSchema();
+        return schema.getAttributeDescriptors().stream()
+                .noneMatch(ad -> GML_ATTRIBUTES.contains(ad.getLocalName()));
+    }
+
+    /**
+     * Writes out the feature collection
+     *
+     * @param results The response, must have been checked with {@link
+     *     #canWrite(FeatureCollectionResponse, GetFeatureRequest)}
+     * @param schemaLocations The schema locations, by namespace URI
+     */
+    public void write(FeatureCollectionResponse results, Map<String, String> schemaLocations)
+            throws IOException {
+        FeatureCollection fc = results.getFeature().get(0);
+        FeatureTypeMapping mapping =
+                new FeatureTypeMapping(
+                        ((TypeInfoCollectionWrapper) fc).getFeatureTypeInfo(),
+                        ((SimpleFeatureCollection) fc).getSchema());
+        try {
+            writer.writeStartDocument(charset, "1.0");
+            writer.writeStartElement("wfs", "FeatureCollection", WFS.NAMESPACE);
+            writer.writeNamespace("xsi", XSI_NAMESPACE);
+            writer.writeNamespace("wfs", WFS.NAMESPACE);
+            writer.writeNamespace("gml", GML.NAMESPACE);
+            writer.writeNamespace(mapping.prefix, mapping.namespaceURI);
+            writeCollectionAttributes(results);
+            if (!schemaLocations.isEmpty()) {
+                writer.writeAttribute(
+                        "xsi",
+                        XSI_NAMESPACE,
+                        "schemaLocation",
+                        schemaLocations.entrySet().stream()
+                                .map(e -> e.getKey() + " " + e.getValue())
+                                .collect(Collectors.joining(" ")));
+            }
+
+            try (SimpleFeatureIterator fi = ((SimpleFeatureCollection) fc).features()) {
+                while (fi.hasNext()) {
+                    writer.writeStartElement("wfs", "member", WFS.NAMESPACE);
+                    writeFeature(fi.next(), mapping);
+                    writer.writeEndElement();
+                }
+            }
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeCollectionAttributes(FeatureCollectionResponse results)
+            throws XMLStreamException {
+        Calendar timeStamp = results.getTimeStamp();
+        if (timeStamp != null) {
+            writer.writeAttribute(
+                    "timeStamp", DateUtil.serializeDateTime(timeStamp.getTimeInMillis(), true));
+        }
+        BigInteger matched = results.getTotalNumberOfFeatures();
+        writer.writeAttribute("numberMatched", matched != null ? matched.toString() : "unknown");
+        writer.writeAttribute("numberReturned", results.getNumberOfFeatures().toString());
+        if (results.getNext() != null) {
+            writer.writeAttribute("next", results.getNext());
+        }
+        if (results.getPrevious() != null) {
+            writer.writeAttribute("previous", results.getPrevious());
+        }
+        if (results.getLockId() != null) {
+            writer.writeAttribute("lockId", results.getLockId());
+        }
+    }
+
+    private void writeFeature(SimpleFeature feature, FeatureTypeMapping mapping)
+            throws XMLStreamException {
+        String id = feature.getID();
+        writer.writeStartElement(mapping.prefix, mapping.localName, mapping.namespaceURI);
+        writer.writeAttribute("gml", GML.NAMESPACE, "id", id);
+
+        if (featureBounding) {
+            BoundingBox bounds = feature.getBounds();
+            if (bounds != null && !bounds.isEmpty()) {
+                writeBounds(bounds, mapping.defaultSrsName);
+            }
+        }
+
+        for (int i = 0; i < mapping.descriptors.length; i++) {
+            AttributeDescriptor ad = mapping.descriptors[i];
+            Object value = feature.getAttribute(i);
+            if (value instanceof Geometry && ((Geometry) value).isEmpty()) {
+                value = null;
+            }
+            if (value == null) {
+                // optional elements are skipped, mandatory ones are nilled
+                if (ad.getMinOccurs() > 0 && ad.isNillable()) {
+                    writer.writeEmptyElement(
+                            mapping.prefix, ad.getLocalName(), mapping.namespaceURI);
+                    writer.writeAttribute("xsi", XSI_NAMESPACE, "nil", "true");
+                }
+                continue;
+            }
+
+            writer.writeStartElement(mapping.prefix, ad.getLocalName(), mapping.namespaceURI);
+            if (value instanceof Geometry) {
+                Geometry geometry = (Geometry) value;
+                String srsName = mapping.srsNames[i];
+                if (geometry.getUserData() instanceof CoordinateReferenceSystem) {
+                    srsName = srsName((CoordinateReferenceSystem) geometry.getUserData());
+                }
+                writeGeometry(geometry, id + "." + ad.getLocalName(), srsName, dimension(geometry));
+            } else {
+                writer.writeCharacters(encodeValue(value));
+            }
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+    }
+
+    private String encodeValue(Object value) {
+        if (value instanceof java.sql.Date || value instanceof java.sql.Time) {
+            // xs:date and xs:time representations
+            return value.toString();
+        } else if (value instanceof Date) {
+            return DateUtil.serializeDateTime(((Date) value).getTime(), true);
+        }
+        String converted = Converters.convert(value, String.class);
+        return converted != null ? converted : value.toString();
+    }
+
+    private void writeBounds(BoundingBox bounds, String srsName) throws XMLStreamException {
+        writer.writeStartElement("gml", "boundedBy", GML.NAMESPACE);
+        writer.writeStartElement("gml", "Envelope", GML.NAMESPACE);
+        if (srsName != null) {
+            writer.writeAttribute("srsName", srsName);
+        }
+        if (srsDimension) {
+            writer.writeAttribute("srsDimension", "2");
+        }
+        writer.writeStartElement("gml", "lowerCorner", GML.NAMESPACE);
+        buffer.setLength(0);
+        formatter.format(bounds.getMinX(), buffer).append(' ');
+        formatter.format(bounds.getMinY(), buffer);
+        writer.writeCharacters(buffer.toString());
+        writer.writeEndElement();
+        writer.writeStartElement("gml", "upperCorner", GML.NAMESPACE);
+        buffer.setLength(0);
+        formatter.format(bounds.getMaxX(), buffer).append(' ');
+        formatter.format(bounds.getMaxY(), buffer);
+        writer.writeCharacters(buffer.toString());
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes a geometry, the srsName is only written on the top level geometry, nested ones get
+     * null
+     */
+    private void writeGeometry(Geometry g, String id, String srsName, int dimension)
+            throws XMLStreamException {
+        if (g instanceof Point) {
+            startGeometry("Point", id, srsName, dimension);
+            writer.writeStartElement("gml", "pos", GML.NAMESPACE);
+            writeCoordinates(((Point) g).getCoordinateSequence(), dimension);
+            writer.writeEndElement();
+        } else if (g instanceof LineString) {
+            if (g instanceof CurvedGeometry) {
+                startGeometry("Curve", id, srsName, dimension);
+                writer.writeStartElement("gml", "segments", GML.NAMESPACE);
+                writeSegments((LineString) g, dimension);
+                writer.writeEndElement();
+            } else {
+                startGeometry("LineString", id, srsName, dimension);
+                writePosList(((LineString) g).getCoordinateSequence(), dimension);
+            }
+        } else if (g instanceof Polygon) {
+            Polygon polygon = (Polygon) g;
+            startGeometry("Polygon", id, srsName, dimension);
+            writer.writeStartElement("gml", "exterior", GML.NAMESPACE);
+            writeRing(polygon.getExteriorRing(), id + ".exterior", dimension);
+            writer.writeEndElement();
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                writer.writeStartElement("gml", "interior", GML.NAMESPACE);
+                writeRing(polygon.getInteriorRingN(i), id + ".interior" + (i + 1), dimension);
+                writer.writeEndElement();
+            }
+        } else if (g instanceof MultiPoint) {
+            writeCollection(
+                    (GeometryCollection) g, "MultiPoint", "pointMember", id, srsName, dimension);
+        } else if (g instanceof MultiLineString) {
+            writeCollection(
+                    (GeometryCollection) g, "MultiCurve", "curveMember", id, srsName, dimension);
+        } else if (g instanceof MultiPolygon) {
+            writeCollection(
+                    (GeometryCollection) g,
+                    "MultiSurface",
+                    "surfaceMember",
+                    id,
+                    srsName,
+                    dimension);
+        } else if (g instanceof GeometryCollection) {
+            writeCollection(
+                    (GeometryCollection) g,
+                    "MultiGeometry",
+                    "geometryMember",
+                    id,
+                    srsName,
+                    dimension);
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type " + g.getGeometryType());
+        }
+        writer.writeEndElement();
+    }
+
+    private void startGeometry(String name, String id, String srsName, int dimension)
+            throws XMLStreamException {
+        writer.writeStartElement("gml", name, GML.NAMESPACE);
+        writer.writeAttribute("gml", GML.NAMESPACE, "id", id);
+        if (srsName != null) {
+            writer.writeAttribute("srsName", srsName);
+            if (srsDimension) {
+                writer.writeAttribute("srsDimension", String.valueOf(dimension));
+            }
+        }
+    }
+
+    /** Writes a multi geometry, leaving its element open */
+    private void writeCollection(
+            GeometryCollection collection,
+            String name,
+            String member,
+            String id,
+            String srsName,
+            int dimension)
+            throws XMLStreamException {
+        startGeometry(name, id, srsName, dimension);
+        for (int i = 0; i < collection.getNumGeometries(); i++) {
+            Geometry child = collection.getGeometryN(i);
+            if (child.isEmpty()) {
+                continue;
+            }
+            writer.writeStartElement("gml", member, GML.NAMESPACE);
+            writeGeometry(child, id + "." + (i + 1), null, dimension);
+            writer.writeEndElement();
+        }
+    }
+
+    private void writeRing(LineString ring, String id, int dimension) throws XMLStreamException {
+        if (ring instanceof CompoundCurvedGeometry) {
+            writer.writeStartElement("gml", "Ring", GML.NAMESPACE);
+            List<LineString> components = ((CompoundCurvedGeometry<?>) ring).getComponents();
+            for (int i = 0; i < components.size(); i++) {
+                writer.writeStartElement("gml", "curveMember", GML.NAMESPACE);
+                writeGeometry(components.get(i), id + "." + (i + 1), null, dimension);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        } else if (ring instanceof CurvedGeometry) {
+            writer.writeStartElement("gml", "Ring", GML.NAMESPACE);
+            writer.writeStartElement("gml", "curveMember", GML.NAMESPACE);
+            writeGeometry(ring, id, null, dimension);
+            writer.writeEndElement();
+            writer.writeEndElement();
+        } else {
+            writer.writeStartElement("gml", "LinearRing", GML.NAMESPACE);
+            writePosList(ring.getCoordinateSequence(), dimension);
+            writer.writeEndElement();
+        }
+    }
+
+    /** Writes the segments of a curved line */
+    private void writeSegments(LineString curve, int dimension) throws XMLStreamException {
+        if (curve instanceof CompoundCurvedGeometry) {
+            for (LineString component : ((CompoundCurvedGeometry<?>) curve).getComponents()) {
+                writeSegments(component, dimension);
+            }
+        } else if (curve instanceof SingleCurvedGeometry) {
+            writer.writeStartElement("gml", "ArcString", GML.NAMESPACE);
+            writer.writeStartElement("gml", "posList", GML.NAMESPACE);
+            // control points are always 2D
+            double[] cp = ((SingleCurvedGeometry<?>) curve).getControlPoints();
+            buffer.setLength(0);
+            for (int i = 0; i < cp.length; i++) {
+                if (i > 0) {
+                    buffer.append(' ');
+                }
+                formatter.format(cp[i], buffer);
+            }
+            writer.writeCharacters(buffer.toString());
+            writer.writeEndElement();
+            writer.writeEndElement();
+        } else {
+            writer.writeStartElement("gml", "LineStringSegment", GML.NAMESPACE);
+            writePosList(curve.getCoordinateSequence(), dimension);
+            writer.writeEndElement();
+        }
+    }
+
+    private void writePosList(CoordinateSequence cs, int dimension) throws XMLStreamException {
+        writer.writeStartElement("gml", "posList", GML.NAMESPACE);
+        writeCoordinates(cs, dimension);
+        writer.writeEndElement();
+    }
+
+    private void writeCoordinates(CoordinateSequence cs, int dimension) throws XMLStreamException {
+        buffer.setLength(0);
+        int size = cs.size();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                buffer.append(' ');
+            }
+            formatter.format(cs.getX(i), buffer).append(' ');
+            formatter.format(cs.getY(i), buffer);
+            if (dimension > 2) {
+                buffer.append(' ');
+                formatter.format(cs.getZ(i), buffer);
+            }
+        }
+        writer.writeCharacters(buffer.toString());
+    }
+
+    /** Returns 3 if the geometry has a Z value, 2 otherwise */
+    static int dimension(Geometry g) {
+        Coordinate c = g.getCoordinate();
+        return c != null && !Double.isNaN(c.getZ()) ? 3 : 2;
+    }
+
+    String srsName(CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            return null;
+        }
+        if (srsNameCache.containsKey(crs)) {
+            return srsNameCache.get(crs);
+        }
+        if (srsNameCache.size() >= MAX_CACHED_SRS_NAMES) {
+            // geometries carrying a new CRS object each
+            srsNameCache.clear();
+        }
+        String srsName = lookupSrsName(crs);
+        srsNameCache.put(crs, srsName);
+        return srsName;
+    }
+
+    private String lookupSrsName(CoordinateReferenceSystem crs) {
+        try {
+            Integer code = CRS.lookupEpsgCode(crs, false);
+            if (code == null) {
+                code = CRS.lookupEpsgCode(crs, true);
+            }
+            return code != null ? srsNameStyle.getPrefix() + code : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** The element names, namespaces and SRS names of a feature type, computed once */
+    class FeatureTypeMapping {
+        final String prefix;
+        final String namespaceURI;
+        final String localName;
+        final AttributeDescriptor[] descriptors;
+        final String[] srsNames;
+        final String defaultSrsName;
+
+        FeatureTypeMapping(FeatureTypeInfo info, SimpleFeatureType schema) {
+            QName name =
+                    new QName(
+                            info.getNamespace().getURI(),
+                            info.getName(),
+                            info.getNamespace().getPrefix());
+            this.prefix = name.getPrefix();
+            this.namespaceURI = name.getNamespaceURI();
+            this.localName = name.getLocalPart();
+            this.descriptors = schema.getAttributeDescriptors().toArray(new AttributeDescriptor[0]);
+            this.srsNames = new String[descriptors.length];
+            for (int i = 0; i < descriptors.length; i++) {
+                if (descriptors[i] instanceof GeometryDescriptor) {
+                    srsNames[i] =
+                            srsName(
+                                    ((GeometryDescriptor) descriptors[i])
+                                            .getCoordinateReferenceSystem());
+                }
+            }
+            this.defaultSrsName = srsName(schema.getCoordinateReferenceSystem());
+        }
+    }
+}
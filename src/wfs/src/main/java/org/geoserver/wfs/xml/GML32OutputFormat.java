@@ -10,6 +10,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,6 +21,8 @@
 import org.eclipse.emf.ecore.EObject;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.config.GeoServer;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
 import org.geoserver.ows.util.ResponseUtils;
 import org.geoserver.platform.Operation;
 import org.geoserver.wfs.WFSException;
@@ -29,6 +32,7 @@
 import org.geoserver.wfs.xml.v1_1_0.WFSConfiguration;
 import org.geotools.data.DataUtilities;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.gml.producer.CoordinateFormatter;
 import org.geotools.gml3.v3_2.GML;
 import org.geotools.gml3.v3_2.GMLConfiguration;
 import org.geotools.wfs.v2_0.WFS;
@@ -125,11 +129,43 @@ protected Encoder createEncoder(
     protected void setAdditionalSchemaLocations(
             Encoder encoder, GetFeatureRequest request, WFSInfo wfs) {
         // since wfs 2.0 schema does not depend on gml 3.2 schema we register it manually
-        String loc =
-                wfs.isCanonicalSchemaLocation()
-                        ? GML.CANONICAL_SCHEMA_LOCATION
-                        : ResponseUtils.buildSchemaURL(request.getBaseUrl(), "gml/3.2.1/gml.xsd");
-        encoder.setSchemaLocation(GML.NAMESPACE, loc);
+        encoder.setSchemaLocation(GML.NAMESPACE, getGMLSchemaLocation(request, wfs));
+    }
+
+    private String getGMLSchemaLocation(GetFeatureRequest request, WFSInfo wfs) {
+        return wfs.isCanonicalSchemaLocation()
+                ? GML.CANONICAL_SCHEMA_LOCATION
+                : ResponseUtils.buildSchemaURL(request.getBaseUrl(), "gml/3.2.1/gml.xsd");
+    }
+
+    @Override
+    protected boolean encodeStreaming(
+            FeatureCollectionResponse results,
+            OutputStream output,
+            GetFeatureRequest request,
+            Map<String, String> schemaLocations,
+            CoordinateFormatter formatter,
+            boolean encodeMeasures)
+            throws IOException {
+        Request dispatcherRequest = Dispatcher.REQUEST.get();
+        if (encodeMeasures
+                || (dispatcherRequest != null && dispatcherRequest.isSOAP())
+                || !GML32FeatureCollectionWriter.canWrite(results, request)) {
+            return false;
+        }
+        WFSInfo wfs = getInfo();
+        Map<String, String> locations = new LinkedHashMap<>(schemaLocations);
+        locations.put(GML.NAMESPACE, getGMLSchemaLocation(request, wfs));
+        GML32FeatureCollectionWriter writer =
+                new GML32FeatureCollectionWriter(
+                        output,
+                        geoServer.getSettings().getCharset(),
+                        formatter,
+                        wfs.getGML().get(WFSInfo.Version.V_20).getSrsNameStyle(),
+                        wfs.isFeatureBounding(),
+                        !wfs.isCiteCompliant());
+        writer.write(results, locations);
+        return true;
     }
 
     @Override
@@ -24,6 +24,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,7 @@
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
 import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSException;
@@ -60,6 +62,7 @@
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.simple.SimpleFeatureTypeImpl;
+import org.geotools.gml.producer.CoordinateFormatter;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xsd.Configuration;
 import org.geotools.xsd.Encoder;
@@ -74,9 +77,16 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat
     public static final boolean OPTIMIZED_ENCODING =
             Boolean.parseBoolean(System.getProperty("GML_OPTIMIZED_ENCODING", "true"));
 
+    /**
+     * Property enabling the streaming writers, bypassing the XSD encoder for the simple feature
+     * requests they can handle (disabled by default)
+     */
+    public static final String STREAMING_ENCODING_KEY = "GML_STREAMING_ENCODING";
+
     GeoServer geoServer;
     Catalog catalog;
     WFSConfiguration configuration;
+    boolean streamingEncoding;
     protected static DOMSource xslt;
 
     static {
@@ -112,6 +122,18 @@ public GML3OutputFormat(
         this.catalog = geoServer.getCatalog();
 
         this.configuration = configuration;
+        this.streamingEncoding =
+                Boolean.parseBoolean(GeoServerExtensions.getProperty(STREAMING_ENCODING_KEY));
+    }
+
+    /** Returns true if the streaming writers are enabled */
+    public boolean isStreamingEncoding() {
+        return streamingEncoding;
+    }
+
+    /** Enables or disables the streaming writers, see {@link #STREAMING_ENCODING_KEY} */
+    public void setStreamingEncoding(boolean streamingEncoding) {
+        this.streamingEncoding = streamingEncoding;
     }
 
     @Override
@@ -235,23 +257,12 @@ protected void write(
 
         // declare wfs schema location
         Object gft = getFeature.getParameters()[0];
-
-        Configuration configuration = customizeConfiguration(this.configuration, ns2metas, gft);
-        boolean encodeMeasures = encodeMeasures(featureCollections, catalog);
-        updateConfiguration(
-                configuration, numDecimals, padWithZeros, forcedDecimal, encodeMeasures);
-        Encoder encoder = createEncoder(configuration, ns2metas, gft);
-
-        encoder.setEncoding(Charset.forName(geoServer.getSettings().getCharset()));
-        Request dispatcherRequest = Dispatcher.REQUEST.get();
-        if (dispatcherRequest != null) {
-            encoder.setOmitXMLDeclaration(dispatcherRequest.isSOAP());
-        }
-
+        Map<String, String> schemaLocations = new LinkedHashMap<>();
+        Map<String, String> prefixes = new LinkedHashMap<>();
         if (wfs.isCanonicalSchemaLocation()) {
-            encoder.setSchemaLocation(getWfsNamespace(), getCanonicalWfsSchemaLocation());
+            schemaLocations.put(getWfsNamespace(), getCanonicalWfsSchemaLocation());
         } else {
-            encoder.setSchemaLocation(
+            schemaLocations.put(
                     getWfsNamespace(),
                     buildSchemaURL(request.getBaseURL(), getRelativeWfsSchemaLocation()));
         }
@@ -283,7 +294,7 @@ protected void write(
                         @SuppressWarnings("unchecked")
                         Map<String, String> schemaURIs = (Map<String, String>) userSchemaLocation;
                         for (String namespace : schemaURIs.keySet()) {
-                            encoder.setSchemaLocation(namespace, schemaURIs.get(namespace));
+                            schemaLocations.put(namespace, schemaURIs.get(namespace));
                         }
                     } else {
                         typeNames.append(meta.prefixedName());
@@ -292,8 +303,7 @@ protected void write(
                         }
                     }
                 } else {
-                    encoder.getNamespaces()
-                            .declarePrefix(ri.getStore().getWorkspace().getName(), namespaceURI);
+                    prefixes.put(ri.getStore().getWorkspace().getName(), namespaceURI);
                 }
             }
 
@@ -307,10 +317,34 @@ protected void write(
                                 + namespaceURI
                                 + ". Using a built schema location by default: "
                                 + schemaLocation);
-                encoder.setSchemaLocation(namespaceURI, schemaLocation);
+                schemaLocations.put(namespaceURI, schemaLocation);
             }
         }
 
+        boolean encodeMeasures = encodeMeasures(featureCollections, catalog);
+        if (streamingEncoding && !isComplexFeature(results)) {
+            CoordinateFormatter formatter = new CoordinateFormatter(numDecimals);
+            formatter.setPadWithZeros(padWithZeros);
+            formatter.setForcedDecimal(forcedDecimal);
+            if (encodeStreaming(
+                    results, output, request, schemaLocations, formatter, encodeMeasures)) {
+                return;
+            }
+        }
+
+        Configuration configuration = customizeConfiguration(this.configuration, ns2metas, gft);
+        updateConfiguration(
+                configuration, numDecimals, padWithZeros, forcedDecimal, encodeMeasures);
+        Encoder encoder = createEncoder(configuration, ns2metas, gft);
+
+        encoder.setEncoding(Charset.forName(geoServer.getSettings().getCharset()));
+        Request dispatcherRequest = Dispatcher.REQUEST.get();
+        if (dispatcherRequest != null) {
+            encoder.setOmitXMLDeclaration(dispatcherRequest.isSOAP());
+        }
+        schemaLocations.forEach(encoder::setSchemaLocation);
+        prefixes.forEach((prefix, uri) -> encoder.getNamespaces().declarePrefix(prefix, uri));
+
         setAdditionalSchemaLocations(encoder, request, wfs);
         if (isComplexFeature(results)) {
             complexFeatureStreamIntercept(results, output, encoder);
@@ -319,6 +353,26 @@ protected void write(
         }
     }
 
+    /**
+     * Hook for subclasses able to write simple features directly, bypassing the XSD {@link
+     * Encoder}. Called only when streaming encoding is enabled and no complex features are
+     * involved.
+     *
+     * @param schemaLocations The schema locations computed so far, by namespace URI
+     * @param formatter The coordinate formatter configured for the response
+     * @return true if the response has been written, false to fall back on the encoder
+     */
+    protected boolean encodeStreaming(
+            FeatureCollectionResponse results,
+            OutputStream output,
+            GetFeatureRequest request,
+            Map<String, String> schemaLocations,
+            CoordinateFormatter formatter,
+            boolean encodeMeasures)
+            throws IOException {
+        return false;
+    }
+
     protected void updateConfiguration(
             Configuration configuration,
             int numDecimals,
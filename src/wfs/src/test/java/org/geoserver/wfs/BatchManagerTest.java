@@ -32,6 +32,7 @@
 import org.geoserver.wfs.request.Delete;
 import org.geoserver.wfs.request.Insert;
 import org.geoserver.wfs.request.Native;
+import org.geoserver.wfs.request.Property;
 import org.geoserver.wfs.request.Replace;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
@@ -274,6 +275,94 @@ private void testAggregationWithDeleteBatchSize(int pDeleteBatchSize) {
         }
     }
 
+    /**
+     * Verifies that consecutive UPDATEs on the same type setting the same values get aggregated by
+     * OR-ing their filters, while an UPDATE setting a different value is kept separate.
+     */
+    @Test
+    public void testUpdateAggregation() throws Exception {
+        // given: three updates, the last one setting a different value
+        Update update1 = newUpdate(type1Name, filter1, "a", "x");
+        TransactionElementHandler update1Handler = mock(TransactionElementHandler.class);
+
+        Update update2 = newUpdate(type1Name, filter2, "a", "x");
+        TransactionElementHandler update2Handler = mock(TransactionElementHandler.class);
+
+        Update update3 = newUpdate(type1Name, filter3, "a", "y");
+        TransactionElementHandler update3Handler = mock(TransactionElementHandler.class);
+
+        Map<TransactionElement, TransactionElementHandler> element2Handlers =
+                asMap( //
+                        keyValue(update1, update1Handler), //
+                        keyValue(update2, update2Handler), //
+                        keyValue(update3, update3Handler));
+        TransactionRequest lTransaction = transactionRequest(element2Handlers.keySet());
+
+        // when: BatchManager runs...
+        BatchManager sut =
+                new BatchManager(
+                        lTransaction,
+                        transactionListener,
+                        stores,
+                        transactionResponse,
+                        element2Handlers,
+                        100,
+                        Integer.MAX_VALUE,
+                        100);
+        sut.run();
+
+        // then: the first two have been merged
+        assertTrue("First 2 UPDATEs have been merged", update1.getFilter() instanceof Or);
+        assertEquals(2, ((Or) update1.getFilter()).getChildren().size());
+        assertEquals(filter3, update3.getFilter());
+        verify(update1Handler, times(1)).execute(same(update1), any(), any(), any(), any());
+        verify(update2Handler, times(0)).execute(any(), any(), any(), any(), any());
+        verify(update3Handler, times(1)).execute(same(update3), any(), any(), any(), any());
+        assertEquals(2, lTransaction.getElements().size());
+    }
+
+    /** Verifies the number of features aggregated from consecutive INSERTs is bounded */
+    @Test
+    public void testInsertBatchSize() throws Exception {
+        // given: three inserts, with an insert batch size of 2
+        Insert insert1 = newInsert(feature1);
+        TransactionElementHandler insert1Handler = mock(TransactionElementHandler.class);
+
+        Insert insert2 = newInsert(feature2);
+        TransactionElementHandler insert2Handler = mock(TransactionElementHandler.class);
+
+        Insert insert3 = newInsert(feature3);
+        TransactionElementHandler insert3Handler = mock(TransactionElementHandler.class);
+
+        Map<TransactionElement, TransactionElementHandler> element2Handlers =
+                asMap( //
+                        keyValue(insert1, insert1Handler), //
+                        keyValue(insert2, insert2Handler), //
+                        keyValue(insert3, insert3Handler));
+        TransactionRequest lTransaction = transactionRequest(element2Handlers.keySet());
+
+        // when: BatchManager runs...
+        BatchManager sut =
+                new BatchManager(
+                        lTransaction,
+                        transactionListener,
+                        stores,
+                        transactionResponse,
+                        element2Handlers,
+                        100,
+                        2,
+                        100);
+        sut.run();
+
+        // then: the third insert is executed on its own
+        assertEquals(2, insert1.getFeatures().size());
+        assertEquals(1, insert3.getFeatures().size());
+        verify(insert1Handler, times(1)).execute(same(insert1), any(), any(), any(), any());
+        verify(insert2Handler, times(0)).execute(any(), any(), any(), any(), any());
+        verify(insert3Handler, times(1)).execute(same(insert3), any(), any(), any(), any());
+        assertEquals(2, lTransaction.getElements().size());
+    }
+
     private TransactionRequest transactionRequest(Set<TransactionElement> pElems) {
         TransactionType lTransactionType = Wfs20Factory.eINSTANCE.createTransactionType();
         TransactionRequest lTransactionRequest = TransactionRequest.adapt(lTransactionType);
@@ -322,6 +411,17 @@ private Update newUpdate() {
         return lUpdate;
     }
 
+    private Update newUpdate(QName pTypeName, Filter pFilter, String pProperty, Object pValue) {
+        Update lUpdate = newUpdate();
+        lUpdate.setTypeName(pTypeName);
+        lUpdate.setFilter(pFilter);
+        Property lProperty = lUpdate.createProperty();
+        lProperty.setName(new QName(pProperty));
+        lProperty.setValue(pValue);
+        lUpdate.setUpdateProperties(Arrays.asList(lProperty));
+        return lUpdate;
+    }
+
     private Insert newInsert(SimpleFeature pFeature) {
         InsertType lInsertType = Wfs20Factory.eINSTANCE.createInsertType();
         Insert lInsert = new Insert.WFS20(lInsertType);
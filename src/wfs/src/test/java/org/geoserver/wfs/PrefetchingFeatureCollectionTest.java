@@ -0,0 +1,168 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class PrefetchingFeatureCollectionTest {
+
+    PrefetchingFeatureCollection.Prefetcher prefetcher;
+
+    List<SimpleFeature> features;
+
+    /** Features read from the delegate so far */
+    AtomicInteger read = new AtomicInteger();
+
+    AtomicBoolean closed = new AtomicBoolean();
+
+    @Before
+    public void setup() throws Exception {
+        prefetcher = new PrefetchingFeatureCollection.Prefetcher(2, 1);
+        SimpleFeatureType type = DataUtilities.createType("test", "id:int");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        features = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            features.add(fb.buildFeature("test." + i, new Object[] {i}));
+        }
+    }
+
+    @After
+    public void shutdown() {
+        prefetcher.destroy();
+        PrefetchingFeatureCollection.PENDING.remove();
+    }
+
+    @Test
+    public void testWrapOnlyMultipleQueries() {
+        SimpleFeatureCollection collection = DataUtilities.collection(features);
+        assertSame(collection, prefetcher.wrap(collection, 1));
+        assertTrue(prefetcher.wrap(collection, 2) instanceof PrefetchingFeatureCollection);
+        // disabled
+        PrefetchingFeatureCollection.Prefetcher disabled =
+                new PrefetchingFeatureCollection.Prefetcher(0, 1);
+        assertSame(collection, disabled.wrap(collection, 2));
+    }
+
+    @Test
+    public void testReadAheadAndOrder() throws Exception {
+        PrefetchingFeatureCollection prefetch = wrap(new CountingCollection());
+        assertEquals(0, read.get());
+        prefetcher.start(prefetch);
+
+        // reads ahead only up to the prefetch size
+        waitForReads(2);
+        Thread.sleep(50);
+        assertEquals(2, read.get());
+
+        // the output follows the delegate order, prefetched features first
+        try (SimpleFeatureIterator it = prefetch.features()) {
+            for (SimpleFeature expected : features) {
+                assertTrue(it.hasNext());
+                assertEquals(expected.getID(), it.next().getID());
+            }
+            assertFalse(it.hasNext());
+        }
+        assertEquals(features.size(), read.get());
+        assertTrue(closed.get());
+
+        // further calls go to the delegate
+        try (SimpleFeatureIterator it = prefetch.features()) {
+            assertEquals(features.get(0).getID(), it.next().getID());
+        }
+    }
+
+    @Test
+    public void testFailureRethrown() throws Exception {
+        RuntimeException failure = new RuntimeException(new IOException("store failure"));
+        PrefetchingFeatureCollection prefetch =
+                wrap(
+                        new CountingCollection() {
+                            @Override
+                            public SimpleFeatureIterator features() {
+                                throw failure;
+                            }
+                        });
+        prefetcher.start(prefetch);
+        try {
+            prefetch.features();
+            fail("Should have failed");
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testUnconsumedClosed() throws Exception {
+        PrefetchingFeatureCollection prefetch = wrap(new CountingCollection());
+        prefetcher.start(prefetch);
+        waitForReads(2);
+        prefetcher.finished(null);
+        assertTrue(closed.get());
+        assertEquals(2, read.get());
+    }
+
+    private PrefetchingFeatureCollection wrap(SimpleFeatureCollection collection) {
+        return (PrefetchingFeatureCollection) prefetcher.wrap(collection, 2);
+    }
+
+    private void waitForReads(int expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (read.get() < expected && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, read.get());
+    }
+
+    /** Counts the features read and tracks the iterator closing */
+    class CountingCollection extends DecoratingSimpleFeatureCollection {
+
+        CountingCollection() {
+            super(DataUtilities.collection(features));
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            SimpleFeatureIterator it = super.features();
+            return new SimpleFeatureIterator() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public SimpleFeature next() {
+                    read.incrementAndGet();
+                    return it.next();
+                }
+
+                @Override
+                public void close() {
+                    closed.set(true);
+                    it.close();
+                }
+            };
+        }
+    }
+}
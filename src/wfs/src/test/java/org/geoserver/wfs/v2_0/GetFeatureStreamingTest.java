@@ -0,0 +1,119 @@
+/* (c) 2022 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.v2_0;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.custommonkey.xmlunit.Diff;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.geoserver.wfs.xml.GML3OutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/** Checks the streaming GML 3.2 writer produces the same output as the XSD encoder */
+public class GetFeatureStreamingTest extends WFS20TestSupport {
+
+    static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    GML3OutputFormat format;
+
+    @Before
+    public void enableStreaming() {
+        format = applicationContext.getBean("gml32OutputFormat", GML3OutputFormat.class);
+        format.setStreamingEncoding(true);
+    }
+
+    @After
+    public void disableStreaming() {
+        format.setStreamingEncoding(false);
+    }
+
+    @Test
+    public void testFifteen() throws Exception {
+        Document dom =
+                getAsDOM("wfs?request=GetFeature&typenames=cdf:Fifteen&version=2.0.0&service=wfs");
+        assertGML32(dom);
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertXpathEvaluatesTo("15", "count(//wfs:member/cdf:Fifteen)", dom);
+        assertXpathEvaluatesTo("15", "count(//cdf:Fifteen/cdf:the_geom/gml:Point/gml:pos)", dom);
+    }
+
+    @Test
+    public void testSameAsEncoderPoints() throws Exception {
+        assertSameAsEncoder("cdf:Fifteen");
+    }
+
+    @Test
+    public void testSameAsEncoderPolygons() throws Exception {
+        assertSameAsEncoder("cite:Lakes");
+        assertSameAsEncoder("cite:BasicPolygons");
+    }
+
+    @Test
+    public void testSameAsEncoderLines() throws Exception {
+        assertSameAsEncoder("cite:RoadSegments");
+        assertSameAsEncoder("cgf:MLines");
+    }
+
+    @Test
+    public void testSameAsEncoderReprojected() throws Exception {
+        assertSameAsEncoder("cite:Lakes&srsName=urn:ogc:def:crs:EPSG::4326");
+    }
+
+    @Test
+    public void testGMLAttributesFallback() throws Exception {
+        // name and description are encoded as gml properties by the encoder
+        Document dom =
+                getAsDOM(
+                        "wfs?request=GetFeature&typenames=sf:PrimitiveGeoFeature&version=2.0.0"
+                                + "&service=wfs");
+        assertGML32(dom);
+        assertXpathEvaluatesTo(
+                "name-f001",
+                "//sf:PrimitiveGeoFeature[@gml:id='PrimitiveGeoFeature.f001']/gml:name",
+                dom);
+    }
+
+    /** Encodes the same features with and without the streaming writer, and compares the output */
+    private void assertSameAsEncoder(String typeNames) throws Exception {
+        String path = "wfs?request=GetFeature&version=2.0.0&service=wfs&typenames=" + typeNames;
+        format.setStreamingEncoding(true);
+        Document streamed = getAsDOM(path);
+        format.setStreamingEncoding(false);
+        Document encoded = getAsDOM(path);
+        assertGML32(streamed);
+
+        // the timestamps differ, and the schema locations can be listed in any order
+        assertEquals(getSchemaLocations(encoded), getSchemaLocations(streamed));
+        for (Document dom : new Document[] {streamed, encoded}) {
+            Element root = dom.getDocumentElement();
+            root.removeAttribute("timeStamp");
+            root.removeAttributeNS(XSI, "schemaLocation");
+        }
+
+        boolean ignoreWhitespace = XMLUnit.getIgnoreWhitespace();
+        XMLUnit.setIgnoreWhitespace(true);
+        try {
+            Diff diff = new Diff(encoded, streamed);
+            assertTrue(typeNames + ": " + diff, diff.similar());
+        } finally {
+            XMLUnit.setIgnoreWhitespace(ignoreWhitespace);
+        }
+    }
+
+    private Set<String> getSchemaLocations(Document dom) {
+        String locations = dom.getDocumentElement().getAttributeNS(XSI, "schemaLocation");
+        return new HashSet<>(Arrays.asList(locations.trim().split("\\s+")));
+    }
+}